@@ -466,6 +466,25 @@ public abstract class ADb implements AutoCloseable {
         }
     }
 
+    /**
+     * Create a {@link BulkInserter} to load many rows through the given insert sql.
+     *
+     * <p>The inserter has to be closed to commit the last rows and restore
+     * the connection settings.</p>
+     *
+     * @param sql
+     *            the insert sql with the placeholders.
+     * @param batchSize
+     *            the number of rows sent to the database at once.
+     * @param commitInterval
+     *            the number of rows after which the transaction is committed.
+     * @return the inserter.
+     * @throws Exception
+     */
+    public BulkInserter createBulkInserter( String sql, int batchSize, int commitInterval ) throws Exception {
+        return new BulkInserter(mConn, sql, batchSize, commitInterval);
+    }
+
     /**
      * @return the connection to the database.
      */
@@ -124,6 +124,28 @@ public abstract class ASpatialDb extends ADb implements AutoCloseable {
         }
     }
 
+    /**
+     * Create the spatial index of a geometry column.
+     *
+     * <p>Used when the index has been avoided while adding the geometry column,
+     * for example to bulk load the data faster.</p>
+     *
+     * @param tableName
+     *            the table name.
+     * @param geomColName
+     *            the geometry column name.
+     * @throws Exception
+     */
+    public void createSpatialIndex( String tableName, String geomColName ) throws Exception {
+        if (geomColName == null) {
+            geomColName = defaultGeomFieldName;
+        }
+        try (IJGTStatement stmt = mConn.createStatement()) {
+            String sql = "SELECT CreateSpatialIndex('" + tableName + "', '" + geomColName + "');";
+            stmt.execute(sql);
+        }
+    }
+
     /**
      * Adds a geometry column to a table.
      * 
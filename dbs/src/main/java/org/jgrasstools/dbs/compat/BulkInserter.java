@@ -0,0 +1,208 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.dbs.compat;
+
+/**
+ * Bulk loader of rows through a single reusable prepared statement.
+ *
+ * <p>While the inserter is open the connection is in manual commit mode,
+ * the rows are sent in batches of <code>batchSize</code> and committed every
+ * <code>commitInterval</code> rows. The journal and synchronous pragmas are
+ * switched to bulk mode and restored on {@link #close()}.</p>
+ *
+ * <p>The last rows are committed by {@link #commit()}. Closing an inserter
+ * that has not been committed, for example because the loading failed, rolls
+ * back the rows added since the last intermediate commit.</p>
+ *
+ * <p>The inserter is meant to be used by a single writer thread:</p>
+ * <pre>
+ * try (BulkInserter inserter = db.createBulkInserter(sql, 1000, 50000)) {
+ *     IJGTPreparedStatement pStmt = inserter.getStatement();
+ *     for( ... ) {
+ *         pStmt.setXXX(...);
+ *         inserter.addBatch();
+ *     }
+ *     inserter.commit();
+ * }
+ * </pre>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class BulkInserter implements AutoCloseable {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_COMMIT_INTERVAL = 50000;
+
+    private final IJGTConnection conn;
+    private final IJGTPreparedStatement pStmt;
+    private final int batchSize;
+    private final int commitInterval;
+
+    private final boolean previousAutoCommit;
+    private final String previousJournalMode;
+    private final String previousSynchronous;
+
+    private long count = 0;
+    private int pendingInBatch = 0;
+    private int pendingInTransaction = 0;
+    private final long startTime;
+    private boolean committed = false;
+    private boolean closed = false;
+
+    /**
+     * Constructor.
+     *
+     * @param conn the connection to use.
+     * @param sql the insert sql with the placeholders.
+     * @param batchSize the number of rows sent to the database at once.
+     * @param commitInterval the number of rows after which the transaction is committed.
+     * @throws Exception
+     */
+    public BulkInserter( IJGTConnection conn, String sql, int batchSize, int commitInterval ) throws Exception {
+        if (batchSize < 1 || commitInterval < batchSize) {
+            throw new IllegalArgumentException("The batch size needs to be > 0 and not larger than the commit interval.");
+        }
+        this.conn = conn;
+        this.batchSize = batchSize;
+        this.commitInterval = commitInterval;
+
+        previousAutoCommit = conn.getAutoCommit();
+        if (!previousAutoCommit) {
+            // pragmas can't be changed inside a transaction
+            conn.commit();
+            conn.setAutoCommit(true);
+        }
+        previousJournalMode = getPragma("journal_mode");
+        previousSynchronous = getPragma("synchronous");
+        setPragma("journal_mode", "MEMORY");
+        setPragma("synchronous", "OFF");
+        conn.setAutoCommit(false);
+
+        pStmt = conn.prepareStatement(sql);
+        startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the prepared statement to set the values of the next row on.
+     */
+    public IJGTPreparedStatement getStatement() {
+        return pStmt;
+    }
+
+    /**
+     * Add the row currently set on the statement.
+     *
+     * @throws Exception
+     */
+    public void addBatch() throws Exception {
+        if (committed) {
+            throw new IllegalStateException("The inserter has already been committed.");
+        }
+        pStmt.addBatch();
+        count++;
+        pendingInBatch++;
+        pendingInTransaction++;
+        if (pendingInBatch >= batchSize) {
+            flush();
+        }
+        if (pendingInTransaction >= commitInterval) {
+            conn.commit();
+            pendingInTransaction = 0;
+        }
+    }
+
+    /**
+     * @return the number of rows added so far.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the number of rows added per second since the inserter was opened.
+     */
+    public double getRowsPerSecond() {
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        return count * 1000.0 / elapsed;
+    }
+
+    private void flush() throws Exception {
+        if (pendingInBatch > 0) {
+            pStmt.executeBatch();
+            pendingInBatch = 0;
+        }
+    }
+
+    private String getPragma( String name ) throws Exception {
+        try (IJGTStatement stmt = conn.createStatement(); IJGTResultSet rs = stmt.executeQuery("PRAGMA " + name)) {
+            if (rs.next()) {
+                return rs.getString(1);
+            }
+            return null;
+        }
+    }
+
+    private void setPragma( String name, String value ) throws Exception {
+        if (value == null) {
+            return;
+        }
+        try (IJGTStatement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA " + name + "=" + value);
+        }
+    }
+
+    /**
+     * Send the pending rows and commit them.
+     *
+     * <p>No more rows can be added afterwards.</p>
+     *
+     * @throws Exception
+     */
+    public void commit() throws Exception {
+        if (committed) {
+            return;
+        }
+        flush();
+        conn.commit();
+        pendingInTransaction = 0;
+        committed = true;
+    }
+
+    /**
+     * Roll back the rows that have not been committed and restore the previous
+     * connection settings.
+     */
+    @Override
+    public void close() throws Exception {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (!committed) {
+                conn.rollback();
+            }
+        } finally {
+            pStmt.close();
+            conn.setAutoCommit(true);
+            setPragma("synchronous", previousSynchronous);
+            setPragma("journal_mode", previousJournalMode);
+            conn.setAutoCommit(previousAutoCommit);
+        }
+    }
+}
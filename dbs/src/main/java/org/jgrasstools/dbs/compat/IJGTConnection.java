@@ -34,6 +34,8 @@ public interface IJGTConnection extends AutoCloseable {
 
     public void commit() throws Exception;
 
+    public void rollback() throws Exception;
+
     public IJGTPreparedStatement prepareStatement( String sql ) throws Exception;
 
     public IJGTPreparedStatement prepareStatement( String sql, int returnGeneratedKeys ) throws Exception;
@@ -80,6 +80,11 @@ public class GPConnection implements IJGTConnection {
         throw new RuntimeException("Function not supported: commit()");
     }
 
+    @Override
+    public void rollback() throws Exception {
+        throw new RuntimeException("Function not supported: rollback()");
+    }
+
     @Override
     public Savepoint setSavepoint() throws Exception {
         throw new RuntimeException("Function not supported: setSavepoint()");
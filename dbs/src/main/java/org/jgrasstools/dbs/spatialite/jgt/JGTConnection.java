@@ -83,6 +83,11 @@ public class JGTConnection implements IJGTConnection {
         connection.commit();
     }
 
+    @Override
+    public void rollback() throws SQLException {
+        connection.rollback();
+    }
+
     @Override
     public Savepoint setSavepoint() throws SQLException {
         return connection.setSavepoint();
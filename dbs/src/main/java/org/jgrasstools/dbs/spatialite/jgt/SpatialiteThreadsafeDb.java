@@ -73,6 +73,15 @@ public class SpatialiteThreadsafeDb extends SpatialiteDb {
         }
     }
 
+    public void createSpatialIndex( String tableName, String geomColName ) throws Exception {
+        try {
+            lockWrite("createSpatialIndex");
+            super.createSpatialIndex(tableName, geomColName);
+        } finally {
+            unlockWrite("createSpatialIndex");
+        }
+    }
+
     public void insertGeometry( String tableName, Geometry geometry, String epsg ) throws Exception {
         try {
             lockWrite("insertGeometry");
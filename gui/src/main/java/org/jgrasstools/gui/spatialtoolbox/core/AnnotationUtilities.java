@@ -38,6 +38,13 @@ public class AnnotationUtilities {
 
     private static String LANG = Locale.getDefault().getCountry().toLowerCase();
 
+    /**
+     * @return the language used for the localized annotations, as named by their methods.
+     */
+    public static String getLanguage() {
+        return LANG;
+    }
+
     /**
      * Gets the localized description of the {@link Description}.
      * 
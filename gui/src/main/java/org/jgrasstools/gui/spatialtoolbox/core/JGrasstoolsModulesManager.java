@@ -17,11 +17,14 @@
  */
 package org.jgrasstools.gui.spatialtoolbox.core;
 
+import java.io.InputStream;
 import java.lang.reflect.Field;
+import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Enumeration;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,6 +36,9 @@ import org.jgrasstools.Modules;
 import org.jgrasstools.gears.JGrassGears;
 import org.jgrasstools.gears.libs.logging.JGTLogger;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
+import org.jgrasstools.gears.libs.modules.ModulesCatalogue;
+import org.jgrasstools.gears.libs.modules.ModulesCatalogue.FieldEntry;
+import org.jgrasstools.gears.libs.modules.ModulesCatalogue.ModuleEntry;
 import org.jgrasstools.hortonmachine.HortonMachine;
 import org.jgrasstools.lesto.Lesto;
 import org.slf4j.Logger;
@@ -54,6 +60,10 @@ import oms3.annotations.Unit;
  */
 @SuppressWarnings("nls")
 public class JGrasstoolsModulesManager {
+    private static final String MODULES_PACKAGE = "org.jgrasstools.modules";
+    private static final String LESTO_PACKAGE = "org.jgrasstools.lesto";
+    private static final String GEARS_PACKAGE = "org.jgrasstools.gears";
+
     private static final Logger logger = LoggerFactory.getLogger(JGrasstoolsModulesManager.class);
 
     private static JGrasstoolsModulesManager modulesManager;
@@ -79,12 +89,151 @@ public class JGrasstoolsModulesManager {
         return modulesMap;
     }
 
+    /**
+     * Collect the modules.
+     * 
+     * <p>The {@link ModulesCatalogue}s of the modules jars are used if available, in which case
+     * the module classes are loaded only when used. Else the jars are scanned.</p>
+     * 
+     * @throws Exception
+     */
     public void init() throws Exception {
+        init(true);
+    }
+
+    /**
+     * Collect the modules.
+     * 
+     * @param useCatalogues if <code>false</code>, the jars are scanned even if catalogues are available.
+     * @throws Exception
+     */
+    void init( boolean useCatalogues ) throws Exception {
         synchronized (modulesMap) {
             if (modulesMap.size() > 0) {
                 return;
             }
         }
+        if (!useCatalogues || !initFromCatalogues()) {
+            initFromClasses();
+        }
+
+        // sort
+        Set<Entry<String, List<ModuleDescription>>> entrySet = modulesMap.entrySet();
+        for( Entry<String, List<ModuleDescription>> entry : entrySet ) {
+            Collections.sort(entry.getValue(), new ModuleDescription.ModuleDescriptionNameComparator());
+        }
+    }
+
+    private boolean initFromCatalogues() throws Exception {
+        List<ModuleEntry> entries = new ArrayList<ModuleEntry>();
+        ClassLoader classLoader = JGrasstoolsModulesManager.class.getClassLoader();
+        Enumeration<URL> cataloguesUrls = classLoader.getResources(ModulesCatalogue.CATALOGUE_PATH);
+        while( cataloguesUrls.hasMoreElements() ) {
+            URL catalogueUrl = cataloguesUrls.nextElement();
+            logger.debug("Reading modules catalogue: " + catalogueUrl);
+            try (InputStream inputStream = catalogueUrl.openStream()) {
+                entries.addAll(ModulesCatalogue.read(inputStream));
+            }
+        }
+
+        // same selection and precedence as the scan of the jars
+        LinkedHashMap<String, ModuleEntry> moduleNames2Entries = new LinkedHashMap<String, ModuleEntry>();
+        String[] packages = {MODULES_PACKAGE, LESTO_PACKAGE, GEARS_PACKAGE};
+        for( String modulesPackage : packages ) {
+            boolean found = false;
+            for( ModuleEntry entry : entries ) {
+                if (!entry.className.startsWith(modulesPackage)) {
+                    continue;
+                }
+                found = true;
+                String name = entry.getSimpleName();
+                if (!modulesPackage.equals(MODULES_PACKAGE) && name.startsWith("Oms")) {
+                    continue;
+                }
+                moduleNames2Entries.put(name, entry);
+            }
+            if (!found) {
+                logger.debug("No modules catalogue for " + modulesPackage + ", scanning the jars.");
+                return false;
+            }
+        }
+
+        for( ModuleEntry entry : moduleNames2Entries.values() ) {
+            if (entry.uiHint != null && entry.uiHint.contains(JGTConstants.HIDE_UI_HINT)) {
+                continue;
+            }
+            String categoryStr = JGTConstants.OTHER;
+            if (entry.label != null) {
+                categoryStr = entry.label;
+            }
+            String descrStr = entry.description;
+
+            ModuleDescription module = new ModuleDescription(entry.className, entry.name, categoryStr, descrStr, entry.status);
+            for( FieldEntry field : entry.inputs ) {
+                if (doIgnore(field.fieldName)) {
+                    continue;
+                }
+                module.addInput(field.fieldName, field.fieldType, getFieldDescription(field), getDefaultValue(field),
+                        field.uiHint);
+            }
+            for( FieldEntry field : entry.outputs ) {
+                if (doIgnore(field.fieldName)) {
+                    continue;
+                }
+                module.addOutput(field.fieldName, field.fieldType, getFieldDescription(field), getDefaultValue(field),
+                        field.uiHint);
+            }
+            addToCategory(categoryStr, module);
+        }
+        return true;
+    }
+
+    private String getFieldDescription( FieldEntry field ) {
+        String descriptionStr = "No description available";
+        String localizedDescription = field.getDescription(AnnotationUtilities.getLanguage());
+        if (localizedDescription != null) {
+            descriptionStr = localizedDescription.length() > 0 ? localizedDescription : " - ";
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(descriptionStr);
+        if (field.unit != null) {
+            sb.append(" [");
+            sb.append(field.unit);
+            sb.append("]");
+        }
+        if (field.rangeMin != null) {
+            sb.append(" [");
+            sb.append(field.rangeMin.doubleValue());
+            sb.append(" ,");
+            sb.append(field.rangeMax.doubleValue());
+            sb.append("]");
+        }
+        return sb.toString();
+    }
+
+    private String getDefaultValue( FieldEntry field ) {
+        return field.defaultValue != null ? field.defaultValue : "";
+    }
+
+    private void addToCategory( String categoryStr, ModuleDescription module ) {
+        if (categoryStr.equals(JGTConstants.GRIDGEOMETRYREADER) || categoryStr.equals(JGTConstants.RASTERREADER)
+                || categoryStr.equals(JGTConstants.RASTERWRITER) || categoryStr.equals(JGTConstants.FEATUREREADER)
+                || categoryStr.equals(JGTConstants.FEATUREWRITER) || categoryStr.equals(JGTConstants.GENERICREADER)
+                || categoryStr.equals(JGTConstants.GENERICWRITER) || categoryStr.equals(JGTConstants.HASHMAP_READER)
+                || categoryStr.equals(JGTConstants.HASHMAP_WRITER) || categoryStr.equals(JGTConstants.LIST_READER)
+                || categoryStr.equals(JGTConstants.LIST_WRITER)) {
+            // ignore for now
+        } else {
+            List<ModuleDescription> modulesList4Category = modulesMap.get(categoryStr);
+            if (modulesList4Category == null) {
+                modulesList4Category = new ArrayList<ModuleDescription>();
+                modulesMap.put(categoryStr, modulesList4Category);
+            }
+            modulesList4Category.add(module);
+        }
+    }
+
+    private void initFromClasses() throws Exception {
         LinkedHashMap<String, Class< ? >> moduleNames2Classes = Modules.getInstance().moduleName2Class;
         // LinkedHashMap<String, List<ClassField>> moduleName2Fields =
         // Modules.getInstance().moduleName2Fields;
@@ -175,33 +324,13 @@ public class JGrasstoolsModulesManager {
                     addOutput(access, module);
                 }
 
-                if (categoryStr.equals(JGTConstants.GRIDGEOMETRYREADER) || categoryStr.equals(JGTConstants.RASTERREADER)
-                        || categoryStr.equals(JGTConstants.RASTERWRITER) || categoryStr.equals(JGTConstants.FEATUREREADER)
-                        || categoryStr.equals(JGTConstants.FEATUREWRITER) || categoryStr.equals(JGTConstants.GENERICREADER)
-                        || categoryStr.equals(JGTConstants.GENERICWRITER) || categoryStr.equals(JGTConstants.HASHMAP_READER)
-                        || categoryStr.equals(JGTConstants.HASHMAP_WRITER) || categoryStr.equals(JGTConstants.LIST_READER)
-                        || categoryStr.equals(JGTConstants.LIST_WRITER)) {
-                    // ignore for now
-                } else {
-                    List<ModuleDescription> modulesList4Category = modulesMap.get(categoryStr);
-                    if (modulesList4Category == null) {
-                        modulesList4Category = new ArrayList<ModuleDescription>();
-                        modulesMap.put(categoryStr, modulesList4Category);
-                    }
-                    modulesList4Category.add(module);
-                }
+                addToCategory(categoryStr, module);
 
             } catch (NoClassDefFoundError e) {
                 if (moduleClass != null)
                     JGTLogger.logError(this, "ERROR", e.getCause());
             }
         }
-
-        // sort
-        Set<Entry<String, List<ModuleDescription>>> entrySet = modulesMap.entrySet();
-        for( Entry<String, List<ModuleDescription>> entry : entrySet ) {
-            Collections.sort(entry.getValue(), new ModuleDescription.ModuleDescriptionNameComparator());
-        }
     }
 
     private void addInput( Access access, ModuleDescription module ) throws Exception {
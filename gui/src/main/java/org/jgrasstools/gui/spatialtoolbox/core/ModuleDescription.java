@@ -37,7 +37,7 @@ public class ModuleDescription {
         mature, experimental;
     }
 
-    private final Class< ? > moduleClass;
+    private Class< ? > moduleClass;
     private String className;
     private String scriptName;
     private String name;
@@ -62,6 +62,11 @@ public class ModuleDescription {
 
     private oms3.annotations.Status omsStatus;
 
+    /**
+     * The status value of modules created from a catalogue.
+     */
+    private Integer statusValue;
+
     /**
      * Constructor.
      * 
@@ -90,6 +95,31 @@ public class ModuleDescription {
         if (omsStatus != null) {
             statusValue = omsStatus.value();
         };
+        setStatus(statusValue);
+    }
+
+    /**
+     * Constructor for modules described by a catalogue, the class of which is loaded only when needed.
+     * 
+     * @param className the name of the class of the module.
+     * @param scriptName the value of the {@link Name} annotation or <code>null</code>.
+     * @param category a category for the module. Can be nested through the use of pipes (ex. cat|subcat)
+     * @param description a description of the module.
+     * @param omsStatus the value of the status of the module or <code>null</code>.
+     */
+    public ModuleDescription( String className, String scriptName, String category, String description, Integer omsStatus ) {
+        this.className = className;
+        this.category = category;
+        this.description = description;
+        this.statusValue = omsStatus;
+
+        name = className.substring(className.lastIndexOf('.') + 1);
+        this.scriptName = scriptName != null ? scriptName : className;
+
+        setStatus(omsStatus != null ? omsStatus : oms3.annotations.Status.DRAFT);
+    }
+
+    private void setStatus( int statusValue ) {
         switch( statusValue ) {
         case oms3.annotations.Status.CERTIFIED:
         case oms3.annotations.Status.VALIDATED:
@@ -188,7 +218,14 @@ public class ModuleDescription {
         return scriptName;
     }
     
-    public Class< ? > getModuleClass() {
+    public synchronized Class< ? > getModuleClass() {
+        if (moduleClass == null) {
+            try {
+                moduleClass = Class.forName(className);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("The module class is not available: " + className, e);
+            }
+        }
         return moduleClass;
     }
 
@@ -231,7 +268,12 @@ public class ModuleDescription {
     }
 
     public ModuleDescription makeCopy() {
-        ModuleDescription copy = new ModuleDescription(moduleClass, category, description, omsStatus);
+        ModuleDescription copy;
+        if (statusValue != null || moduleClass == null) {
+            copy = new ModuleDescription(className, scriptName, category, description, statusValue);
+        } else {
+            copy = new ModuleDescription(moduleClass, category, description, omsStatus);
+        }
 
         List<FieldData> inputsList2 = copy.getInputsList();
         for( FieldData inData : inputsList ) {
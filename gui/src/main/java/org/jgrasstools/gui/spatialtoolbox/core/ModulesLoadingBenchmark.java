@@ -0,0 +1,63 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gui.spatialtoolbox.core;
+
+import java.util.List;
+import java.util.Map.Entry;
+
+/**
+ * Startup time of the collection of the modules of the spatial toolbox.
+ *
+ * <p>Measures {@link JGrasstoolsModulesManager#init()} either from the modules catalogues
+ * or by scanning the jars. Class loading is the largest part of the startup, so every mode
+ * has to be run in a fresh JVM with the same classpath as the toolbox:</p>
+ *
+ * <pre>
+ * java -cp ... org.jgrasstools.gui.spatialtoolbox.core.ModulesLoadingBenchmark catalogue
+ * java -cp ... org.jgrasstools.gui.spatialtoolbox.core.ModulesLoadingBenchmark scan
+ * </pre>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+@SuppressWarnings("nls")
+public class ModulesLoadingBenchmark {
+
+    public static void main( String[] args ) throws Exception {
+        if (args.length != 1 || !(args[0].equals("catalogue") || args[0].equals("scan"))) {
+            System.err.println("usage: ModulesLoadingBenchmark catalogue|scan");
+            return;
+        }
+        boolean useCatalogues = args[0].equals("catalogue");
+
+        long start = System.nanoTime();
+        JGrasstoolsModulesManager modulesManager = JGrasstoolsModulesManager.getInstance();
+        modulesManager.init(useCatalogues);
+        long elapsed = System.nanoTime() - start;
+
+        int modulesCount = 0;
+        int fieldsCount = 0;
+        for( Entry<String, List<ModuleDescription>> entry : modulesManager.getModulesMap().entrySet() ) {
+            for( ModuleDescription module : entry.getValue() ) {
+                modulesCount++;
+                fieldsCount += module.getInputsList().size() + module.getOutputsList().size();
+            }
+        }
+        System.out.println(args[0] + ": " + modulesCount + " modules with " + fieldsCount + " fields collected in "
+                + elapsed / 1000000 + " ms");
+    }
+}
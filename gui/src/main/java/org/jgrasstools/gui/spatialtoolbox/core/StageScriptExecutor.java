@@ -28,6 +28,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.security.CodeSource;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -53,10 +54,19 @@ public class StageScriptExecutor {
 
     public static final String ORG_JGRASSTOOLS_MODULES = "org.jgrasstools.modules";
 
+    /**
+     * System property to have scripts run in warm worker processes by default.
+     */
+    public static final String USE_WORKERS_PROPERTY = "jgrasstools.spatialtoolbox.workers";
+
     private List<IProcessListener> listeners = new ArrayList<IProcessListener>();
 
     private String classPath;
 
+    private String workerClassPath;
+
+    private boolean useWorkers = Boolean.getBoolean(USE_WORKERS_PROPERTY);
+
     private boolean isRunning = false;
 
     private String javaExec;
@@ -137,6 +147,62 @@ public class StageScriptExecutor {
 
         String classpathJars = "\"" + cpBuilder.toString() + File.pathSeparator + ".\"";
         classPath = classpathJars;
+
+        // the workers also need the classes of the toolbox itself
+        CodeSource codeSource = StageScriptWorker.class.getProtectionDomain().getCodeSource();
+        if (codeSource != null) {
+            File toolboxClasses = new File(codeSource.getLocation().toURI());
+            workerClassPath = "\"" + cpBuilder.toString() + File.pathSeparator + toolboxClasses.getAbsolutePath()
+                    + File.pathSeparator + ".\"";
+        } else {
+            workerClassPath = classPath;
+        }
+    }
+
+    /**
+     * Run the scripts in warm worker processes of the {@link StageWorkerPool} instead
+     * of starting a new JVM every time.
+     * 
+     * <p>Defaults to the {@link #USE_WORKERS_PROPERTY} system property.</p>
+     * 
+     * @param useWorkers if <code>true</code>, workers are used.
+     */
+    public void setUseWorkers( boolean useWorkers ) {
+        this.useWorkers = useWorkers;
+    }
+
+    /**
+     * Start a worker in advance, so that the first script finds it warm.
+     * 
+     * @param ramLevel the heap size to use in megabytes.
+     * @param encoding the optional encoding.
+     * @throws Exception
+     */
+    public void prestartWorker( String ramLevel, String encoding ) throws Exception {
+        StageWorkerPool.getInstance().prestart(getWorkerCommand(ramLevel, encoding));
+    }
+
+    private List<String> getWorkerCommand( String ramLevel, String encoding ) {
+        List<String> arguments = getJvmArguments(ramLevel, encoding);
+        arguments.add("-cp");
+        arguments.add(workerClassPath);
+        arguments.add(StageScriptWorker.class.getCanonicalName());
+        return arguments;
+    }
+
+    private List<String> getJvmArguments( String ramLevel, String encoding ) {
+        List<String> arguments = new ArrayList<String>();
+        arguments.add(javaExec);
+
+        // ram usage
+        String ramExpr = "-Xmx" + ramLevel + "m";
+        arguments.add(ramExpr);
+
+        if (encoding != null && encoding.length() > 0) {
+            encoding = "-Dfile.encoding=" + encoding;
+            arguments.add(encoding);
+        }
+        return arguments;
     }
 
     /**
@@ -193,17 +259,7 @@ public class StageScriptExecutor {
         if (!omsTmp.exists())
             omsTmp.mkdirs();
 
-        List<String> arguments = new ArrayList<String>();
-        arguments.add(javaExec);
-
-        // ram usage
-        String ramExpr = "-Xmx" + ramLevel + "m";
-        arguments.add(ramExpr);
-
-        if (encoding != null && encoding.length() > 0) {
-            encoding = "-Dfile.encoding=" + encoding;
-            arguments.add(encoding);
-        }
+        List<String> arguments = getJvmArguments(ramLevel, encoding);
 
         // modules jars
         // List<String> modulesJars = StageModulesManager.getInstance().getModulesJars(true);
@@ -219,9 +275,11 @@ public class StageScriptExecutor {
         arguments.add("-cp");
         arguments.add(classPath);
         arguments.add(CLI.class.getCanonicalName());
+        String omsLogLevel = "OFF";
         if (loggerLevelGui.equals(SpatialToolboxConstants.LOGLEVEL_GUI_ON)) {
+            omsLogLevel = "FINEST";
             arguments.add("-l");
-            arguments.add("FINEST");
+            arguments.add(omsLogLevel);
         }
         arguments.add("-r");
         arguments.add(scriptFile.getAbsolutePath());
@@ -253,15 +311,23 @@ public class StageScriptExecutor {
             JGTLogger.logDebug(this, arg);
         }
 
-        ProcessBuilder processBuilder = new ProcessBuilder(arguments);
-        // work in home
-        // processBuilder.directory(homeFile);
+        List<String> command;
+        final Process process;
+        if (useWorkers) {
+            command = getWorkerCommand(ramLevel, encoding);
+            process = StageWorkerPool.getInstance().submit(command, omsLogLevel, scriptFile.getAbsolutePath());
+        } else {
+            ProcessBuilder processBuilder = new ProcessBuilder(arguments);
+            // work in home
+            // processBuilder.directory(homeFile);
 
-        // environment
-        // Map<String, String> environment = processBuilder.environment();
-        // environment.put("CLASSPATH", classPath);
+            // environment
+            // Map<String, String> environment = processBuilder.environment();
+            // environment.put("CLASSPATH", classPath);
 
-        final Process process = processBuilder.start();
+            command = processBuilder.command();
+            process = processBuilder.start();
+        }
         logBuilder.setLength(0);
 
         StringBuilder preCommentsBuilder = new StringBuilder();
@@ -275,12 +341,14 @@ public class StageScriptExecutor {
             preCommentsBuilder.append("------------------------------>8----------------------------" + nl);
             preCommentsBuilder.append("Launching command: " + nl);
             preCommentsBuilder.append("------------------" + nl);
-            List<String> command = processBuilder.command();
             for( String arg : command ) {
                 preCommentsBuilder.append(arg);
                 preCommentsBuilder.append(" ");
             }
             preCommentsBuilder.append("" + nl);
+            if (useWorkers) {
+                preCommentsBuilder.append("(the script is run by a worker process started with the above)" + nl);
+            }
             preCommentsBuilder.append("(you can run the above from command line, customizing the content)" + nl);
             preCommentsBuilder.append("----------------------------------->8---------------------------------" + nl);
             preCommentsBuilder.append("" + nl);
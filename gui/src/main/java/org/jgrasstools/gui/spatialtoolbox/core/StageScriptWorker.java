@@ -0,0 +1,125 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gui.spatialtoolbox.core;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import oms3.CLI;
+
+/**
+ * Main class of the warm worker processes used by the {@link StageWorkerPool}.
+ *
+ * <p>The worker initializes the heavy parts of the environment once and then
+ * reads commands from its standard input, one per line:</p>
+ * <pre>
+ * RUN &lt;loglevel&gt; &lt;scriptpath&gt;
+ * </pre>
+ * <p>Every script is run as {@link CLI} would do with the <code>-r</code> flag. Its
+ * output goes to the standard output and error of the worker, and at the end the
+ * {@link #END_MARKER} followed by the exit code is printed on both streams.
+ * The worker exits when its standard input is closed.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+@SuppressWarnings("nls")
+public class StageScriptWorker {
+
+    /**
+     * The command to run a script.
+     */
+    public static final String RUN_COMMAND = "RUN";
+
+    /**
+     * The line printed at the end of a script, followed by the exit code.
+     */
+    public static final String END_MARKER = "\u0000JGT_SCRIPT_END ";
+
+    private static final String[] SIM_EXTENSIONS = {".sim", ".luca", ".esp", ".fast"};
+
+    public static void main( String[] args ) throws Exception {
+        warmUp();
+
+        BufferedReader commands = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while( (line = commands.readLine()) != null ) {
+            String[] split = line.split(" ", 3);
+            if (split.length != 3 || !split[0].equals(RUN_COMMAND)) {
+                continue;
+            }
+            int exitCode = run(split[1], split[2]);
+            System.out.flush();
+            System.err.flush();
+            System.out.println(END_MARKER + exitCode);
+            System.out.flush();
+            System.err.println(END_MARKER + exitCode);
+            System.err.flush();
+        }
+    }
+
+    /**
+     * Load the script engine and the referencing factories, which are the
+     * most expensive part of the startup of a script.
+     */
+    private static void warmUp() {
+        try {
+            CLI.createSim("1", true, "OFF");
+        } catch (Throwable e) {
+            // the first script will pay for it
+        }
+        try {
+            Class< ? > crsClass = Class.forName("org.geotools.referencing.CRS");
+            crsClass.getMethod("decode", String.class).invoke(null, "EPSG:4326");
+        } catch (Throwable e) {
+            // geotools not available or not working, nothing to warm up
+        }
+    }
+
+    private static int run( String logLevel, String file ) {
+        Logger log = Logger.getLogger("oms3.sim");
+        try {
+            log.setLevel(Level.parse(logLevel));
+
+            boolean isGroovy = true;
+            for( String extension : SIM_EXTENSIONS ) {
+                if (file.endsWith(extension)) {
+                    isGroovy = false;
+                }
+            }
+            Object target = CLI.createSim(CLI.readFile(file), isGroovy, logLevel, file);
+            if (!isGroovy) {
+                CLI.invoke(target, "run");
+            }
+            return 0;
+        } catch (Throwable e) {
+            System.err.println();
+            System.err.println("ERROR");
+            System.err.println("---------------------------------------------");
+            if (log.getLevel() != Level.OFF) {
+                e.printStackTrace(System.err);
+            } else {
+                Throwable cause = e.getCause();
+                String message = cause != null ? cause.getLocalizedMessage() : e.getLocalizedMessage();
+                System.err.println(message);
+            }
+            return 1;
+        }
+    }
+}
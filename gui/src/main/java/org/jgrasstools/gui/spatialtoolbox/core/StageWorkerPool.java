@@ -0,0 +1,374 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gui.spatialtoolbox.core;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jgrasstools.gears.libs.logging.JGTLogger;
+
+/**
+ * Pool of warm {@link StageScriptWorker} processes.
+ *
+ * <p>Workers are kept per launch command, so that a script always runs in a JVM
+ * with the requested heap size and encoding. A worker runs one script at a time
+ * and goes back to the pool when the script is done. A worker that crashes or
+ * is killed is dropped, the next script then starts a fresh JVM.</p>
+ *
+ * <p>Scripts are handed out as {@link Process}es, so that they can be used
+ * exactly as the processes started for single scripts: the streams carry the
+ * output of the script only and {@link Process#destroy()} kills the worker.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+@SuppressWarnings("nls")
+public class StageWorkerPool {
+
+    private static final int MAX_IDLE_WORKERS = 2;
+
+    private static final StageWorkerPool INSTANCE = new StageWorkerPool();
+
+    private final Map<String, List<Worker>> idleWorkers = new HashMap<String, List<Worker>>();
+
+    private StageWorkerPool() {
+    }
+
+    public static StageWorkerPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start a worker in advance, so that the next script finds it warm.
+     *
+     * @param command the command that launches the worker.
+     * @throws IOException
+     */
+    public synchronized void prestart( List<String> command ) throws IOException {
+        List<Worker> workers = getIdleWorkers(command);
+        if (workers.isEmpty()) {
+            workers.add(new Worker(command));
+        }
+    }
+
+    /**
+     * Run a script in a worker.
+     *
+     * @param command the command that launches the worker, if none is available.
+     * @param logLevel the OMS log level.
+     * @param scriptPath the path of the script file.
+     * @return the process of the script.
+     * @throws IOException
+     */
+    public Process submit( List<String> command, String logLevel, String scriptPath ) throws IOException {
+        Worker worker = null;
+        synchronized (this) {
+            List<Worker> workers = getIdleWorkers(command);
+            while( !workers.isEmpty() && worker == null ) {
+                Worker idleWorker = workers.remove(workers.size() - 1);
+                if (idleWorker.isAlive()) {
+                    worker = idleWorker;
+                }
+            }
+        }
+        if (worker == null) {
+            worker = new Worker(command);
+        }
+        return worker.run(logLevel, scriptPath);
+    }
+
+    /**
+     * Kill all the idle workers.
+     */
+    public synchronized void shutdown() {
+        for( List<Worker> workers : idleWorkers.values() ) {
+            for( Worker worker : workers ) {
+                worker.kill();
+            }
+        }
+        idleWorkers.clear();
+    }
+
+    private synchronized void release( Worker worker ) {
+        List<Worker> workers = getIdleWorkers(worker.command);
+        if (worker.isAlive() && workers.size() < MAX_IDLE_WORKERS) {
+            workers.add(worker);
+        } else {
+            worker.kill();
+        }
+    }
+
+    private List<Worker> getIdleWorkers( List<String> command ) {
+        String key = command.toString();
+        List<Worker> workers = idleWorkers.get(key);
+        if (workers == null) {
+            workers = new ArrayList<Worker>();
+            idleWorkers.put(key, workers);
+        }
+        return workers;
+    }
+
+    /**
+     * A worker JVM.
+     */
+    private class Worker {
+        private final List<String> command;
+        private final Process process;
+        private final Charset charset;
+        private final BufferedWriter commandsWriter;
+        private volatile ScriptProcess currentScript;
+        private volatile boolean isAlive = true;
+
+        Worker( List<String> command ) throws IOException {
+            this.command = command;
+            JGTLogger.logDebug(this, "Starting script worker: " + command);
+            process = new ProcessBuilder(command).start();
+            charset = getCharset(command);
+            commandsWriter = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), charset));
+            startPump(process.getInputStream(), false);
+            startPump(process.getErrorStream(), true);
+        }
+
+        boolean isAlive() {
+            return isAlive;
+        }
+
+        /**
+         * The charset the worker JVM uses for its standard streams, i.e. the
+         * <code>-Dfile.encoding</code> it is started with.
+         */
+        private Charset getCharset( List<String> command ) {
+            String encodingArg = "-Dfile.encoding=";
+            for( String argument : command ) {
+                if (argument.startsWith(encodingArg)) {
+                    try {
+                        return Charset.forName(argument.substring(encodingArg.length()));
+                    } catch (Exception e) {
+                        // the worker falls back to the platform encoding
+                        break;
+                    }
+                }
+            }
+            return Charset.defaultCharset();
+        }
+
+        ScriptProcess run( String logLevel, String scriptPath ) throws IOException {
+            ScriptProcess script = new ScriptProcess(this);
+            currentScript = script;
+            try {
+                commandsWriter.write(StageScriptWorker.RUN_COMMAND + " " + logLevel + " " + scriptPath);
+                commandsWriter.newLine();
+                commandsWriter.flush();
+            } catch (IOException e) {
+                kill();
+                throw e;
+            }
+            return script;
+        }
+
+        void kill() {
+            isAlive = false;
+            process.destroy();
+        }
+
+        void scriptFinished( ScriptProcess script ) {
+            if (currentScript == script) {
+                currentScript = null;
+                release(this);
+            }
+        }
+
+        private void startPump( final InputStream stream, final boolean isError ) {
+            Thread pump = new Thread("script-worker-" + (isError ? "err" : "out")){
+                public void run() {
+                    BufferedReader br = new BufferedReader(new InputStreamReader(stream, charset));
+                    try {
+                        String line;
+                        while( (line = br.readLine()) != null ) {
+                            ScriptProcess script = currentScript;
+                            if (script == null) {
+                                // warm up output
+                                continue;
+                            }
+                            int markerIndex = line.indexOf(StageScriptWorker.END_MARKER);
+                            if (markerIndex >= 0) {
+                                // the script output might not end with a newline
+                                if (markerIndex > 0) {
+                                    script.write(isError, line.substring(0, markerIndex));
+                                }
+                                int exitCode = Integer
+                                        .parseInt(line.substring(markerIndex + StageScriptWorker.END_MARKER.length()).trim());
+                                script.streamFinished(isError, exitCode);
+                            } else {
+                                script.write(isError, line);
+                            }
+                        }
+                    } catch (Exception e) {
+                        // the worker died
+                    } finally {
+                        isAlive = false;
+                        ScriptProcess script = currentScript;
+                        if (script != null) {
+                            script.workerDied();
+                        }
+                    }
+                }
+            };
+            pump.setDaemon(true);
+            pump.start();
+        }
+    }
+
+    /**
+     * The process of a single script run by a worker.
+     */
+    private static class ScriptProcess extends Process {
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        private final Worker worker;
+        private final PipedInputStream inputStream = new PipedInputStream(BUFFER_SIZE);
+        private final PipedInputStream errorStream = new PipedInputStream(BUFFER_SIZE);
+        private final PipedOutputStream inputWriter;
+        private final PipedOutputStream errorWriter;
+        private boolean outFinished = false;
+        private boolean errFinished = false;
+        private boolean isDone = false;
+        private int exitCode = -1;
+
+        ScriptProcess( Worker worker ) throws IOException {
+            this.worker = worker;
+            inputWriter = new PipedOutputStream(inputStream);
+            errorWriter = new PipedOutputStream(errorStream);
+        }
+
+        void write( boolean isError, String line ) {
+            try {
+                OutputStream writer = isError ? errorWriter : inputWriter;
+                writer.write((line + "\n").getBytes());
+                writer.flush();
+            } catch (IOException e) {
+                // nobody is reading the output
+            }
+        }
+
+        void streamFinished( boolean isError, int code ) {
+            boolean finished;
+            synchronized (this) {
+                if (isError) {
+                    errFinished = true;
+                } else {
+                    outFinished = true;
+                }
+                finished = outFinished && errFinished;
+            }
+            if (finished) {
+                finish(code);
+                worker.scriptFinished(this);
+            }
+        }
+
+        void workerDied() {
+            int code = 1;
+            try {
+                code = worker.process.waitFor();
+            } catch (InterruptedException e) {
+                // keep the generic error code
+            }
+            finish(code);
+        }
+
+        private void finish( int code ) {
+            synchronized (this) {
+                if (isDone) {
+                    return;
+                }
+                isDone = true;
+                exitCode = code;
+                notifyAll();
+            }
+            try {
+                inputWriter.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            try {
+                errorWriter.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new OutputStream(){
+                public void write( int b ) throws IOException {
+                    // scripts don't read their input
+                }
+            };
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return inputStream;
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return errorStream;
+        }
+
+        @Override
+        public synchronized int waitFor() throws InterruptedException {
+            while( !isDone ) {
+                wait();
+            }
+            return exitCode;
+        }
+
+        @Override
+        public synchronized int exitValue() {
+            if (!isDone) {
+                throw new IllegalThreadStateException("The script is still running.");
+            }
+            return exitCode;
+        }
+
+        @Override
+        public void destroy() {
+            synchronized (this) {
+                if (isDone) {
+                    // the worker might already run another script
+                    return;
+                }
+            }
+            // a running script can't be stopped safely, the worker has to go
+            worker.kill();
+        }
+    }
+}
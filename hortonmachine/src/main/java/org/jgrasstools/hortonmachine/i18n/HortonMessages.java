@@ -126,6 +126,7 @@ public class HortonMessages {
     public static final String OMSKRIGING_pA_DESCRIPTION = "The range if the models runs with the gaussian variogram.";
     public static final String OMSKRIGING_pS_DESCRIPTION = "The sill if the models runs with the gaussian variogram.";
     public static final String OMSKRIGING_pNug_DESCRIPTION = "Is the nugget if the models runs with the gaussian variogram.";
+    public static final String OMSKRIGING_pMaxNeighbours_DESCRIPTION = "The maximum number of nearest stations used for every point (default is 0, which uses all the stations).";
     public static final String OMSKRIGING_outGrid_DESCRIPTION = "The interpolated gridded data (for mode 2 and 3.";
     public static final String OMSKRIGING_outData_DESCRIPTION = "The interpolated data (for mode 0 and 1).";
 
@@ -174,6 +175,8 @@ public class HortonMessages {
     public static final String OMSPITFILLER_AUTHORCONTACTS = "http://www.neng.usu.edu/cee/faculty/dtarb/tardem.html#programs, http://www.hydrologis.com";
     public static final String OMSPITFILLER_inElev_DESCRIPTION = "The map of digital elevation model (DEM).";
     public static final String OMSPITFILLER_outPit_DESCRIPTION = "The depitted elevation map.";
+    public static final String OMSPITFILLER_doPriorityFlood_DESCRIPTION = "Switch to use the single pass priority-flood algorithm instead of the iterative one (default is false).";
+    public static final String OMSPITFILLER_pEpsilon_DESCRIPTION = "The minimum elevation increase between filled cells, used only by the priority-flood algorithm (default is 0, which fills depressions flat).";
 
     public static final String OMSSKYVIEW_DESCRIPTION = "Calculates the skyview factor.";
     public static final String OMSSKYVIEW_DOCUMENTATION = "OmsSkyview.html";
@@ -185,6 +188,7 @@ public class HortonMessages {
     public static final String OMSSKYVIEW_AUTHORNAMES = "Daniele Andreis and Riccardo Rigon";
     public static final String OMSSKYVIEW_AUTHORCONTACTS = "http://www.ing.unitn.it/dica/hp/?user=rigon";
     public static final String OMSSKYVIEW_inElev_DESCRIPTION = "The map of the elevation.";
+    public static final String OMSSKYVIEW_doHorizons_DESCRIPTION = "Calculate the skyview factor from the terrain horizons instead of the scan of the cells facing each azimuth.";
     public static final String OMSSKYVIEW_outSky_DESCRIPTION = "The map of skyview factor.";
 
     public static final String OMSSHALSTAB_DESCRIPTION = "A version of the OmsShalstab stability model.";
@@ -931,6 +935,27 @@ public class HortonMessages {
     public static final String OMSEXTRACTNETWORK_pExp_DESCRIPTION = "OmsTca exponent for the mode with slope or topographic classes (default = 0.5).";
     public static final String OMSEXTRACTNETWORK_outNet_DESCRIPTION = "The extracted network raster.";
 
+    public static final String OMSDRAINAGEPIPELINE_DESCRIPTION = "Fills the depressions of a DEM and calculates flowdirections, total contributing areas and network in one go, keeping the intermediate maps in memory as primitive arrays.";
+    public static final String OMSDRAINAGEPIPELINE_DOCUMENTATION = "";
+    public static final String OMSDRAINAGEPIPELINE_KEYWORDS = "Network, OmsPitfiller, OmsFlowDirections, OmsTca, OmsExtractNetwork";
+    public static final String OMSDRAINAGEPIPELINE_LABEL = NETWORK;
+    public static final String OMSDRAINAGEPIPELINE_NAME = "drainagepipeline";
+    public static final int OMSDRAINAGEPIPELINE_STATUS = 5;
+    public static final String OMSDRAINAGEPIPELINE_LICENSE = "General Public License Version 3 (GPLv3)";
+    public static final String OMSDRAINAGEPIPELINE_AUTHORNAMES = "Andrea Antonello";
+    public static final String OMSDRAINAGEPIPELINE_AUTHORCONTACTS = "http://www.hydrologis.com";
+    public static final String OMSDRAINAGEPIPELINE_inElev_DESCRIPTION = "The map of digital elevation model (DEM).";
+    public static final String OMSDRAINAGEPIPELINE_pEpsilon_DESCRIPTION = "The minimum elevation increase between filled cells (default is 0, which fills depressions flat).";
+    public static final String OMSDRAINAGEPIPELINE_pThres_DESCRIPTION = "The threshold on the total contributing areas for the network.";
+    public static final String OMSDRAINAGEPIPELINE_doPit_DESCRIPTION = "Switch to produce the depitted elevation map (default is false).";
+    public static final String OMSDRAINAGEPIPELINE_doFlow_DESCRIPTION = "Switch to produce the map of flowdirections (default is false).";
+    public static final String OMSDRAINAGEPIPELINE_doTca_DESCRIPTION = "Switch to produce the map of total contributing areas (default is false).";
+    public static final String OMSDRAINAGEPIPELINE_doNet_DESCRIPTION = "Switch to produce the network raster (default is true).";
+    public static final String OMSDRAINAGEPIPELINE_outPit_DESCRIPTION = "The depitted elevation map.";
+    public static final String OMSDRAINAGEPIPELINE_outFlow_DESCRIPTION = "The map of flowdirections.";
+    public static final String OMSDRAINAGEPIPELINE_outTca_DESCRIPTION = "The map of total contributing areas.";
+    public static final String OMSDRAINAGEPIPELINE_outNet_DESCRIPTION = "The extracted network raster.";
+
     public static final String OMSVARIOGRAM_DESCRIPTION = "Experimental semivariogram algorithm.";
     public static final String OMSVARIOGRAM_DOCUMENTATION = "Experimental semivariogram";
     public static final String OMSVARIOGRAM_KEYWORDS = "Experimental semivariogram, OmsKriging, Hydrology";
@@ -1117,6 +1142,7 @@ public class HortonMessages {
     public static final String OMSENERGYINDEXCALCULATOR_pEs_DESCRIPTION = "Number of altimetric bands.";
     public static final String OMSENERGYINDEXCALCULATOR_pEi_DESCRIPTION = "Number of energetic bands.";
     public static final String OMSENERGYINDEXCALCULATOR_pDt_DESCRIPTION = "Aggregation interval of the data [h].";
+    public static final String OMSENERGYINDEXCALCULATOR_doHorizons_DESCRIPTION = "Calculate the shadows from the terrain horizons instead of the curvatures.";
     public static final String OMSENERGYINDEXCALCULATOR_outAltimetry_DESCRIPTION = "Output list of altimetric bands information.";
     public static final String OMSENERGYINDEXCALCULATOR_outEnergy_DESCRIPTION = "Output list of energetic bands information.";
     public static final String OMSENERGYINDEXCALCULATOR_outArea_DESCRIPTION = "Output list of areas of the energetic and altimetric bands.";
@@ -27,8 +27,10 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSPITFILLER_LAB
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSPITFILLER_LICENSE;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSPITFILLER_NAME;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSPITFILLER_STATUS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSPITFILLER_doPriorityFlood_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSPITFILLER_inElev_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSPITFILLER_outPit_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSPITFILLER_pEpsilon_DESCRIPTION;
 
 import java.awt.image.WritableRaster;
 import java.util.HashMap;
@@ -65,6 +67,14 @@ public class OmsPitfiller extends JGTModel {
     @In
     public GridCoverage2D inElev;
 
+    @Description(OMSPITFILLER_doPriorityFlood_DESCRIPTION)
+    @In
+    public boolean doPriorityFlood = false;
+
+    @Description(OMSPITFILLER_pEpsilon_DESCRIPTION)
+    @In
+    public double pEpsilon = 0.0;
+
     @Description(OMSPITFILLER_outPit_DESCRIPTION)
     @Out
     public GridCoverage2D outPit = null;
@@ -151,6 +161,11 @@ public class OmsPitfiller extends JGTModel {
 
         elevationIter = CoverageUtilities.getRandomIterator(inElev);
 
+        if (doPriorityFlood) {
+            outPit = priorityFlood(regionMap);
+            return;
+        }
+
         // output raster
         WritableRaster pitRaster = CoverageUtilities.createDoubleWritableRaster(nCols, nRows, null, null, null);
         pitIter = CoverageUtilities.getWritableRandomIterator(pitRaster);
@@ -193,6 +208,32 @@ public class OmsPitfiller extends JGTModel {
         outPit = CoverageUtilities.buildCoverage("pitfiller", pitRaster, regionMap, inElev.getCoordinateReferenceSystem());
     }
 
+    /**
+     * Fills the pits in one pass with the {@link PriorityFlood} algorithm.
+     * 
+     * @param regionMap the region of the input map.
+     * @return the depitted map.
+     */
+    private GridCoverage2D priorityFlood( HashMap<String, Double> regionMap ) {
+        double[] elev = new double[nCols * nRows];
+        for( int i = 0, index = 0; i < nRows; i++ ) {
+            for( int j = 0; j < nCols; j++, index++ ) {
+                elev[index] = elevationIter.getSampleDouble(j, i, 0);
+            }
+        }
+        elevationIter.done();
+
+        new PriorityFlood(elev, nCols, nRows).fill(pEpsilon, pm);
+
+        WritableRaster pitRaster = CoverageUtilities.createDoubleWritableRaster(nCols, nRows, null, null, null);
+        for( int i = 0, index = 0; i < nRows; i++ ) {
+            for( int j = 0; j < nCols; j++, index++ ) {
+                pitRaster.setSample(j, i, 0, elev[index]);
+            }
+        }
+        return CoverageUtilities.buildCoverage("pitfiller", pitRaster, regionMap, inElev.getCoordinateReferenceSystem());
+    }
+
     /**
      * Takes the elevation matrix and calculate a matrix with pits filled, using the flooding
      * algorithm.
@@ -0,0 +1,210 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.modules.demmanipulation.pitfiller;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+
+/**
+ * Depression filling by priority flood.
+ *
+ * <p>The cells on the border of the valid data (raster limits or novalues) are
+ * put in a priority queue. The lowest cell is then taken from the queue and
+ * its neighbours not yet visited are raised to at least its elevation (plus
+ * epsilon) and added to the queue. Every cell is visited once.</p>
+ *
+ * <p>See: Barnes, R., Lehman, C., Mulla, D., 2014. Priority-flood: An optimal
+ * depression-filling and watershed-labeling algorithm for digital elevation
+ * models. Computers &amp; Geosciences 62, 117–127.</p>
+ *
+ * <p>The elevations can be double or, to save memory on large rasters, float.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class PriorityFlood {
+
+    private static final int[] DCOLS = {1, 1, 0, -1, -1, -1, 0, 1};
+    private static final int[] DROWS = {0, -1, -1, -1, 0, 1, 1, 1};
+
+    private final int cols;
+    private final int rows;
+    private final double[] elev;
+    private final float[] floatElev;
+
+    private int[] heap = new int[1024];
+    private int heapSize = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param elev the elevations in row major order, novalues as NaN. The array is filled in place.
+     * @param cols the cols of the raster.
+     * @param rows the rows of the raster.
+     */
+    public PriorityFlood( double[] elev, int cols, int rows ) {
+        this.elev = elev;
+        this.floatElev = null;
+        this.cols = cols;
+        this.rows = rows;
+    }
+
+    /**
+     * Constructor for float elevations.
+     *
+     * <p>Note that an epsilon smaller than the float precision at the filled
+     * elevations leaves the depressions flat.</p>
+     *
+     * @param elev the elevations in row major order, novalues as NaN. The array is filled in place.
+     * @param cols the cols of the raster.
+     * @param rows the rows of the raster.
+     */
+    public PriorityFlood( float[] elev, int cols, int rows ) {
+        this.elev = null;
+        this.floatElev = elev;
+        this.cols = cols;
+        this.rows = rows;
+    }
+
+    /**
+     * Fill the depressions.
+     *
+     * @param epsilon the minimum elevation increase between a filled cell and the cell
+     *          it drains to. With 0 the depressions are filled flat.
+     * @param pm the progress monitor.
+     */
+    public void fill( double epsilon, IJGTProgressMonitor pm ) {
+        BitSet visited = new BitSet(cols * rows);
+
+        pm.beginTask("Collecting border cells...", rows);
+        for( int r = 0, index = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++, index++ ) {
+                if (!isNovalue(get(index)) && isBorder(c, r)) {
+                    visited.set(index);
+                    push(index);
+                }
+            }
+            pm.worked(1);
+        }
+        pm.done();
+
+        pm.beginTask("Filling depressions...", rows);
+        int processed = 0;
+        while( heapSize > 0 ) {
+            int index = pop();
+            int col = index % cols;
+            int row = index / cols;
+            double spill = get(index) + epsilon;
+            for( int k = 0; k < 8; k++ ) {
+                int c = col + DCOLS[k];
+                int r = row + DROWS[k];
+                if (c < 0 || c >= cols || r < 0 || r >= rows) {
+                    continue;
+                }
+                int next = r * cols + c;
+                if (visited.get(next) || isNovalue(get(next))) {
+                    continue;
+                }
+                visited.set(next);
+                if (get(next) < spill) {
+                    set(next, spill);
+                }
+                push(next);
+            }
+            if (++processed % cols == 0) {
+                pm.worked(1);
+            }
+        }
+        pm.done();
+    }
+
+    private boolean isBorder( int col, int row ) {
+        if (col == 0 || row == 0 || col == cols - 1 || row == rows - 1) {
+            return true;
+        }
+        for( int k = 0; k < 8; k++ ) {
+            if (isNovalue(get((row + DROWS[k]) * cols + col + DCOLS[k]))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private double get( int index ) {
+        return elev != null ? elev[index] : floatElev[index];
+    }
+
+    private void set( int index, double value ) {
+        if (elev != null) {
+            elev[index] = value;
+        } else {
+            floatElev[index] = (float) value;
+        }
+    }
+
+    /**
+     * Heap order: lower elevation first, lower index on equal elevations.
+     */
+    private boolean lower( int index1, int index2 ) {
+        double e1 = get(index1);
+        double e2 = get(index2);
+        return e1 < e2 || (e1 == e2 && index1 < index2);
+    }
+
+    private void push( int index ) {
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heap.length * 2);
+        }
+        int pos = heapSize++;
+        while( pos > 0 ) {
+            int parent = (pos - 1) >>> 1;
+            if (!lower(index, heap[parent])) {
+                break;
+            }
+            heap[pos] = heap[parent];
+            pos = parent;
+        }
+        heap[pos] = index;
+    }
+
+    private int pop() {
+        int top = heap[0];
+        int last = heap[--heapSize];
+        int pos = 0;
+        while( true ) {
+            int child = 2 * pos + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && lower(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!lower(heap[child], last)) {
+                break;
+            }
+            heap[pos] = heap[child];
+            pos = child;
+        }
+        heap[pos] = last;
+        return top;
+    }
+
+}
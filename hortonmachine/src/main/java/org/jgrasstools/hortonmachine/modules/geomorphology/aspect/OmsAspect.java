@@ -114,10 +114,10 @@ public class OmsAspect extends GridNodeMultiProcessing {
         WritableRandomIter aspectIter = RandomIterFactory.createWritable(aspectWR, null);
 
         pm.beginTask(msg.message("aspect.calculating"), rows);
-        processGridNodes(inElev, gridNode -> {
-            double aspect = calculateAspect(gridNode, radtodeg, doRound);
-            aspectIter.setSample(gridNode.col, gridNode.row, 0, aspect);
-            pm.worked(1);
+        processGridNodeRows(inElev, cursor -> {
+            double aspect = calculateAspect(cursor.elevation, cursor.getNorthElev(), cursor.getSouthElev(),
+                    cursor.getWestElev(), cursor.getEastElev(), cursor.xRes, cursor.yRes, radtodeg, doRound);
+            aspectIter.setSample(cursor.col, cursor.row, 0, aspect);
         });
         pm.done();
 
@@ -135,17 +135,30 @@ public class OmsAspect extends GridNodeMultiProcessing {
      * @return the value of aspect.
      */
     public static double calculateAspect( GridNode node, double radtodeg, boolean doRound ) {
+        return calculateAspect(node.elevation, node.getNorthElev(), node.getSouthElev(), node.getWestElev(),
+                node.getEastElev(), node.xRes, node.yRes, radtodeg, doRound);
+    }
+
+    /**
+     * Calculates the aspect from the values of a cell and of its four main neighbours.
+     * 
+     * @param centralValue the value of the cell.
+     * @param nValue the value of the northern neighbour.
+     * @param sValue the value of the southern neighbour.
+     * @param wValue the value of the western neighbour.
+     * @param eValue the value of the eastern neighbour.
+     * @param xRes the x resolution.
+     * @param yRes the y resolution.
+     * @param radtodeg radiants to degrees conversion factor.
+     * @param doRound if <code>true</code>, values are round to integer.
+     * @return the value of aspect.
+     */
+    public static double calculateAspect( double centralValue, double nValue, double sValue, double wValue, double eValue,
+            double xRes, double yRes, double radtodeg, boolean doRound ) {
         double aspect = doubleNovalue;
         // the value of the x and y derivative
         double aData = 0.0;
         double bData = 0.0;
-        double xRes = node.xRes;
-        double yRes = node.yRes;
-        double centralValue = node.elevation;
-        double nValue = node.getNorthElev();
-        double sValue = node.getSouthElev();
-        double wValue = node.getWestElev();
-        double eValue = node.getEastElev();
 
         if (!isNovalue(centralValue)) {
             boolean sIsNovalue = isNovalue(sValue);
@@ -76,7 +76,7 @@ public class OmsCurvaturesIM extends JGTModelIM {
     @Out
     public String outProf = null;
 
-    private double[] planTangProf = new double[3];
+    private ThreadLocal<double[]> planTangProfs = ThreadLocal.withInitial(() -> new double[3]);
     private double disXX;
     private double disYY;
 
@@ -106,14 +106,15 @@ public class OmsCurvaturesIM extends JGTModelIM {
     protected void processCell( int readCol, int readRow, int writeCol, int writeRow, int readCols, int readRows, int writeCols,
             int writeRows ) {
 
-        RandomIter elevIter = inRasterIterators.get(0);
+        RandomIter elevIter = getInRasterIterator(0);
+        double[] planTangProf = planTangProfs.get();
         OmsCurvatures.calculateCurvatures(elevIter, planTangProf, readCol, readRow, xRes, yRes, disXX, disYY);
         if (outPlan != null)
-            outRasters.get(0).setSample(writeCol, writeRow, 0, planTangProf[0]);
+            getOutRaster(0).setSample(writeCol, writeRow, 0, planTangProf[0]);
         if (outTang != null)
-            outRasters.get(1).setSample(writeCol, writeRow, 0, planTangProf[1]);
+            getOutRaster(1).setSample(writeCol, writeRow, 0, planTangProf[1]);
         if (outProf != null)
-            outRasters.get(2).setSample(writeCol, writeRow, 0, planTangProf[2]);
+            getOutRaster(2).setSample(writeCol, writeRow, 0, planTangProf[2]);
 
     }
 }
@@ -0,0 +1,370 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.modules.geomorphology.flow;
+
+import java.util.Arrays;
+
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+
+/**
+ * D8 flow directions on primitive arrays.
+ *
+ * <p>This is the algorithm of {@link OmsFlowDirections} (steepest descent, with flats
+ * resolved following Garbrecht and Martz, Journal of Hydrology, 1997), working on
+ * float elevations and producing byte directions, so that large DEMs can be
+ * processed without the double matrices of the module.</p>
+ *
+ * <p>Instead of a grid of pointers into the flat arrays, the flat cells are kept
+ * in a sorted array of indexes that is searched, so that the memory used by the
+ * flats resolution only depends on the number of flat cells.</p>
+ *
+ * <p>As in {@link OmsFlowDirections} the cells on the raster border and the cells
+ * touching a novalue get {@link #NOVALUE}. Pits that could not be resolved are
+ * left with {@link #NODIRECTION}.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class FlowDirectionsEngine {
+
+    /**
+     * The direction of invalid cells.
+     */
+    public static final byte NOVALUE = -1;
+
+    /**
+     * The direction of valid cells that do not drain into a neighbour.
+     */
+    public static final byte NODIRECTION = 0;
+
+    /**
+     * Flag for pits during the flats resolution.
+     */
+    private static final byte PIT = 19;
+
+    /*
+     * row and col offsets of the directions 1 to 8, starting east and counterclockwise
+     */
+    private static final int[] DROWS = {0, 0, -1, -1, -1, 0, 1, 1, 1};
+    private static final int[] DCOLS = {0, 1, 1, 0, -1, -1, -1, 0, 1};
+
+    private final float[] elev;
+    private final int cols;
+    private final int rows;
+    private final double[] fact = new double[9];
+    private final int[] offsets = new int[9];
+
+    private byte[] dir;
+    /**
+     * The indexes of the flat cells, in ascending order.
+     */
+    private int[] flatCells;
+    private byte[] dn;
+
+    /**
+     * Constructor.
+     *
+     * @param elev the depitted elevations in row major order, novalues as NaN.
+     * @param cols the cols of the raster.
+     * @param rows the rows of the raster.
+     * @param xRes the x resolution.
+     * @param yRes the y resolution.
+     */
+    public FlowDirectionsEngine( float[] elev, int cols, int rows, double xRes, double yRes ) {
+        this.elev = elev;
+        this.cols = cols;
+        this.rows = rows;
+        for( int k = 1; k <= 8; k++ ) {
+            fact[k] = 1.0 / Math.sqrt(DROWS[k] * yRes * DROWS[k] * yRes + DCOLS[k] * DCOLS[k] * xRes * xRes);
+            offsets[k] = DROWS[k] * cols + DCOLS[k];
+        }
+    }
+
+    /**
+     * Calculate the flow directions.
+     *
+     * @param pm the progress monitor.
+     * @return the directions per cell, in row major order.
+     */
+    public byte[] calculate( IJGTProgressMonitor pm ) {
+        dir = new byte[elev.length];
+
+        pm.beginTask("Setting flow directions...", rows);
+        int n = 0;
+        for( int r = 0, index = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++, index++ ) {
+                if (r == 0 || c == 0 || r == rows - 1 || c == cols - 1 || touchesNovalue(index)) {
+                    dir[index] = NOVALUE;
+                    continue;
+                }
+                setSteepest(index);
+                if (dir[index] == NODIRECTION) {
+                    n++;
+                }
+            }
+            pm.worked(1);
+        }
+        pm.done();
+
+        if (n > 0) {
+            pm.beginTask("Resolving flats...", IJGTProgressMonitor.UNKNOWN);
+            resolveFlats(n);
+            pm.done();
+        }
+        byte[] result = dir;
+        dir = null;
+        flatCells = null;
+        dn = null;
+        return result;
+    }
+
+    private boolean touchesNovalue( int index ) {
+        for( int k = 0; k <= 8; k++ ) {
+            if (Float.isNaN(elev[index + offsets[k]])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Set the direction of the steepest descent, adjacent cells first.
+     */
+    private void setSteepest( int index ) {
+        double smax = 0.0;
+        for( int k = 1; k <= 8; k += 2 ) {
+            double slope = fact[k] * (elev[index] - elev[index + offsets[k]]);
+            if (slope > smax) {
+                smax = slope;
+                dir[index] = (byte) k;
+            }
+        }
+        for( int k = 2; k <= 8; k += 2 ) {
+            double slope = fact[k] * (elev[index] - elev[index + offsets[k]]);
+            if (slope > smax) {
+                smax = slope;
+                dir[index] = (byte) k;
+            }
+        }
+    }
+
+    /**
+     * Garbrecht and Martz: the flats get secondary elevations, increasing away from
+     * the lower ground (stage 1) and decreasing away from the higher ground (stage 2),
+     * on which the directions are set. The cells still without direction are
+     * processed again on the secondary elevations of the previous iteration.
+     */
+    private void resolveFlats( int n ) {
+        flatCells = new int[n];
+        dn = new byte[n];
+        int[] s = new int[n];
+        int[] sloc = new int[n];
+        for( int index = 0, ip = 0; index < dir.length; index++ ) {
+            if (dir[index] == NODIRECTION) {
+                flatCells[ip] = index;
+                sloc[ip] = ip;
+                s[ip] = 1;
+                ip++;
+            }
+        }
+
+        int[] elev1 = null;
+        int[] elev2 = new int[n];
+        int count = n;
+        int iter = 1;
+        while( true ) {
+            incfall(count, elev1, s, iter, sloc);
+            for( int ip = 0; ip < count; ip++ ) {
+                elev2[sloc[ip]] = s[sloc[ip]];
+                s[sloc[ip]] = 0;
+            }
+            incrise(count, elev1, s, iter, sloc);
+            for( int ip = 0; ip < count; ip++ ) {
+                elev2[sloc[ip]] += s[sloc[ip]];
+            }
+
+            int nu = 0;
+            for( int ip = 0; ip < count; ip++ ) {
+                set2(sloc[ip], elev1, elev2, iter, s);
+                if (dir[flatCells[sloc[ip]]] == NODIRECTION) {
+                    nu++;
+                }
+            }
+            if (nu == 0 || (nu == count && Arrays.equals(elev1, elev2))) {
+                // done or the next iteration would be the same as this one
+                break;
+            }
+
+            iter++;
+            int[] sloc2 = new int[nu];
+            for( int ip = 0, ipp = 0; ip < count; ip++ ) {
+                int sp = sloc[ip];
+                if (dir[flatCells[sp]] == NODIRECTION) {
+                    sloc2[ipp++] = sp;
+                    s[sp] = 1;
+                } else {
+                    // out of the remaining flat on higher iterations
+                    s[sp] = -1;
+                }
+                dn[sp] = 0;
+            }
+            sloc = sloc2;
+            count = nu;
+            elev1 = elev2;
+            elev2 = new int[n];
+        }
+
+        for( int index : flatCells ) {
+            if (dir[index] == PIT) {
+                dir[index] = NODIRECTION;
+            }
+        }
+    }
+
+    /**
+     * @return the position of a cell in the flat arrays or -1.
+     */
+    private int flatPosition( int index ) {
+        int position = Arrays.binarySearch(flatCells, index);
+        return position < 0 ? -1 : position;
+    }
+
+    /**
+     * The elevation drop towards a neighbour, on the real elevations in the first
+     * iteration and on the secondary elevations of the previous iteration later on.
+     * Neighbours outside the flats always use the real elevations.
+     */
+    private double drop( int index, int neighbour, int sp, int spn, int[] elev1, int iter ) {
+        if (iter <= 1 || spn < 0) {
+            return elev[index] - elev[neighbour];
+        }
+        return elev1[sp] - elev1[spn];
+    }
+
+    /**
+     * Stage 1, drainage towards lower areas.
+     */
+    private void incfall( int n, int[] elev1, int[] s1, int iter, int[] sloc ) {
+        int st = 1;
+        int nincold = -1;
+        boolean done = false;
+        while( !done ) {
+            done = true;
+            int ninc = 0;
+            for( int ip = 0; ip < n; ip++ ) {
+                if (!drainsOrWaits(sloc[ip], elev1, s1, iter, st)) {
+                    s1[sloc[ip]]++;
+                    ninc++;
+                    done = false;
+                }
+            }
+            st++;
+            if (ninc == nincold) {
+                done = true;
+                // there are pits remaining, flag them
+                for( int ip = 0; ip < n; ip++ ) {
+                    if (!drainsOrWaits(sloc[ip], elev1, s1, iter, st)) {
+                        dir[flatCells[sloc[ip]]] = PIT;
+                    }
+                }
+            }
+            nincold = ninc;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if a neighbour at the same level or lower drains or
+     *          a neighbour in the flat is not being incremented.
+     */
+    private boolean drainsOrWaits( int sp, int[] elev1, int[] s1, int iter, int st ) {
+        int index = flatCells[sp];
+        boolean doNothing = false;
+        for( int k = 1; k <= 8; k++ ) {
+            int neighbour = index + offsets[k];
+            int spn = flatPosition(neighbour);
+            double ed = drop(index, neighbour, sp, spn, elev1, iter);
+            if (ed >= 0.0 && dir[neighbour] != NODIRECTION) {
+                doNothing = true;
+            }
+            if (spn >= 0 && s1[spn] >= 0 && s1[spn] < st && dir[neighbour] == NODIRECTION) {
+                doNothing = true;
+            }
+        }
+        return doNothing;
+    }
+
+    /**
+     * Stage 2, drainage away from higher ground. dn flags the cells still being incremented.
+     */
+    private void incrise( int n, int[] elev1, int[] s2, int iter, int[] sloc ) {
+        int nincold = 0;
+        boolean done = false;
+        while( !done ) {
+            done = true;
+            int ninc = 0;
+            for( int ip = 0; ip < n; ip++ ) {
+                int sp = sloc[ip];
+                int index = flatCells[sp];
+                for( int k = 1; k <= 8; k++ ) {
+                    int neighbour = index + offsets[k];
+                    int spn = flatPosition(neighbour);
+                    if (drop(index, neighbour, sp, spn, elev1, iter) < 0.0) {
+                        dn[sp] = 1;
+                    }
+                    if (spn >= 0 && s2[spn] > 0) {
+                        dn[sp] = 1;
+                    }
+                }
+            }
+            for( int ip = 0; ip < n; ip++ ) {
+                int sp = sloc[ip];
+                s2[sp] += dn[sp];
+                ninc += dn[sp];
+                if (dn[sp] == 0) {
+                    // some are still not being incremented
+                    done = false;
+                }
+            }
+            if (ninc == nincold) {
+                // no new cells incremented, the flat has no higher ground around it
+                done = true;
+            }
+            nincold = ninc;
+        }
+    }
+
+    /**
+     * Set the direction on the secondary elevations. Neighbours outside the flat
+     * have a secondary elevation of 0, so they are always downwards.
+     */
+    private void set2( int sp, int[] elev1, int[] elev2, int iter, int[] s ) {
+        int index = flatCells[sp];
+        double smax = 0.0;
+        for( int k = 1; k <= 8; k++ ) {
+            int neighbour = index + offsets[k];
+            int spn = flatPosition(neighbour);
+            double slope = fact[k] * drop(index, neighbour, sp, spn, elev1, iter);
+            int ed = spn < 0 || s[spn] < 0 ? 0 : elev2[spn];
+            double slope2 = fact[k] * (elev2[sp] - ed);
+            if (slope2 > smax && slope >= 0.0) {
+                smax = slope2;
+                dir[index] = (byte) k;
+            }
+        }
+    }
+
+}
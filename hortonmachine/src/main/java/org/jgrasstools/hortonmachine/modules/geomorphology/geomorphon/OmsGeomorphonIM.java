@@ -97,10 +97,10 @@ public class OmsGeomorphonIM extends JGTModelIM {
     protected void processCell( int readCol, int readRow, int writeCol, int writeRow, int readCols, int readRows, int writeCols,
             int writeRows ) {
         try {
-            RandomIter elevIter = inRasterIterators.get(0);
-            double classification = OmsGeomorphon.calculateGeomorphon(elevIter, readGridGeometry, pRadius, pThreshold,
+            RandomIter elevIter = getInRasterIterator(0);
+            double classification = OmsGeomorphon.calculateGeomorphon(elevIter, getReadGridGeometry(), pRadius, pThreshold,
                     diagonalDelta, readCol, readRow);
-            WritableRandomIter outDataIter = outRasters.get(0);
+            WritableRandomIter outDataIter = getOutRaster(0);
             outDataIter.setSample(writeCol, writeRow, 0, classification);
         } catch (TransformException e) {
             e.printStackTrace();
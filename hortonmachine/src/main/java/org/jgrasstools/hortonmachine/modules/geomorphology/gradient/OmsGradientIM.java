@@ -101,7 +101,7 @@ public class OmsGradientIM extends JGTModelIM {
     @Override
     protected void processCell( int readCol, int readRow, int writeCol, int writeRow, int readCols, int readRows, int writeCols,
             int writeRows ) {
-        RandomIter elevIter = inRasterIterators.get(0);
+        RandomIter elevIter = getInRasterIterator(0);
         double gradient;
         switch( pMode ) {
         case 1:
@@ -114,7 +114,7 @@ public class OmsGradientIM extends JGTModelIM {
             gradient = OmsGradient.doGradientDiffOnCell(elevIter, readCol, readRow, xRes, yRes, doDegrees);
             break;
         }
-        WritableRandomIter outDataIter = outRasters.get(0);
+        WritableRandomIter outDataIter = getOutRaster(0);
         outDataIter.setSample(writeCol, writeRow, 0, gradient);
     }
 
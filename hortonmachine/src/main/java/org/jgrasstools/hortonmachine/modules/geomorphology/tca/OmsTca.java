@@ -18,7 +18,6 @@
 package org.jgrasstools.hortonmachine.modules.geomorphology.tca;
 
 import static org.jgrasstools.gears.libs.modules.JGTConstants.doubleNovalue;
-import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSTCA_AUTHORCONTACTS;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSTCA_AUTHORNAMES;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSTCA_DESCRIPTION;
@@ -34,10 +33,11 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSTCA_outTca_DE
 
 import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
+import java.text.MessageFormat;
+import java.util.List;
 
 import javax.media.jai.iterator.RandomIter;
 import javax.media.jai.iterator.RandomIterFactory;
-import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -51,12 +51,23 @@ import oms3.annotations.Name;
 import oms3.annotations.Out;
 import oms3.annotations.Status;
 
+import org.geotools.coverage.grid.GridCoordinates2D;
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridGeometry2D;
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.jgrasstools.gears.libs.modules.FlowNode;
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.utils.RegionMap;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
+import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.geometry.DirectPosition;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
 
 @Description(OMSTCA_DESCRIPTION)
 @Documentation(OMSTCA_DOCUMENTATION)
@@ -94,40 +105,47 @@ public class OmsTca extends JGTModel {
         WritableRaster tcaWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, doubleNovalue);
 
         RandomIter flowIter = RandomIterFactory.create(flowRI, null);
-        WritableRandomIter tcaIter = RandomIterFactory.createWritable(tcaWR, null);
-
-        pm.beginTask("Calculating tca...", rows); //$NON-NLS-1$
-        for( int r = 0; r < rows; r++ ) {
-            for( int c = 0; c < cols; c++ ) {
-                FlowNode flowNode = new FlowNode(flowIter, cols, rows, c, r);
-                if (flowNode.isSource()) {
-                    double previousTcaValue = 0.0;
-                    while( flowNode != null && flowNode.isValid() ) {
-                        int col = flowNode.col;
-                        int row = flowNode.row;
-                        double tmpTca = tcaIter.getSampleDouble(col, row, 0);
-                        double newTcaValue;
-                        /*
-                         * cumulate only if first time passing, else
-                         * just propagate 
-                         */
-                        if (isNovalue(tmpTca)) {
-                            tmpTca = 1.0;
-                            newTcaValue = tmpTca + previousTcaValue;
-                            previousTcaValue = newTcaValue;
-                        } else {
-                            newTcaValue = tmpTca + previousTcaValue;
-                        }
-                        tcaIter.setSample(col, row, 0, newTcaValue);
-                        flowNode = flowNode.goDownstream();
-                    }
+        TcaEngine tcaEngine = new TcaEngine(flowIter, cols, rows);
+        flowIter.done();
+
+        int[] tca = tcaEngine.calculate(pm);
+        for( int r = 0, index = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++, index++ ) {
+                if (tca[index] > 0) {
+                    tcaWR.setSample(c, r, 0, tca[index]);
                 }
             }
-            pm.worked(1);
         }
-        pm.done();
-        flowIter.done();
-        tcaIter.done();
+
+        outLoop = new DefaultFeatureCollection();
+        List<List<int[]>> loops = tcaEngine.getLoops();
+        if (loops.size() > 0) {
+            SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
+            b.setName("loop");
+            b.setCRS(inFlow.getCoordinateReferenceSystem());
+            b.add("the_geom", LineString.class);
+            SimpleFeatureType loopFT = b.buildFeatureType();
+
+            GridGeometry2D gridGeometry = inFlow.getGridGeometry();
+            GeometryFactory gf = GeometryUtilities.gf();
+            for( List<int[]> loop : loops ) {
+                Coordinate[] coordinates = new Coordinate[loop.size()];
+                for( int i = 0; i < coordinates.length; i++ ) {
+                    int[] colRow = loop.get(i);
+                    DirectPosition world = gridGeometry.gridToWorld(new GridCoordinates2D(colRow[0], colRow[1]));
+                    double[] coord = world.getCoordinate();
+                    coordinates[i] = new Coordinate(coord[0], coord[1]);
+                }
+                SimpleFeatureBuilder builder = new SimpleFeatureBuilder(loopFT);
+                builder.addAll(new Object[]{gf.createLineString(coordinates)});
+                ((DefaultFeatureCollection) outLoop).add(builder.buildFeature(null));
+
+                int[] first = loop.get(0);
+                pm.errorMessage(MessageFormat.format(
+                        "The flowdirections contain a loop, the cells in and downstream of it have no tca. col = {0} row = {1}",
+                        first[0], first[1]));
+            }
+        }
 
         outTca = CoverageUtilities.buildCoverage("tca", tcaWR, regionMap, inFlow.getCoordinateReferenceSystem());
     }
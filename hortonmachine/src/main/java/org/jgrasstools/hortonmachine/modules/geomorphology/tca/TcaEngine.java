@@ -0,0 +1,228 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.modules.geomorphology.tca;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.media.jai.iterator.RandomIter;
+
+import org.jgrasstools.gears.libs.modules.Direction;
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+
+/**
+ * Total contributing area calculation in topological order.
+ *
+ * <p>The number of cells draining into every cell (in-degree) is counted from
+ * the flow directions. Then, starting from the sources, every cell is added to
+ * its downstream cell, and the walk continues downstream only once all the
+ * cells draining into the next cell have been added (Kahn's algorithm without
+ * an explicit queue). Every cell is visited exactly once.</p>
+ *
+ * <p>Cells that are part of a flow loop, or that are downstream of one, never
+ * reach an in-degree of zero and are left without tca. The loops are available
+ * through {@link #getLoops()}.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TcaEngine {
+
+    private static final byte NOVALUE = -1;
+    private static final byte NODIRECTION = 0;
+
+    private final int cols;
+    private final int rows;
+    /**
+     * The flow direction per cell, {@link #NOVALUE} for invalid cells and
+     * {@link #NODIRECTION} for valid cells that do not drain into a neighbour.
+     */
+    private final byte[] flow;
+
+    private List<List<int[]>> loops = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param flowIter the iterator over the flow directions.
+     * @param cols the cols of the raster.
+     * @param rows the rows of the raster.
+     */
+    public TcaEngine( RandomIter flowIter, int cols, int rows ) {
+        this.cols = cols;
+        this.rows = rows;
+        flow = new byte[cols * rows];
+        int index = 0;
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                double value = flowIter.getSampleDouble(c, r, 0);
+                if (isNovalue(value)) {
+                    flow[index] = NOVALUE;
+                } else {
+                    Direction direction = Direction.forFlow((int) value);
+                    flow[index] = direction == null ? NODIRECTION : (byte) direction.getFlow();
+                }
+                index++;
+            }
+        }
+    }
+
+    /**
+     * Constructor on flow directions already in memory.
+     *
+     * @param flow the flow directions in row major order, -1 for novalues and 0 for
+     *          cells that do not drain into a neighbour. The array is used as is, not copied.
+     * @param cols the cols of the raster.
+     * @param rows the rows of the raster.
+     */
+    public TcaEngine( byte[] flow, int cols, int rows ) {
+        if (flow.length != cols * rows) {
+            throw new IllegalArgumentException("The flow directions don't match the grid size.");
+        }
+        this.cols = cols;
+        this.rows = rows;
+        this.flow = flow;
+    }
+
+    /**
+     * Calculate the tca.
+     *
+     * @param pm the progress monitor.
+     * @return the tca per cell, in row major order. Cells without tca have a value of 0.
+     */
+    public int[] calculate( IJGTProgressMonitor pm ) {
+        int[] tca = new int[flow.length];
+        byte[] inDegree = new byte[flow.length];
+
+        pm.beginTask("Counting entering cells...", rows);
+        for( int r = 0, index = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++, index++ ) {
+                int next = downstream(index, c, r);
+                if (next >= 0) {
+                    inDegree[next]++;
+                }
+            }
+            pm.worked(1);
+        }
+        pm.done();
+
+        pm.beginTask("Calculating tca...", rows); //$NON-NLS-1$
+        for( int r = 0, index = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++, index++ ) {
+                if (flow[index] == NOVALUE || inDegree[index] != 0) {
+                    continue;
+                }
+                // a source, walk down as long as all the upstream cells are done
+                int current = index;
+                while( true ) {
+                    tca[current]++;
+                    // mark as done
+                    inDegree[current] = NOVALUE;
+
+                    int next = downstream(current, current % cols, current / cols);
+                    if (next < 0) {
+                        break;
+                    }
+                    tca[next] += tca[current];
+                    if (--inDegree[next] > 0) {
+                        break;
+                    }
+                    current = next;
+                }
+            }
+            pm.worked(1);
+        }
+        pm.done();
+
+        collectLoops(inDegree, tca);
+        return tca;
+    }
+
+    /**
+     * @return the loops found by the last {@link #calculate(IJGTProgressMonitor)},
+     *          each as list of [col, row] positions.
+     */
+    public List<List<int[]>> getLoops() {
+        return loops;
+    }
+
+    /**
+     * Find the loops among the cells that were not reached and reset their tca.
+     */
+    private void collectLoops( byte[] inDegree, int[] tca ) {
+        loops = new ArrayList<>();
+        for( int index = 0; index < flow.length; index++ ) {
+            if (flow[index] == NOVALUE || inDegree[index] <= 0) {
+                continue;
+            }
+            // follow downstream marking the path, until a done cell or the path itself is hit
+            int current = index;
+            while( current >= 0 && inDegree[current] > 0 ) {
+                inDegree[current] = 0;
+                current = downstream(current, current % cols, current / cols);
+            }
+            if (current >= 0 && inDegree[current] == 0) {
+                // hit the current path, current is on the loop
+                List<int[]> loop = new ArrayList<>();
+                int loopCell = current;
+                do {
+                    loop.add(new int[]{loopCell % cols, loopCell / cols});
+                    inDegree[loopCell] = NOVALUE;
+                    loopCell = downstream(loopCell, loopCell % cols, loopCell / cols);
+                } while( loopCell != current );
+                loop.add(new int[]{current % cols, current / cols});
+                loops.add(loop);
+            }
+            // the remaining part of the path is done
+            current = index;
+            while( current >= 0 && inDegree[current] == 0 ) {
+                inDegree[current] = NOVALUE;
+                tca[current] = 0;
+                current = downstream(current, current % cols, current / cols);
+            }
+        }
+        for( List<int[]> loop : loops ) {
+            for( int[] colRow : loop ) {
+                tca[colRow[1] * cols + colRow[0]] = 0;
+            }
+        }
+    }
+
+    /**
+     * @return the index of the valid downstream cell or -1.
+     */
+    private int downstream( int index, int col, int row ) {
+        byte direction = flow[index];
+        if (direction <= NODIRECTION) {
+            return -1;
+        }
+        Direction dir = Direction.forFlow(direction);
+        int nextCol = col + dir.col;
+        int nextRow = row + dir.row;
+        if (nextCol < 0 || nextCol >= cols || nextRow < 0 || nextRow >= rows) {
+            return -1;
+        }
+        int next = nextRow * cols + nextCol;
+        if (flow[next] == NOVALUE) {
+            return -1;
+        }
+        return next;
+    }
+
+}
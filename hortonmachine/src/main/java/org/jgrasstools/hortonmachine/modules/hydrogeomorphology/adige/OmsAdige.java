@@ -56,8 +56,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.Set;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -251,6 +249,7 @@ public class OmsAdige extends JGTModel {
 
     private HashMap<Integer, Integer> basinid2Index;
     private HashMap<Integer, Integer> index2Basinid;
+    private Integer[] index2BasinidArray;
 
     private int hillsSlopeNum;
     private int outletHillslopeId = -1;
@@ -317,6 +316,7 @@ public class OmsAdige extends JGTModel {
             pfaff2Index = new HashMap<String, Integer>();
             basinid2Index = new HashMap<Integer, Integer>();
             index2Basinid = new HashMap<Integer, Integer>();
+            index2BasinidArray = new Integer[orderedHillslopes.size()];
             pm.beginTask("Analaysing hillslopes and calculating distribution curves...", orderedHillslopes.size());
             for( int i = 0; i < orderedHillslopes.size(); i++ ) {
                 IHillSlope hillSlope = orderedHillslopes.get(i);
@@ -325,6 +325,7 @@ public class OmsAdige extends JGTModel {
                 int hillslopeId = hillSlope.getHillslopeId();
                 basinid2Index.put(hillslopeId, i);
                 index2Basinid.put(i, hillslopeId);
+                index2BasinidArray[i] = hillslopeId;
                 pfaff2Index.put(pfafstetterNumber.toString(), i);
                 // the distributor
                 pm.worked(1);
@@ -390,7 +391,9 @@ public class OmsAdige extends JGTModel {
              * The only thing that changes, is that after the rainEndDate, the rain intensity is
              * set to 0.
              */
-            rainArray = new double[netPfaffsList.size()];
+            if (rainArray == null) {
+                rainArray = new double[netPfaffsList.size()];
+            }
             if (currentTimstamp.isBefore(rainEndTimestamp)) {
                 Arrays.fill(rainArray, pRainintensity);
             } else {
@@ -400,8 +403,13 @@ public class OmsAdige extends JGTModel {
         } else {
             // read rainfall from input link scalar set and transform into a rainfall intensity
             // [mm/h]
-            rainArray = new double[hillsSlopeNum];
-            etpArray = new double[hillsSlopeNum];
+            if (rainArray == null) {
+                rainArray = new double[hillsSlopeNum];
+                etpArray = new double[hillsSlopeNum];
+            } else {
+                Arrays.fill(rainArray, 0);
+                Arrays.fill(etpArray, 0);
+            }
             setDataArray(inRain, rainArray);
 
             if (inEtp != null) {
@@ -528,12 +536,10 @@ public class OmsAdige extends JGTModel {
     }
 
     private void setDataArray( HashMap<Integer, double[]> dataMap, double[] endArray ) {
-        Set<Entry<Integer, double[]>> entries = dataMap.entrySet();
-        for( Entry<Integer, double[]> entry : entries ) {
-            Integer id = entry.getKey();
-            double[] value = entry.getValue();
-            Integer index = basinid2Index.get(id);
-            if (index == null) {
+        // walk the hillslopes, the data maps usually hold more ids than hillslopes
+        for( int index = 0; index < index2BasinidArray.length; index++ ) {
+            double[] value = dataMap.get(index2BasinidArray[index]);
+            if (value == null) {
                 continue;
             }
             if (isNovalue(value[0])) {
@@ -19,6 +19,7 @@
 package org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.duffy;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,6 +27,8 @@ import java.util.Set;
 import java.util.Map.Entry;
 
 import org.jgrasstools.gears.io.adige.AdigeBoundaryCondition;
+import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
+import org.jgrasstools.gears.libs.modules.multiprocessing.ExecutionPlanner;
 import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.OmsAdige;
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.IAdigeEngine;
@@ -56,6 +59,13 @@ public class DuffyAdigeEngine implements IAdigeEngine {
     private final int tTimestep;
     private final DateTime endTimestamp;
 
+    /*
+     * the Pfafstetter sub-basins by wave, if the network is partitioned.
+     */
+    private List<List<DuffySubbasin>> subbasinWaves;
+    private double[] solutionA;
+    private double[] solutionB;
+
     /**
      * Create the Duffy engine.
      * 
@@ -100,6 +110,19 @@ public class DuffyAdigeEngine implements IAdigeEngine {
 
         hillsSlopeNum = orderedHillslopes.size();
 
+        if (inDuffyInput.pPartitionlevel > 0) {
+            List<DuffySubbasin> subbasins = DuffySubbasin.partition(orderedHillslopes, pfaff2Index,
+                    inDuffyInput.pPartitionlevel, inDuffyInput.pRouting, pm, doLog);
+            subbasinWaves = new ArrayList<List<DuffySubbasin>>();
+            for( DuffySubbasin subbasin : subbasins ) {
+                if (subbasin.getWave() == subbasinWaves.size()) {
+                    subbasinWaves.add(new ArrayList<DuffySubbasin>());
+                }
+                subbasinWaves.get(subbasin.getWave()).add(subbasin);
+            }
+            pm.message("Solving " + subbasins.size() + " Pfafstetter sub-basins in " + subbasinWaves.size() + " waves.");
+        }
+
         createDistributors();
 
         /*
@@ -155,17 +178,37 @@ public class DuffyAdigeEngine implements IAdigeEngine {
 
     public void addDischargeContributor( IDischargeContributor dischargeContributor ) {
         duffyEvaluator.addDischargeContributor(dischargeContributor);
+        if (subbasinWaves != null) {
+            for( List<DuffySubbasin> wave : subbasinWaves ) {
+                for( DuffySubbasin subbasin : wave ) {
+                    subbasin.getDuffyModel().addDischargeContributor(dischargeContributor);
+                }
+            }
+        }
     }
 
     public void addDischargeDistributor( HashMap<Integer, ADischargeDistributor> hillslopeId2DischargeDistributor ) {
         duffyEvaluator.addDischargeDistributor(hillslopeId2DischargeDistributor);
+        if (subbasinWaves != null) {
+            for( List<DuffySubbasin> wave : subbasinWaves ) {
+                for( DuffySubbasin subbasin : wave ) {
+                    subbasin.getDuffyModel().addDischargeDistributor(hillslopeId2DischargeDistributor);
+                }
+            }
+        }
     }
 
     public double[] solve( DateTime currentTimstamp, int modelTimestepInMinutes, double internalTimestepInMinutes,
             double[] previousSolution, double[] rainArray, double[] etpArray ) throws IOException {
-        rainRunoffRaining.solve(currentTimstamp, modelTimestepInMinutes, internalTimestepInMinutes, previousSolution, rainArray,
-                etpArray);
-        double[] finalCond = rainRunoffRaining.getFinalCond();
+        double[] finalCond;
+        if (subbasinWaves != null) {
+            finalCond = solveSubbasins(currentTimstamp, modelTimestepInMinutes, internalTimestepInMinutes, previousSolution,
+                    rainArray, etpArray);
+        } else {
+            rainRunoffRaining.solve(currentTimstamp, modelTimestepInMinutes, internalTimestepInMinutes, previousSolution,
+                    rainArray, etpArray);
+            finalCond = rainRunoffRaining.getFinalCond();
+        }
 
         if (inDuffyInput.doBoundary)
             inDuffyInput.outFinalconditions = new HashMap<Integer, AdigeBoundaryCondition>();
@@ -200,6 +243,44 @@ public class DuffyAdigeEngine implements IAdigeEngine {
         return finalCond;
     }
 
+    /**
+     * Solves the sub-basins wave by wave, the sub-basins of a wave concurrently.
+     * 
+     * @return the solution of the whole network.
+     */
+    private double[] solveSubbasins( final DateTime currentTimstamp, final int modelTimestepInMinutes,
+            final double internalTimestepInMinutes, final double[] previousSolution, final double[] rainArray,
+            final double[] etpArray ) throws IOException {
+        if (solutionA == null) {
+            solutionA = new double[previousSolution.length];
+            solutionB = new double[previousSolution.length];
+        }
+        final double[] solution = previousSolution == solutionA ? solutionB : solutionA;
+        for( List<DuffySubbasin> wave : subbasinWaves ) {
+            if (wave.size() == 1) {
+                wave.get(0).solve(currentTimstamp, modelTimestepInMinutes, internalTimestepInMinutes, previousSolution, solution,
+                        rainArray, etpArray);
+                continue;
+            }
+            ExecutionPlanner planner = ExecutionPlanner.createDefaultPlanner();
+            planner.setNumberOfTasks(wave.size());
+            for( final DuffySubbasin subbasin : wave ) {
+                planner.submit(() -> {
+                    subbasin.solve(currentTimstamp, modelTimestepInMinutes, internalTimestepInMinutes, previousSolution,
+                            solution, rainArray, etpArray);
+                });
+            }
+            try {
+                planner.join();
+            } catch (RuntimeException | IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new ModelsRuntimeException(e.getLocalizedMessage(), this);
+            }
+        }
+        return solution;
+    }
+
     public HashMap<Integer, double[]> getDischarge() {
         return outDischarge;
     }
@@ -111,6 +111,10 @@ public class DuffyInputs extends JGTModel {
     @In@Out
     public int pRouting = 3;
 
+    @Description("The number of Pfafstetter levels down to which tributaries are solved as separate sub-basins, concurrently where independent. 0 solves the network as a single system.")
+    @In@Out
+    public int pPartitionlevel = 0;
+
     @Description("Switch to write final boundary conditions.")
     @In@Out
     public boolean doBoundary = false;
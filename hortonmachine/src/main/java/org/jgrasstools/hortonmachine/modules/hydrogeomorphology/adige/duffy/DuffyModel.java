@@ -37,7 +37,6 @@ import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.IDisc
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.HillSlopeDuffy;
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.HillSlopeDuffy.Parameters;
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.IHillSlope;
-import org.jgrasstools.hortonmachine.modules.network.PfafstetterNumber;
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.utils.AdigeUtilities;
 /**
  * The duffy model.
@@ -74,6 +73,26 @@ public class DuffyModel {
     private List<IDischargeContributor> dischargeContributorList = new ArrayList<IDischargeContributor>();
     private HashMap<Integer, ADischargeDistributor> hillslopeId2DischargeDistributor;
 
+    /*
+     * the connected upstream hillslopes of every hillslope, as index in the
+     * hillslopes list or, if negative, as -(boundary index + 1).
+     */
+    private int[][] upstreamIndexes;
+    private String[][] upstreamPfafs;
+    private double[] upstreamAreas;
+    /*
+     * the upstream hillslopes that are not in the hillslopes list. Their
+     * discharges are interpolated in time between the supplied start and end
+     * values.
+     */
+    private List<IHillSlope> boundaryHillslopes = new ArrayList<IHillSlope>();
+    private double[] boundaryStartQ;
+    private double[] boundaryEndQ;
+    private double[] boundaryStartQs;
+    private double[] boundaryEndQs;
+    private double boundaryStartTimeInMinutes;
+    private double boundaryDurationInMinutes;
+
     /**
      * Duffy model function.
      * 
@@ -94,6 +113,67 @@ public class DuffyModel {
         this.pm = pm;
         this.doLog = doLog;
 
+        int linksNum = orderedHillslopes.size();
+        HashMap<String, Integer> pfaf2Index = new HashMap<String, Integer>();
+        for( int i = 0; i < linksNum; i++ ) {
+            pfaf2Index.put(orderedHillslopes.get(i).getPfafstetterNumber().toString(), i);
+        }
+        upstreamIndexes = new int[linksNum][];
+        upstreamPfafs = new String[linksNum][];
+        upstreamAreas = new double[linksNum];
+        for( int i = 0; i < linksNum; i++ ) {
+            IHillSlope hillSlope = orderedHillslopes.get(i);
+            upstreamAreas[i] = hillSlope.getUpstreamArea(null);
+            List<IHillSlope> upstreamHillSlopes = hillSlope.getConnectedUpstreamElements();
+            if (upstreamHillSlopes == null) {
+                upstreamIndexes[i] = new int[0];
+                upstreamPfafs[i] = new String[0];
+                continue;
+            }
+            upstreamIndexes[i] = new int[upstreamHillSlopes.size()];
+            upstreamPfafs[i] = new String[upstreamHillSlopes.size()];
+            for( int j = 0; j < upstreamHillSlopes.size(); j++ ) {
+                IHillSlope upstreamHillSlope = upstreamHillSlopes.get(j);
+                String pfaf = upstreamHillSlope.getPfafstetterNumber().toString();
+                Integer index = pfaf2Index.get(pfaf);
+                if (index == null) {
+                    index = -(boundaryHillslopes.size() + 1);
+                    boundaryHillslopes.add(upstreamHillSlope);
+                }
+                upstreamIndexes[i][j] = index;
+                upstreamPfafs[i][j] = pfaf;
+            }
+        }
+    }
+
+    /**
+     * @return the upstream hillslopes connected to the modeled hillslopes, 
+     *              that are not part of the model.
+     */
+    public List<IHillSlope> getBoundaryHillslopes() {
+        return boundaryHillslopes;
+    }
+
+    /**
+     * Sets the discharges of the boundary hillslopes over the next model timestep.
+     * 
+     * <p>The discharges are linearly interpolated between start and end.</p>
+     * 
+     * @param startTimeInMinutes the start of the timestep.
+     * @param durationInMinutes the length of the timestep.
+     * @param startQ the superficial discharges at the start, in the order of {@link #getBoundaryHillslopes()}.
+     * @param endQ the superficial discharges at the end.
+     * @param startQs the subsuperficial discharges at the start.
+     * @param endQs the subsuperficial discharges at the end.
+     */
+    public void setBoundaryDischarges( double startTimeInMinutes, double durationInMinutes, double[] startQ, double[] endQ,
+            double[] startQs, double[] endQs ) {
+        boundaryStartTimeInMinutes = startTimeInMinutes;
+        boundaryDurationInMinutes = durationInMinutes;
+        boundaryStartQ = startQ;
+        boundaryEndQ = endQ;
+        boundaryStartQs = startQs;
+        boundaryEndQs = endQs;
     }
 
     /**
@@ -132,6 +212,18 @@ public class DuffyModel {
      */
     public double[] eval( double currentTimeInMinutes, double[] input, double[] rainArray, double[] etpArray,
             boolean isAtFinalSubtimestep ) {
+        return eval(currentTimeInMinutes, input, rainArray, etpArray, isAtFinalSubtimestep, new double[input.length]);
+    }
+
+    /**
+     * Duffy function evaluation into a supplied array.
+     * 
+     * @param output the array to fill with the derivatives, of the same size of the input.
+     * @return the output array.
+     * @see #eval(double, double[], double[], double[], boolean)
+     */
+    public double[] eval( double currentTimeInMinutes, double[] input, double[] rainArray, double[] etpArray,
+            boolean isAtFinalSubtimestep, double[] output ) {
         // the input's length is twice the number of links... the first half
         // corresponds to links
         // discharge and the second to hillslopes storage
@@ -142,7 +234,11 @@ public class DuffyModel {
         int linksNum = orderedHillslopes.size(); // linksConectionStruct.headsArray.length;
         // double mstold = 0.0;
 
-        double[] output = new double[input.length];
+        double boundaryWeight = 0.0;
+        if (boundaryDurationInMinutes > 0) {
+            boundaryWeight = (currentTimeInMinutes - boundaryStartTimeInMinutes) / boundaryDurationInMinutes;
+            boundaryWeight = Math.min(1.0, Math.max(0.0, boundaryWeight));
+        }
 
         for( int i = linksNum - 1; i >= 0; i-- ) {
             // start from the last pieces
@@ -165,7 +261,7 @@ public class DuffyModel {
             // if (input[i + 3 * linksNum] != input[i + 3 * linksNum]) {
             // System.out.println();
             // }
-            double minsupdischarge = parameters.getqqsupmin() * currentHillslope.getUpstreamArea(null) / 1E6;
+            double minsupdischarge = parameters.getqqsupmin() * upstreamAreas[i] / 1E6;
             if (input[i] < minsupdischarge) {
                 input[i] = minsupdischarge;
                 // System.out
@@ -173,7 +269,7 @@ public class DuffyModel {
                 // "Current superficial discharge is less than the minimum value, setted to it for the basin "
                 // + currentHillslope.getHillslopeId());
             }
-            double minsubdischarge = parameters.getqqsubmin() * currentHillslope.getUpstreamArea(null) / 1E6;
+            double minsubdischarge = parameters.getqqsubmin() * upstreamAreas[i] / 1E6;
             if (input[i + linksNum] < minsubdischarge) {
                 input[i + linksNum] = minsubdischarge;
                 // System.out
@@ -299,36 +395,42 @@ public class DuffyModel {
             Q_trib = 0.0D;
             Qs_trib = 0.0D;
 
-            List<IHillSlope> connectedUpstreamHillSlopes = currentHillslope.getConnectedUpstreamElements();
-
-            if (connectedUpstreamHillSlopes != null) {
-                for( IHillSlope hillSlope : connectedUpstreamHillSlopes ) {
-                    PfafstetterNumber pNum = hillSlope.getPfafstetterNumber();
-                    int index = orderedHillslopes.indexOf(hillSlope);
-                    boolean doCalculate = true;
-                    for( IDischargeContributor dContributor : dischargeContributorList ) {
-                        Double contributedDischarge = dContributor.getDischarge(pNum.toString());
-                        contributedDischarge = dContributor.mergeWithDischarge(contributedDischarge, input[index]);
-                        if (!isNovalue(contributedDischarge)) {
-                            if (doLog && doPrint) {
-                                pm.message("----> For hillslope " + currentHillslope.getPfafstetterNumber()
-                                        + " using hydrometer/dams data in pfafstetter: " + pNum.toString() + "(meaning added "
-                                        + contributedDischarge + " instead of " + input[index] + ")");
-                            }
-                            double dischargeRatio = 0.3;// input[index] / (input[index] +
-                            // input[index + linksNum]);
-                            Q_trib = dischargeRatio * contributedDischarge; // units m^3/s
-                            Qs_trib = contributedDischarge - Q_trib; // units m^3/s
-                            doCalculate = false;
+            int[] upstreams = upstreamIndexes[i];
+            for( int u = 0; u < upstreams.length; u++ ) {
+                int index = upstreams[u];
+                double upstreamQ;
+                double upstreamQs;
+                if (index >= 0) {
+                    // at the same position we can query the input array
+                    upstreamQ = input[index];
+                    upstreamQs = input[index + linksNum];
+                } else {
+                    int b = -index - 1;
+                    upstreamQ = boundaryStartQ[b] + boundaryWeight * (boundaryEndQ[b] - boundaryStartQ[b]);
+                    upstreamQs = boundaryStartQs[b] + boundaryWeight * (boundaryEndQs[b] - boundaryStartQs[b]);
+                }
+                String pNum = upstreamPfafs[i][u];
+                boolean doCalculate = true;
+                for( IDischargeContributor dContributor : dischargeContributorList ) {
+                    Double contributedDischarge = dContributor.getDischarge(pNum);
+                    contributedDischarge = dContributor.mergeWithDischarge(contributedDischarge, upstreamQ);
+                    if (!isNovalue(contributedDischarge)) {
+                        if (doLog && doPrint) {
+                            pm.message("----> For hillslope " + currentHillslope.getPfafstetterNumber()
+                                    + " using hydrometer/dams data in pfafstetter: " + pNum + "(meaning added "
+                                    + contributedDischarge + " instead of " + upstreamQ + ")");
                         }
-                    }
-                    if (doCalculate) {
-                        // at the same position we can query the input array
-                        Q_trib += input[index]; // units m^3/s
-                        Qs_trib += input[index + linksNum]; // units m^3/s
+                        double dischargeRatio = 0.3;// input[index] / (input[index] +
+                        // input[index + linksNum]);
+                        Q_trib = dischargeRatio * contributedDischarge; // units m^3/s
+                        Qs_trib = contributedDischarge - Q_trib; // units m^3/s
+                        doCalculate = false;
                     }
                 }
-
+                if (doCalculate) {
+                    Q_trib += upstreamQ; // units m^3/s
+                    Qs_trib += upstreamQs; // units m^3/s
+                }
             }
 
             double K_Q = AdigeUtilities.doRouting(input[i], currentHillslope, routingType);
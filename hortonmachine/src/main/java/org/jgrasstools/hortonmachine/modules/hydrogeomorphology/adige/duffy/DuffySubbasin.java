@@ -0,0 +1,310 @@
+/*
+ * JGrass - Free Open Source Java GIS http://www.jgrass.org 
+ * (C) HydroloGIS - www.hydrologis.com 
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Library General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Library General Public License
+ * along with this library; if not, write to the Free Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.duffy;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
+import org.jgrasstools.gears.libs.monitor.DummyProgressMonitor;
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.IHillSlope;
+import org.jgrasstools.hortonmachine.modules.network.PfafstetterNumber;
+import org.joda.time.DateTime;
+
+/**
+ * A Pfafstetter sub-tree of the network, integrated as a system of its own.
+ * 
+ * <p>The discharges entering from the upstream sub-basins are synchronised
+ * once per model timestep: the upstream sub-basins are solved first and their
+ * discharges are interpolated linearly over the timestep. Sub-basins that do
+ * not depend on each other can be solved concurrently.</p>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @author Silvia Franceschi (www.hydrologis.com)
+ */
+public class DuffySubbasin {
+
+    private final String pfafstetterKey;
+    /* the indexes of the hillslopes in the whole network, downstream first */
+    private final int[] indexes;
+    /* the indexes in the whole network of the upstream hillslopes of other sub-basins */
+    private final int[] boundaryIndexes;
+    private final List<DuffySubbasin> upstreamSubbasins = new ArrayList<DuffySubbasin>();
+    private int wave = -1;
+
+    private final DuffyModel duffyModel;
+    private final RungeKuttaFelberg solver;
+
+    private final double[] state;
+    private final double[] rain;
+    private double[] etp;
+    private final double[] boundaryStartQ;
+    private final double[] boundaryEndQ;
+    private final double[] boundaryStartQs;
+    private final double[] boundaryEndQs;
+
+    private DuffySubbasin( String pfafstetterKey, List<IHillSlope> orderedHillslopes, int[] indexes,
+            HashMap<String, Integer> pfaff2Index, int routingType, IJGTProgressMonitor pm, boolean doLog ) {
+        this.pfafstetterKey = pfafstetterKey;
+        this.indexes = indexes;
+        List<IHillSlope> hillslopes = new ArrayList<IHillSlope>(indexes.length);
+        for( int index : indexes ) {
+            hillslopes.add(orderedHillslopes.get(index));
+        }
+
+        // only the sub-basin with the network outlet reports
+        boolean isOutlet = indexes[0] == 0;
+        IJGTProgressMonitor monitor = isOutlet ? pm : new DummyProgressMonitor();
+        duffyModel = new DuffyModel(hillslopes, routingType, monitor, doLog && isOutlet);
+        solver = new RungeKuttaFelberg(duffyModel, 1e-2, 10 / 60., monitor, doLog && isOutlet);
+        if (!isOutlet) {
+            solver.setOutletDischargeThreshold(-1);
+        }
+
+        List<IHillSlope> boundaryHillslopes = duffyModel.getBoundaryHillslopes();
+        boundaryIndexes = new int[boundaryHillslopes.size()];
+        for( int i = 0; i < boundaryIndexes.length; i++ ) {
+            Integer index = pfaff2Index.get(boundaryHillslopes.get(i).getPfafstetterNumber().toString());
+            if (index == null) {
+                throw new ModelsIllegalargumentException("The hillslope " + boundaryHillslopes.get(i).getPfafstetterNumber()
+                        + " is not part of the network.", this);
+            }
+            boundaryIndexes[i] = index;
+        }
+
+        state = new double[4 * indexes.length];
+        rain = new double[indexes.length];
+        boundaryStartQ = new double[boundaryIndexes.length];
+        boundaryEndQ = new double[boundaryIndexes.length];
+        boundaryStartQs = new double[boundaryIndexes.length];
+        boundaryEndQs = new double[boundaryIndexes.length];
+    }
+
+    /**
+     * Splits the network into Pfafstetter sub-trees.
+     * 
+     * <p>Every tributary that starts within the first <code>level</code> 
+     * Pfafstetter levels, i.e. every number prefix ending with an even 
+     * number, becomes a sub-basin. The hillslopes belong to the sub-basin 
+     * of their longest such prefix, the rest of the main stem is a sub-basin 
+     * of its own.</p>
+     * 
+     * @param orderedHillslopes the hillslopes of the network, downstream first.
+     * @param pfaff2Index the map of pfafstetter numbers to hillslope indexes.
+     * @param level the number of Pfafstetter levels to split.
+     * @param routingType the routing type of the model.
+     * @param pm the monitor.
+     * @param doLog if <code>true</code>, the sub-basin of the outlet logs.
+     * @return the sub-basins, upstream sub-basins before the downstream ones.
+     */
+    public static List<DuffySubbasin> partition( List<IHillSlope> orderedHillslopes, HashMap<String, Integer> pfaff2Index,
+            int level, int routingType, IJGTProgressMonitor pm, boolean doLog ) {
+        LinkedHashMap<String, List<Integer>> key2Indexes = new LinkedHashMap<String, List<Integer>>();
+        for( int i = 0; i < orderedHillslopes.size(); i++ ) {
+            String key = subtreeKey(orderedHillslopes.get(i).getPfafstetterNumber(), level);
+            List<Integer> keyIndexes = key2Indexes.get(key);
+            if (keyIndexes == null) {
+                keyIndexes = new ArrayList<Integer>();
+                key2Indexes.put(key, keyIndexes);
+            }
+            keyIndexes.add(i);
+        }
+
+        List<DuffySubbasin> subbasins = new ArrayList<DuffySubbasin>();
+        int[] index2Subbasin = new int[orderedHillslopes.size()];
+        for( List<Integer> keyIndexes : key2Indexes.values() ) {
+            int[] indexes = new int[keyIndexes.size()];
+            for( int i = 0; i < indexes.length; i++ ) {
+                indexes[i] = keyIndexes.get(i);
+                index2Subbasin[indexes[i]] = subbasins.size();
+            }
+            String key = subtreeKey(orderedHillslopes.get(indexes[0]).getPfafstetterNumber(), level);
+            subbasins.add(new DuffySubbasin(key, orderedHillslopes, indexes, pfaff2Index, routingType, pm, doLog));
+        }
+        for( DuffySubbasin subbasin : subbasins ) {
+            Set<DuffySubbasin> upstream = new LinkedHashSet<DuffySubbasin>();
+            for( int index : subbasin.boundaryIndexes ) {
+                upstream.add(subbasins.get(index2Subbasin[index]));
+            }
+            subbasin.upstreamSubbasins.addAll(upstream);
+        }
+        for( DuffySubbasin subbasin : subbasins ) {
+            subbasin.wave(new LinkedHashSet<DuffySubbasin>());
+        }
+        Collections.sort(subbasins, new Comparator<DuffySubbasin>(){
+            public int compare( DuffySubbasin s1, DuffySubbasin s2 ) {
+                return s1.wave - s2.wave;
+            }
+        });
+        return subbasins;
+    }
+
+    /**
+     * The longest prefix of the number, within the given level, that ends with an even number.
+     */
+    private static String subtreeKey( PfafstetterNumber pfafstetterNumber, int level ) {
+        List<Integer> ordersList = pfafstetterNumber.getOrdersList();
+        int last = -1;
+        for( int i = 0; i < Math.min(level, ordersList.size()); i++ ) {
+            if (ordersList.get(i) % 2 == 0) {
+                last = i;
+            }
+        }
+        StringBuilder key = new StringBuilder();
+        for( int i = 0; i <= last; i++ ) {
+            if (i > 0) {
+                key.append('.');
+            }
+            key.append(ordersList.get(i));
+        }
+        return key.toString();
+    }
+
+    /**
+     * The wave of a sub-basin is one more than the highest wave of its upstream sub-basins.
+     */
+    private int wave( Set<DuffySubbasin> visiting ) {
+        if (wave < 0) {
+            if (!visiting.add(this)) {
+                throw new ModelsIllegalargumentException("The Pfafstetter sub-basins " + visiting
+                        + " are connected in a loop.", this);
+            }
+            int max = -1;
+            for( DuffySubbasin upstream : upstreamSubbasins ) {
+                max = Math.max(max, upstream.wave(visiting));
+            }
+            wave = max + 1;
+            visiting.remove(this);
+        }
+        return wave;
+    }
+
+    /**
+     * @return the sub-basins that have to be solved before this one.
+     */
+    public List<DuffySubbasin> getUpstreamSubbasins() {
+        return upstreamSubbasins;
+    }
+
+    /**
+     * @return the order of solution, sub-basins of the same wave are independent.
+     */
+    public int getWave() {
+        return wave;
+    }
+
+    public int getHillslopesNum() {
+        return indexes.length;
+    }
+
+    /**
+     * @return the Pfafstetter prefix of the sub-tree, empty for the main stem.
+     */
+    String getPfafstetterKey() {
+        return pfafstetterKey;
+    }
+
+    /**
+     * @return the indexes of the hillslopes of the sub-basin in the network, downstream first.
+     */
+    int[] getIndexes() {
+        return indexes;
+    }
+
+    /**
+     * @return the indexes in the network of the upstream hillslopes that drain into the sub-basin.
+     */
+    int[] getBoundaryIndexes() {
+        return boundaryIndexes;
+    }
+
+    public DuffyModel getDuffyModel() {
+        return duffyModel;
+    }
+
+    /**
+     * Solves the sub-basin over a model timestep.
+     * 
+     * <p>The upstream sub-basins have to be solved already into the 
+     * solution.</p>
+     * 
+     * @param previousSolution the solution of the whole network at the start of the timestep.
+     * @param solution the solution of the whole network at the end of the timestep, 
+     *              this sub-basin fills its own hillslopes.
+     * @param rainArray the rain of the whole network.
+     * @param etpArray the evapotranspiration of the whole network or <code>null</code>.
+     * @throws IOException
+     */
+    public void solve( DateTime currentTimstamp, int modelTimestepInMinutes, double internalTimestepInMinutes,
+            double[] previousSolution, double[] solution, double[] rainArray, double[] etpArray ) throws IOException {
+        int hillsSlopeNum = previousSolution.length / 4;
+        int num = indexes.length;
+        for( int i = 0; i < num; i++ ) {
+            int index = indexes[i];
+            state[i] = previousSolution[index];
+            state[i + num] = previousSolution[index + hillsSlopeNum];
+            state[i + 2 * num] = previousSolution[index + 2 * hillsSlopeNum];
+            state[i + 3 * num] = previousSolution[index + 3 * hillsSlopeNum];
+            rain[i] = rainArray[index];
+        }
+        double[] localEtp = null;
+        if (etpArray != null) {
+            if (etp == null) {
+                etp = new double[num];
+            }
+            for( int i = 0; i < num; i++ ) {
+                etp[i] = etpArray[indexes[i]];
+            }
+            localEtp = etp;
+        }
+        for( int b = 0; b < boundaryIndexes.length; b++ ) {
+            int index = boundaryIndexes[b];
+            boundaryStartQ[b] = previousSolution[index];
+            boundaryEndQ[b] = solution[index];
+            boundaryStartQs[b] = previousSolution[index + hillsSlopeNum];
+            boundaryEndQs[b] = solution[index + hillsSlopeNum];
+        }
+        duffyModel.setBoundaryDischarges(currentTimstamp.getMillis() / 1000d / 60d, modelTimestepInMinutes, boundaryStartQ,
+                boundaryEndQ, boundaryStartQs, boundaryEndQs);
+
+        solver.solve(currentTimstamp, modelTimestepInMinutes, internalTimestepInMinutes, state, rain, localEtp);
+        double[] finalCond = solver.getFinalCond();
+
+        for( int i = 0; i < num; i++ ) {
+            int index = indexes[i];
+            solution[index] = finalCond[i];
+            solution[index + hillsSlopeNum] = finalCond[i + num];
+            solution[index + 2 * hillsSlopeNum] = finalCond[i + 2 * num];
+            solution[index + 3 * hillsSlopeNum] = finalCond[i + 3 * num];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return pfafstetterKey.length() == 0 ? "main stem" : pfafstetterKey;
+    }
+}
@@ -62,6 +62,14 @@ public class RungeKuttaFelberg {
 
     private boolean isAtFinalSubtimestep = true;
     private IJGTProgressMonitor outputStream;
+    private double outletDischargeThreshold = 1e-3;
+
+    /*
+     * step workspaces, the solution alternates between the two solution arrays.
+     */
+    private double[] carrier;
+    private double[] k0, k1, k2, k3, k4, k5;
+    private double[] solutionA, solutionB;
 
     /**
      * Creates new RKF
@@ -79,6 +87,15 @@ public class RungeKuttaFelberg {
         this.doLog = doLog;
     }
 
+    /**
+     * Sets the discharge in the outlet below which the integration of a timestep is stopped.
+     * 
+     * @param outletDischargeThreshold the threshold, negative to never stop. Defaults to 1e-3.
+     */
+    public void setOutletDischargeThreshold( double outletDischargeThreshold ) {
+        this.outletDischargeThreshold = outletDischargeThreshold;
+    }
+
     /**
      * Returns the value of the function described by differential equations in the next time step
      * 
@@ -94,59 +111,65 @@ public class RungeKuttaFelberg {
     private void step( double currentTimeInMinutes, double[] initialConditions, double timeStepInMinutes, boolean finalize,
             CurrentTimestepSolution currentSolution, double[] rainArray, double[] etpArray ) {
 
-        double[] carrier = new double[initialConditions.length];
+        int n = initialConditions.length;
+        if (carrier == null || carrier.length != n) {
+            carrier = new double[n];
+            k0 = new double[n];
+            k1 = new double[n];
+            k2 = new double[n];
+            k3 = new double[n];
+            k4 = new double[n];
+            k5 = new double[n];
+            solutionA = new double[n];
+            solutionB = new double[n];
+        }
+        // the solution buffer not holding the initial conditions
+        double[] newY = initialConditions == solutionA ? solutionB : solutionA;
 
-        double[] k0 = duffy.eval(currentTimeInMinutes, initialConditions, rainArray, etpArray, false);
-        for( int i = 0; i < initialConditions.length; i++ )
+        duffy.eval(currentTimeInMinutes, initialConditions, rainArray, etpArray, false, k0);
+        for( int i = 0; i < n; i++ )
             carrier[i] = Math.max(0, initialConditions[i] + timeStepInMinutes * b[1][0] * k0[i]);
 
-        double[] k1 = duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, false);
-        for( int i = 0; i < initialConditions.length; i++ )
+        duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, false, k1);
+        for( int i = 0; i < n; i++ )
             carrier[i] = Math.max(0, initialConditions[i] + timeStepInMinutes * (b[2][0] * k0[i] + b[2][1] * k1[i]));
 
-        double[] k2 = duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, false);
-        for( int i = 0; i < initialConditions.length; i++ )
+        duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, false, k2);
+        for( int i = 0; i < n; i++ )
             carrier[i] = Math.max(0, initialConditions[i] + timeStepInMinutes
                     * (b[3][0] * k0[i] + b[3][1] * k1[i] + b[3][2] * k2[i]));
 
-        double[] k3 = duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, false);
-        for( int i = 0; i < initialConditions.length; i++ )
+        duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, false, k3);
+        for( int i = 0; i < n; i++ )
             carrier[i] = Math.max(0, initialConditions[i] + timeStepInMinutes
                     * (b[4][0] * k0[i] + b[4][1] * k1[i] + b[4][2] * k2[i] + b[4][3] * k3[i]));
 
-        double[] k4 = duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, false);
-        for( int i = 0; i < initialConditions.length; i++ )
+        duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, false, k4);
+        for( int i = 0; i < n; i++ )
             carrier[i] = Math.max(0, initialConditions[i] + timeStepInMinutes
                     * (b[5][0] * k0[i] + b[5][1] * k1[i] + b[5][2] * k2[i] + b[5][3] * k3[i] + b[5][4] * k4[i]));
 
-        double[] k5 = duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, isAtFinalSubtimestep);
+        duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, isAtFinalSubtimestep, k5);
 
-        double[] newY = new double[initialConditions.length];
-        for( int i = 0; i < initialConditions.length; i++ ) {
-            newY[i] = initialConditions[i] + timeStepInMinutes
+        double delta = 0;
+        for( int i = 0; i < n; i++ ) {
+            double y = initialConditions[i] + timeStepInMinutes
                     * (c[0] * k0[i] + c[1] * k1[i] + c[2] * k2[i] + c[3] * k3[i] + c[4] * k4[i] + c[5] * k5[i]);
-            newY[i] = Math.max(0, newY[i]);
-            if (Double.isInfinite(newY[i]) || newY[i] != newY[i]) {
+            y = Math.max(0, y);
+            if (Double.isInfinite(y) || y != y) {
                 throw new ModelsIllegalargumentException("An error occurred during the integration procedure.", this);
             }
-        }
-
-        double[] newYstar = new double[initialConditions.length];
-        for( int i = 0; i < initialConditions.length; i++ ) {
-            newYstar[i] = initialConditions[i]
+            double yStar = initialConditions[i]
                     + timeStepInMinutes
                     * (cStar[0] * k0[i] + cStar[1] * k1[i] + cStar[2] * k2[i] + cStar[3] * k3[i] + cStar[4] * k4[i] + cStar[5]
                             * k5[i]);
-            newYstar[i] = Math.max(0, newYstar[i]);
-            if (Double.isInfinite(newYstar[i]) || newYstar[i] != newYstar[i]) {
+            yStar = Math.max(0, yStar);
+            if (Double.isInfinite(yStar) || yStar != yStar) {
                 throw new ModelsIllegalargumentException("An error occurred during the integration procedure.", this);
             }
-        }
-
-        double delta = 0;
-        for( int i = 0; i < initialConditions.length; i++ ) {
-            if ((newY[i] + newYstar[i]) > 0)
-                delta = Math.max(delta, Math.abs(2 * (newY[i] - newYstar[i]) / (newY[i] + newYstar[i])));
+            if ((y + yStar) > 0)
+                delta = Math.max(delta, Math.abs(2 * (y - yStar) / (y + yStar)));
+            newY[i] = y;
         }
 
         double newTimeStepInMinutes = timeStepInMinutes;
@@ -247,7 +270,7 @@ public class RungeKuttaFelberg {
                 break;
             }
 
-            if (initialConditions[0] < 1e-3) {
+            if (initialConditions[0] < outletDischargeThreshold) {
                 System.out.println("Discharge in outlet less than the threshold.");
                 break;
             }
@@ -291,7 +314,8 @@ public class RungeKuttaFelberg {
 
         isAtFinalSubtimestep = true;
         //
-        if (NumericsUtilities.dEq(currentTimeInMinutes, intervalEndTimeInMinutes) && initialConditions[0] > 1e-3) {
+        if (NumericsUtilities.dEq(currentTimeInMinutes, intervalEndTimeInMinutes)
+                && initialConditions[0] > outletDischargeThreshold) {
             step(currentTimeInMinutes, initialConditions, intervalEndTimeInMinutes - currentTimeInMinutes - 1. / 60., true,
                     currentSolution, rainArray, etpArray);
             basicTimeStepInMinutes = currentSolution.newTimeStepInMinutes;
@@ -325,6 +349,11 @@ public class RungeKuttaFelberg {
 
     }
 
+    /**
+     * @return the last solution. The array is a workspace of this solver, it is
+     *              overwritten by the next {@link #solve(DateTime, int, double, double[], double[], double[]) solve}
+     *              that does not get it as initial conditions.
+     */
     public double[] getFinalCond() {
         return finalCond;
     }
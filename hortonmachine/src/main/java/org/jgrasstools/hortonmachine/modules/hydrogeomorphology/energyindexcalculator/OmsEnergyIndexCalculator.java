@@ -35,6 +35,7 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSENERGYINDEXCA
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSENERGYINDEXCALCULATOR_LICENSE;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSENERGYINDEXCALCULATOR_NAME;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSENERGYINDEXCALCULATOR_STATUS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSENERGYINDEXCALCULATOR_doHorizons_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSENERGYINDEXCALCULATOR_inAspect_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSENERGYINDEXCALCULATOR_inBasins_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSENERGYINDEXCALCULATOR_inCurvatures_DESCRIPTION;
@@ -76,6 +77,7 @@ import org.jgrasstools.gears.io.eicalculator.EIAltimetry;
 import org.jgrasstools.gears.io.eicalculator.EIAreas;
 import org.jgrasstools.gears.io.eicalculator.EIEnergy;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
+import org.jgrasstools.gears.libs.modules.HorizonEngine;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.jgrasstools.hortonmachine.i18n.HortonMessageHandler;
@@ -124,6 +126,10 @@ public class OmsEnergyIndexCalculator extends JGTModel {
     @In
     public double pDt = -1;
 
+    @Description(OMSENERGYINDEXCALCULATOR_doHorizons_DESCRIPTION)
+    @In
+    public boolean doHorizons = false;
+
     @Description(OMSENERGYINDEXCALCULATOR_outAltimetry_DESCRIPTION)
     @Out
     public List<EIAltimetry> outAltimetry;
@@ -165,6 +171,8 @@ public class OmsEnergyIndexCalculator extends JGTModel {
 
     private RandomIter slopeImageIterator;
 
+    private HorizonEngine horizonEngine;
+
     private int rows;
 
     private int cols;
@@ -196,6 +204,9 @@ public class OmsEnergyIndexCalculator extends JGTModel {
 
         RenderedImage elevImage = inElev.getRenderedImage();
         elevImageIterator = RandomIterFactory.create(elevImage, null);
+        if (doHorizons) {
+            horizonEngine = HorizonEngine.fromImage(elevImage, dx, HorizonEngine.DEFAULT_SECTORS);
+        }
 
         RenderedImage tmpImage = inCurvatures.getRenderedImage();
         curvatureImage = CoverageUtilities
@@ -588,7 +599,15 @@ public class OmsEnergyIndexCalculator extends JGTModel {
              * Outputs: shadow: matrice ombre (1 ombra 0 sole)
              */
 
-            if (direction[0] >= 0. && direction[0] <= PI / 4.) {
+            if (horizonEngine != null) {
+                for( int r = 0; r < eibasinID.length; r++ ) {
+                    for( int c = 0; c < eibasinID[0].length; c++ ) {
+                        if (eibasinID[r][c] != NOVALUE) {
+                            outputShadow[r][c] = horizonEngine.isShadowed(c, r, direction[0], alpha[0]) ? 1 : 0;
+                        }
+                    }
+                }
+            } else if (direction[0] >= 0. && direction[0] <= PI / 4.) {
                 beta = direction[0];
                 geomorphUtilities.orizzonte1(dx, 2 * (cols + rows), beta, alpha[0], elevImageIterator, curvatureImage,
                         outputShadow);
@@ -17,10 +17,6 @@
  */
 package org.jgrasstools.hortonmachine.modules.hydrogeomorphology.insolation;
 
-import static org.jgrasstools.gears.libs.modules.ModelsEngine.calcInverseSunVector;
-import static org.jgrasstools.gears.libs.modules.ModelsEngine.calcNormalSunVector;
-import static org.jgrasstools.gears.libs.modules.ModelsEngine.calculateFactor;
-import static org.jgrasstools.gears.libs.modules.ModelsEngine.scalarProduct;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_AUTHORCONTACTS;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_AUTHORNAMES;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_DESCRIPTION;
@@ -37,7 +33,11 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_tS
 import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 
 import javax.media.jai.RasterFactory;
 import javax.media.jai.iterator.RandomIter;
@@ -57,7 +57,9 @@ import oms3.annotations.Status;
 
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.jgrasstools.gears.libs.modules.HorizonEngine;
 import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.gears.libs.modules.multiprocessing.ExecutionPlanner;
 import org.jgrasstools.gears.utils.CrsUtilities;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
@@ -114,11 +116,13 @@ public class OmsInsolation extends JGTModel {
      */
     private static final double ATM = 1013.25;
 
-    private double lambda;
-
-    private double delta;
+    /**
+     * The number of horizon sectors, one each 0.1 degrees, fine enough to keep the
+     * shadows of the direct line scan of every sun position.
+     */
+    private static final int HORIZON_SECTORS = 3600;
 
-    private double omega;
+    private double lambda;
 
     private HortonMessageHandler msg = HortonMessageHandler.getInstance();
 
@@ -167,13 +171,108 @@ public class OmsInsolation extends JGTModel {
 
         WritableRaster gradientWR = normalVector(pitWR, dx);
 
-        pm.beginTask(msg.message("insolation.calculating"), endDay - startDay);
+        /*
+         * the cell values that don't change with the sun position
+         */
+        final int cellsNum = width * height;
+        final double[] elevations = new double[cellsNum];
+        final double[] pressures = new double[cellsNum];
+        final double[] wPrecs = new double[cellsNum];
+        // the three components of the normal of every cell, one after the other
+        final double[] normals = new double[3 * cellsNum];
+        double[] normal = new double[3];
+        RandomIter pitIter = RandomIterFactory.create(pitWR, null);
+        RandomIter gradientIter = RandomIterFactory.create(gradientWR, null);
+        for( int j = 0; j < height; j++ ) {
+            for( int i = 0; i < width; i++ ) {
+                int index = j * width + i;
+                double z = pitIter.getSampleDouble(i, j, 0);
+                elevations[index] = z == -9999.0 ? Double.NaN : z;
+                pressures[index] = ATM * Math.exp(-0.0001184 * z);
+                double temp = 273 + pLapse * (z - 4000);
+                double vap_psat = Math.exp(26.23 - 5416.0 / temp);
+                wPrecs[index] = 0.493 * pRH * vap_psat / temp;
+                gradientIter.getPixel(i, j, normal);
+                System.arraycopy(normal, 0, normals, 3 * index, 3);
+            }
+        }
+        pitIter.done();
+        gradientIter.done();
 
+        /*
+         * the sun positions of all the days, grouped by horizon sector, so that the horizons
+         * of a sector are calculated once for all the days that see the sun in it
+         */
+        final HorizonEngine horizonEngine = new HorizonEngine(elevations, width, height, dx, HORIZON_SECTORS);
+        List<SunPosition> sunPositions = new ArrayList<SunPosition>();
         for( int i = startDay; i <= endDay; i++ ) {
-            calcInsolation(lambda, pitWR, gradientWR, insolationWR, i, dx);
-            pm.worked(i - startDay);
+            calcSunPositions(i, horizonEngine, sunPositions);
         }
+        Collections.sort(sunPositions, new Comparator<SunPosition>(){
+            public int compare( SunPosition o1, SunPosition o2 ) {
+                return Double.compare(o1.sectorPosition, o2.sectorPosition);
+            }
+        });
+        final List<List<SunPosition>> sectorGroups = new ArrayList<List<SunPosition>>();
+        List<SunPosition> currentGroup = null;
+        for( SunPosition sunPosition : sunPositions ) {
+            if (currentGroup == null || currentGroup.get(0).sector != sunPosition.sector) {
+                currentGroup = new ArrayList<SunPosition>();
+                sectorGroups.add(currentGroup);
+            }
+            currentGroup.add(sunPosition);
+        }
+
+        /*
+         * every task accumulates a contiguous range of sectors in its own buffer
+         */
+        int tasksNum = Math.max(1, Math.min(getDefaultThreadsNum(), sectorGroups.size()));
+        final double[][] buffers = new double[tasksNum][];
+        pm.beginTask(msg.message("insolation.calculating"), sunPositions.size());
+        ExecutionPlanner planner = ExecutionPlanner.createDefaultPlanner();
+        planner.setNumberOfTasks(tasksNum);
+        for( int t = 0; t < tasksNum; t++ ) {
+            final int task = t;
+            final int from = (int) ((long) sectorGroups.size() * t / tasksNum);
+            final int to = (int) ((long) sectorGroups.size() * (t + 1) / tasksNum);
+            planner.submit(() -> {
+                double[] buffer = new double[cellsNum];
+                short[] before = null;
+                short[] after = null;
+                int afterSector = -1;
+                for( int g = from; g < to; g++ ) {
+                    List<SunPosition> group = sectorGroups.get(g);
+                    int sector = group.get(0).sector;
+                    before = sector == afterSector ? after : horizonEngine.calculateHorizons(sector);
+                    afterSector = (sector + 1) % HORIZON_SECTORS;
+                    after = horizonEngine.calculateHorizons(afterSector);
+                    for( SunPosition sunPosition : group ) {
+                        double weight = sunPosition.sectorPosition - sector;
+                        for( int index = 0; index < cellsNum; index++ ) {
+                            double horizon = HorizonEngine.toRadians(before[index], after[index], weight);
+                            if (sunPosition.elevation >= horizon) {
+                                buffer[index] += calcRadiation(pressures[index], wPrecs[index], normals, 3 * index,
+                                        sunPosition);
+                            }
+                        }
+                    }
+                    pm.worked(group.size());
+                }
+                buffers[task] = buffer;
+            });
+        }
+        planner.join();
         pm.done();
+
+        for( int j = 0; j < height; j++ ) {
+            for( int i = 0; i < width; i++ ) {
+                double sum = 0;
+                for( double[] buffer : buffers ) {
+                    sum += buffer[j * width + i];
+                }
+                insolationIterator.setSample(i, j, 0, sum);
+            }
+        }
         for( int y = 2; y < height - 2; y++ ) {
             for( int x = 2; x < width - 2; x++ ) {
                 if (pitWR.getSampleDouble(x, y, 0) == -9999.0) {
@@ -187,49 +286,47 @@ public class OmsInsolation extends JGTModel {
     }
 
     /**
-     * Evaluate the radiation.
+     * A position of the sun with the values that don't depend on the cell.
+     */
+    private static class SunPosition {
+        double[] sunVector;
+        double mr;
+        double elevation;
+        double sectorPosition;
+        int sector;
+    }
+
+    /**
+     * Collect the half hourly sun positions of a day.
      * 
-     * @param lambda
-     *            the latitude.
-     * @param demWR
-     *            the raster of elevation
-     * @param gradientWR
-     *            the raster of the gradient value of the dem.
-     * @param insolationWR
-     *            the wr where to store the result.
-     * @param the
-     *            day in the year.
-     * @paradx the resolutiono of the dem.
+     * @param day
+     *            the day in the year.
+     * @param horizonEngine
+     *            the engine giving the horizon sectors.
+     * @param sunPositions
+     *            the list to add the positions to.
      */
-    private void calcInsolation( double lambda, WritableRaster demWR, WritableRaster gradientWR, WritableRaster insolationWR,
-            int day, double dx ) {
+    private void calcSunPositions( int day, HorizonEngine horizonEngine, List<SunPosition> sunPositions ) {
         // calculating the day angle
         // double dayang = 2 * Math.PI * (day - 1) / 365.0;
         double dayangb = (360 / 365.25) * (day - 79.436);
         dayangb = Math.toRadians(dayangb);
         // Evaluate the declination of the sun.
-        delta = getDeclination(dayangb);
+        double delta = getDeclination(dayangb);
         // Evaluate the radiation in this day.
         double ss = Math.acos(-Math.tan(delta) * Math.tan(lambda));
         double hour = -ss + (Math.PI / 48.0);
         while( hour <= ss - (Math.PI / 48) ) {
-            omega = hour;
             // calculating the vector related to the sun
-            double sunVector[] = calcSunVector();
-            double zenith = calcZenith(sunVector[2]);
-            double[] inverseSunVector = calcInverseSunVector(sunVector);
-            double[] normalSunVector = calcNormalSunVector(sunVector);
-
-            int height = demWR.getHeight();
-            int width = demWR.getWidth();
-            WritableRaster sOmbraWR = calculateFactor(height, width, sunVector, inverseSunVector, normalSunVector, demWR, dx);
-            double mr = 1 / (sunVector[2] + 0.15 * Math.pow((93.885 - zenith), (-1.253)));
-            for( int j = 0; j < height; j++ ) {
-                for( int i = 0; i < width; i++ ) {
-                    // evaluate the radiation.
-                    calcRadiation(i, j, demWR, sOmbraWR, insolationWR, sunVector, gradientWR, mr);
-                }
-            }
+            SunPosition sunPosition = new SunPosition();
+            sunPosition.sunVector = calcSunVector(delta, hour);
+            double zenith = calcZenith(sunPosition.sunVector[2]);
+            sunPosition.mr = 1 / (sunPosition.sunVector[2] + 0.15 * Math.pow((93.885 - zenith), (-1.253)));
+            sunPosition.elevation = Math.asin(sunPosition.sunVector[2]);
+            double azimuth = HorizonEngine.azimuth(sunPosition.sunVector[0], sunPosition.sunVector[1]);
+            sunPosition.sectorPosition = horizonEngine.getSectorPosition(azimuth);
+            sunPosition.sector = (int) sunPosition.sectorPosition;
+            sunPositions.add(sunPosition);
             hour = hour + Math.PI / 24.0;
         }
     }
@@ -244,17 +341,18 @@ public class OmsInsolation extends JGTModel {
     }
 
     /*
-     * evaluate several component of the radiation and then multiply by the
-     * sOmbra factor.
+     * evaluate several component of the radiation of a cell not in the shadow,
+     * the normal of the cell starts at normalIndex in the normals array.
      */
-    private void calcRadiation( int i, int j, WritableRaster demWR, WritableRaster sOmbraWR, WritableRaster insolationWR,
-            double[] sunVector, WritableRaster gradientWR, double mr ) {
-        double z = demWR.getSampleDouble(i, j, 0);
-        double pressure = ATM * Math.exp(-0.0001184 * z);
+    private double calcRadiation( double pressure, double wPrec, double[] normals, int normalIndex, SunPosition sunPosition ) {
+        double[] sunVector = sunPosition.sunVector;
+        double cosinc = sunVector[0] * normals[normalIndex] + sunVector[1] * normals[normalIndex + 1] + sunVector[2]
+                * normals[normalIndex + 2];
+        if (cosinc <= 0) {
+            return 0;
+        }
+        double mr = sunPosition.mr;
         double ma = mr * pressure / ATM;
-        double temp = 273 + pLapse * (z - 4000);
-        double vap_psat = Math.exp(26.23 - 5416.0 / temp);
-        double wPrec = 0.493 * pRH * vap_psat / temp;
         double taur = Math.exp((-.09030 * Math.pow(ma, 0.84)) * (1.0 + ma - Math.pow(ma, 1.01)));
         double d = pCmO3 * mr;
         double tauo = 1 - (0.1611 * d * Math.pow(1.0 + 139.48 * d, -0.3035) - 0.002715 * d)
@@ -264,17 +362,10 @@ public class OmsInsolation extends JGTModel {
         double taua = Math.pow((0.97 - 1.265 * Math.pow(pVisibility, (-0.66))), Math.pow(ma, 0.9));
 
         double In = 0.9751 * SOLARCTE * taur * tauo * taug * tauw * taua;
-
-        double cosinc = scalarProduct(sunVector, gradientWR.getPixel(i, j, new double[3]));
-
-        if (cosinc < 0) {
-            cosinc = 0;
-        }
-        double tmp = insolationWR.getSampleDouble(i, j, 0);
-        insolationWR.setSample(i, j, 0, In * cosinc * sOmbraWR.getSampleDouble(i, j, 0) / 1000 + tmp);
+        return In * cosinc / 1000;
     }
 
-    protected double[] calcSunVector() {
+    protected double[] calcSunVector( double delta, double omega ) {
         double sunVector[] = new double[3];
         sunVector[0] = -Math.sin(omega) * Math.cos(delta);
         sunVector[1] = Math.sin(lambda) * Math.cos(omega) * Math.cos(delta) - Math.cos(lambda) * Math.sin(delta);
@@ -32,6 +32,7 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_LABEL
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_LICENSE;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_NAME;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_STATUS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_doHorizons_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_inElev_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_outSky_DESCRIPTION;
 
@@ -54,7 +55,9 @@ import oms3.annotations.Out;
 import oms3.annotations.Status;
 
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.jgrasstools.gears.libs.modules.HorizonEngine;
 import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.gears.libs.modules.multiprocessing.ExecutionPlanner;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.jgrasstools.hortonmachine.i18n.HortonMessageHandler;
 
@@ -71,12 +74,21 @@ public class OmsSkyview extends JGTModel {
     @In
     public GridCoverage2D inElev = null;
 
+    @Description(OMSSKYVIEW_doHorizons_DESCRIPTION)
+    @In
+    public boolean doHorizons = false;
+
     @Description(OMSSKYVIEW_outSky_DESCRIPTION)
     @Out
     public GridCoverage2D outSky;
 
     private HortonMessageHandler msg = HortonMessageHandler.getInstance();
 
+    /**
+     * The number of horizon sectors, one each 10 degrees.
+     */
+    private static final int SECTORS = 36;
+
     private double maxSlope;
     private double azimuth;
     private double elevation;
@@ -102,7 +114,12 @@ public class OmsSkyview extends JGTModel {
         rows = pitWR.getHeight();
         cols = pitWR.getWidth();
 
-        WritableRaster skyWR = skyviewfactor(pitWR, dx);
+        WritableRaster skyWR;
+        if (doHorizons) {
+            skyWR = horizonSkyviewfactor(pitWR, dx);
+        } else {
+            skyWR = skyviewfactor(pitWR, dx);
+        }
 
         int maxY = minY + rows;
         int maxX = minX + cols;
@@ -269,6 +286,96 @@ public class OmsSkyview extends JGTModel {
         return skyviewFactorWR;
     }
 
+    /**
+     * Calculate the skyview factor from the terrain horizons.
+     * 
+     * <p>Unlike {@link #skyviewfactor(WritableRaster, double)}, which only takes the cells
+     * facing the azimuth as obstacles, for every azimuth the sky is seen from the lowest
+     * integer elevation angle that is above both the terrain horizon and the plane of
+     * the cell.</p>
+     * 
+     * @param pitWR
+     *            the dem ( the map of elevation).
+     * @param res the resolution of the map.
+     * @return the map of sky view factor.
+     */
+    private WritableRaster horizonSkyviewfactor( WritableRaster pitWR, double res ) throws Exception {
+
+        /*
+         * evalutating the normal vector (in the center of the square compound
+         * of 4 pixel.
+         */
+
+        normalVectorWR = normalVector(pitWR, res);
+
+        final double[] elevations = new double[cols * rows];
+        final double[] normals = new double[3 * cols * rows];
+        double[] normal = new double[3];
+        for( int y = 0; y < rows; y++ ) {
+            for( int x = 0; x < cols; x++ ) {
+                double elev = pitWR.getSampleDouble(minX + x, minY + y, 0);
+                elevations[y * cols + x] = elev == -9999.0 ? Double.NaN : elev;
+                normalVectorWR.getPixel(minX + x, minY + y, normal);
+                System.arraycopy(normal, 0, normals, 3 * (y * cols + x), 3);
+            }
+        }
+        final HorizonEngine horizonEngine = new HorizonEngine(elevations, cols, rows, res, SECTORS);
+
+        /*
+         * the azimuths from 0 to 340 degrees, every task summing a range of them in its own buffer
+         */
+        final int azimuthsNum = SECTORS - 1;
+        int tasksNum = Math.min(getDefaultThreadsNum(), azimuthsNum);
+        final double[][] buffers = new double[tasksNum][];
+        pm.beginTask(msg.message("skyview.calculating"), azimuthsNum);
+        ExecutionPlanner planner = ExecutionPlanner.createDefaultPlanner();
+        planner.setNumberOfTasks(tasksNum);
+        for( int t = 0; t < tasksNum; t++ ) {
+            final int task = t;
+            final int from = azimuthsNum * t / tasksNum;
+            final int to = azimuthsNum * (t + 1) / tasksNum;
+            planner.submit(() -> {
+                double[] buffer = new double[cols * rows];
+                for( int sector = from; sector < to; sector++ ) {
+                    double azimuth = horizonEngine.getSectorAzimuth(sector);
+                    double toSunX = Math.sin(azimuth);
+                    double toSunY = -Math.cos(azimuth);
+                    short[] horizons = horizonEngine.calculateHorizons(sector);
+                    for( int index = 0; index < buffer.length; index++ ) {
+                        double horizon = HorizonEngine.toRadians(horizons[index], horizons[index], 0);
+                        int n = 3 * index;
+                        // the elevation under which the cell doesn't face the sun
+                        double selfShadow = Math.atan2(-(toSunX * normals[n] + toSunY * normals[n + 1]), normals[n + 2]);
+                        double angle = maxSlope;
+                        if (!Double.isNaN(horizon)) {
+                            angle = Math.ceil(Math.toDegrees(Math.max(horizon, selfShadow)));
+                            angle = Math.min(Math.max(angle, 0.0), maxSlope);
+                        }
+                        double cos = Math.cos(Math.toRadians(angle));
+                        buffer[index] += cos * cos * 10.0 / 360.0;
+                    }
+                    pm.worked(1);
+                }
+                buffers[task] = buffer;
+            });
+        }
+        planner.join();
+        pm.done();
+
+        WritableRaster skyviewFactorWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, pitWR.getSampleModel(),
+                0.0);
+        for( int y = 0; y < rows; y++ ) {
+            for( int x = 0; x < cols; x++ ) {
+                double sum = 0;
+                for( double[] buffer : buffers ) {
+                    sum += buffer[y * cols + x];
+                }
+                skyviewFactorWR.setSample(x, y, 0, sum);
+            }
+        }
+        return skyviewFactorWR;
+    }
+
     /**
      * Calculate the angle.
      * 
@@ -0,0 +1,246 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.modules.network.drainagepipeline;
+
+import static org.jgrasstools.gears.libs.modules.FlowNode.NETVALUE;
+import static org.jgrasstools.gears.libs.modules.JGTConstants.doesOverFlow;
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_AUTHORCONTACTS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_AUTHORNAMES;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_DOCUMENTATION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_KEYWORDS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_LABEL;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_LICENSE;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_NAME;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_STATUS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_doFlow_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_doNet_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_doPit_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_doTca_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_inElev_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_outFlow_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_outNet_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_outPit_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_outTca_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_pEpsilon_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_pThres_DESCRIPTION;
+
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferFloat;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.text.MessageFormat;
+
+import javax.media.jai.RasterFactory;
+import javax.media.jai.iterator.RandomIter;
+
+import oms3.annotations.Author;
+import oms3.annotations.Description;
+import oms3.annotations.Documentation;
+import oms3.annotations.Execute;
+import oms3.annotations.In;
+import oms3.annotations.Keywords;
+import oms3.annotations.Label;
+import oms3.annotations.License;
+import oms3.annotations.Name;
+import oms3.annotations.Out;
+import oms3.annotations.Status;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
+import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.gears.utils.RegionMap;
+import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
+import org.jgrasstools.hortonmachine.modules.demmanipulation.pitfiller.PriorityFlood;
+import org.jgrasstools.hortonmachine.modules.geomorphology.flow.FlowDirectionsEngine;
+import org.jgrasstools.hortonmachine.modules.geomorphology.tca.TcaEngine;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * The chain pitfiller, flowdirections, tca and network extraction in one module.
+ *
+ * <p>The DEM is read once into a float array, filled in place by priority flood,
+ * turned into byte flowdirections and then into int contributing areas, passing the
+ * arrays from step to step. Only the requested outputs are produced, as float rasters
+ * on top of the arrays. The chain needs about 10 bytes per cell plus 4 for every
+ * requested output, so that a DEM of a billion cells fits in a 32GB heap.</p>
+ *
+ * <p>The results are the ones of {@link org.jgrasstools.hortonmachine.modules.demmanipulation.pitfiller.OmsPitfiller}
+ * in priority flood mode, {@link org.jgrasstools.hortonmachine.modules.geomorphology.flow.OmsFlowDirections},
+ * {@link org.jgrasstools.hortonmachine.modules.geomorphology.tca.OmsTca} and
+ * {@link org.jgrasstools.hortonmachine.modules.network.extractnetwork.OmsExtractNetwork}
+ * on tca, computed on float elevations. Contributing areas above 2^24 cells are
+ * rounded to float precision in the output map, not in the network extraction.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+@Description(OMSDRAINAGEPIPELINE_DESCRIPTION)
+@Documentation(OMSDRAINAGEPIPELINE_DOCUMENTATION)
+@Author(name = OMSDRAINAGEPIPELINE_AUTHORNAMES, contact = OMSDRAINAGEPIPELINE_AUTHORCONTACTS)
+@Keywords(OMSDRAINAGEPIPELINE_KEYWORDS)
+@Label(OMSDRAINAGEPIPELINE_LABEL)
+@Name(OMSDRAINAGEPIPELINE_NAME)
+@Status(OMSDRAINAGEPIPELINE_STATUS)
+@License(OMSDRAINAGEPIPELINE_LICENSE)
+public class OmsDrainagePipeline extends JGTModel {
+    @Description(OMSDRAINAGEPIPELINE_inElev_DESCRIPTION)
+    @In
+    public GridCoverage2D inElev = null;
+
+    @Description(OMSDRAINAGEPIPELINE_pEpsilon_DESCRIPTION)
+    @In
+    public double pEpsilon = 0.0;
+
+    @Description(OMSDRAINAGEPIPELINE_pThres_DESCRIPTION)
+    @In
+    public double pThres = 0;
+
+    @Description(OMSDRAINAGEPIPELINE_doPit_DESCRIPTION)
+    @In
+    public boolean doPit = false;
+
+    @Description(OMSDRAINAGEPIPELINE_doFlow_DESCRIPTION)
+    @In
+    public boolean doFlow = false;
+
+    @Description(OMSDRAINAGEPIPELINE_doTca_DESCRIPTION)
+    @In
+    public boolean doTca = false;
+
+    @Description(OMSDRAINAGEPIPELINE_doNet_DESCRIPTION)
+    @In
+    public boolean doNet = true;
+
+    @Description(OMSDRAINAGEPIPELINE_outPit_DESCRIPTION)
+    @Out
+    public GridCoverage2D outPit = null;
+
+    @Description(OMSDRAINAGEPIPELINE_outFlow_DESCRIPTION)
+    @Out
+    public GridCoverage2D outFlow = null;
+
+    @Description(OMSDRAINAGEPIPELINE_outTca_DESCRIPTION)
+    @Out
+    public GridCoverage2D outTca = null;
+
+    @Description(OMSDRAINAGEPIPELINE_outNet_DESCRIPTION)
+    @Out
+    public GridCoverage2D outNet = null;
+
+    private RegionMap regionMap;
+    private CoordinateReferenceSystem crs;
+
+    @Execute
+    public void process() throws Exception {
+        if (!concatOr(outPit == null && outFlow == null && outTca == null && outNet == null, doReset)) {
+            return;
+        }
+        checkNull(inElev);
+
+        regionMap = CoverageUtilities.getRegionParamsFromGridCoverage(inElev);
+        crs = inElev.getCoordinateReferenceSystem();
+        int cols = regionMap.getCols();
+        int rows = regionMap.getRows();
+        if (doesOverFlow(cols, rows)) {
+            throw new ModelsIllegalargumentException("The DEM has too many cells to be processed in memory.", this, pm);
+        }
+
+        float[] elev = new float[cols * rows];
+        RandomIter elevIter = CoverageUtilities.getRandomIterator(inElev);
+        pm.beginTask("Reading elevations...", rows);
+        for( int r = 0, index = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++, index++ ) {
+                double value = elevIter.getSampleDouble(c, r, 0);
+                elev[index] = isNovalue(value) ? Float.NaN : (float) value;
+            }
+            pm.worked(1);
+        }
+        pm.done();
+        elevIter.done();
+
+        new PriorityFlood(elev, cols, rows).fill(pEpsilon, pm);
+        checkCancel();
+
+        byte[] flow = new FlowDirectionsEngine(elev, cols, rows, regionMap.getXres(), regionMap.getYres()).calculate(pm);
+        checkCancel();
+        if (doPit) {
+            outPit = buildCoverage("pit", elev);
+        }
+        elev = null;
+
+        if (doFlow) {
+            float[] flowData = new float[flow.length];
+            int undefined = 0;
+            for( int index = 0; index < flow.length; index++ ) {
+                if (flow[index] > FlowDirectionsEngine.NODIRECTION) {
+                    flowData[index] = flow[index];
+                } else {
+                    if (flow[index] == FlowDirectionsEngine.NODIRECTION) {
+                        undefined++;
+                    }
+                    flowData[index] = Float.NaN;
+                }
+            }
+            if (undefined > 0) {
+                pm.errorMessage(MessageFormat.format("{0} cells could not be given a flowdirection and are set to novalue.",
+                        undefined));
+            }
+            outFlow = buildCoverage("flow", flowData);
+        }
+
+        TcaEngine tcaEngine = new TcaEngine(flow, cols, rows);
+        int[] tca = tcaEngine.calculate(pm);
+        if (tcaEngine.getLoops().size() > 0) {
+            pm.errorMessage(MessageFormat.format(
+                    "The flowdirections contain {0} loops, the cells in and downstream of them have no tca.", tcaEngine
+                            .getLoops().size()));
+        }
+        tcaEngine = null;
+        flow = null;
+        checkCancel();
+
+        if (doTca) {
+            float[] tcaData = new float[tca.length];
+            for( int index = 0; index < tca.length; index++ ) {
+                tcaData[index] = tca[index] > 0 ? tca[index] : Float.NaN;
+            }
+            outTca = buildCoverage("tca", tcaData);
+        }
+        if (doNet) {
+            float[] netData = new float[tca.length];
+            for( int index = 0; index < tca.length; index++ ) {
+                netData[index] = tca[index] > 0 && tca[index] >= pThres ? (float) NETVALUE : Float.NaN;
+            }
+            outNet = buildCoverage("net", netData);
+        }
+    }
+
+    /**
+     * Build a coverage on top of a float array, without copying it.
+     */
+    private GridCoverage2D buildCoverage( String name, float[] data ) {
+        int cols = regionMap.getCols();
+        int rows = regionMap.getRows();
+        SampleModel sampleModel = new ComponentSampleModel(DataBuffer.TYPE_FLOAT, cols, rows, 1, cols, new int[]{0});
+        WritableRaster raster = RasterFactory.createWritableRaster(sampleModel, new DataBufferFloat(data, data.length), null);
+        return CoverageUtilities.buildCoverage(name, raster, regionMap, crs);
+    }
+
+}
@@ -39,6 +39,7 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKRIGING_outDa
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKRIGING_outGrid_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKRIGING_pA_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKRIGING_pIntegralscale_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKRIGING_pMaxNeighbours_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKRIGING_pMode_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKRIGING_pNug_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKRIGING_pS_DESCRIPTION;
@@ -47,6 +48,7 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKRIGING_pVari
 
 import java.awt.image.WritableRaster;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -76,12 +78,14 @@ import org.geotools.feature.SchemaException;
 import org.geotools.geometry.DirectPosition2D;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
-import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.libs.modules.ModelsEngine;
+import org.jgrasstools.gears.libs.modules.multiprocessing.ExecutionPlanner;
+import org.jgrasstools.gears.libs.modules.multiprocessing.MultiProcessing;
 import org.jgrasstools.gears.utils.RegionMap;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.jgrasstools.gears.utils.math.matrixes.ColumnVector;
 import org.jgrasstools.gears.utils.math.matrixes.LinearSystem;
+import org.jgrasstools.gears.utils.math.matrixes.MatrixException;
 import org.jgrasstools.hortonmachine.i18n.HortonMessageHandler;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.geometry.DirectPosition;
@@ -89,7 +93,9 @@ import org.opengis.geometry.MismatchedDimensionException;
 import org.opengis.referencing.operation.MathTransform;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.index.strtree.STRtree;
 
 @Description(OMSKRIGING_DESCRIPTION)
 @Author(name = OMSKRIGING_AUTHORNAMES, contact = OMSKRIGING_AUTHORCONTACTS)
@@ -98,7 +104,7 @@ import com.vividsolutions.jts.geom.Geometry;
 @Name(OMSKRIGING_NAME)
 @Status(OMSKRIGING_STATUS)
 @License(OMSKRIGING_LICENSE)
-public class OmsKriging extends JGTModel {
+public class OmsKriging extends MultiProcessing {
 
     @Description(OMSKRIGING_inStations_DESCRIPTION)
     @In
@@ -194,6 +200,10 @@ public class OmsKriging extends JGTModel {
     @In
     public double pNug;
 
+    @Description(OMSKRIGING_pMaxNeighbours_DESCRIPTION)
+    @In
+    public int pMaxNeighbours = 0;
+
     @Description(OMSKRIGING_outGrid_DESCRIPTION)
     @Out
     public GridCoverage2D outGrid = null;
@@ -404,47 +414,69 @@ public class OmsKriging extends JGTModel {
 
             if (!areAllEquals && n1 > 1) {
                 // pm.beginTask(msg.message("kriging.working"),inInterpolate.size());
+                Coordinate[] coordinates = new Coordinate[idArray.length];
                 while( idIterator.hasNext() ) {
-                    double sum = 0.;
                     int id = idIterator.next();
                     idArray[j] = id;
-                    Coordinate coordinate = (Coordinate) pointsToInterpolateId2Coordinates.get(id);
-                    xStation[n1] = coordinate.x;
-                    yStation[n1] = coordinate.y;
-                    zStation[n1] = coordinate.z;
-                    /*
-                     * calculating the right hand side of the kriging linear
-                     * system.
-                     */
-                    double[] knownTerm = knownTermsCalculation(xStation, yStation, zStation, n1);
+                    coordinates[j] = pointsToInterpolateId2Coordinates.get(id);
+                    j++;
+                }
 
+                final int nStations = n1;
+                final STRtree stationsTree;
+                final LinearSystem linearSystem;
+                final double initialDelta;
+                if (pMaxNeighbours > 0 && pMaxNeighbours < n1) {
+                    stationsTree = new STRtree();
+                    Envelope stationsEnv = new Envelope();
+                    for( int i = 0; i < n1; i++ ) {
+                        Envelope stationEnv = new Envelope(new Coordinate(xStation[i], yStation[i]));
+                        stationsTree.insert(stationEnv, i);
+                        stationsEnv.expandToInclude(stationEnv);
+                    }
+                    stationsTree.build();
+                    // the box that contains pMaxNeighbours stations, if they were evenly distributed
+                    double delta = Math.max(stationsEnv.getWidth(), stationsEnv.getHeight())
+                            * Math.sqrt((double) pMaxNeighbours / n1) / 2.0;
+                    initialDelta = delta > 0 ? delta : 1.0;
+                    linearSystem = null;
+                } else {
                     /*
-                     * solve the linear system, where the result is the weight.
+                     * the covariance matrix is the same for all the points,
+                     * so it is decomposed only once.
                      */
-                    ColumnVector knownTermColumn = new ColumnVector(knownTerm);
-                    LinearSystem linearSystem = new LinearSystem(covarianceMatrix);
-                    ColumnVector solution = linearSystem.solve(knownTermColumn, true);
-                    // Matrix a = new Matrix(covarianceMatrix);
-                    // Matrix b = new Matrix(knownTerm, knownTerm.length);
-                    // Matrix x = a.solve(b);
-                    double[] moltiplicativeFactor = solution.copyValues1D();
-
-                    double h0 = 0.0;
-                    for( int k = 0; k < n1; k++ ) {
-                        h0 = h0 + moltiplicativeFactor[k] * hStation[k];
-                        sum = sum + moltiplicativeFactor[k];
-                    }
-
-                    if (doLogarithmic) {
-                        h0 = Math.exp(h0);
-                    }
-                    result[j] = h0;
-                    j++;
-                    if (Math.abs(sum - 1) >= TOLL) {
-                        throw new ModelsRuntimeException("Error in the coffeicients calculation", this.getClass().getSimpleName());
-                    }
+                    stationsTree = null;
+                    initialDelta = 0;
+                    linearSystem = new LinearSystem(covarianceMatrix);
+                    linearSystem.decompose();
+                }
 
+                /*
+                 * solve the points in blocks, in parallel.
+                 */
+                int blockSize = pMode == 1 ? rows : Math.max(1, coordinates.length / 100);
+                ExecutionPlanner planner = createDefaultPlanner();
+                planner.setNumberOfTasks((coordinates.length + blockSize - 1) / blockSize);
+                for( int from = 0; from < coordinates.length; from += blockSize ) {
+                    int _from = from;
+                    int _to = Math.min(from + blockSize, coordinates.length);
+                    planner.submit(() -> {
+                        if (stationsTree == null) {
+                            for( int i = _from; i < _to; i++ ) {
+                                result[i] = interpolate(coordinates[i], xStation, yStation, zStation, hStation, nStations,
+                                        linearSystem);
+                            }
+                        } else {
+                            NeighbourSystem neighbourSystem = new NeighbourSystem(initialDelta);
+                            for( int i = _from; i < _to; i++ ) {
+                                neighbourSystem.update(coordinates[i], stationsTree, xStation, yStation, zStation, hStation);
+                                result[i] = interpolate(coordinates[i], neighbourSystem.x, neighbourSystem.y,
+                                        neighbourSystem.z, neighbourSystem.h, pMaxNeighbours, neighbourSystem.linearSystem);
+                            }
+                        }
+                    });
                 }
+                planner.join();
             } else if (n1 == 1 || areAllEquals) {
                 double tmp = hStation[0];
                 int k = 0;
@@ -480,6 +512,144 @@ public class OmsKriging extends JGTModel {
         }
     }
 
+    /**
+     * Interpolate a point.
+     * 
+     * @param coordinate the point to interpolate.
+     * @param xStation the x coordinates of the stations.
+     * @param yStation the y coordinates of the stations.
+     * @param zStation the z coordinates of the stations.
+     * @param hStation the measured values of the stations.
+     * @param n the number of stations to use.
+     * @param linearSystem the system of the covariance matrix of the stations, already decomposed.
+     * @return the interpolated value.
+     */
+    private double interpolate( Coordinate coordinate, double[] xStation, double[] yStation, double[] zStation,
+            double[] hStation, int n, LinearSystem linearSystem ) throws MatrixException {
+        /*
+         * calculating the right hand side of the kriging linear
+         * system.
+         */
+        double[] knownTerm = knownTermsCalculation(xStation, yStation, zStation, n, coordinate);
+
+        /*
+         * solve the linear system, where the result is the weight.
+         */
+        ColumnVector knownTermColumn = new ColumnVector(knownTerm);
+        ColumnVector solution = linearSystem.solve(knownTermColumn, true);
+        double[] moltiplicativeFactor = solution.copyValues1D();
+
+        double h0 = 0.0;
+        double sum = 0.;
+        for( int k = 0; k < n; k++ ) {
+            h0 = h0 + moltiplicativeFactor[k] * hStation[k];
+            sum = sum + moltiplicativeFactor[k];
+        }
+
+        if (doLogarithmic) {
+            h0 = Math.exp(h0);
+        }
+        if (Math.abs(sum - 1) >= TOLL) {
+            throw new ModelsRuntimeException("Error in the coffeicients calculation", this.getClass().getSimpleName());
+        }
+        return h0;
+    }
+
+    /**
+     * The stations nearest to a point and the decomposed system of their
+     * covariance matrix.
+     * 
+     * <p>The system is rebuilt only if the nearest stations change, which
+     * for near points is seldom the case.
+     */
+    private class NeighbourSystem {
+        /**
+         * The half size of the first box searched for stations.
+         */
+        private double initialDelta;
+        private int[] stations;
+        private double[] x = new double[pMaxNeighbours + 1];
+        private double[] y = new double[pMaxNeighbours + 1];
+        private double[] z = new double[pMaxNeighbours + 1];
+        private double[] h = new double[pMaxNeighbours + 1];
+        private LinearSystem linearSystem;
+
+        private NeighbourSystem( double initialDelta ) {
+            this.initialDelta = initialDelta;
+        }
+
+        private void update( Coordinate coordinate, STRtree stationsTree, double[] xStation, double[] yStation,
+                double[] zStation, double[] hStation ) throws MatrixException {
+            int[] nearest = nearestStations(coordinate, stationsTree, xStation, yStation);
+            if (Arrays.equals(nearest, stations)) {
+                return;
+            }
+            stations = nearest;
+            for( int i = 0; i < nearest.length; i++ ) {
+                x[i] = xStation[nearest[i]];
+                y[i] = yStation[nearest[i]];
+                z[i] = zStation[nearest[i]];
+                h[i] = hStation[nearest[i]];
+            }
+            linearSystem = new LinearSystem(covMatrixCalculating(x, y, z, nearest.length));
+            linearSystem.decompose();
+        }
+
+        /**
+         * @return the indexes of the {@link OmsKriging#pMaxNeighbours} nearest stations, sorted.
+         */
+        private int[] nearestStations( Coordinate coordinate, STRtree stationsTree, double[] xStation, double[] yStation ) {
+            // grow the search box until it contains enough stations
+            double delta = initialDelta;
+            List< ? > candidates;
+            while( true ) {
+                Envelope searchEnv = new Envelope(coordinate);
+                searchEnv.expandBy(delta);
+                candidates = stationsTree.query(searchEnv);
+                if (candidates.size() >= pMaxNeighbours) {
+                    break;
+                }
+                delta = delta * 2;
+            }
+            // stations outside the box can be nearer than the farthest in the box
+            double maxDistance = kthDistance(coordinate, candidates, xStation, yStation);
+            Envelope searchEnv = new Envelope(coordinate);
+            searchEnv.expandBy(maxDistance);
+            candidates = stationsTree.query(searchEnv);
+
+            int[] indexes = new int[candidates.size()];
+            double[] distances = new double[candidates.size()];
+            for( int i = 0; i < indexes.length; i++ ) {
+                indexes[i] = (Integer) candidates.get(i);
+                distances[i] = coordinate.distance(new Coordinate(xStation[indexes[i]], yStation[indexes[i]]));
+            }
+            Integer[] order = new Integer[indexes.length];
+            for( int i = 0; i < order.length; i++ ) {
+                order[i] = i;
+            }
+            Arrays.sort(order, ( o1, o2 ) -> {
+                int compare = Double.compare(distances[o1], distances[o2]);
+                return compare != 0 ? compare : Integer.compare(indexes[o1], indexes[o2]);
+            });
+            int[] nearest = new int[pMaxNeighbours];
+            for( int i = 0; i < nearest.length; i++ ) {
+                nearest[i] = indexes[order[i]];
+            }
+            Arrays.sort(nearest);
+            return nearest;
+        }
+
+        private double kthDistance( Coordinate coordinate, List< ? > candidates, double[] xStation, double[] yStation ) {
+            double[] distances = new double[candidates.size()];
+            for( int i = 0; i < distances.length; i++ ) {
+                int index = (Integer) candidates.get(i);
+                distances[i] = coordinate.distance(new Coordinate(xStation[index], yStation[index]));
+            }
+            Arrays.sort(distances);
+            return distances[pMaxNeighbours - 1];
+        }
+    }
+
     /**
      * Verify the input of the model.
      */
@@ -776,23 +946,25 @@ public class OmsKriging extends JGTModel {
      *            the z coordinates.
      * @param n
      *            the number of the stations points.
+     * @param point
+     *            the point to interpolate.
      * @return
      */
-    private double[] knownTermsCalculation( double[] x, double[] y, double[] z, int n ) {
+    private double[] knownTermsCalculation( double[] x, double[] y, double[] z, int n, Coordinate point ) {
 
         double[] gamma = new double[n + 1];
         if (defaultVariogramMode == 0) {
             for( int i = 0; i < n; i++ ) {
-                double rx = x[i] - x[n];
-                double ry = y[i] - y[n];
-                double rz = z[i] - z[n];
+                double rx = x[i] - point.x;
+                double ry = y[i] - point.y;
+                double rz = z[i] - point.z;
                 gamma[i] = variogram(rx, ry, rz);
             }
         } else if (defaultVariogramMode == 1) {
             for( int i = 0; i < n; i++ ) {
-                double rx = x[i] - x[n];
-                double ry = y[i] - y[n];
-                double rz = z[i] - z[n];
+                double rx = x[i] - point.x;
+                double ry = y[i] - point.y;
+                double rz = z[i] - point.z;
                 gamma[i] = variogram(pNug, pA, pS, rx, ry, rz);
             }
 
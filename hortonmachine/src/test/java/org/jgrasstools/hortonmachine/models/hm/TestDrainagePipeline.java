@@ -0,0 +1,81 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.models.hm;
+
+import static org.jgrasstools.gears.libs.modules.FlowNode.NETVALUE;
+import static org.jgrasstools.gears.libs.modules.JGTConstants.doubleNovalue;
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+
+import java.util.HashMap;
+
+import javax.media.jai.iterator.RandomIter;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
+import org.jgrasstools.hortonmachine.modules.geomorphology.tca.OmsTca;
+import org.jgrasstools.hortonmachine.modules.network.drainagepipeline.OmsDrainagePipeline;
+import org.jgrasstools.hortonmachine.utils.HMTestCase;
+import org.jgrasstools.hortonmachine.utils.HMTestMaps;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Test the {@link OmsDrainagePipeline} module.
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestDrainagePipeline extends HMTestCase {
+
+    public void testPipeline() throws Exception {
+        HashMap<String, Double> envelopeParams = HMTestMaps.getEnvelopeparams();
+        CoordinateReferenceSystem crs = HMTestMaps.getCrs();
+        GridCoverage2D pitCoverage = CoverageUtilities.buildCoverage("pit", HMTestMaps.pitData, envelopeParams, crs, true);
+
+        OmsDrainagePipeline pipeline = new OmsDrainagePipeline();
+        pipeline.inElev = pitCoverage;
+        pipeline.pThres = 5;
+        pipeline.doFlow = true;
+        pipeline.doTca = true;
+        pipeline.pm = pm;
+        pipeline.process();
+
+        assertNull(pipeline.outPit);
+        checkMatrixEqual(pipeline.outFlow.getRenderedImage(), HMTestMaps.newFlowData, 0);
+
+        // the same as the single modules
+        GridCoverage2D flowCoverage = CoverageUtilities.buildCoverage("flow", HMTestMaps.newFlowData, envelopeParams, crs,
+                true);
+        OmsTca tca = new OmsTca();
+        tca.inFlow = flowCoverage;
+        tca.pm = pm;
+        tca.process();
+
+        RandomIter tcaIter = CoverageUtilities.getRandomIterator(tca.outTca);
+        double[][] expectedTca = new double[HMTestMaps.newFlowData.length][HMTestMaps.newFlowData[0].length];
+        double[][] expectedNet = new double[expectedTca.length][expectedTca[0].length];
+        for( int r = 0; r < expectedTca.length; r++ ) {
+            for( int c = 0; c < expectedTca[0].length; c++ ) {
+                double value = tcaIter.getSampleDouble(c, r, 0);
+                expectedTca[r][c] = value;
+                expectedNet[r][c] = !isNovalue(value) && value >= 5 ? NETVALUE : doubleNovalue;
+            }
+        }
+        checkMatrixEqual(pipeline.outTca.getRenderedImage(), expectedTca, 0);
+        checkMatrixEqual(pipeline.outNet.getRenderedImage(), expectedNet, 0);
+    }
+
+}
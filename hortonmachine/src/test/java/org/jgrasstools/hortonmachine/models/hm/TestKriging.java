@@ -1,40 +1,273 @@
-//package org.jgrasstools.hortonmachine.models.hm;
-//
-//import java.awt.geom.Point2D;
-//import java.io.File;
-//import java.net.URL;
-//import java.util.HashMap;
-//import java.util.Iterator;
-//import java.util.Set;
-//
-//import org.geotools.coverage.grid.GridCoverage2D;
-//import org.geotools.coverage.grid.GridGeometry2D;
-//import org.geotools.data.simple.SimpleFeatureCollection;
-//import org.geotools.filter.text.cql2.CQL;
-//import org.geotools.referencing.CRS;
-//import org.jgrasstools.gears.io.rasterreader.OmsRasterReader;
-//import org.jgrasstools.gears.io.rasterwriter.OmsRasterWriter;
-//import org.jgrasstools.gears.io.shapefile.OmsShapefileFeatureReader;
-//import org.jgrasstools.gears.io.timedependent.OmsTimeSeriesIteratorReader;
-//import org.jgrasstools.gears.io.timedependent.OmsTimeSeriesIteratorWriter;
-//import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
-//import org.jgrasstools.hortonmachine.modules.statistics.kriging.OmsKriging;
-//import org.jgrasstools.hortonmachine.utils.HMTestCase;
-//import org.jgrasstools.hortonmachine.utils.HMTestMaps;
-//import org.opengis.feature.simple.SimpleFeature;
-//import org.opengis.filter.Filter;
-//import org.opengis.referencing.crs.CoordinateReferenceSystem;
-//
-//import com.vividsolutions.jts.geom.Coordinate;
-//import com.vividsolutions.jts.geom.Geometry;
-//
-///**
-// * Test the kriging model.
-// * 
-// * @author daniele andreis
-// * 
-// */
-//public class TestKriging extends HMTestCase {
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.models.hm;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.jgrasstools.gears.io.shapefile.OmsShapefileFeatureReader;
+import org.jgrasstools.gears.io.timedependent.OmsTimeSeriesIteratorReader;
+import org.jgrasstools.gears.utils.math.matrixes.ColumnVector;
+import org.jgrasstools.gears.utils.math.matrixes.LinearSystem;
+import org.jgrasstools.hortonmachine.modules.statistics.kriging.OmsKriging;
+import org.jgrasstools.hortonmachine.utils.HMTestCase;
+import org.opengis.feature.simple.SimpleFeature;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Test the kriging model.
+ * 
+ * @author daniele andreis
+ * 
+ */
+@SuppressWarnings("nls")
+public class TestKriging extends HMTestCase {
+
+    private static final double VARIANCE = 3.5;
+    private static final double[] INTEGRAL_SCALE = {10000, 10000, 100};
+
+    private SimpleFeatureCollection stationsFC;
+    private SimpleFeatureCollection pointsFC;
+    private File rainFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        URL stationsUrl = this.getClass().getClassLoader().getResource("rainstations.shp");
+        OmsShapefileFeatureReader stationsReader = new OmsShapefileFeatureReader();
+        stationsReader.file = new File(stationsUrl.toURI()).getAbsolutePath();
+        stationsReader.readFeatureCollection();
+        stationsFC = stationsReader.geodata;
+
+        URL pointsUrl = this.getClass().getClassLoader().getResource("basins_passirio_width0.shp");
+        OmsShapefileFeatureReader pointsReader = new OmsShapefileFeatureReader();
+        pointsReader.file = new File(pointsUrl.toURI()).getAbsolutePath();
+        pointsReader.readFeatureCollection();
+        pointsFC = pointsReader.geodata;
+
+        URL rainUrl = this.getClass().getClassLoader().getResource("rain_test.csv");
+        rainFile = new File(rainUrl.toURI());
+
+        super.setUp();
+    }
+
+    /**
+     * The system decomposed once and solved in parallel gives the values of
+     * a system built and solved for every point.
+     */
+    public void testKrigingSharedSystem() throws Exception {
+        checkAgainstPerPointSystems(0, 0);
+    }
+
+    /**
+     * A neighbours cap not lower than the stations number gives the global kriging.
+     */
+    public void testKrigingAllNeighbours() throws Exception {
+        int stationsNum = stationsFC.size();
+        OmsTimeSeriesIteratorReader reader = getRainReader();
+        try {
+            while( reader.doProcess ) {
+                reader.nextRecord();
+                HashMap<Integer, double[]> data = reader.outData;
+                if (getStations(data).size() == 0) {
+                    continue;
+                }
+                HashMap<Integer, double[]> global = runKriging(data, 0);
+                HashMap<Integer, double[]> capped = runKriging(data, stationsNum);
+                assertEquals(global.size(), capped.size());
+                for( Entry<Integer, double[]> entry : global.entrySet() ) {
+                    assertEquals(entry.getValue()[0], capped.get(entry.getKey())[0], 1E-9);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * A small neighbours cap gives the kriging of the nearest stations only.
+     */
+    public void testKrigingNearestNeighbours() throws Exception {
+        checkAgainstPerPointSystems(3, 3);
+    }
+
+    private void checkAgainstPerPointSystems( int maxNeighbours, int minStations ) throws Exception {
+        OmsTimeSeriesIteratorReader reader = getRainReader();
+        int checkedRecords = 0;
+        try {
+            while( reader.doProcess ) {
+                reader.nextRecord();
+                HashMap<Integer, double[]> data = reader.outData;
+                List<double[]> stations = getStations(data);
+                if (stations.size() == 0 || stations.size() <= minStations) {
+                    continue;
+                }
+                HashMap<Integer, double[]> result = runKriging(data, maxNeighbours);
+
+                FeatureIterator<SimpleFeature> pointsIter = pointsFC.features();
+                int points = 0;
+                try {
+                    while( pointsIter.hasNext() ) {
+                        SimpleFeature feature = pointsIter.next();
+                        int id = ((Number) feature.getAttribute("netnum")).intValue();
+                        Coordinate coordinate = ((Geometry) feature.getDefaultGeometry()).getCentroid().getCoordinate();
+                        double expected = perPointKriging(stations, coordinate, maxNeighbours);
+                        assertEquals(expected, result.get(id)[0], 1E-9);
+                        points++;
+                    }
+                } finally {
+                    pointsIter.close();
+                }
+                assertEquals(points, result.size());
+                checkedRecords++;
+            }
+        } finally {
+            reader.close();
+        }
+        assertTrue(checkedRecords > 0);
+    }
+
+    private HashMap<Integer, double[]> runKriging( HashMap<Integer, double[]> data, int maxNeighbours ) throws Exception {
+        OmsKriging kriging = new OmsKriging();
+        kriging.pm = pm;
+        kriging.inStations = stationsFC;
+        kriging.fStationsid = "ID_PUNTI_M";
+        kriging.inInterpolate = pointsFC;
+        kriging.fInterpolateid = "netnum";
+        kriging.inData = data;
+        kriging.pVariance = VARIANCE;
+        kriging.pIntegralscale = INTEGRAL_SCALE;
+        kriging.pMode = 0;
+        kriging.pMaxNeighbours = maxNeighbours;
+        kriging.process();
+        return kriging.outData;
+    }
+
+    /**
+     * Kriging of a point through a system built and solved for that point only.
+     * 
+     * @param stations the x, y and measured value of the stations.
+     * @param maxNeighbours the number of nearest stations to use, 0 for all.
+     */
+    private double perPointKriging( List<double[]> stations, final Coordinate coordinate, int maxNeighbours )
+            throws Exception {
+        int n = stations.size();
+        Integer[] order = new Integer[n];
+        for( int i = 0; i < n; i++ ) {
+            order[i] = i;
+        }
+        if (maxNeighbours > 0 && maxNeighbours < n) {
+            final List<double[]> allStations = stations;
+            Arrays.sort(order, ( o1, o2 ) -> {
+                double d1 = coordinate.distance(new Coordinate(allStations.get(o1)[0], allStations.get(o1)[1]));
+                double d2 = coordinate.distance(new Coordinate(allStations.get(o2)[0], allStations.get(o2)[1]));
+                int compare = Double.compare(d1, d2);
+                return compare != 0 ? compare : Integer.compare(o1, o2);
+            });
+            order = Arrays.copyOf(order, maxNeighbours);
+            // the model keeps the stations in their original order
+            Arrays.sort(order);
+            n = maxNeighbours;
+        }
+
+        double[][] covariance = new double[n + 1][n + 1];
+        double[] knownTerm = new double[n + 1];
+        for( int i = 0; i < n; i++ ) {
+            double[] station = stations.get(order[i]);
+            for( int j = 0; j < n; j++ ) {
+                double[] other = stations.get(order[j]);
+                covariance[i][j] = covariance(station[0] - other[0], station[1] - other[1]);
+            }
+            covariance[i][n] = 1.0;
+            covariance[n][i] = 1.0;
+            knownTerm[i] = covariance(station[0] - coordinate.x, station[1] - coordinate.y);
+        }
+        knownTerm[n] = 1.0;
+
+        LinearSystem linearSystem = new LinearSystem(covariance);
+        double[] weights = linearSystem.solve(new ColumnVector(knownTerm), true).copyValues1D();
+        double value = 0;
+        for( int i = 0; i < n; i++ ) {
+            value = value + weights[i] * stations.get(order[i])[2];
+        }
+        return value < 0 ? 0.0 : value;
+    }
+
+    private double covariance( double rx, double ry ) {
+        double h2 = (rx / INTEGRAL_SCALE[0]) * (rx / INTEGRAL_SCALE[0]) + (ry / INTEGRAL_SCALE[1]) * (ry / INTEGRAL_SCALE[1]);
+        if (h2 < 1.0d * 10E-8) {
+            return VARIANCE;
+        }
+        return VARIANCE * Math.exp(-Math.sqrt(h2));
+    }
+
+    /**
+     * @return the x, y and measured value of the stations with data.
+     */
+    private List<double[]> getStations( HashMap<Integer, double[]> data ) {
+        List<double[]> stations = new ArrayList<double[]>();
+        FeatureIterator<SimpleFeature> stationsIter = stationsFC.features();
+        try {
+            while( stationsIter.hasNext() ) {
+                SimpleFeature feature = stationsIter.next();
+                Object stationId = feature.getAttribute("ID_PUNTI_M");
+                int id;
+                if (stationId instanceof Number) {
+                    id = ((Number) stationId).intValue();
+                } else {
+                    id = (int) Double.parseDouble((String) stationId);
+                }
+                double[] h = data.get(id);
+                if (h == null || isNovalue(h[0])) {
+                    continue;
+                }
+                Coordinate coordinate = ((Geometry) feature.getDefaultGeometry()).getCentroid().getCoordinate();
+                stations.add(new double[]{coordinate.x, coordinate.y, h[0]});
+            }
+        } finally {
+            stationsIter.close();
+        }
+        return stations;
+    }
+
+    private OmsTimeSeriesIteratorReader getRainReader() {
+        OmsTimeSeriesIteratorReader reader = new OmsTimeSeriesIteratorReader();
+        reader.file = rainFile.getAbsolutePath();
+        reader.idfield = "ID";
+        reader.tStart = "2000-01-01 00:00";
+        reader.tEnd = "2000-01-01 05:00";
+        reader.tTimestep = 60;
+        reader.fileNovalue = "-9999";
+        reader.initProcess();
+        return reader;
+    }
+
+    // the original tests of the model, disabled
 //
 //    private File stazioniFile;
 //    private File puntiFile;
@@ -674,4 +907,4 @@
 //        super.tearDown();
 //    }
 //
-//}
+}
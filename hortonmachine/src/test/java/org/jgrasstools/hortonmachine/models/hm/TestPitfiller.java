@@ -20,6 +20,7 @@ package org.jgrasstools.hortonmachine.models.hm;
 import java.util.HashMap;
 
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.monitor.PrintStreamProgressMonitor;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.jgrasstools.hortonmachine.modules.demmanipulation.pitfiller.OmsPitfiller;
@@ -49,4 +50,28 @@ public class TestPitfiller extends HMTestCase {
 
         checkMatrixEqual(pitfillerCoverage.getRenderedImage(), HMTestMaps.outPitData, 0);
     }
+
+    public void testPriorityFloodPitfiller() throws Exception {
+
+        double[][] elevationData = HMTestMaps.mapData;
+        HashMap<String, Double> envelopeParams = HMTestMaps.getEnvelopeparams();
+        CoordinateReferenceSystem crs = HMTestMaps.getCrs();
+        GridCoverage2D elevationCoverage = CoverageUtilities.buildCoverage("elevation", elevationData, envelopeParams, crs, true);
+
+        OmsPitfiller pitfiller = new OmsPitfiller();
+        pitfiller.inElev = elevationCoverage;
+        pitfiller.doPriorityFlood = true;
+        pitfiller.pm = pm;
+        pitfiller.process();
+
+        GridCoverage2D pitfillerCoverage = pitfiller.outPit;
+
+        // novalues are kept, while the iterative algorithm fills them as pits
+        double[][] expected = new double[HMTestMaps.outPitData.length][];
+        for( int i = 0; i < expected.length; i++ ) {
+            expected[i] = HMTestMaps.outPitData[i].clone();
+        }
+        expected[1][1] = JGTConstants.doubleNovalue;
+        checkMatrixEqual(pitfillerCoverage.getRenderedImage(), expected, 0);
+    }
 }
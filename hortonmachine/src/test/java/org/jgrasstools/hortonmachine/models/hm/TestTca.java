@@ -17,8 +17,12 @@
  */
 package org.jgrasstools.hortonmachine.models.hm;
 
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+
 import java.util.HashMap;
 
+import javax.media.jai.iterator.RandomIter;
+
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.jgrasstools.hortonmachine.modules.geomorphology.tca.OmsOldTca;
@@ -68,4 +72,28 @@ public class TestTca extends HMTestCase {
         checkMatrixEqual(tcaCoverage.getRenderedImage(), HMTestMaps.tcaData);
     }
 
-}
\ No newline at end of file
+    public void testNewTcaLoop() throws Exception {
+        HashMap<String, Double> envelopeParams = HMTestMaps.getEnvelopeparams();
+        CoordinateReferenceSystem crs = HMTestMaps.getCrs();
+
+        double[][] flowData = new double[HMTestMaps.flowData.length][];
+        for( int i = 0; i < flowData.length; i++ ) {
+            flowData[i] = HMTestMaps.flowData[i].clone();
+        }
+        // make the cells at col 3 and 4 of row 3 flow into each other
+        flowData[3][3] = 1;
+        flowData[3][4] = 5;
+        GridCoverage2D flowCoverage = CoverageUtilities.buildCoverage("flow", flowData, envelopeParams, crs, true);
+
+        OmsTca tca = new OmsTca();
+        tca.inFlow = flowCoverage;
+        tca.pm = pm;
+        tca.process();
+
+        assertEquals(1, tca.outLoop.size());
+        RandomIter tcaIter = CoverageUtilities.getRandomIterator(tca.outTca);
+        assertTrue(isNovalue(tcaIter.getSampleDouble(3, 3, 0)));
+        assertTrue(isNovalue(tcaIter.getSampleDouble(4, 3, 0)));
+    }
+
+}
@@ -0,0 +1,271 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.duffy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.jgrasstools.gears.libs.monitor.DummyProgressMonitor;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.HillSlope;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.HillSlopeDuffy;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.IHillSlope;
+import org.jgrasstools.hortonmachine.modules.network.PfafstetterNumber;
+import org.jgrasstools.hortonmachine.modules.network.networkattributes.NetworkChannel;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Test the Pfafstetter partition of the network in {@link DuffySubbasin}s.
+ *
+ * <p>The network is made of the main stem 1, 3, 5, of the tributary 2.1, 2.3
+ * with its own tributary 2.2 and of the tributary 4.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+@SuppressWarnings("nls")
+public class TestDuffySubbasin extends TestCase {
+
+    private static final String[] NETWORK = {"1", "2.1", "2.2", "2.3", "3", "4", "5"};
+
+    private static final int ROUTING = 3;
+
+    private List<IHillSlope> orderedHillslopes;
+    private HashMap<String, Integer> pfaff2Index;
+
+    @Override
+    protected void setUp() throws Exception {
+        GeometryFactory gf = new GeometryFactory();
+
+        SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
+        b.setName("net");
+        b.add("the_geom", LineString.class);
+        b.add(NetworkChannel.STARTELEVNAME, Double.class);
+        b.add(NetworkChannel.ENDELEVNAME, Double.class);
+        SimpleFeatureType netType = b.buildFeatureType();
+        b = new SimpleFeatureTypeBuilder();
+        b.setName("basins");
+        b.add("the_geom", Polygon.class);
+        SimpleFeatureType basinType = b.buildFeatureType();
+
+        List<IHillSlope> hillslopes = new ArrayList<IHillSlope>();
+        for( int i = 0; i < NETWORK.length; i++ ) {
+            // links of 400 m with a slope of 1% in hillslopes of 400x400 m
+            double y = i * 1000.0;
+            LineString link = gf.createLineString(new Coordinate[]{new Coordinate(0, y), new Coordinate(400, y)});
+            SimpleFeatureBuilder netBuilder = new SimpleFeatureBuilder(netType);
+            netBuilder.addAll(new Object[]{link, 104.0, 100.0});
+            SimpleFeature netFeature = netBuilder.buildFeature(netType.getTypeName() + "." + i);
+
+            Polygon basin = gf.createPolygon(gf.createLinearRing(new Coordinate[]{new Coordinate(0, y - 200),
+                    new Coordinate(400, y - 200), new Coordinate(400, y + 200), new Coordinate(0, y + 200),
+                    new Coordinate(0, y - 200)}), null);
+            SimpleFeatureBuilder basinBuilder = new SimpleFeatureBuilder(basinType);
+            basinBuilder.addAll(new Object[]{basin});
+            SimpleFeature basinFeature = basinBuilder.buildFeature(basinType.getTypeName() + "." + i);
+
+            hillslopes.add(new HillSlope(netFeature, basinFeature, new PfafstetterNumber(NETWORK[i]), i + 1));
+        }
+        HillSlope.connectElements(hillslopes);
+
+        IHillSlope outlet = null;
+        for( IHillSlope hillSlope : hillslopes ) {
+            if (hillSlope.getPfafstetterNumber().toString().equals("1")) {
+                outlet = hillSlope;
+            }
+        }
+        List<IHillSlope> upstreamHillslopes = new ArrayList<IHillSlope>();
+        outlet.getAllUpstreamElements(upstreamHillslopes, null);
+        assertEquals(NETWORK.length, upstreamHillslopes.size());
+
+        DuffyInputs duffyInputs = new DuffyInputs();
+        duffyInputs.pEtrate = 0.0;
+        orderedHillslopes = new ArrayList<IHillSlope>();
+        pfaff2Index = new HashMap<String, Integer>();
+        for( int i = 0; i < upstreamHillslopes.size(); i++ ) {
+            IHillSlope hillSlope = upstreamHillslopes.get(i);
+            orderedHillslopes.add(new HillSlopeDuffy(hillSlope, duffyInputs));
+            pfaff2Index.put(hillSlope.getPfafstetterNumber().toString(), i);
+        }
+    }
+
+    public void testPartitionLevel0() throws Exception {
+        List<DuffySubbasin> subbasins = partition(0);
+        assertEquals(1, subbasins.size());
+
+        DuffySubbasin mainStem = subbasins.get(0);
+        assertEquals("", mainStem.getPfafstetterKey());
+        assertEquals(0, mainStem.getWave());
+        assertIndexes(NETWORK, mainStem.getIndexes());
+        assertEquals(0, mainStem.getIndexes()[0]);
+        assertIndexes(new String[0], mainStem.getBoundaryIndexes());
+        assertTrue(mainStem.getUpstreamSubbasins().isEmpty());
+    }
+
+    public void testPartitionLevel1() throws Exception {
+        List<DuffySubbasin> subbasins = partition(1);
+        assertEquals(3, subbasins.size());
+        assertWavesSorted(subbasins);
+
+        DuffySubbasin mainStem = get(subbasins, "");
+        assertEquals(1, mainStem.getWave());
+        assertIndexes(new String[]{"1", "3", "5"}, mainStem.getIndexes());
+        assertEquals(0, mainStem.getIndexes()[0]);
+        assertIndexes(new String[]{"2.1", "4"}, mainStem.getBoundaryIndexes());
+
+        DuffySubbasin tributary2 = get(subbasins, "2");
+        assertEquals(0, tributary2.getWave());
+        assertIndexes(new String[]{"2.1", "2.2", "2.3"}, tributary2.getIndexes());
+        assertEquals(pfaff2Index.get("2.1").intValue(), tributary2.getIndexes()[0]);
+        assertIndexes(new String[0], tributary2.getBoundaryIndexes());
+
+        DuffySubbasin tributary4 = get(subbasins, "4");
+        assertEquals(0, tributary4.getWave());
+        assertIndexes(new String[]{"4"}, tributary4.getIndexes());
+        assertIndexes(new String[0], tributary4.getBoundaryIndexes());
+
+        assertEquals(2, mainStem.getUpstreamSubbasins().size());
+        assertTrue(mainStem.getUpstreamSubbasins().contains(tributary2));
+        assertTrue(mainStem.getUpstreamSubbasins().contains(tributary4));
+    }
+
+    public void testPartitionLevel2() throws Exception {
+        List<DuffySubbasin> subbasins = partition(2);
+        assertEquals(4, subbasins.size());
+        assertWavesSorted(subbasins);
+
+        DuffySubbasin mainStem = get(subbasins, "");
+        assertEquals(2, mainStem.getWave());
+        assertIndexes(new String[]{"1", "3", "5"}, mainStem.getIndexes());
+        assertIndexes(new String[]{"2.1", "4"}, mainStem.getBoundaryIndexes());
+
+        DuffySubbasin tributary2 = get(subbasins, "2");
+        assertEquals(1, tributary2.getWave());
+        assertIndexes(new String[]{"2.1", "2.3"}, tributary2.getIndexes());
+        assertEquals(pfaff2Index.get("2.1").intValue(), tributary2.getIndexes()[0]);
+        assertIndexes(new String[]{"2.2"}, tributary2.getBoundaryIndexes());
+
+        DuffySubbasin tributary22 = get(subbasins, "2.2");
+        assertEquals(0, tributary22.getWave());
+        assertIndexes(new String[]{"2.2"}, tributary22.getIndexes());
+        assertIndexes(new String[0], tributary22.getBoundaryIndexes());
+
+        DuffySubbasin tributary4 = get(subbasins, "4");
+        assertEquals(0, tributary4.getWave());
+        assertIndexes(new String[]{"4"}, tributary4.getIndexes());
+        assertIndexes(new String[0], tributary4.getBoundaryIndexes());
+
+        assertEquals(1, tributary2.getUpstreamSubbasins().size());
+        assertSame(tributary22, tributary2.getUpstreamSubbasins().get(0));
+    }
+
+    /**
+     * The partitioned network has to give the discharges of the whole network,
+     * apart of the linear interpolation of the boundary discharges.
+     */
+    public void testPartitionedSolution() throws Exception {
+        double[] whole = simulate(0);
+        for( int level = 1; level <= 2; level++ ) {
+            double[] partitioned = simulate(level);
+            for( int i = 0; i < whole.length; i++ ) {
+                assertEquals(whole[i], partitioned[i], 0.05 * Math.abs(whole[i]));
+            }
+        }
+    }
+
+    /**
+     * Runs the network for 6 hours of constant rain, solving the sub-basins wave after wave.
+     *
+     * @return the final state of the network.
+     */
+    private double[] simulate( int level ) throws Exception {
+        List<DuffySubbasin> subbasins = partition(level);
+
+        int hillslopesNum = orderedHillslopes.size();
+        double[] previousSolution = new double[4 * hillslopesNum];
+        double[] rain = new double[hillslopesNum];
+        for( int i = 0; i < hillslopesNum; i++ ) {
+            HillSlopeDuffy hillSlope = (HillSlopeDuffy) orderedHillslopes.get(i);
+            double upstreamArea = hillSlope.getUpstreamArea(null) / 1000000.0;
+            previousSolution[i] = 0.3 * upstreamArea;
+            previousSolution[i + hillslopesNum] = 0.7 * upstreamArea;
+            double maxSaturatedVolume = hillSlope.getParameters().getS2max();
+            previousSolution[i + 2 * hillslopesNum] = 0.2 * maxSaturatedVolume;
+            previousSolution[i + 3 * hillslopesNum] = 0.25 * maxSaturatedVolume;
+            rain[i] = 5.0;
+        }
+
+        DateTime timestamp = new DateTime(2000, 1, 1, 0, 0, 0, 0, DateTimeZone.UTC);
+        for( int step = 0; step < 6; step++ ) {
+            double[] solution = new double[previousSolution.length];
+            // the upstream sub-basins come first
+            for( DuffySubbasin subbasin : subbasins ) {
+                subbasin.solve(timestamp, 60, 1, previousSolution, solution, rain, null);
+            }
+            previousSolution = solution;
+            timestamp = timestamp.plusMinutes(60);
+        }
+        return previousSolution;
+    }
+
+    private List<DuffySubbasin> partition( int level ) {
+        return DuffySubbasin.partition(orderedHillslopes, pfaff2Index, level, ROUTING, new DummyProgressMonitor(), false);
+    }
+
+    private DuffySubbasin get( List<DuffySubbasin> subbasins, String key ) {
+        for( DuffySubbasin subbasin : subbasins ) {
+            if (subbasin.getPfafstetterKey().equals(key)) {
+                return subbasin;
+            }
+        }
+        fail("No sub-basin " + key);
+        return null;
+    }
+
+    private void assertWavesSorted( List<DuffySubbasin> subbasins ) {
+        for( int i = 1; i < subbasins.size(); i++ ) {
+            assertTrue(subbasins.get(i - 1).getWave() <= subbasins.get(i).getWave());
+        }
+    }
+
+    private void assertIndexes( String[] expectedPfafstetter, int[] indexes ) {
+        Set<Integer> expected = new HashSet<Integer>();
+        for( String pfafstetter : expectedPfafstetter ) {
+            expected.add(pfaff2Index.get(pfafstetter));
+        }
+        Set<Integer> actual = new HashSet<Integer>();
+        for( int index : indexes ) {
+            actual.add(index);
+        }
+        assertEquals(indexes.length, actual.size());
+        assertEquals(expected, actual);
+    }
+}
@@ -591,6 +591,7 @@ public class GearsMessages {
     public static final String OMSMAPCALC_AUTHORCONTACTS = "http://www.hydrologis.com";
     public static final String OMSMAPCALC_IN_RASTERS_DESCRIPTION = "The maps that are used in the calculation.";
     public static final String OMSMAPCALC_P_FUNCTION_DESCRIPTION = "The function to process.";
+    public static final String OMSMAPCALC_DO_PARALLEL_DESCRIPTION = "Evaluate the function on strips of rows in parallel (the script must not carry values from one cell to the next).";
     public static final String OMSMAPCALC_OUT_RASTER_DESCRIPTION = "The resulting map picked from the inserted function.";
 
     public static final String OMSMOSAIC12_DESCRIPTION = "Module for patching max 12 rasters.";
@@ -1425,6 +1426,7 @@ public class GearsMessages {
     public static final String OMSTIMESERIESITERATORREADER_T_CURRENT_DESCRIPTION = "The current time read (format: yyyy-MM-dd HH:mm ).";
     public static final String OMSTIMESERIESITERATORREADER_T_PREVIOUS_DESCRIPTION = "The previous time read (format: yyyy-MM-dd HH:mm ).";
     public static final String OMSTIMESERIESITERATORREADER_OUT_DATA_DESCRIPTION = "The read map of ids and values.";
+    public static final String OMSTIMESERIESITERATORREADER_DO_STREAM_DESCRIPTION = "Parse the file in a background thread and reuse the same map and arrays for the read data at every timestep.";
     public static final String OMSTIMESERIESITERATORREADER_T_START_DESCRIPTION = "The optional time at which start to read (format: yyyy-MM-dd HH:mm ).";
     public static final String OMSTIMESERIESITERATORREADER_T_END_DESCRIPTION = "The optional time at which end to read (format: yyyy-MM-dd HH:mm ).";
     public static final String OMSTIMESERIESITERATORREADER_T_TIMESTEP_DESCRIPTION = "The reading timestep in minutes.";
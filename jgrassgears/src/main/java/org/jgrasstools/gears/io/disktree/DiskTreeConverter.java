@@ -0,0 +1,66 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.disktree;
+
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+/**
+ * Converter from the java serialized disk index ({@link IDiskTree}) to
+ * the packed binary one ({@link IPackedDiskTree}).
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class DiskTreeConverter {
+
+    private DiskTreeConverter() {
+    }
+
+    /**
+     * Convert a disk index.
+     *
+     * <p>The geometries are written in the order they have in the old file,
+     * the user data are kept as string.</p>
+     *
+     * @param oldPath the path of the java serialized index.
+     * @param newPath the path of the packed index to create.
+     * @return the number of converted geometries.
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    public static int convert( String oldPath, String newPath ) throws Exception {
+        DiskTreeReader reader = new DiskTreeReader(oldPath);
+        try (PackedDiskTreeWriter writer = new PackedDiskTreeWriter(newPath)) {
+            STRtree index = reader.readIndex();
+            Envelope all = new Envelope(-Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE);
+            List<long[]> positions = index.query(all);
+            // read the file sequentially
+            positions.sort(( p1, p2 ) -> Long.compare(p1[0], p2[0]));
+            for( long[] positionSize : positions ) {
+                Geometry geometry = reader.pickGeometry(positionSize[0], positionSize[1]);
+                writer.add(geometry);
+            }
+            return positions.size();
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -119,6 +119,7 @@ public class DiskTreeReader implements IDiskTree {
      * @throws IOException
      */
     public void close() throws IOException {
-        raf.close();
+        if (raf != null)
+            raf.close();
     }
 }
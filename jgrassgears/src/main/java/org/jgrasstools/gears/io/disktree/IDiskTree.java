@@ -72,6 +72,11 @@ package org.jgrasstools.gears.io.disktree;
  * }
  * </pre>
  * 
+ * <p>Since the format depends on java serialization, it is bound to the JTS version
+ * and the whole index has to be deserialized before use. New indexes should use the
+ * {@link IPackedDiskTree} format, to which old files can be converted through
+ * {@link DiskTreeConverter}.</p>
+ * 
  * @author Andrea Antonello (www.hydrologis.com)
  */
 public interface IDiskTree {
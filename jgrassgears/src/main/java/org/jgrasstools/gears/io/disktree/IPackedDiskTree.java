@@ -0,0 +1,109 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.disktree;
+
+/**
+ * Interface for the packed binary DiskTree I/O modules.
+ *
+ * <p>
+ * Differently from the format described in {@link IDiskTree}, no java serialization
+ * is used, so the files do not depend on the JTS version and the index can
+ * be queried directly from the memory mapped file, without loading it.
+ *
+ * <p>
+ * All values are big endian. The file is defined as follows:
+ *
+ * <ul>
+ *  <li>the header of {@link #HEADER_SIZE} bytes:
+ *    <ul>
+ *      <li>4 bytes for the {@link #MAGIC} number</li>
+ *      <li>4 bytes for the format {@link #VERSION}</li>
+ *      <li>4 bytes for the number of geometries</li>
+ *      <li>4 bytes for the node capacity of the tree</li>
+ *      <li>4 bytes for the total number of nodes</li>
+ *      <li>4 bytes for the number of leaf nodes</li>
+ *      <li>8 bytes containing the address of the items table</li>
+ *      <li>8 bytes containing the address of the nodes table</li>
+ *    </ul>
+ *  </li>
+ *  <li>then the geometries are stored, each as 4 bytes for the WKB length, the WKB
+ *      bytes (extended WKB, with Z and SRID), 4 bytes for the length of the user data string (-1 if there is none)
+ *      and the UTF-8 bytes of the user data</li>
+ *  <li>then the items table, with one record of {@link #ITEM_SIZE} bytes per geometry:
+ *      minx, miny, maxx, maxy of the envelope, 8 bytes for the position of the
+ *      geometry record and 4 bytes for its size</li>
+ *  <li>then the nodes table, with one record of {@link #NODE_SIZE} bytes per node:
+ *      minx, miny, maxx, maxy of the envelope, 4 bytes for the index of the first child
+ *      and 4 bytes for the number of children</li>
+ * </ul>
+ *
+ * <p>The nodes are the ones of a Sort-Tile-Recursive packed tree and are stored level
+ * by level, from the leaves up to the root, which is the last node. The children
+ * of a leaf node are items, the children of the other nodes are nodes. Since the tree
+ * is packed, the children of a node are always contiguous.</p>
+ *
+ * <p>Example write usage:
+ *
+ * <pre>
+ * PackedDiskTreeWriter writer = new PackedDiskTreeWriter("/home/moovida/TMP/index.jdt");
+ * writer.writeGeometries(new Geometry[]{pol, line, point});
+ * </pre>
+ * </p>
+ *
+ * <p>Example read usage:
+ * <pre>
+ * PackedDiskTreeReader reader = new PackedDiskTreeReader("/home/moovida/TMP/index.jdt");
+ * List&lt;Geometry&gt; geometries = reader.query(envelope);
+ * reader.close();
+ * </pre>
+ *
+ * <p>Files in the old format can be converted through {@link DiskTreeConverter}.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public interface IPackedDiskTree {
+    /**
+     * The magic number at the start of the file ('JGDT').
+     */
+    int MAGIC = 0x4A474454;
+
+    /**
+     * The version of the format.
+     */
+    int VERSION = 1;
+
+    /**
+     * Byte size of the header.
+     */
+    int HEADER_SIZE = 40;
+
+    /**
+     * Byte size of an items table record.
+     */
+    int ITEM_SIZE = 44;
+
+    /**
+     * Byte size of a nodes table record.
+     */
+    int NODE_SIZE = 40;
+
+    /**
+     * The default maximum number of children of a node.
+     */
+    int DEFAULT_NODE_CAPACITY = 16;
+}
@@ -0,0 +1,301 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.disktree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+
+/**
+ * Reader for the packed binary disk index.
+ *
+ * <p>The file is memory mapped and the tree is traversed directly on the mapped
+ * tables, so opening the index is immediate and only the geometries that are
+ * actually picked are parsed. The reader can be used by several threads at once.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @see IPackedDiskTree
+ */
+public class PackedDiskTreeReader implements IPackedDiskTree, Closeable {
+
+    /**
+     * Size of the mapped segments of the file.
+     */
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer[] segments;
+    private final GeometryFactory geometryFactory;
+
+    private final int itemCount;
+    private final int nodeCount;
+    private final int leafCount;
+    private final long itemsAddress;
+    private final long nodesAddress;
+
+    /**
+     * Constructor.
+     *
+     * @param path the path from which to read.
+     * @throws IOException if the file can't be read or is not a packed disk index.
+     */
+    public PackedDiskTreeReader( String path ) throws IOException {
+        this(path, new GeometryFactory());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param path the path from which to read.
+     * @param geometryFactory the factory to use for the read geometries.
+     * @throws IOException if the file can't be read or is not a packed disk index.
+     */
+    public PackedDiskTreeReader( String path, GeometryFactory geometryFactory ) throws IOException {
+        this.geometryFactory = geometryFactory;
+        raf = new RandomAccessFile(path, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long length = channel.size();
+            if (length < HEADER_SIZE) {
+                throw new IOException("The file is not a packed disk index: " + path);
+            }
+            int segmentsNum = (int) ((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            segments = new MappedByteBuffer[segmentsNum];
+            for( int i = 0; i < segmentsNum; i++ ) {
+                long start = i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, length - start));
+            }
+
+            ByteBuffer header = segments[0];
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("The file is not a packed disk index: " + path);
+            }
+            int version = header.getInt(4);
+            if (version > VERSION) {
+                throw new IOException("Unsupported packed disk index version: " + version);
+            }
+            itemCount = header.getInt(8);
+            nodeCount = header.getInt(16);
+            leafCount = header.getInt(20);
+            itemsAddress = header.getLong(24);
+            nodesAddress = header.getLong(32);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of geometries in the index.
+     */
+    public int size() {
+        return itemCount;
+    }
+
+    /**
+     * @return the envelope of all the geometries or <code>null</code> if the index is empty.
+     */
+    public Envelope getBounds() {
+        if (nodeCount == 0) {
+            return null;
+        }
+        return readEnvelope(nodesAddress + (long) (nodeCount - 1) * NODE_SIZE);
+    }
+
+    /**
+     * Get the ids of the geometries whose envelope intersects the given envelope.
+     *
+     * @param searchEnvelope the envelope to search.
+     * @return the ids of the geometries, to be used with {@link #getGeometry(int)}.
+     */
+    public List<Integer> queryIds( Envelope searchEnvelope ) {
+        List<Integer> ids = new ArrayList<>();
+        if (nodeCount == 0) {
+            return ids;
+        }
+        double minX = searchEnvelope.getMinX();
+        double minY = searchEnvelope.getMinY();
+        double maxX = searchEnvelope.getMaxX();
+        double maxY = searchEnvelope.getMaxY();
+
+        int[] stack = new int[64];
+        int stackSize = 0;
+        stack[stackSize++] = nodeCount - 1;
+        while( stackSize > 0 ) {
+            int node = stack[--stackSize];
+            long address = nodesAddress + (long) node * NODE_SIZE;
+            if (!intersects(address, minX, minY, maxX, maxY)) {
+                continue;
+            }
+            int first = getInt(address + 32);
+            int childrenNum = getInt(address + 36);
+            if (node < leafCount) {
+                for( int i = first; i < first + childrenNum; i++ ) {
+                    if (intersects(itemsAddress + (long) i * ITEM_SIZE, minX, minY, maxX, maxY)) {
+                        ids.add(i);
+                    }
+                }
+            } else {
+                if (stackSize + childrenNum > stack.length) {
+                    int[] newStack = new int[Math.max(stack.length * 2, stackSize + childrenNum)];
+                    System.arraycopy(stack, 0, newStack, 0, stackSize);
+                    stack = newStack;
+                }
+                for( int i = first + childrenNum - 1; i >= first; i-- ) {
+                    stack[stackSize++] = i;
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Get the geometries whose envelope intersects the given envelope.
+     *
+     * @param searchEnvelope the envelope to search.
+     * @return the list of geometries, with the stored user data as string.
+     * @throws IOException
+     */
+    public List<Geometry> query( Envelope searchEnvelope ) throws IOException {
+        List<Integer> ids = queryIds(searchEnvelope);
+        List<Geometry> geometries = new ArrayList<>(ids.size());
+        for( Integer id : ids ) {
+            geometries.add(getGeometry(id));
+        }
+        return geometries;
+    }
+
+    /**
+     * Get the envelope of a geometry without reading the geometry.
+     *
+     * @param id the id of the geometry.
+     * @return the envelope.
+     */
+    public Envelope getEnvelope( int id ) {
+        checkId(id);
+        return readEnvelope(itemsAddress + (long) id * ITEM_SIZE);
+    }
+
+    /**
+     * Reads a single geometry.
+     *
+     * @param id the id of the geometry.
+     * @return the geometry, with the stored user data as string.
+     * @throws IOException
+     */
+    public Geometry getGeometry( int id ) throws IOException {
+        checkId(id);
+        long itemAddress = itemsAddress + (long) id * ITEM_SIZE;
+        long position = getLong(itemAddress + 32);
+        int size = getInt(itemAddress + 40);
+
+        ByteBuffer record = ByteBuffer.wrap(readBytes(position, size));
+        byte[] wkb = new byte[record.getInt()];
+        record.get(wkb);
+        Geometry geometry;
+        try {
+            geometry = new WKBReader(geometryFactory).read(wkb);
+        } catch (ParseException e) {
+            throw new IOException("Unable to read geometry " + id, e);
+        }
+        int userDataLength = record.getInt();
+        if (userDataLength >= 0) {
+            byte[] userData = new byte[userDataLength];
+            record.get(userData);
+            geometry.setUserData(new String(userData, StandardCharsets.UTF_8));
+        }
+        return geometry;
+    }
+
+    /**
+     * Closes the filehandle.
+     *
+     * <p>The mapped memory is released once the reader is garbage collected.</p>
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    private void checkId( int id ) {
+        if (id < 0 || id >= itemCount) {
+            throw new IndexOutOfBoundsException("Geometry id out of range: " + id);
+        }
+    }
+
+    private boolean intersects( long address, double minX, double minY, double maxX, double maxY ) {
+        return getDouble(address) <= maxX && getDouble(address + 16) >= minX && getDouble(address + 8) <= maxY
+                && getDouble(address + 24) >= minY;
+    }
+
+    private Envelope readEnvelope( long address ) {
+        return new Envelope(getDouble(address), getDouble(address + 16), getDouble(address + 8), getDouble(address + 24));
+    }
+
+    private int getInt( long address ) {
+        int offset = (int) (address % SEGMENT_SIZE);
+        if (offset <= SEGMENT_SIZE - 4) {
+            return segments[(int) (address / SEGMENT_SIZE)].getInt(offset);
+        }
+        return ByteBuffer.wrap(readBytes(address, 4)).getInt();
+    }
+
+    private long getLong( long address ) {
+        int offset = (int) (address % SEGMENT_SIZE);
+        if (offset <= SEGMENT_SIZE - 8) {
+            return segments[(int) (address / SEGMENT_SIZE)].getLong(offset);
+        }
+        return ByteBuffer.wrap(readBytes(address, 8)).getLong();
+    }
+
+    private double getDouble( long address ) {
+        return Double.longBitsToDouble(getLong(address));
+    }
+
+    /**
+     * Copies bytes from the mapped segments, also across segment borders.
+     */
+    private byte[] readBytes( long address, int size ) {
+        byte[] bytes = new byte[size];
+        int done = 0;
+        while( done < size ) {
+            long current = address + done;
+            // duplicate, so that the position is not shared between threads
+            ByteBuffer segment = segments[(int) (current / SEGMENT_SIZE)].duplicate();
+            segment.position((int) (current % SEGMENT_SIZE));
+            int length = Math.min(size - done, segment.remaining());
+            segment.get(bytes, done, length);
+            done += length;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.disktree;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKBWriter;
+
+/**
+ * Writer for the packed binary disk index.
+ *
+ * <p>The geometries are written to disk as they are added, only their envelopes
+ * and positions are kept in memory to build the tree on {@link #close()}.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @see IPackedDiskTree
+ */
+public class PackedDiskTreeWriter implements IPackedDiskTree, Closeable {
+
+    private final String path;
+    private final int nodeCapacity;
+
+    private DataOutputStream out;
+    private WKBWriter wkbWriter;
+    private long position;
+
+    private int count = 0;
+    private double[] envelopes = new double[4 * 1024];
+    private long[] positions = new long[1024];
+    private int[] sizes = new int[1024];
+
+    /**
+     * Constructor.
+     *
+     * @param path the path to which the index will be written.
+     */
+    public PackedDiskTreeWriter( String path ) {
+        this(path, DEFAULT_NODE_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param path the path to which the index will be written.
+     * @param nodeCapacity the maximum number of children of a tree node.
+     */
+    public PackedDiskTreeWriter( String path, int nodeCapacity ) {
+        if (nodeCapacity < 2) {
+            throw new IllegalArgumentException("The node capacity needs to be at least 2.");
+        }
+        this.path = path;
+        this.nodeCapacity = nodeCapacity;
+    }
+
+    /**
+     * Writes an array of {@link Geometry}s to the disk and closes the file.
+     *
+     * @param geometries the array of geoms to write.
+     * @throws IOException
+     */
+    public void writeGeometries( Geometry[] geometries ) throws IOException {
+        try {
+            for( Geometry geometry : geometries ) {
+                add(geometry);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Adds a geometry to the index.
+     *
+     * <p>The user data of the geometry, if available, is stored as string.
+     * Empty geometries are ignored.</p>
+     *
+     * @param geometry the geometry to add.
+     * @throws IOException
+     */
+    public void add( Geometry geometry ) throws IOException {
+        if (geometry.isEmpty()) {
+            return;
+        }
+        if (out == null) {
+            open();
+        }
+
+        byte[] wkb = wkbWriter.write(geometry);
+        Object userData = geometry.getUserData();
+        byte[] userDataBytes = userData == null ? null : userData.toString().getBytes(StandardCharsets.UTF_8);
+
+        out.writeInt(wkb.length);
+        out.write(wkb);
+        int size = 4 + wkb.length + 4;
+        if (userDataBytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(userDataBytes.length);
+            out.write(userDataBytes);
+            size += userDataBytes.length;
+        }
+
+        if (count == positions.length) {
+            int newLength = count * 2;
+            envelopes = Arrays.copyOf(envelopes, 4 * newLength);
+            positions = Arrays.copyOf(positions, newLength);
+            sizes = Arrays.copyOf(sizes, newLength);
+        }
+        Envelope envelope = geometry.getEnvelopeInternal();
+        envelopes[4 * count] = envelope.getMinX();
+        envelopes[4 * count + 1] = envelope.getMinY();
+        envelopes[4 * count + 2] = envelope.getMaxX();
+        envelopes[4 * count + 3] = envelope.getMaxY();
+        positions[count] = position;
+        sizes[count] = size;
+        count++;
+
+        position += size;
+    }
+
+    /**
+     * Builds the tree, writes the tables and closes the file.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if (envelopes == null) {
+            // already closed
+            return;
+        }
+        if (out == null) {
+            // nothing added, still write a valid empty file
+            open();
+        }
+        try {
+            long itemsAddress = position;
+
+            // sort the items tile-wise, the leaves get contiguous items
+            int[] itemOrder = strSort(envelopes, count);
+            for( int i : itemOrder ) {
+                writeEnvelope(envelopes, i);
+                out.writeLong(positions[i]);
+                out.writeInt(sizes[i]);
+            }
+            long nodesAddress = itemsAddress + (long) count * ITEM_SIZE;
+
+            // build the levels bottom up
+            double[] levelEnvelopes = new double[0];
+            int[] levelChildren = new int[0];
+            int levelSize = 0;
+            int leafCount = 0;
+            int nodeCount = 0;
+            if (count > 0) {
+                double[] childEnvelopes = new double[4 * count];
+                for( int i = 0; i < count; i++ ) {
+                    System.arraycopy(envelopes, 4 * itemOrder[i], childEnvelopes, 4 * i, 4);
+                }
+                int childCount = count;
+                int childOffset = 0;
+                boolean leaves = true;
+                while( true ) {
+                    levelSize = (childCount + nodeCapacity - 1) / nodeCapacity;
+                    levelEnvelopes = new double[4 * levelSize];
+                    levelChildren = new int[2 * levelSize];
+                    for( int n = 0; n < levelSize; n++ ) {
+                        int first = n * nodeCapacity;
+                        int last = Math.min(first + nodeCapacity, childCount);
+                        double minX = Double.POSITIVE_INFINITY;
+                        double minY = Double.POSITIVE_INFINITY;
+                        double maxX = Double.NEGATIVE_INFINITY;
+                        double maxY = Double.NEGATIVE_INFINITY;
+                        for( int c = first; c < last; c++ ) {
+                            minX = Math.min(minX, childEnvelopes[4 * c]);
+                            minY = Math.min(minY, childEnvelopes[4 * c + 1]);
+                            maxX = Math.max(maxX, childEnvelopes[4 * c + 2]);
+                            maxY = Math.max(maxY, childEnvelopes[4 * c + 3]);
+                        }
+                        levelEnvelopes[4 * n] = minX;
+                        levelEnvelopes[4 * n + 1] = minY;
+                        levelEnvelopes[4 * n + 2] = maxX;
+                        levelEnvelopes[4 * n + 3] = maxY;
+                        levelChildren[2 * n] = childOffset + first;
+                        levelChildren[2 * n + 1] = last - first;
+                    }
+                    if (leaves) {
+                        leafCount = levelSize;
+                        leaves = false;
+                    } else {
+                        childOffset += childCount;
+                    }
+                    if (levelSize == 1) {
+                        break;
+                    }
+
+                    // the order of this level is fixed by the parents, write it
+                    int[] order = strSort(levelEnvelopes, levelSize);
+                    childEnvelopes = new double[4 * levelSize];
+                    for( int i = 0; i < levelSize; i++ ) {
+                        int n = order[i];
+                        System.arraycopy(levelEnvelopes, 4 * n, childEnvelopes, 4 * i, 4);
+                        writeEnvelope(levelEnvelopes, n);
+                        out.writeInt(levelChildren[2 * n]);
+                        out.writeInt(levelChildren[2 * n + 1]);
+                    }
+                    nodeCount += levelSize;
+                    childCount = levelSize;
+                }
+                // the root
+                writeEnvelope(levelEnvelopes, 0);
+                out.writeInt(levelChildren[0]);
+                out.writeInt(levelChildren[1]);
+                nodeCount++;
+            }
+            out.close();
+            out = null;
+
+            try (RandomAccessFile raf = new RandomAccessFile(path, "rw")) {
+                raf.writeInt(MAGIC);
+                raf.writeInt(VERSION);
+                raf.writeInt(count);
+                raf.writeInt(nodeCapacity);
+                raf.writeInt(nodeCount);
+                raf.writeInt(leafCount);
+                raf.writeLong(itemsAddress);
+                raf.writeLong(nodesAddress);
+            }
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+            envelopes = null;
+            positions = null;
+            sizes = null;
+        }
+    }
+
+    private void open() throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16));
+        out.write(new byte[HEADER_SIZE]);
+        position = HEADER_SIZE;
+        // keep Z and the SRID, as the serialized geometries of the old format do
+        wkbWriter = new WKBWriter(3, true);
+    }
+
+    private void writeEnvelope( double[] envs, int index ) throws IOException {
+        for( int k = 0; k < 4; k++ ) {
+            out.writeDouble(envs[4 * index + k]);
+        }
+    }
+
+    /**
+     * Sort-Tile-Recursive ordering: the envelopes are sorted by x center
+     * in vertical slices, each slice is then sorted by y center.
+     *
+     * @return the new order of the envelopes.
+     */
+    private int[] strSort( double[] envs, int size ) {
+        Integer[] order = new Integer[size];
+        for( int i = 0; i < size; i++ ) {
+            order[i] = i;
+        }
+        Comparator<Integer> byX = Comparator.comparingDouble(i -> envs[4 * i] + envs[4 * i + 2]);
+        Comparator<Integer> byY = Comparator.comparingDouble(i -> envs[4 * i + 1] + envs[4 * i + 3]);
+        Arrays.sort(order, byX);
+
+        int parents = (size + nodeCapacity - 1) / nodeCapacity;
+        int slices = (int) Math.ceil(Math.sqrt(parents));
+        int sliceSize = slices * nodeCapacity;
+        for( int from = 0; from < size; from += sliceSize ) {
+            Arrays.sort(order, from, Math.min(from + sliceSize, size), byY);
+        }
+
+        int[] result = new int[size];
+        for( int i = 0; i < size; i++ ) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+}
@@ -25,6 +25,8 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.BitSet;
 import java.util.LinkedHashMap;
 import java.util.StringTokenizer;
@@ -39,6 +41,7 @@ import org.jgrasstools.gears.io.grasslegacy.utils.FileUtilities;
 import org.jgrasstools.gears.io.grasslegacy.utils.GrassLegacyConstans;
 import org.jgrasstools.gears.io.grasslegacy.utils.JlsTokenizer;
 import org.jgrasstools.gears.io.grasslegacy.utils.Window;
+import org.jgrasstools.gears.libs.modules.multiprocessing.ExecutionPlanner;
 import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
 
 /**
@@ -47,6 +50,12 @@ import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
  * transformation of any of those into int, float and double matrixes, as well as in the ByteBuffers
  * of the same tipes.
  * </p>
+ * <p>
+ * If the output data object is a <b>double[]</b>, the data window is read into a single row major
+ * array. In that case the cell and null files are memory mapped and the rows are decompressed in
+ * parallel, each row being independent through the row addresses table. The same mapped access
+ * is available for tiles of the data window through {@link #readTile(int, int, int, int, double[])}.
+ * </p>
  * 
  * @author Andrea Antonello - www.hydrologis.com
  * @since 1.1.0
@@ -121,6 +130,20 @@ public class GrassRasterReader extends MapReader {
 
     private double[][] outputData;
 
+    private double[] outputBuffer;
+
+    /**
+     * The rows of the data window read by every parallel task.
+     */
+    private static final int ROWS_PER_TASK = 32;
+
+    /**
+     * The mapped cell and null files, used by the parallel and tile reading.
+     */
+    private MappedFile mappedCellFile = null;
+
+    private MappedFile mappedNullFile = null;
+
     /** Creates a new instance of GrassRasterReader */
     public GrassRasterReader() {
         super(MapReader.RASTER_READER);
@@ -184,6 +207,9 @@ public class GrassRasterReader extends MapReader {
     }
 
     public void close() {
+        mappedCellFile = null;
+        mappedNullFile = null;
+        outputBuffer = null;
         try {
             cellFile.close();
             if (nullFile != null)
@@ -254,7 +280,9 @@ public class GrassRasterReader extends MapReader {
      */
     public boolean hasMoreData( IJGTProgressMonitor monitor ) throws Exception {
         try {
-            if (dataWindow != null && moreData == true) {
+            if (dataWindow != null && moreData == true && dataObject instanceof double[]) {
+                outputBuffer = readDataWindow(monitor);
+            } else if (dataWindow != null && moreData == true) {
 
                 outputData = new double[dataWindow.getRows()][dataWindow.getCols()];
 
@@ -320,7 +348,7 @@ public class GrassRasterReader extends MapReader {
                                 nullRow = initNullRow();
                             ByteBuffer wrap = ByteBuffer.wrap(nullRow);
                             for( int col = 0; col < dataWindow.getCols(); col++ ) {
-                                outputData[(int) row][col] = wrap.getDouble();
+                                outputData[(int) row][col] = getCell(wrap);
                             }
                         } else {
                             // System.out.println(", DATA ROW");
@@ -330,14 +358,14 @@ public class GrassRasterReader extends MapReader {
                             if (filerow == rowCacheRow) {
                                 ByteBuffer wrap = ByteBuffer.wrap(rowDataCache);
                                 for( int col = 0; col < dataWindow.getCols(); col++ ) {
-                                    outputData[(int) row][col] = wrap.getDouble();
+                                    outputData[(int) row][col] = getCell(wrap);
                                 }
                             } else {
                                 readRasterRow((int) filerow, rowDataCache, rowColorDataCache);
                                 rowCacheRow = (int) filerow;
                                 ByteBuffer wrap = ByteBuffer.wrap(rowDataCache);
                                 for( int col = 0; col < dataWindow.getCols(); col++ ) {
-                                    outputData[(int) row][col] = wrap.getDouble();
+                                    outputData[(int) row][col] = getCell(wrap);
                                 }
                             }
                         }
@@ -376,6 +404,8 @@ public class GrassRasterReader extends MapReader {
         moreData = false;
         if (dataObject instanceof double[][]) {
             return outputData;
+        } else if (dataObject instanceof double[]) {
+            return outputBuffer;
         } else {
             throw new RuntimeException();
         }
@@ -921,7 +951,7 @@ public class GrassRasterReader extends MapReader {
                         /* Update data range value */
                         if (cell < dataRange[0])
                             dataRange[0] = cell;
-                        else if (cell > dataRange[1])
+                        if (cell > dataRange[1])
                             dataRange[1] = cell;
                     }
                 } else if (rasterMapType == -1) {
@@ -936,7 +966,7 @@ public class GrassRasterReader extends MapReader {
                     /* Update data range value */
                     if (cell < dataRange[0])
                         dataRange[0] = cell;
-                    else if (cell > dataRange[1])
+                    if (cell > dataRange[1])
                         dataRange[1] = cell;
                 } else if (rasterMapType == -2) {
                     /* Floating point map with double values. */
@@ -958,7 +988,7 @@ public class GrassRasterReader extends MapReader {
                     /* Update data range value */
                     if (cell < dataRange[0])
                         dataRange[0] = cell;
-                    else if (cell > dataRange[1])
+                    if (cell > dataRange[1])
                         dataRange[1] = cell;
                 } else {
                     /* Don't know what to do. Probably throw some exception? */
@@ -1316,6 +1346,332 @@ public class GrassRasterReader extends MapReader {
 
     }
 
+    /**
+     * Read a cell of a row unpacked by {@link #readRasterRow(int, byte[], byte[])}.
+     * 
+     * @return the value of the cell, with the novalues of the integer maps set to NaN.
+     */
+    private double getCell( ByteBuffer values ) {
+        if (rasterMapType > 0) {
+            int cell = values.getInt();
+            return cell == Integer.MAX_VALUE ? Double.NaN : cell;
+        } else if (rasterMapType == -1) {
+            return values.getFloat();
+        }
+        return values.getDouble();
+    }
+
+    /**
+     * Read the whole data window through the mapped files, decompressing blocks of rows in parallel.
+     * 
+     * @param monitor the progress monitor.
+     * @return the values of the data window, row major, with novalues set to the novalue parameter.
+     * @throws Exception
+     */
+    private double[] readDataWindow( IJGTProgressMonitor monitor ) throws Exception {
+        mapFiles();
+        final int rows = dataWindow.getRows();
+        final int cols = dataWindow.getCols();
+        final double[] data = new double[rows * cols];
+        final int[] fileCols = getFileColumns(0, cols);
+
+        int tasks = (rows + ROWS_PER_TASK - 1) / ROWS_PER_TASK;
+        monitor.beginTask(GearsMessageHandler.getInstance().message("grass.legacy.reading") + filename, tasks); //$NON-NLS-1$
+        ExecutionPlanner planner = ExecutionPlanner.createDefaultPlanner();
+        planner.setNumberOfTasks(tasks);
+        for( int t = 0; t < tasks; t++ ) {
+            final int fromRow = t * ROWS_PER_TASK;
+            final int toRow = Math.min(rows, fromRow + ROWS_PER_TASK);
+            planner.submit(() -> {
+                readRows(fromRow, toRow, fileCols, data, 0, cols);
+                monitor.worked(1);
+            });
+        }
+        planner.join();
+        monitor.done();
+        return data;
+    }
+
+    /**
+     * Read a tile of the data window.
+     * 
+     * <p>Only the rows of the map file that fall in the tile are read, so this is a
+     * cheap random access also on large maps. Can be called from many threads.</p>
+     * 
+     * @param firstRow the first row of the tile in the data window.
+     * @param firstCol the first column of the tile in the data window.
+     * @param rows the rows of the tile.
+     * @param cols the columns of the tile.
+     * @param tile the array to fill, of size rows*cols, or <code>null</code> to create one.
+     * @return the values of the tile, row major, with novalues set to the novalue parameter.
+     * @throws IOException
+     * @throws DataFormatException
+     */
+    public double[] readTile( int firstRow, int firstCol, int rows, int cols, double[] tile ) throws IOException,
+            DataFormatException {
+        if (firstRow < 0 || firstCol < 0 || firstRow + rows > dataWindow.getRows() || firstCol + cols > dataWindow.getCols()) {
+            throw new IllegalArgumentException("The tile is outside of the data window."); //$NON-NLS-1$
+        }
+        if (tile == null) {
+            tile = new double[rows * cols];
+        }
+        mapFiles();
+        int[] fileCols = getFileColumns(firstCol, cols);
+        readRows(firstRow, firstRow + rows, fileCols, tile, -firstRow * cols, cols);
+        return tile;
+    }
+
+    private synchronized void mapFiles() throws IOException {
+        if (mappedCellFile == null) {
+            mappedCellFile = new MappedFile(cellFile.getChannel());
+            if (nullFile != null) {
+                mappedNullFile = new MappedFile(nullFile.getChannel());
+            }
+        }
+    }
+
+    /**
+     * Get the column of the map file of the columns of the data window.
+     * 
+     * @return the file columns, -1 for the columns outside of the file.
+     */
+    private int[] getFileColumns( int firstCol, int cols ) {
+        double activeewres = dataWindow.getWEResolution();
+        double activewest = dataWindow.getWest();
+        double filewest = fileWindow.getWest();
+        double fileewres = fileWindow.getWEResolution();
+        int[] fileCols = new int[cols];
+        for( int c = 0; c < cols; c++ ) {
+            double x = Math.floor((((activewest + ((firstCol + c) * activeewres)) - filewest) / fileewres));
+            fileCols[c] = (x < 0 || x >= fileWindow.getCols()) ? -1 : (int) x;
+        }
+        return fileCols;
+    }
+
+    /**
+     * Read rows of the data window into a row major array.
+     * 
+     * @param fromRow the first row of the data window.
+     * @param toRow the row after the last one.
+     * @param fileCols the file columns of the columns to read, as given by {@link #getFileColumns(int, int)}.
+     * @param data the array to fill, row r going at <code>offset + r * cols</code>.
+     * @param offset the offset of the data window row 0 in the array.
+     * @param cols the columns to read.
+     */
+    private void readRows( int fromRow, int toRow, int[] fileCols, double[] data, int offset, int cols ) throws IOException,
+            DataFormatException {
+        double nv = novalue instanceof Number ? ((Number) novalue).doubleValue() : Double.NaN;
+        double filenorth = fileWindow.getNorth();
+        double filensres = fileWindow.getNSResolution();
+        double datanorth = dataWindow.getNorth();
+        double datansres = dataWindow.getNSResolution();
+
+        int fileColsNum = fileWindow.getCols();
+        double[] fileRow = new double[fileColsNum];
+        boolean[] fileNulls = new boolean[fileColsNum];
+        byte[] rowBytes = new byte[fileColsNum * Math.max(numberOfBytesPerValue, rasterMapType)];
+        byte[] nullBytes = new byte[(fileColsNum + 7) / 8];
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        Inflater inflater = new Inflater();
+        try {
+            int cachedFileRow = -1;
+            for( int row = fromRow; row < toRow; row++ ) {
+                double filerow = Math.floor((filenorth - (datanorth - (row * datansres))) / filensres);
+                int index = offset + row * cols;
+                if (filerow < 0 || filerow >= fileWindow.getRows()) {
+                    for( int c = 0; c < cols; c++ ) {
+                        data[index + c] = nv;
+                    }
+                    continue;
+                }
+                if ((int) filerow != cachedFileRow) {
+                    cachedFileRow = (int) filerow;
+                    decodeFileRow(cachedFileRow, fileRow, fileNulls, rowBytes, nullBytes, inflater, nv);
+                }
+                for( int c = 0; c < cols; c++ ) {
+                    int fileCol = fileCols[c];
+                    if (fileCol == -1 || fileNulls[fileCol]) {
+                        data[index + c] = nv;
+                    } else {
+                        double cell = fileRow[fileCol];
+                        data[index + c] = cell;
+                        if (cell < min)
+                            min = cell;
+                        if (cell > max)
+                            max = cell;
+                    }
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+        updateDataRange(min, max);
+    }
+
+    private void updateDataRange( double min, double max ) {
+        synchronized (dataRange) {
+            if (min < dataRange[0])
+                dataRange[0] = min;
+            if (max > dataRange[1])
+                dataRange[1] = max;
+        }
+    }
+
+    /**
+     * Decode a row of the map file from the mapped files, following the same rules of
+     * {@link #readRasterRow(int, byte[], byte[])}.
+     * 
+     * <p>The null cells are flagged in <code>fileNulls</code> and set to <code>nv</code>.</p>
+     */
+    private void decodeFileRow( int filerow, double[] fileRow, boolean[] fileNulls, byte[] rowBytes, byte[] nullBytes,
+            Inflater inflater, double nv ) throws IOException, DataFormatException {
+        int fileColsNum = fileWindow.getCols();
+        boolean iscompressed = compressed == 1;
+        if (rasterMapType < 0) {
+            int rowSize = fileColsNum * numberOfBytesPerValue;
+            if (iscompressed) {
+                long address = addressesofrows[filerow];
+                int length = (int) (addressesofrows[filerow + 1] - address) - 1;
+                int firstbyte = mappedCellFile.get(address) & 0xff;
+                if (firstbyte == 49) {
+                    byte[] compressedBytes = new byte[length];
+                    mappedCellFile.get(address + 1, compressedBytes, length);
+                    inflater.reset();
+                    inflater.setInput(compressedBytes, 0, length);
+                    inflater.inflate(rowBytes, 0, rowSize);
+                } else {
+                    mappedCellFile.get(address + 1, rowBytes, Math.min(length, rowSize));
+                }
+            } else {
+                mappedCellFile.get((long) filerow * rowSize, rowBytes, rowSize);
+            }
+            ByteBuffer values = ByteBuffer.wrap(rowBytes);
+            for( int c = 0; c < fileColsNum; c++ ) {
+                double cell = rasterMapType == -1 ? values.getFloat() : values.getDouble();
+                if (reclassTable != null) {
+                    cell = ((Integer) reclassTable.elementAt((int) cell)).doubleValue();
+                }
+                fileRow[c] = cell;
+                fileNulls[c] = false;
+            }
+        } else {
+            int bytespervalue;
+            int length;
+            if (iscompressed) {
+                long address = addressesofrows[filerow];
+                length = (int) (addressesofrows[filerow + 1] - address) - 1;
+                bytespervalue = mappedCellFile.get(address) & 0xff;
+                mappedCellFile.get(address + 1, rowBytes, length);
+            } else {
+                bytespervalue = rasterMapType;
+                length = fileColsNum * bytespervalue;
+                mappedCellFile.get((long) filerow * length, rowBytes, length);
+            }
+            int c = 0;
+            int position = 0;
+            if (!iscompressed || length == bytespervalue * fileColsNum) {
+                while( c < fileColsNum ) {
+                    int cell = getInteger(rowBytes, position, bytespervalue);
+                    fileNulls[c] = isIntegerNull(cell);
+                    fileRow[c++] = toIntegerCell(cell, nv);
+                    position += bytespervalue;
+                }
+            } else {
+                int couples = length / (1 + bytespervalue);
+                for( int i = 0; i < couples && c < fileColsNum; i++ ) {
+                    int count = rowBytes[position] & 0xff;
+                    int rawCell = getInteger(rowBytes, position + 1, bytespervalue);
+                    boolean isNull = isIntegerNull(rawCell);
+                    double cell = toIntegerCell(rawCell, nv);
+                    position += 1 + bytespervalue;
+                    for( int j = 0; j < count && c < fileColsNum; j++ ) {
+                        fileNulls[c] = isNull;
+                        fileRow[c++] = cell;
+                    }
+                }
+            }
+        }
+
+        if (mappedNullFile != null) {
+            mappedNullFile.get((long) filerow * nullBytes.length, nullBytes, nullBytes.length);
+            for( int c = 0; c < fileColsNum; c++ ) {
+                if ((nullBytes[c / 8] & (0x80 >> (c % 8))) != 0) {
+                    fileRow[c] = nv;
+                    fileNulls[c] = true;
+                }
+            }
+        }
+    }
+
+    private boolean isIntegerNull( int cell ) {
+        /* File is an integer map file with 0 = novalue */
+        return cell == 0 && isOldIntegerMap;
+    }
+
+    private double toIntegerCell( int cell, double nv ) {
+        if (isIntegerNull(cell)) {
+            return nv;
+        }
+        if (reclassTable != null) {
+            cell = ((Integer) reclassTable.elementAt(cell)).intValue();
+        }
+        return cell;
+    }
+
+    /**
+     * Read a big endian integer of 1 to 4 bytes, of which only the 2 bytes one is signed.
+     */
+    private static int getInteger( byte[] bytes, int position, int size ) {
+        if (size == 2) {
+            return (short) (((bytes[position] & 0xff) << 8) | (bytes[position + 1] & 0xff));
+        }
+        int value = 0;
+        for( int i = 0; i < size; i++ ) {
+            value = (value << 8) | (bytes[position + i] & 0xff);
+        }
+        return value;
+    }
+
+    /**
+     * A read only memory mapped file, mapped in segments to go beyond the 2GB of a single mapping.
+     */
+    private static class MappedFile {
+        private static final long SEGMENT_SIZE = 1L << 30;
+
+        private final MappedByteBuffer[] segments;
+
+        MappedFile( FileChannel channel ) throws IOException {
+            long size = channel.size();
+            int segmentsNum = (int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            segments = new MappedByteBuffer[segmentsNum];
+            for( int i = 0; i < segmentsNum; i++ ) {
+                long position = i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_SIZE, size - position));
+            }
+        }
+
+        byte get( long position ) {
+            return segments[(int) (position / SEGMENT_SIZE)].get((int) (position % SEGMENT_SIZE));
+        }
+
+        /**
+         * Copy bytes into an array, on a view of the buffers so that many threads can read at once.
+         */
+        void get( long position, byte[] bytes, int length ) {
+            int done = 0;
+            while( done < length ) {
+                ByteBuffer segment = segments[(int) (position / SEGMENT_SIZE)].duplicate();
+                int segmentPosition = (int) (position % SEGMENT_SIZE);
+                segment.position(segmentPosition);
+                int chunk = Math.min(length - done, segment.limit() - segmentPosition);
+                segment.get(bytes, done, chunk);
+                done += chunk;
+                position += chunk;
+            }
+        }
+    }
+
     /**
      * @param tmp
      */
@@ -1340,4 +1696,15 @@ public class GrassRasterReader extends MapReader {
     public double[] getRange() {
         return range;
     }
+
+    /**
+     * retrieve the range of the values read so far, novalues excluded
+     * 
+     * @return the min and max, or +/- infinity if no value was read.
+     */
+    public double[] getDataRange() {
+        synchronized (dataRange) {
+            return new double[]{dataRange[0], dataRange[1]};
+        }
+    }
 }
@@ -119,4 +119,21 @@ public abstract class ALasReader extends Las implements AutoCloseable{
      */
     public abstract void setOverrideGpsTimeType( int type );
 
+    /**
+     * Open a stream on the points of the file, that reads them in batches
+     * without creating an object per point.
+     * 
+     * <p>The stream is independent from the reader and needs to be closed on its own.</p>
+     * 
+     * @return the point stream.
+     * @throws IOException if the file is compressed or can't be opened.
+     */
+    public LasPointStream getPointStream() throws IOException {
+        File lasFile = getLasFile();
+        if (lasFile.getName().toLowerCase().endsWith(".laz")) {
+            throw new IOException("Streaming is not supported for compressed las files: " + lasFile);
+        }
+        return new LasPointStream(lasFile, getHeader());
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.las.core;
+
+/**
+ * Visitor of the batches of a las point stream.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public interface ILasBatchVisitor {
+
+    /**
+     * Process a batch of points.
+     *
+     * <p>The batch is reused for the next points, so its content
+     * must not be kept after the method returns.</p>
+     *
+     * @param batch the batch of read points.
+     * @throws Exception
+     */
+    void visit( LasPointBatch batch ) throws Exception;
+}
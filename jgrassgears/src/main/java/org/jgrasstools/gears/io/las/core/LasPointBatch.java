@@ -0,0 +1,163 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.las.core;
+
+/**
+ * A batch of las points, stored as one primitive array per record field.
+ *
+ * <p>The batch is meant to be reused, the arrays are allocated once with the
+ * capacity of the batch and only the first {@link #size} positions are valid
+ * after a read. The values follow the conventions of {@link LasRecord}.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class LasPointBatch {
+    /**
+     * The x coordinates, with scale and offset already applied.
+     */
+    public final double[] x;
+
+    /**
+     * The y coordinates, with scale and offset already applied.
+     */
+    public final double[] y;
+
+    /**
+     * The z coordinates, with scale and offset already applied.
+     */
+    public final double[] z;
+
+    /**
+     * The intensity values.
+     */
+    public final short[] intensity;
+
+    /**
+     * The return numbers.
+     */
+    public final byte[] returnNumber;
+
+    /**
+     * Number of Returns (given pulse).
+     */
+    public final byte[] numberOfReturns;
+
+    /**
+     * Classifications.
+     */
+    public final byte[] classification;
+
+    /**
+     * Gps timestamps (-1 if not available in the file).
+     */
+    public final double[] gpsTime;
+
+    /**
+     * Red color components.
+     */
+    public final short[] red;
+
+    /**
+     * Green color components.
+     */
+    public final short[] green;
+
+    /**
+     * Blue color components.
+     */
+    public final short[] blue;
+
+    /**
+     * The number of valid points in the batch.
+     */
+    public int size = 0;
+
+    /**
+     * The position in the file of the first point of the batch, starting with 0.
+     */
+    public long firstPoint = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity the maximum number of points of the batch.
+     */
+    public LasPointBatch( int capacity ) {
+        x = new double[capacity];
+        y = new double[capacity];
+        z = new double[capacity];
+        intensity = new short[capacity];
+        returnNumber = new byte[capacity];
+        numberOfReturns = new byte[capacity];
+        classification = new byte[capacity];
+        gpsTime = new double[capacity];
+        red = new short[capacity];
+        green = new short[capacity];
+        blue = new short[capacity];
+    }
+
+    /**
+     * @return the maximum number of points of the batch.
+     */
+    public int getCapacity() {
+        return x.length;
+    }
+
+    /**
+     * Copy a point of another batch into this batch.
+     *
+     * @param index the index of the point in this batch.
+     * @param source the batch to copy the point from.
+     * @param sourceIndex the index of the point in the source batch.
+     */
+    public void set( int index, LasPointBatch source, int sourceIndex ) {
+        x[index] = source.x[sourceIndex];
+        y[index] = source.y[sourceIndex];
+        z[index] = source.z[sourceIndex];
+        intensity[index] = source.intensity[sourceIndex];
+        returnNumber[index] = source.returnNumber[sourceIndex];
+        numberOfReturns[index] = source.numberOfReturns[sourceIndex];
+        classification[index] = source.classification[sourceIndex];
+        gpsTime[index] = source.gpsTime[sourceIndex];
+        red[index] = source.red[sourceIndex];
+        green[index] = source.green[sourceIndex];
+        blue[index] = source.blue[sourceIndex];
+    }
+
+    /**
+     * Copy a point of the batch into a {@link LasRecord}.
+     *
+     * @param index the index of the point in the batch.
+     * @param record the record to fill, which can be reused between calls.
+     * @return the filled record.
+     */
+    public LasRecord toRecord( int index, LasRecord record ) {
+        record.x = x[index];
+        record.y = y[index];
+        record.z = z[index];
+        record.intensity = intensity[index];
+        record.returnNumber = returnNumber[index];
+        record.numberOfReturns = numberOfReturns[index];
+        record.classification = classification[index];
+        record.gpsTime = gpsTime[index];
+        record.color[0] = red[index];
+        record.color[1] = green[index];
+        record.color[2] = blue[index];
+        return record;
+    }
+}
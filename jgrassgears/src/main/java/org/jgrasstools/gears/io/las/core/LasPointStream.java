@@ -0,0 +1,264 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.las.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Streaming reader of the point records of a las file.
+ *
+ * <p>The point data are memory mapped and decoded in batches into the
+ * primitive arrays of a {@link LasPointBatch}, so that no object is created
+ * per point. The header is taken from an {@link ALasReader}, see
+ * {@link ALasReader#getPointStream()}.</p>
+ *
+ * <p>A stream is not thread safe, but several streams on different ranges
+ * of the same file can be used in parallel.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class LasPointStream implements AutoCloseable {
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+
+    private final long offset;
+    private final int recordLength;
+    private final byte pointDataFormat;
+    private final double xScale;
+    private final double yScale;
+    private final double zScale;
+    private final double xOffset;
+    private final double yOffset;
+    private final double zOffset;
+
+    /**
+     * The maximum number of points in a mapped segment, so that no record
+     * crosses a segment border.
+     */
+    private final long pointsPerSegment;
+    private MappedByteBuffer segment;
+    private long segmentFirstPoint = -1;
+    private long segmentPointsNum = 0;
+
+    private final long firstPoint;
+    private final long endPoint;
+    private long nextPoint;
+
+    /**
+     * Constructor for the stream over all the points of the file.
+     *
+     * @param lasFile the las file.
+     * @param header the header of the file.
+     * @throws IOException
+     */
+    public LasPointStream( File lasFile, ILasHeader header ) throws IOException {
+        this(lasFile, header, 0, header.getRecordsCount());
+    }
+
+    /**
+     * Constructor for the stream over a range of points of the file.
+     *
+     * @param lasFile the las file.
+     * @param header the header of the file.
+     * @param firstPoint the position of the first point to read, starting with 0.
+     * @param endPoint the position after the last point to read.
+     * @throws IOException
+     */
+    public LasPointStream( File lasFile, ILasHeader header, long firstPoint, long endPoint ) throws IOException {
+        this(lasFile, header, firstPoint, endPoint, Integer.MAX_VALUE / header.getRecordLength());
+    }
+
+    /**
+     * Constructor for the stream over a range of points of the file.
+     *
+     * @param lasFile the las file.
+     * @param header the header of the file.
+     * @param firstPoint the position of the first point to read, starting with 0.
+     * @param endPoint the position after the last point to read.
+     * @param pointsPerSegment the maximum number of points mapped at once.
+     * @throws IOException
+     */
+    public LasPointStream( File lasFile, ILasHeader header, long firstPoint, long endPoint, long pointsPerSegment )
+            throws IOException {
+        if (pointsPerSegment < 1 || pointsPerSegment > Integer.MAX_VALUE / header.getRecordLength()) {
+            throw new IllegalArgumentException("Invalid number of points per segment: " + pointsPerSegment);
+        }
+        long records = header.getRecordsCount();
+        if (firstPoint < 0 || endPoint > records || firstPoint > endPoint) {
+            throw new IllegalArgumentException("Invalid point range: " + firstPoint + " - " + endPoint);
+        }
+        this.firstPoint = firstPoint;
+        this.endPoint = endPoint;
+        nextPoint = firstPoint;
+
+        offset = header.getOffset();
+        recordLength = header.getRecordLength();
+        pointDataFormat = header.getPointDataFormat();
+        double[] scale = header.getXYZScale();
+        xScale = scale[0];
+        yScale = scale[1];
+        zScale = scale[2];
+        double[] xyzOffset = header.getXYZOffset();
+        xOffset = xyzOffset[0];
+        yOffset = xyzOffset[1];
+        zOffset = xyzOffset[2];
+        this.pointsPerSegment = pointsPerSegment;
+
+        raf = new RandomAccessFile(lasFile, "r");
+        channel = raf.getChannel();
+    }
+
+    /**
+     * @return the number of points in the range of the stream.
+     */
+    public long getPointsCount() {
+        return endPoint - firstPoint;
+    }
+
+    /**
+     * @return <code>true</code> if there are still points to read.
+     */
+    public boolean hasNext() {
+        return nextPoint < endPoint;
+    }
+
+    /**
+     * Move to a given point of the file.
+     *
+     * @param pointNumber the position of the point, starting with 0.
+     */
+    public void seek( long pointNumber ) {
+        if (pointNumber < firstPoint || pointNumber > endPoint) {
+            throw new IllegalArgumentException("Point outside of the stream range: " + pointNumber);
+        }
+        nextPoint = pointNumber;
+    }
+
+    /**
+     * Read the next points into a batch.
+     *
+     * @param batch the batch to fill, up to its capacity.
+     * @return the number of read points, 0 if the stream is finished.
+     * @throws IOException
+     */
+    public int readBatch( LasPointBatch batch ) throws IOException {
+        return readBatch(batch, batch.getCapacity());
+    }
+
+    /**
+     * Read the next points into a batch.
+     *
+     * @param batch the batch to fill.
+     * @param maxPoints the maximum number of points to read, limited by the capacity of the batch.
+     * @return the number of read points, 0 if the stream is finished.
+     * @throws IOException
+     */
+    public int readBatch( LasPointBatch batch, int maxPoints ) throws IOException {
+        int count = (int) Math.min(Math.min(batch.getCapacity(), maxPoints), endPoint - nextPoint);
+        batch.firstPoint = nextPoint;
+        batch.size = 0;
+        if (count <= 0) {
+            return 0;
+        }
+
+        boolean hasGpsTime = pointDataFormat == 1 || pointDataFormat == 3;
+        int colorPosition = pointDataFormat == 2 ? 20 : pointDataFormat == 3 ? 28 : -1;
+        if (!hasGpsTime) {
+            Arrays.fill(batch.gpsTime, 0, count, -1);
+        }
+        if (colorPosition < 0) {
+            Arrays.fill(batch.red, 0, count, (short) 100);
+            Arrays.fill(batch.green, 0, count, (short) 100);
+            Arrays.fill(batch.blue, 0, count, (short) 100);
+        }
+
+        int i = 0;
+        while( i < count ) {
+            mapSegment(nextPoint);
+            int segmentCount = (int) Math.min(count - i, segmentFirstPoint + segmentPointsNum - nextPoint);
+            int base = (int) ((nextPoint - segmentFirstPoint) * recordLength);
+            for( int k = 0; k < segmentCount; k++, i++, base += recordLength ) {
+                batch.x[i] = segment.getInt(base) * xScale + xOffset;
+                batch.y[i] = segment.getInt(base + 4) * yScale + yOffset;
+                batch.z[i] = segment.getInt(base + 8) * zScale + zOffset;
+                batch.intensity[i] = segment.getShort(base + 12);
+                byte returns = segment.get(base + 14);
+                batch.returnNumber[i] = (byte) (returns & 0x07);
+                batch.numberOfReturns[i] = (byte) ((returns >> 3) & 0x07);
+                batch.classification[i] = segment.get(base + 15);
+                // skipped: scan angle rank, file marker, point source id
+                if (hasGpsTime) {
+                    batch.gpsTime[i] = segment.getDouble(base + 20);
+                }
+                if (colorPosition > 0) {
+                    batch.red[i] = segment.getShort(base + colorPosition);
+                    batch.green[i] = segment.getShort(base + colorPosition + 2);
+                    batch.blue[i] = segment.getShort(base + colorPosition + 4);
+                }
+            }
+            nextPoint += segmentCount;
+        }
+        batch.size = count;
+        return count;
+    }
+
+    /**
+     * Visit all the remaining points of the stream.
+     *
+     * @param visitor the visitor to which the batches are passed.
+     * @param batchSize the number of points per batch.
+     * @throws Exception
+     */
+    public void visit( ILasBatchVisitor visitor, int batchSize ) throws Exception {
+        LasPointBatch batch = new LasPointBatch(batchSize);
+        while( readBatch(batch) > 0 ) {
+            visitor.visit(batch);
+        }
+    }
+
+    /**
+     * Map the segment of the file containing the given point, if not already mapped.
+     *
+     * <p>Segments start at multiples of {@link #pointsPerSegment}, so that seeking
+     * back and forth inside a segment never maps the file again.</p>
+     */
+    private void mapSegment( long point ) throws IOException {
+        if (segment != null && point >= segmentFirstPoint && point < segmentFirstPoint + segmentPointsNum) {
+            return;
+        }
+        segmentFirstPoint = Math.max(firstPoint, point / pointsPerSegment * pointsPerSegment);
+        long segmentEndPoint = Math.min((point / pointsPerSegment + 1) * pointsPerSegment, endPoint);
+        segmentPointsNum = segmentEndPoint - segmentFirstPoint;
+        segment = channel.map(FileChannel.MapMode.READ_ONLY, offset + segmentFirstPoint * recordLength,
+                segmentPointsNum * recordLength);
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public void close() throws IOException {
+        segment = null;
+        raf.close();
+    }
+}
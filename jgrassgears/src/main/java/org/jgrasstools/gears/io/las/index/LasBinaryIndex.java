@@ -0,0 +1,270 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.las.index;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jgrasstools.gears.io.las.index.strtree.STRtreeJGT;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Binary layout of the las indexes written by the {@link LasIndexer}.
+ *
+ * <p>All values are big endian. Both index types start with 4 bytes for the
+ * {@link #MAGIC} number, 4 bytes for the {@link #VERSION}, 4 bytes for the
+ * index type ({@link #TYPE_CELLS} or {@link #TYPE_FOLDER}) and 4 bytes for
+ * the number of records.</p>
+ *
+ * <p>The cells index of a single las file (the <code>lasfix</code> file) contains
+ * fixed size records of {@link #CELL_RECORD_SIZE} bytes, each made of the doubles
+ * minx, miny, maxx, maxy, first point, end point, average elevation and average
+ * intensity of the cell. The file can therefore be read directly by mapping it.</p>
+ *
+ * <p>The folder index contains for every las file the doubles minx, miny, maxx, maxy,
+ * then 8 bytes for the size and 8 bytes for the last modification time of the
+ * original file, 2 bytes for the length of the name of the indexed file and the
+ * UTF-8 bytes of the name.</p>
+ *
+ * <p>Indexes of older versions, serialized as java objects, are still read.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class LasBinaryIndex {
+
+    /**
+     * The magic number at the start of the file ('LASX').
+     */
+    public static final int MAGIC = 0x4C415358;
+
+    /**
+     * The version of the format.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Index of the cells of a single las file.
+     */
+    public static final int TYPE_CELLS = 1;
+
+    /**
+     * Index of the las files of a folder.
+     */
+    public static final int TYPE_FOLDER = 2;
+
+    /**
+     * Byte size of the header.
+     */
+    public static final int HEADER_SIZE = 16;
+
+    /**
+     * Byte size of a cell record.
+     */
+    public static final int CELL_RECORD_SIZE = 64;
+
+    /**
+     * An entry of the folder index.
+     */
+    public static class FolderEntry {
+        /**
+         * The data envelope of the las file.
+         */
+        public final Envelope envelope;
+        /**
+         * The name of the indexed las file.
+         */
+        public final String indexedName;
+        /**
+         * The size of the original las file at indexing time.
+         */
+        public final long size;
+        /**
+         * The last modification time of the original las file at indexing time.
+         */
+        public final long lastModified;
+
+        public FolderEntry( Envelope envelope, String indexedName, long size, long lastModified ) {
+            this.envelope = envelope;
+            this.indexedName = indexedName;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private LasBinaryIndex() {
+    }
+
+    /**
+     * Write the cells index of a las file.
+     *
+     * @param file the file to write.
+     * @param cells the cells as [minx, miny, maxx, maxy, first point, end point,
+     *          average elevation, average intensity].
+     * @throws IOException
+     */
+    public static void writeCells( File file, List<double[]> cells ) throws IOException {
+        try (DataOutputStream out = openOutput(file, TYPE_CELLS, cells.size())) {
+            for( double[] cell : cells ) {
+                for( int i = 0; i < 8; i++ ) {
+                    out.writeDouble(cell[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the index of a folder of las files.
+     *
+     * @param file the file to write.
+     * @param entries the entries of the las files.
+     * @throws IOException
+     */
+    public static void writeFolder( File file, List<FolderEntry> entries ) throws IOException {
+        try (DataOutputStream out = openOutput(file, TYPE_FOLDER, entries.size())) {
+            for( FolderEntry entry : entries ) {
+                out.writeDouble(entry.envelope.getMinX());
+                out.writeDouble(entry.envelope.getMinY());
+                out.writeDouble(entry.envelope.getMaxX());
+                out.writeDouble(entry.envelope.getMaxY());
+                out.writeLong(entry.size);
+                out.writeLong(entry.lastModified);
+                byte[] name = entry.indexedName.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(name.length);
+                out.write(name);
+            }
+        }
+    }
+
+    /**
+     * Check if a file is a binary las index.
+     *
+     * @param file the file to check.
+     * @return <code>true</code> if the file starts with the magic number.
+     * @throws IOException
+     */
+    public static boolean isBinaryIndex( File file ) throws IOException {
+        if (file.length() < HEADER_SIZE) {
+            return false;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return raf.readInt() == MAGIC;
+        }
+    }
+
+    /**
+     * Read a binary index into a tree.
+     *
+     * <p>The items of the tree are the same as the ones of the serialized indexes:
+     * the double arrays [first point, end point, average elevation, average intensity]
+     * for the cells index and the names of the indexed las files for the folder index.</p>
+     *
+     * @param file the index file.
+     * @return the tree.
+     * @throws IOException
+     */
+    public static STRtreeJGT readIndex( File file ) throws IOException {
+        STRtreeJGT tree = new STRtreeJGT();
+        ByteBuffer buffer = map(file);
+        int type = checkHeader(buffer, file);
+        int count = buffer.getInt(12);
+        if (type == TYPE_CELLS) {
+            for( int i = 0, pos = HEADER_SIZE; i < count; i++, pos += CELL_RECORD_SIZE ) {
+                Envelope envelope = new Envelope(buffer.getDouble(pos), buffer.getDouble(pos + 16), buffer.getDouble(pos + 8),
+                        buffer.getDouble(pos + 24));
+                double[] info = {buffer.getDouble(pos + 32), buffer.getDouble(pos + 40), buffer.getDouble(pos + 48),
+                        buffer.getDouble(pos + 56)};
+                tree.insert(envelope, info);
+            }
+        } else {
+            for( FolderEntry entry : readFolderEntries(buffer, count) ) {
+                tree.insert(entry.envelope, entry.indexedName);
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Read the entries of a binary folder index.
+     *
+     * @param file the index file.
+     * @return the list of entries.
+     * @throws IOException
+     */
+    public static List<FolderEntry> readFolder( File file ) throws IOException {
+        ByteBuffer buffer = map(file);
+        int type = checkHeader(buffer, file);
+        if (type != TYPE_FOLDER) {
+            throw new IOException("Not a las folder index: " + file);
+        }
+        return readFolderEntries(buffer, buffer.getInt(12));
+    }
+
+    private static List<FolderEntry> readFolderEntries( ByteBuffer buffer, int count ) {
+        List<FolderEntry> entries = new ArrayList<>(count);
+        buffer.position(HEADER_SIZE);
+        for( int i = 0; i < count; i++ ) {
+            double minX = buffer.getDouble();
+            double minY = buffer.getDouble();
+            double maxX = buffer.getDouble();
+            double maxY = buffer.getDouble();
+            long size = buffer.getLong();
+            long lastModified = buffer.getLong();
+            byte[] name = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(name);
+            entries.add(new FolderEntry(new Envelope(minX, maxX, minY, maxY), new String(name, StandardCharsets.UTF_8), size,
+                    lastModified));
+        }
+        return entries;
+    }
+
+    private static DataOutputStream openOutput( File file, int type, int count ) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(type);
+        out.writeInt(count);
+        return out;
+    }
+
+    private static ByteBuffer map( File file ) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+    }
+
+    private static int checkHeader( ByteBuffer buffer, File file ) throws IOException {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a binary las index: " + file);
+        }
+        int version = buffer.getInt(4);
+        if (version > VERSION) {
+            throw new IOException("Unsupported las index version " + version + ": " + file);
+        }
+        return buffer.getInt(8);
+    }
+}
@@ -17,20 +17,23 @@
  */
 package org.jgrasstools.gears.io.las.index;
 
+import static java.lang.Math.floor;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static java.lang.Math.round;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.io.RandomAccessFile;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -44,41 +47,38 @@ import oms3.annotations.Name;
 import oms3.annotations.Status;
 import oms3.annotations.UI;
 
-import org.geotools.coverage.grid.GridCoordinates2D;
-import org.geotools.coverage.grid.GridGeometry2D;
 import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
-import org.geotools.geometry.DirectPosition2D;
 import org.geotools.geometry.Envelope2D;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.geometry.jts.ReferencedEnvelope3D;
-import org.geotools.referencing.CRS;
 import org.jgrasstools.gears.io.las.core.ALasReader;
 import org.jgrasstools.gears.io.las.core.ALasWriter;
 import org.jgrasstools.gears.io.las.core.ILasHeader;
+import org.jgrasstools.gears.io.las.core.LasPointBatch;
+import org.jgrasstools.gears.io.las.core.LasPointStream;
 import org.jgrasstools.gears.io.las.core.LasRecord;
-import org.jgrasstools.gears.io.las.index.strtree.STRtreeJGT;
+import org.jgrasstools.gears.io.las.index.LasBinaryIndex.FolderEntry;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
+import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.gears.libs.modules.multiprocessing.BlockingExecutorService;
 import org.jgrasstools.gears.modules.utils.fileiterator.OmsFileIterator;
 import org.jgrasstools.gears.utils.CrsUtilities;
-import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.jgrasstools.gears.utils.files.FileUtilities;
 import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
-import org.opengis.geometry.DirectPosition;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
+import com.vividsolutions.jts.algorithm.ConvexHull;
 import com.vividsolutions.jts.geom.Coordinate;
-import com.vividsolutions.jts.geom.CoordinateList;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LinearRing;
-import com.vividsolutions.jts.geom.MultiPoint;
 import com.vividsolutions.jts.geom.Polygon;
 
 @Description("Creates indexes for Las files.")
@@ -118,8 +118,19 @@ public class LasIndexer extends JGTModel {
     @In
     public int pThreads = 1;
 
+    /**
+     * The number of points decoded at once while streaming a las file.
+     */
+    private static final int BATCH_SIZE = 100000;
+    /**
+     * The number of points of the indexed file that are gathered in memory
+     * before being written.
+     */
+    private static final int WRITE_WINDOW_SIZE = 1 << 19;
+
     private CoordinateReferenceSystem crs;
     private ConcurrentLinkedQueue<Polygon> envelopesQueue;
+    private ConcurrentLinkedQueue<String> failures;
 
     @Execute
     public void process() throws Exception {
@@ -160,62 +171,63 @@ public class LasIndexer extends JGTModel {
         iter.process();
 
         List<File> filesList = iter.filesList;
-        pm.beginTask("Creating readers index...", filesList.size());
-        STRtreeJGT mainTree = new STRtreeJGT();
-        for( File file : filesList ) {
+        File mainIndex = new File(inFolder, pIndexname);
+        Map<String, FolderEntry> previousEntries = readPreviousEntries(mainIndex);
+        failures = new ConcurrentLinkedQueue<>();
+
+        /*
+         * read the headers
+         */
+        pm.beginTask("Reading las headers...", filesList.size());
+        FolderEntry[] entries = new FolderEntry[filesList.size()];
+        CoordinateReferenceSystem[] headerCrs = new CoordinateReferenceSystem[filesList.size()];
+        runOnFiles(filesList, ( index, file ) -> {
             try (ALasReader reader = ALasReader.getReader(file, crs)) {
                 reader.open();
                 ILasHeader header = reader.getHeader();
-                if (crs == null) {
-                    crs = header.getCrs();
-                }
+                headerCrs[index] = header.getCrs();
                 ReferencedEnvelope3D envelope = header.getDataEnvelope();
-                File newLasFile = getNewLasFile(file);
-                mainTree.insert(envelope, newLasFile.getName());
+                entries[index] = new FolderEntry(new Envelope(envelope.getMinX(), envelope.getMaxX(), envelope.getMinY(),
+                        envelope.getMaxY()), getNewLasFile(file).getName(), file.length(), file.lastModified());
             }
             pm.worked(1);
-        }
+        });
         pm.done();
-
-        File mainIndex = new File(inFolder, pIndexname);
-        byte[] mainIndexBytes = serialize(mainTree);
-        dumpBytes(mainIndex, mainIndexBytes);
-
-        // write prj file
-        CrsUtilities.writeProjectionFile(mainIndex.getAbsolutePath(), "lasfolder", crs);
+        if (crs == null) {
+            for( CoordinateReferenceSystem fileCrs : headerCrs ) {
+                if (fileCrs != null) {
+                    crs = fileCrs;
+                    break;
+                }
+            }
+        }
 
         /*
          * now the single files
          */
         if (doOverview)
             envelopesQueue = new ConcurrentLinkedQueue<>();
-        if (pThreads > 1) {
-            ExecutorService fixedThreadPool = Executors.newFixedThreadPool(pThreads);
-            for( final File file : filesList ) {
-                Runnable runner = new Runnable(){
-                    public void run() {
-                        try {
-                            processFile(file, true);
-                        } catch (Exception e) {
-                            pm.errorMessage("Problems indexing file: " + file.getName());
-                            e.printStackTrace();
-                        }
-                    }
-                };
-                fixedThreadPool.execute(runner);
-            }
-            try {
-                fixedThreadPool.shutdown();
-                fixedThreadPool.awaitTermination(30, TimeUnit.DAYS);
-                fixedThreadPool.shutdownNow();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+        boolean[] indexed = new boolean[filesList.size()];
+        runOnFiles(filesList, ( index, file ) -> {
+            if (entries[index] != null) {
+                processFile(file, previousEntries.get(entries[index].indexedName), pThreads > 1);
+                indexed[index] = true;
             }
-        } else {
-            for( final File file : filesList ) {
-                processFile(file, false);
+        });
+
+        /*
+         * the main index, only with the successfully indexed files
+         */
+        List<FolderEntry> mainEntries = new ArrayList<>();
+        for( int i = 0; i < entries.length; i++ ) {
+            if (indexed[i]) {
+                mainEntries.add(entries[i]);
             }
         }
+        LasBinaryIndex.writeFolder(mainIndex, mainEntries);
+
+        // write prj file
+        CrsUtilities.writeProjectionFile(mainIndex.getAbsolutePath(), "lasfolder", crs);
 
         if (doOverview) {
             File overviewFile = FileUtilities.substituteExtention(mainIndex, "shp");
@@ -236,16 +248,104 @@ public class LasIndexer extends JGTModel {
             }
             dumpVector(overviewFC, overviewFile.getAbsolutePath());
         }
+
+        if (!failures.isEmpty()) {
+            StringBuilder sb = new StringBuilder("Problems indexing " + failures.size() + " file(s):");
+            for( String failure : failures ) {
+                sb.append("\n   ").append(failure);
+            }
+            throw new ModelsRuntimeException(sb.toString(), this);
+        }
+    }
+
+    /**
+     * A task on a single las file.
+     */
+    private interface FileTask {
+        void run( int index, File file ) throws Exception;
     }
 
-    @SuppressWarnings("unchecked")
-    private void processFile( File file, boolean isMultiThreaded ) throws Exception {
+    /**
+     * Run a task on every file, on at most {@link #pThreads} files at once.
+     * 
+     * <p>A failing file does not stop the other ones, the failure is collected
+     * and reported at the end of the process.</p>
+     */
+    private void runOnFiles( List<File> filesList, FileTask task ) throws Exception {
+        if (pThreads <= 1) {
+            for( int i = 0; i < filesList.size(); i++ ) {
+                runOnFile(task, i, filesList.get(i));
+            }
+            return;
+        }
+
+        ExecutorService threadPool = Executors.newFixedThreadPool(pThreads);
+        // blocks the submit when pThreads files are in process
+        BlockingExecutorService executor = new BlockingExecutorService(threadPool, pThreads);
+        List<Future< ? >> futures = new ArrayList<>();
+        try {
+            for( int i = 0; i < filesList.size(); i++ ) {
+                int index = i;
+                File file = filesList.get(i);
+                futures.add(executor.submit(() -> runOnFile(task, index, file)));
+            }
+            for( Future< ? > future : futures ) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void runOnFile( FileTask task, int index, File file ) {
+        try {
+            task.run(index, file);
+        } catch (Exception e) {
+            String message = file.getName() + ": " + e.getLocalizedMessage();
+            pm.errorMessage("Problems indexing file " + message);
+            failures.add(message);
+        }
+    }
+
+    /**
+     * Read the entries of an existing main index, to index only new or changed files.
+     */
+    private Map<String, FolderEntry> readPreviousEntries( File mainIndex ) {
+        Map<String, FolderEntry> previousEntries = new HashMap<>();
+        try {
+            if (mainIndex.exists() && LasBinaryIndex.isBinaryIndex(mainIndex)) {
+                for( FolderEntry entry : LasBinaryIndex.readFolder(mainIndex) ) {
+                    previousEntries.put(entry.indexedName, entry);
+                }
+            }
+        } catch (IOException e) {
+            pm.errorMessage("Unable to read the existing index, all files are indexed again: " + e.getLocalizedMessage());
+        }
+        return previousEntries;
+    }
+
+    /**
+     * Index a single file.
+     * 
+     * <p>The points are streamed twice: the first pass assigns every point to its
+     * cell, the second one writes the points ordered by cell. Only the cell
+     * of every point is kept in memory.</p>
+     * 
+     * @param file the file to index.
+     * @param previousEntry the entry of the file in the existing main index or <code>null</code>.
+     * @param isMultiThreaded if <code>true</code>, the progress is only given through messages.
+     * @throws Exception
+     */
+    private void processFile( File file, FolderEntry previousEntry, boolean isMultiThreaded ) throws Exception {
         String name = file.getName();
         File newLasFile = getNewLasFile(file);
         File indexFile = getNetIndexFile(file);
         if (indexFile.exists() && newLasFile.exists()) {
-            pm.message("Index existing already for file: " + name);
-            return;
+            if (previousEntry == null || (previousEntry.size == file.length() && previousEntry.lastModified == file.lastModified())) {
+                pm.message("Index existing already for file: " + name);
+                return;
+            }
+            pm.message("File changed since last indexing: " + name);
         }
         if (indexFile.exists() || newLasFile.exists()) {
             indexFile.delete();
@@ -253,13 +353,6 @@ public class LasIndexer extends JGTModel {
         }
         pm.message("Processing file: " + name);
 
-        /*
-         * create also a bounds geometry.
-         * The geometry is calculated form the most external 
-         * points in the 4 directions.
-         */
-        CoordinateList pointsList = new CoordinateList();
-
         try (ALasReader reader = ALasReader.getReader(file, crs)) {
             reader.open();
             ILasHeader header = reader.getHeader();
@@ -268,6 +361,10 @@ public class LasIndexer extends JGTModel {
                 pm.errorMessage("No points found in: " + name);
                 return;
             }
+            if (recordsCount > Integer.MAX_VALUE - 8) {
+                throw new ModelsIllegalargumentException("Too many points to be indexed in: " + name, this);
+            }
+            int pointsNum = (int) recordsCount;
             ReferencedEnvelope3D envelope = header.getDataEnvelope();
             ReferencedEnvelope env2d = new ReferencedEnvelope(envelope);
             Envelope2D e = new Envelope2D(env2d);
@@ -297,74 +394,129 @@ public class LasIndexer extends JGTModel {
             yRes = height / rows;
 
             pm.message("Splitting " + name + " into tiles of " + (float) xRes + " x " + (float) yRes + ".");
-            GridGeometry2D gridGeometry = CoverageUtilities.gridGeometryFromRegionValues(north, south, east, west, cols, rows,
-                    reader.getHeader().getCrs());
 
-            List<LasRecord>[][] dotOnMatrix = new ArrayList[cols][rows];
+            /*
+             * first pass: the cell of every point, ordered column wise as the
+             * cells are written, plus the cell statistics.
+             */
+            int cellsNum = cols * rows;
+            int[] pointCells = new int[pointsNum];
+            int[] cellCounts = new int[cellsNum];
+            double[] elevSums = new double[cellsNum];
+            double[] intensitySums = new double[cellsNum];
+            Geometry hull = null;
+
             if (!isMultiThreaded) {
-                pm.beginTask("Sorting points for " + name, (int) recordsCount);
+                pm.beginTask("Sorting points for " + name, pointsNum);
             } else {
                 pm.message("Sorting points for " + name + "...");
             }
-            while( reader.hasNextPoint() ) {
-                LasRecord dot = reader.getNextPoint();
-                DirectPosition wPoint = new DirectPosition2D(dot.x, dot.y);
-                GridCoordinates2D gridCoord = gridGeometry.worldToGrid(wPoint);
-                int x = gridCoord.x;
-                int y = gridCoord.y;
-                if (dotOnMatrix[x][y] == null) {
-                    dotOnMatrix[x][y] = new ArrayList<>();
-                }
-                dotOnMatrix[x][y].add(dot);
-                if (doOverview) {
-                    pointsList.add(new Coordinate(dot.x, dot.y));
+            try (LasPointStream stream = reader.getPointStream()) {
+                LasPointBatch batch = new LasPointBatch(BATCH_SIZE);
+                int point = 0;
+                while( stream.readBatch(batch) > 0 ) {
+                    for( int i = 0; i < batch.size; i++, point++ ) {
+                        int c = (int) floor((batch.x[i] - west) / xRes);
+                        int r = (int) floor((north - batch.y[i]) / yRes);
+                        c = min(max(c, 0), cols - 1);
+                        r = min(max(r, 0), rows - 1);
+                        int cell = c * rows + r;
+                        pointCells[point] = cell;
+                        cellCounts[cell]++;
+                        elevSums[cell] += batch.z[i];
+                        intensitySums[cell] += batch.intensity[i];
+                    }
+                    if (doOverview) {
+                        hull = addToHull(hull, batch);
+                    }
+                    if (!isMultiThreaded)
+                        pm.worked(batch.size);
                 }
-                if (!isMultiThreaded)
-                    pm.worked(1);
             }
             if (!isMultiThreaded)
                 pm.done();
 
+            // order the points by cell
+            int[] cellStarts = new int[cellsNum + 1];
+            for( int cell = 0; cell < cellsNum; cell++ ) {
+                cellStarts[cell + 1] = cellStarts[cell] + cellCounts[cell];
+            }
+            int[] orderedPoints = new int[pointsNum];
+            int[] cellPositions = Arrays.copyOf(cellStarts, cellsNum);
+            for( int point = 0; point < pointsNum; point++ ) {
+                orderedPoints[cellPositions[pointCells[point]]++] = point;
+            }
+            pointCells = null;
+            cellPositions = null;
+
             /*
-             * now write indexed file plus index
+             * second pass: write indexed file plus index
              */
-            try (ALasWriter writer = ALasWriter.getWriter(newLasFile, reader.getHeader().getCrs())) {
-                writer.setBounds(reader.getHeader());
+            try (ALasWriter writer = ALasWriter.getWriter(newLasFile, header.getCrs());
+                    LasPointStream stream = reader.getPointStream()) {
+                writer.setBounds(header);
                 writer.open();
 
-                int addedTiles = 0;
-                STRtreeJGT tree = new STRtreeJGT();
+                List<double[]> cells = new ArrayList<>();
+                for( int c = 0; c < cols; c++ ) {
+                    for( int r = 0; r < rows; r++ ) {
+                        int cell = c * rows + r;
+                        int count = cellCounts[cell];
+                        if (count == 0) {
+                            continue;
+                        }
+                        double centerX = west + (c + 0.5) * xRes;
+                        double centerY = north - (r + 0.5) * yRes;
+                        cells.add(new double[]{centerX - xRes / 2.0, centerY - yRes / 2.0, centerX + xRes / 2.0,
+                                centerY + yRes / 2.0, cellStarts[cell], cellStarts[cell + 1], elevSums[cell] / count,
+                                intensitySums[cell] / count});
+                    }
+                }
+
+                /*
+                 * the points are written in cell order a window at a time: the points
+                 * of a window are read in file order and scattered to their slot.
+                 */
+                int windowSize = min(WRITE_WINDOW_SIZE, max(pointsNum, 1));
+                LasPointBatch window = new LasPointBatch(windowSize);
+                LasPointBatch batch = new LasPointBatch(min(BATCH_SIZE, windowSize));
+                long[] sourceSlots = new long[windowSize];
+                LasRecord dot = new LasRecord();
+                int windowsNum = (pointsNum + windowSize - 1) / windowSize;
                 if (!isMultiThreaded) {
-                    pm.beginTask("Write and index new las...", cols);
+                    pm.beginTask("Write and index new las...", windowsNum);
                 } else {
                     pm.message("Write and index new las...");
                 }
-                long pointCount = 0;
-                for( int c = 0; c < cols; c++ ) {
-                    for( int r = 0; r < rows; r++ ) {
-                        List<LasRecord> dotsList = dotOnMatrix[c][r];
-                        if (dotsList == null || dotsList.size() == 0) {
-                            continue;
+                for( int windowStart = 0; windowStart < pointsNum; windowStart += windowSize ) {
+                    int windowEnd = min(windowStart + windowSize, pointsNum);
+                    int windowPoints = windowEnd - windowStart;
+                    for( int k = windowStart; k < windowEnd; k++ ) {
+                        // file position in the upper bits, so that sorting gives the reading order
+                        sourceSlots[k - windowStart] = ((long) orderedPoints[k] << 32) | (k - windowStart);
+                    }
+                    Arrays.sort(sourceSlots, 0, windowPoints);
+
+                    int i = 0;
+                    while( i < windowPoints ) {
+                        int runStart = (int) (sourceSlots[i] >>> 32);
+                        // the following points that fit in the same batch
+                        int j = i + 1;
+                        while( j < windowPoints && (int) (sourceSlots[j] >>> 32) - runStart < batch.getCapacity() ) {
+                            j++;
                         }
-                        Coordinate coord = CoverageUtilities.coordinateFromColRow(c, r, gridGeometry);
-                        Envelope env = new Envelope(coord);
-                        env.expandBy(xRes / 2.0, yRes / 2.0);
-                        long tmpCount = pointCount;
-                        double avgElevValue = 0.0;
-                        double avgIntensityValue = 0.0;
-                        int count = 0;
-
-                        for( LasRecord dot : dotsList ) {
-                            writer.addPoint(dot);
-                            pointCount++;
-                            avgElevValue += dot.z;
-                            avgIntensityValue += dot.intensity;
-                            count++;
+                        int runEnd = (int) (sourceSlots[j - 1] >>> 32) + 1;
+                        stream.seek(runStart);
+                        stream.readBatch(batch, runEnd - runStart);
+                        for( ; i < j; i++ ) {
+                            int source = (int) (sourceSlots[i] >>> 32);
+                            int slot = (int) sourceSlots[i];
+                            window.set(slot, batch, source - runStart);
                         }
-                        avgElevValue /= count;
-                        avgIntensityValue /= count;
-                        tree.insert(env, new double[]{tmpCount, pointCount, avgElevValue, avgIntensityValue});
-                        addedTiles++;
+                    }
+
+                    for( int slot = 0; slot < windowPoints; slot++ ) {
+                        writer.addPoint(window.toRecord(slot, dot));
                     }
                     if (!isMultiThreaded)
                         pm.worked(1);
@@ -372,22 +524,31 @@ public class LasIndexer extends JGTModel {
                 if (!isMultiThreaded)
                     pm.done();
 
-                byte[] serialized = serialize(tree);
-                dumpBytes(indexFile, serialized);
+                LasBinaryIndex.writeCells(indexFile, cells);
 
-                pm.message("Tiles added for " + name + ": " + addedTiles);
+                pm.message("Tiles added for " + name + ": " + cells.size());
             }
         }
-        if (doOverview) {
+        if (doOverview && hull instanceof Polygon) {
             pm.message("Create overview for " + name);
-            MultiPoint multiPoint = gf.createMultiPoint(pointsList.toCoordinateArray());
-            Geometry polygon = multiPoint.convexHull();
-            polygon.setUserData(name);
-            envelopesQueue.add((Polygon) polygon);
+            hull.setUserData(name);
+            envelopesQueue.add((Polygon) hull);
         }
 
     }
 
+    /**
+     * Merge the points of a batch into the convex hull of the previous points.
+     */
+    private Geometry addToHull( Geometry hull, LasPointBatch batch ) {
+        Coordinate[] hullCoordinates = hull == null ? new Coordinate[0] : hull.getCoordinates();
+        Coordinate[] coordinates = Arrays.copyOf(hullCoordinates, hullCoordinates.length + batch.size);
+        for( int i = 0; i < batch.size; i++ ) {
+            coordinates[hullCoordinates.length + i] = new Coordinate(batch.x[i], batch.y[i]);
+        }
+        return new ConvexHull(coordinates, gf).getConvexHull();
+    }
+
     private File getNetIndexFile( File file ) {
         String nameWithoutExtention = FileUtilities.getNameWithoutExtention(file);
         File indexFile = new File(file.getParentFile(), nameWithoutExtention + "_indexed.lasfix");
@@ -423,20 +584,4 @@ public class LasIndexer extends JGTModel {
     public void close() throws Exception {
     }
 
-    private static byte[] serialize( Object obj ) throws IOException {
-        try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
-            ObjectOutputStream out = new ObjectOutputStream(bos);
-            out.writeObject(obj);
-            out.close();
-            return bos.toByteArray();
-        }
-    }
-
-    private static void dumpBytes( File file, byte[] bytes ) throws Exception {
-        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
-            raf.write(bytes);
-        }
-    }
-
-
 }
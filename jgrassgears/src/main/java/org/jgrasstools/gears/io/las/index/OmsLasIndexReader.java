@@ -231,8 +231,19 @@ public class OmsLasIndexReader extends JGTModel {
         }
     }
 
+    /**
+     * Read a las index, either in the binary layout of {@link LasBinaryIndex}
+     * or serialized as java object by older versions.
+     * 
+     * @param path the path of the index.
+     * @return the index tree.
+     * @throws Exception
+     */
     public static STRtreeJGT readIndex( String path ) throws Exception {
         File file = new File(path);
+        if (LasBinaryIndex.isBinaryIndex(file)) {
+            return LasBinaryIndex.readIndex(file);
+        }
         RandomAccessFile raf = null;
         try {
             raf = new RandomAccessFile(file, "r");
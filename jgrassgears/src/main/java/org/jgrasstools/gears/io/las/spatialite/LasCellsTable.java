@@ -98,12 +98,14 @@ public class LasCellsTable {
     }
 
     /**
-     * Insert cell values in the table
-     * @throws Exception 
+     * Get the sql to insert a cell, with the placeholders in the order used by
+     * {@link #bindLasCell(IJGTPreparedStatement, LasCell)}.
      * 
+     * @param srid the srid of the cell geometries.
+     * @return the insert sql.
      */
-    public static void insertLasCell( ASpatialDb db, int srid, LasCell cell ) throws Exception {
-        String sql = "INSERT INTO " + TABLENAME//
+    public static String getInsertSql( int srid ) {
+        return "INSERT INTO " + TABLENAME//
                 + " (" + //
                 COLUMN_GEOM + "," + //
                 COLUMN_SOURCE_ID + "," + //
@@ -122,82 +124,63 @@ public class LasCellsTable {
                 COLUMN_GPSTIME_BLOB + "," + //
                 COLUMN_COLORS_BLOB + //
                 ") VALUES (GeomFromText(?, " + srid + "),?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+    }
 
-        IJGTConnection conn = db.getConnection();
-        try (IJGTPreparedStatement pStmt = conn.prepareStatement(sql)) {
-            int i = 1;
-            pStmt.setString(i++, cell.polygon.toText());
-            pStmt.setLong(i++, cell.sourceId);
-            pStmt.setInt(i++, cell.pointsCount);
-            pStmt.setDouble(i++, cell.avgElev);
-            pStmt.setDouble(i++, cell.minElev);
-            pStmt.setDouble(i++, cell.maxElev);
-            pStmt.setBytes(i++, cell.xyzs);
-
-            pStmt.setShort(i++, cell.avgIntensity);
-            pStmt.setShort(i++, cell.minIntensity);
-            pStmt.setShort(i++, cell.maxIntensity);
-            pStmt.setBytes(i++, cell.intensitiesClassifications);
-
-            pStmt.setBytes(i++, cell.returns);
-
-            pStmt.setDouble(i++, cell.minGpsTime);
-            pStmt.setDouble(i++, cell.maxGpsTime);
-            pStmt.setBytes(i++, cell.gpsTimes);
+    /**
+     * Set the values of a cell on an insert statement created from {@link #getInsertSql(int)}.
+     * 
+     * @param pStmt the statement to use.
+     * @param cell the cell to insert.
+     * @throws Exception
+     */
+    public static void bindLasCell( IJGTPreparedStatement pStmt, LasCell cell ) throws Exception {
+        int i = 1;
+        pStmt.setString(i++, cell.polygon.toText());
+        pStmt.setLong(i++, cell.sourceId);
+        pStmt.setInt(i++, cell.pointsCount);
+        pStmt.setDouble(i++, cell.avgElev);
+        pStmt.setDouble(i++, cell.minElev);
+        pStmt.setDouble(i++, cell.maxElev);
+        pStmt.setBytes(i++, cell.xyzs);
+
+        pStmt.setShort(i++, cell.avgIntensity);
+        pStmt.setShort(i++, cell.minIntensity);
+        pStmt.setShort(i++, cell.maxIntensity);
+        pStmt.setBytes(i++, cell.intensitiesClassifications);
+
+        pStmt.setBytes(i++, cell.returns);
+
+        pStmt.setDouble(i++, cell.minGpsTime);
+        pStmt.setDouble(i++, cell.maxGpsTime);
+        pStmt.setBytes(i++, cell.gpsTimes);
+
+        pStmt.setBytes(i++, cell.colors);
+    }
 
-            pStmt.setBytes(i++, cell.colors);
+    /**
+     * Insert cell values in the table
+     * @throws Exception 
+     * 
+     */
+    public static void insertLasCell( ASpatialDb db, int srid, LasCell cell ) throws Exception {
+        String sql = getInsertSql(srid);
 
+        IJGTConnection conn = db.getConnection();
+        try (IJGTPreparedStatement pStmt = conn.prepareStatement(sql)) {
+            bindLasCell(pStmt, cell);
             pStmt.executeUpdate();
         }
     }
 
     public static void insertLasCells( ASpatialDb db, int srid, List<LasCell> cells ) throws Exception {
-        String sql = "INSERT INTO " + TABLENAME//
-                + " (" + //
-                COLUMN_GEOM + "," + //
-                COLUMN_SOURCE_ID + "," + //
-                COLUMN_POINTS_COUNT + "," + //
-                COLUMN_AVG_ELEV + "," + //
-                COLUMN_MIN_ELEV + "," + //
-                COLUMN_MAX_ELEV + "," + //
-                COLUMN_POSITION_BLOB + "," + //
-                COLUMN_AVG_INTENSITY + "," + //
-                COLUMN_MIN_INTENSITY + "," + //
-                COLUMN_MAX_INTENSITY + "," + //
-                COLUMN_INTENS_CLASS_BLOB + "," + //
-                COLUMN_RETURNS_BLOB + "," + //
-                COLUMN_MIN_GPSTIME + "," + //
-                COLUMN_MAX_GPSTIME + "," + //
-                COLUMN_GPSTIME_BLOB + "," + //
-                COLUMN_COLORS_BLOB + //
-                ") VALUES (GeomFromText(?, " + srid + "),?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+        String sql = getInsertSql(srid);
 
         IJGTConnection conn = db.getConnection();
         boolean autoCommit = conn.getAutoCommit();
         conn.setAutoCommit(false);
         try (IJGTPreparedStatement pStmt = conn.prepareStatement(sql)) {
             for( LasCell cell : cells ) {
-                int i = 1;
-                pStmt.setString(i++, cell.polygon.toText());
-                pStmt.setLong(i++, cell.sourceId);
-                pStmt.setInt(i++, cell.pointsCount);
-                pStmt.setDouble(i++, cell.avgElev);
-                pStmt.setDouble(i++, cell.minElev);
-                pStmt.setDouble(i++, cell.maxElev);
-                pStmt.setBytes(i++, cell.xyzs);
-
-                pStmt.setShort(i++, cell.avgIntensity);
-                pStmt.setShort(i++, cell.minIntensity);
-                pStmt.setShort(i++, cell.maxIntensity);
-                pStmt.setBytes(i++, cell.intensitiesClassifications);
-
-                pStmt.setBytes(i++, cell.returns);
-
-                pStmt.setDouble(i++, cell.minGpsTime);
-                pStmt.setDouble(i++, cell.maxGpsTime);
-                pStmt.setBytes(i++, cell.gpsTimes);
-
-                pStmt.setBytes(i++, cell.colors);
+                bindLasCell(pStmt, cell);
                 pStmt.addBatch();
             }
             pStmt.executeBatch();
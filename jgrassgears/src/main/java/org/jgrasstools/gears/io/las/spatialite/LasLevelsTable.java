@@ -91,12 +91,15 @@ public class LasLevelsTable {
     }
 
     /**
-     * Insert cell values in the table
-     * @throws Exception 
+     * Get the sql to insert a level cell, with the placeholders in the order used by
+     * {@link #bindLasLevel(IJGTPreparedStatement, LasLevel)}.
      * 
+     * @param srid the srid of the level geometries.
+     * @param levelNum the level to insert into.
+     * @return the insert sql.
      */
-    public static void insertLasLevel( ASpatialDb db, int srid, LasLevel level ) throws Exception {
-        String sql = "INSERT INTO " + TABLENAME + level.level//
+    public static String getInsertSql( int srid, int levelNum ) {
+        return "INSERT INTO " + TABLENAME + levelNum//
                 + " (" + //
                 COLUMN_GEOM + "," + //
                 COLUMN_SOURCE_ID + "," + //
@@ -107,20 +110,39 @@ public class LasLevelsTable {
                 COLUMN_MIN_INTENSITY + "," + //
                 COLUMN_MAX_INTENSITY + //
                 ") VALUES (GeomFromText(?, " + srid + "),?,?,?,?,?,?,?)";
+    }
 
-        IJGTConnection conn = db.getConnection();
-        try (IJGTPreparedStatement pStmt = conn.prepareStatement(sql)) {
-            int i = 1;
-            pStmt.setString(i++, level.polygon.toText());
-            pStmt.setLong(i++, level.sourceId);
-            pStmt.setDouble(i++, level.avgElev);
-            pStmt.setDouble(i++, level.minElev);
-            pStmt.setDouble(i++, level.maxElev);
+    /**
+     * Set the values of a level cell on an insert statement created from {@link #getInsertSql(int, int)}.
+     * 
+     * @param pStmt the statement to use.
+     * @param level the level cell to insert.
+     * @throws Exception
+     */
+    public static void bindLasLevel( IJGTPreparedStatement pStmt, LasLevel level ) throws Exception {
+        int i = 1;
+        pStmt.setString(i++, level.polygon.toText());
+        pStmt.setLong(i++, level.sourceId);
+        pStmt.setDouble(i++, level.avgElev);
+        pStmt.setDouble(i++, level.minElev);
+        pStmt.setDouble(i++, level.maxElev);
+
+        pStmt.setShort(i++, level.avgIntensity);
+        pStmt.setShort(i++, level.minIntensity);
+        pStmt.setShort(i++, level.maxIntensity);
+    }
 
-            pStmt.setShort(i++, level.avgIntensity);
-            pStmt.setShort(i++, level.minIntensity);
-            pStmt.setShort(i++, level.maxIntensity);
+    /**
+     * Insert cell values in the table
+     * @throws Exception 
+     * 
+     */
+    public static void insertLasLevel( ASpatialDb db, int srid, LasLevel level ) throws Exception {
+        String sql = getInsertSql(srid, level.level);
 
+        IJGTConnection conn = db.getConnection();
+        try (IJGTPreparedStatement pStmt = conn.prepareStatement(sql)) {
+            bindLasLevel(pStmt, level);
             pStmt.executeUpdate();
         }
     }
@@ -128,33 +150,14 @@ public class LasLevelsTable {
     public static void insertLasLevels( ASpatialDb db, int srid, List<LasLevel> levels ) throws Exception {
         if (levels.size() == 0)
             return;
-        String sql = "INSERT INTO " + TABLENAME + levels.get(0).level//
-                + " (" + //
-                COLUMN_GEOM + "," + //
-                COLUMN_SOURCE_ID + "," + //
-                COLUMN_AVG_ELEV + "," + //
-                COLUMN_MIN_ELEV + "," + //
-                COLUMN_MAX_ELEV + "," + //
-                COLUMN_AVG_INTENSITY + "," + //
-                COLUMN_MIN_INTENSITY + "," + //
-                COLUMN_MAX_INTENSITY + //
-                ") VALUES (GeomFromText(?, " + srid + "),?,?,?,?,?,?,?)";
+        String sql = getInsertSql(srid, levels.get(0).level);
 
         IJGTConnection conn = db.getConnection();
         boolean autoCommit = conn.getAutoCommit();
         conn.setAutoCommit(false);
         try (IJGTPreparedStatement pStmt = conn.prepareStatement(sql)) {
             for( LasLevel level : levels ) {
-                int i = 1;
-                pStmt.setString(i++, level.polygon.toText());
-                pStmt.setLong(i++, level.sourceId);
-                pStmt.setDouble(i++, level.avgElev);
-                pStmt.setDouble(i++, level.minElev);
-                pStmt.setDouble(i++, level.maxElev);
-
-                pStmt.setShort(i++, level.avgIntensity);
-                pStmt.setShort(i++, level.minIntensity);
-                pStmt.setShort(i++, level.maxIntensity);
+                bindLasLevel(pStmt, level);
                 pStmt.addBatch();
             }
             pStmt.executeBatch();
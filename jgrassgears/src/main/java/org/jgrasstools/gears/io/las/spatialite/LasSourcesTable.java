@@ -133,6 +133,32 @@ public class LasSourcesTable {
         db.executeInsertUpdateDeleteSql(sql);
     }
 
+    /**
+     * Delete a source together with its cells in a single transaction.
+     *
+     * @param db the db.
+     * @param sourceId the source to delete.
+     * @throws Exception
+     */
+    public static void deleteLasSource( ASpatialDb db, long sourceId ) throws Exception {
+        IJGTConnection conn = db.getConnection();
+        boolean previousAutoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            if (db.hasTable(LasCellsTable.TABLENAME)) {
+                db.executeInsertUpdateDeleteSql("DELETE FROM " + LasCellsTable.TABLENAME + " WHERE "
+                        + LasCellsTable.COLUMN_SOURCE_ID + "=" + sourceId);
+            }
+            db.executeInsertUpdateDeleteSql("DELETE FROM " + TABLENAME + " WHERE " + COLUMN_ID + "=" + sourceId);
+            conn.commit();
+        } catch (Exception e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(previousAutoCommit);
+        }
+    }
+
     /**
      * Query the las sources table.
      * 
@@ -27,12 +27,16 @@ import java.io.FilenameFilter;
 import java.net.URL;
 import java.nio.ByteBuffer;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
 
 import org.geotools.coverage.grid.GridCoordinates2D;
 import org.geotools.coverage.grid.GridCoverage2D;
@@ -45,6 +49,9 @@ import org.geotools.geometry.Envelope2D;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.geometry.jts.ReferencedEnvelope3D;
 import org.jgrasstools.dbs.compat.ASpatialDb;
+import org.jgrasstools.dbs.compat.BulkInserter;
+import org.jgrasstools.dbs.compat.IJGTPreparedStatement;
+import org.jgrasstools.dbs.spatialite.SpatialiteGeometryColumns;
 import org.jgrasstools.gears.io.las.core.ALasReader;
 import org.jgrasstools.gears.io.las.core.ILasHeader;
 import org.jgrasstools.gears.io.las.core.LasRecord;
@@ -129,6 +136,18 @@ public class SpatialiteLasWriter extends JGTModel {
     @In
     public boolean doAvoidIndex = false;
 
+    @Description("The number of threads used to create the cells.")
+    @In
+    public int pThreads = getDefaultThreadsNum();
+
+    @Description("The number of cells sent to the database at once.")
+    @In
+    public int pBatchSize = BulkInserter.DEFAULT_BATCH_SIZE;
+
+    @Description("The number of cells after which the data are committed to the database.")
+    @In
+    public int pCommitInterval = BulkInserter.DEFAULT_COMMIT_INTERVAL;
+
     private CoordinateReferenceSystem crs;
 
     @Description("Optional las list names to process only those (inside las folder).")
@@ -218,7 +237,10 @@ public class SpatialiteLasWriter extends JGTModel {
             }
 
             LasSourcesTable.createTable(spatialiteDb, srid, doAvoidIndex);
-            LasCellsTable.createTable(spatialiteDb, srid, doAvoidIndex);
+            // the spatial index of a new cells table is created after loading the cells,
+            // as is the one of a table left without index by an interrupted run
+            boolean deferCellsIndex = !doAvoidIndex && isSpatialIndexMissing(spatialiteDb, LasCellsTable.TABLENAME);
+            LasCellsTable.createTable(spatialiteDb, srid, doAvoidIndex || deferCellsIndex);
 
             pm.message("Las files to be added to the index:");
             List<File> filesList;
@@ -245,49 +267,114 @@ public class SpatialiteLasWriter extends JGTModel {
                     filesList.add(lasFile);
                 }
             }
+            // the sources inserted in this run with their bounds, used to create the levels
+            LinkedHashMap<Long, Envelope2D> insertedSources = new LinkedHashMap<>();
             List<LasSource> lasSources = LasSourcesTable.getLasSources(spatialiteDb);
             List<String> existingLasSourcesNames = new ArrayList<String>();
             for( LasSource lasSource : lasSources ) {
                 existingLasSourcesNames.add(lasSource.name);
             }
-            for( File lasFile : filesList ) {
-                if (pm.isCanceled()) {
-                    return;
+            try {
+                for( File lasFile : filesList ) {
+                    if (pm.isCanceled()) {
+                        return;
+                    }
+                    String lasName = FileUtilities.getNameWithoutExtention(lasFile);
+                    if (existingLasSourcesNames.contains(lasName)) {
+                        pm.errorMessage("Not inserting already existing file in database: " + lasName);
+                        continue;
+                    }
+                    ReferencedEnvelope3D envelope;
+                    try (ALasReader reader = ALasReader.getReader(lasFile, crs)) {
+                        reader.open();
+                        ILasHeader header = reader.getHeader();
+                        envelope = header.getDataEnvelope();
+                    }
+                    Polygon polygon = GeometryUtilities.createPolygonFromEnvelope(envelope);
+
+                    GridCoverage2D ortoGC = null;
+                    if (ortoReader != null) {
+                        double west = envelope.getMinX();
+                        double east = envelope.getMaxX();
+                        double south = envelope.getMinY();
+                        double north = envelope.getMaxY();
+                        GeneralParameterValue[] readGeneralParameterValues = CoverageUtilities
+                                .createGridGeometryGeneralParameter(ortoXRes, ortoYRes, north, south, east, west, crs);
+                        ortoGC = ortoReader.read(readGeneralParameterValues);
+                    }
+
+                    long id = LasSourcesTable.insertLasSource(spatialiteDb, srid, pLevels, pCellsize, pFactor, polygon, lasName,
+                            envelope.getMinZ(), envelope.getMaxZ(), 0, 0);
+                    Envelope2D bounds;
+                    try {
+                        bounds = processFile(spatialiteDb, lasFile, id, ortoGC);
+                    } catch (Exception e) {
+                        // the cells committed so far would make the next run skip the file as existing
+                        pm.errorMessage("Removing the partially inserted file from the database: " + lasName);
+                        try {
+                            LasSourcesTable.deleteLasSource(spatialiteDb, id);
+                        } catch (Exception deleteException) {
+                            e.addSuppressed(deleteException);
+                        }
+                        throw e;
+                    }
+                    if (bounds != null) {
+                        insertedSources.put(id, bounds);
+                    }
                 }
-                String lasName = FileUtilities.getNameWithoutExtention(lasFile);
-                if (existingLasSourcesNames.contains(lasName)) {
-                    pm.errorMessage("Not inserting already existing file in database: " + lasName);
-                    continue;
+            } finally {
+                if (deferCellsIndex) {
+                    pm.message("Creating the spatial index of the cells...");
+                    spatialiteDb.createSpatialIndex(LasCellsTable.TABLENAME, LasCellsTable.COLUMN_GEOM);
                 }
-                ReferencedEnvelope3D envelope;
-                try (ALasReader reader = ALasReader.getReader(lasFile, crs)) {
-                    reader.open();
-                    ILasHeader header = reader.getHeader();
-                    envelope = header.getDataEnvelope();
+            }
+
+            for( int level = 1; level <= pLevels; level++ ) {
+                if (pm.isCanceled()) {
+                    throw new RuntimeException(INTERRUPTED_BY_USER);
                 }
-                Polygon polygon = GeometryUtilities.createPolygonFromEnvelope(envelope);
-
-                GridCoverage2D ortoGC = null;
-                if (ortoReader != null) {
-                    double west = envelope.getMinX();
-                    double east = envelope.getMaxX();
-                    double south = envelope.getMinY();
-                    double north = envelope.getMaxY();
-                    GeneralParameterValue[] readGeneralParameterValues = CoverageUtilities
-                            .createGridGeometryGeneralParameter(ortoXRes, ortoYRes, north, south, east, west, crs);
-                    ortoGC = ortoReader.read(readGeneralParameterValues);
+                boolean deferLevelIndex = isSpatialIndexMissing(spatialiteDb, LasLevelsTable.TABLENAME + level);
+                LasLevelsTable.createTable(spatialiteDb, srid, level, deferLevelIndex);
+                for( Entry<Long, Envelope2D> source : insertedSources.entrySet() ) {
+                    Envelope2D e = source.getValue();
+                    if (level == 1) {
+                        insertFirstLevel(spatialiteDb, source.getKey(), e.getMaxY(), e.getMinY(), e.getMaxX(), e.getMinX(),
+                                level);
+                    } else {
+                        insertLevel(spatialiteDb, source.getKey(), e.getMaxY(), e.getMinY(), e.getMaxX(), e.getMinX(), level);
+                    }
+                }
+                if (deferLevelIndex) {
+                    spatialiteDb.createSpatialIndex(LasLevelsTable.TABLENAME + level, LasLevelsTable.COLUMN_GEOM);
                 }
-
-                long id = LasSourcesTable.insertLasSource(spatialiteDb, srid, pLevels, pCellsize, pFactor, polygon, lasName,
-                        envelope.getMinZ(), envelope.getMaxZ(), 0, 0);
-                processFile(spatialiteDb, lasFile, id, ortoGC);
             }
+        }
+    }
 
+    /**
+     * Checks if a table still needs its spatial index, either because it doesn't
+     * exist yet or because a previous run was interrupted before creating it.
+     */
+    private static boolean isSpatialIndexMissing( ASpatialDb db, String tableName ) throws Exception {
+        if (!db.hasTable(tableName)) {
+            return true;
         }
+        SpatialiteGeometryColumns geometryColumns = db.getGeometryColumnsForTable(tableName);
+        return geometryColumns != null && geometryColumns.spatial_index_enabled != 1;
     }
 
+    /**
+     * Insert the cells of a las file.
+     * 
+     * <p>The cells are created column by column by a pool of producer threads,
+     * while the current thread writes them to the database through a single
+     * {@link BulkInserter}.</p>
+     * 
+     * @return the bounds of the file or <code>null</code> if it has no points.
+     */
     @SuppressWarnings("unchecked")
-    private void processFile( final ASpatialDb spatialiteDb, File file, long sourceID, GridCoverage2D ortoGC ) throws Exception {
+    private Envelope2D processFile( final ASpatialDb spatialiteDb, File file, long sourceID, GridCoverage2D ortoGC )
+            throws Exception {
         String name = file.getName();
         pm.message("Processing file: " + name);
 
@@ -297,7 +384,7 @@ public class SpatialiteLasWriter extends JGTModel {
             long recordsCount = header.getRecordsCount();
             if (recordsCount == 0) {
                 pm.errorMessage("No points found in: " + name);
-                return;
+                return null;
             }
             ReferencedEnvelope3D envelope = header.getDataEnvelope();
             ReferencedEnvelope env2d = new ReferencedEnvelope(envelope);
@@ -319,7 +406,6 @@ public class SpatialiteLasWriter extends JGTModel {
                     reader.getHeader().getCrs());
 
             List<LasRecord>[][] dotOnMatrixXY = new ArrayList[cols][rows];
-            LasCell[][] lasCellsOnMatrixXY = new LasCell[cols][rows];
             if (doVerbose)
                 pm.beginTask("Sorting points for " + name, (int) recordsCount);
             long readCount = 0;
@@ -362,212 +448,207 @@ public class SpatialiteLasWriter extends JGTModel {
 
             LasSourcesTable.updateMinMaxIntensity(spatialiteDb, sourceID, minIntens, maxIntens);
 
-            ExecutorService singleThreadExecutor = Executors.newSingleThreadExecutor();
-            List<LasCell> cellsList = new ArrayList<>();
-            final Point2D.Double pos = new Point2D.Double();
-            final int[] ortoValues = new int[3];
             if (doVerbose)
-                pm.beginTask("Write las data...", cols * rows);
+                pm.beginTask("Write las data...", cols);
             else
                 pm.message("Write las data...");
-            for( int c = 0; c < cols; c++ ) {
-                for( int r = 0; r < rows; r++ ) {
-                    List<LasRecord> dotsList = dotOnMatrixXY[c][r];
-
-                    Coordinate coord = CoverageUtilities.coordinateFromColRow(c, r, gridGeometry);
-                    Envelope env = new Envelope(coord);
-                    env.expandBy(pCellsize / 2.0, pCellsize / 2.0);
-                    Polygon polygon = GeometryUtilities.createPolygonFromEnvelope(env);
-
-                    if (dotsList == null || dotsList.size() == 0) {
-                        if (doEmptyCells) {
-                            final LasCell lasCell = new LasCell();
-                            lasCell.polygon = polygon;
-                            lasCell.sourceId = sourceID;
-
-                            lasCell.pointsCount = 0;
-                            lasCell.avgElev = -9999.0;
-                            lasCell.minElev = -9999.0;
-                            lasCell.maxElev = -9999.0;
-                            lasCell.xyzs = new byte[0];
-                            lasCell.avgIntensity = (short) -999;
-                            lasCell.minIntensity = (short) -999;
-                            lasCell.maxIntensity = (short) -999;
-                            lasCell.intensitiesClassifications = new byte[0];
-                            lasCell.returns = new byte[0];
-                            lasCell.minGpsTime = -9999.0;
-                            lasCell.maxGpsTime = -9999.0;
-                            lasCell.gpsTimes = new byte[0];
-                            lasCell.colors = new byte[0];
-
-                            cellsList.add(lasCell);
-                        }
-                        continue;
+            int threads = Math.max(1, pThreads);
+            // at most that many columns of cells are kept in memory waiting to be written
+            int maxPendingColumns = 2 * threads;
+            ExecutorService producers = Executors.newFixedThreadPool(threads);
+            ArrayDeque<Future<List<LasCell>>> pendingColumns = new ArrayDeque<>();
+            long cellsCount;
+            double cellsPerSecond;
+            try (BulkInserter inserter = spatialiteDb.createBulkInserter(LasCellsTable.getInsertSql(srid), pBatchSize,
+                    pCommitInterval)) {
+                IJGTPreparedStatement pStmt = inserter.getStatement();
+                int nextColumn = 0;
+                for( int c = 0; c < cols; c++ ) {
+                    while( nextColumn < cols && pendingColumns.size() < maxPendingColumns ) {
+                        final List<LasRecord>[] columnDots = dotOnMatrixXY[nextColumn];
+                        // free the points as soon as their cells are created
+                        dotOnMatrixXY[nextColumn] = null;
+                        final int col = nextColumn;
+                        pendingColumns.add(producers
+                                .submit(() -> createColumnCells(columnDots, col, gridGeometry, sourceID, ortoGC)));
+                        nextColumn++;
                     }
-                    int pointCount = dotsList.size();
-
-                    double avgElev = 0.0;
-                    double minElev = Double.POSITIVE_INFINITY;
-                    double maxElev = Double.NEGATIVE_INFINITY;
-                    byte[] position = new byte[8 * 3 * pointCount];
-                    ByteBuffer positionBuffer = ByteBuffer.wrap(position);
-
-                    double avgIntensity = 0.0;
-
-                    short minIntensity = 30000;
-                    short maxIntensity = -1;
-                    byte[] intensClass = new byte[2 * 2 * pointCount];
-                    ByteBuffer intensClassBuffer = ByteBuffer.wrap(intensClass);
-                    byte[] returns = new byte[2 * 2 * pointCount];
-                    ByteBuffer returnsBuffer = ByteBuffer.wrap(returns);
-                    double minGpsTime = Double.POSITIVE_INFINITY;
-                    double maxGpsTime = Double.NEGATIVE_INFINITY;
-                    byte[] gpsTimes = new byte[8 * pointCount];
-                    ByteBuffer gpsTimesBuffer = ByteBuffer.wrap(gpsTimes);
-                    byte[] colors = new byte[2 * 3 * pointCount];
-                    ByteBuffer colorsBuffer = ByteBuffer.wrap(colors);
-
-                    int count = 0;
 
-                    for( LasRecord dot : dotsList ) {
-                        avgElev += dot.z;
-                        minElev = min(dot.z, minElev);
-                        maxElev = max(dot.z, maxElev);
-                        positionBuffer.putDouble(dot.x);
-                        positionBuffer.putDouble(dot.y);
-                        positionBuffer.putDouble(dot.z);
-
-                        avgIntensity += dot.intensity;
-                        minIntensity = (short) min(dot.intensity, minIntensity);
-                        maxIntensity = (short) max(dot.intensity, maxIntensity);
-                        intensClassBuffer.putShort(dot.intensity);
-                        intensClassBuffer.putShort(dot.classification);
-
-                        returnsBuffer.putShort(dot.returnNumber);
-                        returnsBuffer.putShort(dot.numberOfReturns);
-
-                        minGpsTime = min(dot.gpsTime, minGpsTime);
-                        maxGpsTime = max(dot.gpsTime, maxGpsTime);
-
-                        gpsTimesBuffer.putDouble(dot.gpsTime);
-
-                        if (ortoGC != null) {
-                            pos.setLocation(dot.x, dot.y);
-                            try {
-                                ortoGC.evaluate(pos, ortoValues);
-                                colorsBuffer.putShort((short) ortoValues[0]);
-                                colorsBuffer.putShort((short) ortoValues[1]);
-                                colorsBuffer.putShort((short) ortoValues[2]);
-                            } catch (PointOutsideCoverageException poce) {
-                                // insert white
-                                colorsBuffer.putShort((short) 255);
-                                colorsBuffer.putShort((short) 255);
-                                colorsBuffer.putShort((short) 255);
-                            }
-
-                        } else if (dot.color != null) {
-                            colorsBuffer.putShort(dot.color[0]);
-                            colorsBuffer.putShort(dot.color[1]);
-                            colorsBuffer.putShort(dot.color[2]);
+                    List<LasCell> columnCells;
+                    try {
+                        columnCells = pendingColumns.poll().get();
+                    } catch (ExecutionException ee) {
+                        Throwable cause = ee.getCause();
+                        if (cause instanceof Exception) {
+                            throw (Exception) cause;
                         }
-
-                        count++;
+                        throw ee;
                     }
-                    avgElev /= count;
-                    avgIntensity /= count;
+                    for( LasCell lasCell : columnCells ) {
+                        LasCellsTable.bindLasCell(pStmt, lasCell);
+                        inserter.addBatch();
+                    }
+                    if (doVerbose)
+                        pm.worked(1);
+                    if (pm.isCanceled()) {
+                        throw new RuntimeException(INTERRUPTED_BY_USER);
+                    }
+                }
+                inserter.commit();
+                cellsCount = inserter.getCount();
+                cellsPerSecond = inserter.getRowsPerSecond();
+            } finally {
+                producers.shutdownNow();
+            }
+            if (doVerbose)
+                pm.done();
+            pm.message("Inserted " + cellsCount + " cells of " + name + " at " + Math.round(cellsPerSecond) + " cells/s.");
+            return e;
+        }
+    }
 
+    /**
+     * Create the cells of a column of the grid.
+     */
+    private List<LasCell> createColumnCells( List<LasRecord>[] columnDots, int c, GridGeometry2D gridGeometry, long sourceID,
+            GridCoverage2D ortoGC ) throws Exception {
+        List<LasCell> cellsList = new ArrayList<>();
+        final Point2D.Double pos = new Point2D.Double();
+        final int[] ortoValues = new int[3];
+        for( int r = 0; r < columnDots.length; r++ ) {
+            List<LasRecord> dotsList = columnDots[r];
+
+            Coordinate coord = CoverageUtilities.coordinateFromColRow(c, r, gridGeometry);
+            Envelope env = new Envelope(coord);
+            env.expandBy(pCellsize / 2.0, pCellsize / 2.0);
+            Polygon polygon = GeometryUtilities.createPolygonFromEnvelope(env);
+
+            if (dotsList == null || dotsList.size() == 0) {
+                if (doEmptyCells) {
                     final LasCell lasCell = new LasCell();
                     lasCell.polygon = polygon;
                     lasCell.sourceId = sourceID;
 
-                    lasCell.pointsCount = pointCount;
-                    lasCell.avgElev = avgElev;
-                    lasCell.minElev = minElev;
-                    lasCell.maxElev = maxElev;
-                    lasCell.xyzs = position;
-                    lasCell.avgIntensity = (short) Math.round(avgIntensity);
-                    lasCell.minIntensity = minIntensity;
-                    lasCell.maxIntensity = maxIntensity;
-                    lasCell.intensitiesClassifications = intensClass;
-                    lasCell.returns = returns;
-                    lasCell.minGpsTime = minGpsTime;
-                    lasCell.maxGpsTime = maxGpsTime;
-                    lasCell.gpsTimes = gpsTimes;
-                    lasCell.colors = colors;
+                    lasCell.pointsCount = 0;
+                    lasCell.avgElev = -9999.0;
+                    lasCell.minElev = -9999.0;
+                    lasCell.maxElev = -9999.0;
+                    lasCell.xyzs = new byte[0];
+                    lasCell.avgIntensity = (short) -999;
+                    lasCell.minIntensity = (short) -999;
+                    lasCell.maxIntensity = (short) -999;
+                    lasCell.intensitiesClassifications = new byte[0];
+                    lasCell.returns = new byte[0];
+                    lasCell.minGpsTime = -9999.0;
+                    lasCell.maxGpsTime = -9999.0;
+                    lasCell.gpsTimes = new byte[0];
+                    lasCell.colors = new byte[0];
 
                     cellsList.add(lasCell);
-                    lasCellsOnMatrixXY[c][r] = lasCell;
-
-                    if (cellsList.size() > 100000) {
-                        // add data to db in a thread to fasten up things
-                        final List<LasCell> processCells = cellsList;
-                        singleThreadExecutor.execute(new Runnable(){
-                            public void run() {
-                                try {
-                                    LasCellsTable.insertLasCells(spatialiteDb, srid, processCells);
-                                    pm.worked(processCells.size());
-                                } catch (Exception e) {
-                                    e.printStackTrace();
-                                }
-                            }
-                        });
-                        cellsList = new ArrayList<>();
-                    }
-                }
-                if (pm.isCanceled()) {
-                    throw new RuntimeException(INTERRUPTED_BY_USER);
                 }
+                continue;
             }
-            if (cellsList.size() > 0) {
-                // add data to db in a thread to fasten up things
-                final List<LasCell> processCells = cellsList;
-                singleThreadExecutor.execute(new Runnable(){
-                    public void run() {
-                        try {
-                            LasCellsTable.insertLasCells(spatialiteDb, srid, processCells);
-                            if (doVerbose)
-                                pm.worked(processCells.size());
-                        } catch (Exception e) {
-                            e.printStackTrace();
+            int pointCount = dotsList.size();
+
+            double avgElev = 0.0;
+            double minElev = Double.POSITIVE_INFINITY;
+            double maxElev = Double.NEGATIVE_INFINITY;
+            byte[] position = new byte[8 * 3 * pointCount];
+            ByteBuffer positionBuffer = ByteBuffer.wrap(position);
+
+            double avgIntensity = 0.0;
+
+            short minIntensity = 30000;
+            short maxIntensity = -1;
+            byte[] intensClass = new byte[2 * 2 * pointCount];
+            ByteBuffer intensClassBuffer = ByteBuffer.wrap(intensClass);
+            byte[] returns = new byte[2 * 2 * pointCount];
+            ByteBuffer returnsBuffer = ByteBuffer.wrap(returns);
+            double minGpsTime = Double.POSITIVE_INFINITY;
+            double maxGpsTime = Double.NEGATIVE_INFINITY;
+            byte[] gpsTimes = new byte[8 * pointCount];
+            ByteBuffer gpsTimesBuffer = ByteBuffer.wrap(gpsTimes);
+            byte[] colors = new byte[2 * 3 * pointCount];
+            ByteBuffer colorsBuffer = ByteBuffer.wrap(colors);
+
+            int count = 0;
+
+            for( LasRecord dot : dotsList ) {
+                avgElev += dot.z;
+                minElev = min(dot.z, minElev);
+                maxElev = max(dot.z, maxElev);
+                positionBuffer.putDouble(dot.x);
+                positionBuffer.putDouble(dot.y);
+                positionBuffer.putDouble(dot.z);
+
+                avgIntensity += dot.intensity;
+                minIntensity = (short) min(dot.intensity, minIntensity);
+                maxIntensity = (short) max(dot.intensity, maxIntensity);
+                intensClassBuffer.putShort(dot.intensity);
+                intensClassBuffer.putShort(dot.classification);
+
+                returnsBuffer.putShort(dot.returnNumber);
+                returnsBuffer.putShort(dot.numberOfReturns);
+
+                minGpsTime = min(dot.gpsTime, minGpsTime);
+                maxGpsTime = max(dot.gpsTime, maxGpsTime);
+
+                gpsTimesBuffer.putDouble(dot.gpsTime);
+
+                if (ortoGC != null) {
+                    pos.setLocation(dot.x, dot.y);
+                    try {
+                        // the coverage is shared by the producer threads
+                        synchronized (ortoGC) {
+                            ortoGC.evaluate(pos, ortoValues);
                         }
+                        colorsBuffer.putShort((short) ortoValues[0]);
+                        colorsBuffer.putShort((short) ortoValues[1]);
+                        colorsBuffer.putShort((short) ortoValues[2]);
+                    } catch (PointOutsideCoverageException poce) {
+                        // insert white
+                        colorsBuffer.putShort((short) 255);
+                        colorsBuffer.putShort((short) 255);
+                        colorsBuffer.putShort((short) 255);
                     }
-                });
-                cellsList = new ArrayList<>();
-            }
 
-            try {
-                singleThreadExecutor.shutdown();
-                singleThreadExecutor.awaitTermination(30, TimeUnit.DAYS);
-                singleThreadExecutor.shutdownNow();
-            } catch (InterruptedException ex) {
-                ex.printStackTrace();
-            }
-            if (doVerbose)
-                pm.done();
-            else
-                pm.message("Done.");
-
-            if (pLevels > 0) {
-                for( int level = 1; level <= pLevels; level++ ) {
-                    if (pm.isCanceled()) {
-                        throw new RuntimeException(INTERRUPTED_BY_USER);
-                    }
-                    LasLevelsTable.createTable(spatialiteDb, srid, level, doAvoidIndex);
-                    if (level == 1) {
-                        insertFirstLevel(spatialiteDb, sourceID, north, south, east, west, level);
-                    } else {
-                        insertLevel(spatialiteDb, sourceID, north, south, east, west, level);
-                    }
+                } else if (dot.color != null) {
+                    colorsBuffer.putShort(dot.color[0]);
+                    colorsBuffer.putShort(dot.color[1]);
+                    colorsBuffer.putShort(dot.color[2]);
                 }
-            }
 
+                count++;
+            }
+            avgElev /= count;
+            avgIntensity /= count;
+
+            final LasCell lasCell = new LasCell();
+            lasCell.polygon = polygon;
+            lasCell.sourceId = sourceID;
+
+            lasCell.pointsCount = pointCount;
+            lasCell.avgElev = avgElev;
+            lasCell.minElev = minElev;
+            lasCell.maxElev = maxElev;
+            lasCell.xyzs = position;
+            lasCell.avgIntensity = (short) Math.round(avgIntensity);
+            lasCell.minIntensity = minIntensity;
+            lasCell.maxIntensity = maxIntensity;
+            lasCell.intensitiesClassifications = intensClass;
+            lasCell.returns = returns;
+            lasCell.minGpsTime = minGpsTime;
+            lasCell.maxGpsTime = maxGpsTime;
+            lasCell.gpsTimes = gpsTimes;
+            lasCell.colors = colors;
+
+            cellsList.add(lasCell);
         }
-
+        return cellsList;
     }
 
     private void insertFirstLevel( final ASpatialDb spatialiteDb, long sourceID, double north, double south, double east,
             double west, int level ) throws Exception, SQLException {
-        List<LasLevel> levelsList = new ArrayList<>();
         double levelCellsize = pCellsize * level * pFactor;
         double[] xRangesLevel = NumericsUtilities.range2Bins(west, east, levelCellsize, false);
         double[] yRangesLevel = NumericsUtilities.range2Bins(south, north, levelCellsize, false);
@@ -576,65 +657,63 @@ public class SpatialiteLasWriter extends JGTModel {
             pm.beginTask("Creating level " + level + " with " + size + " tiles...", xRangesLevel.length - 1);
         else
             pm.message("Creating level " + level + " with " + size + " tiles...");
-        for( int x = 0; x < xRangesLevel.length - 1; x++ ) {
-            double xmin = xRangesLevel[x];
-            double xmax = xRangesLevel[x + 1];
-            for( int y = 0; y < yRangesLevel.length - 1; y++ ) {
-                double ymin = yRangesLevel[y];
-                double ymax = yRangesLevel[y + 1];
-                Envelope levelEnv = new Envelope(xmin, xmax, ymin, ymax);
-                Polygon polygon = GeometryUtilities.createPolygonFromEnvelope(levelEnv);
-
-                List<LasCell> lasCells = LasCellsTable.getLasCells(spatialiteDb, polygon, true, true, false, false, false);
-
-                double avgElev = 0.0;
-                double minElev = Double.POSITIVE_INFINITY;
-                double maxElev = Double.NEGATIVE_INFINITY;
-                short avgIntensity = 0;
-                short minIntensity = 30000;
-                short maxIntensity = -1;
-
-                int count = 0;
-                for( LasCell cell : lasCells ) {
-                    avgElev += cell.avgElev;
-                    minElev = min(cell.minElev, minElev);
-                    maxElev = max(cell.maxElev, maxElev);
-
-                    avgIntensity += cell.avgIntensity;
-                    minIntensity = (short) min(cell.minIntensity, minIntensity);
-                    maxIntensity = (short) max(cell.maxIntensity, maxIntensity);
-
-                    count++;
-                }
-                if (count == 0) {
-                    continue;
-                }
-                avgElev /= count;
-                avgIntensity /= count;
-
-                LasLevel lasLevel = new LasLevel();
-                lasLevel.polygon = polygon;
-                lasLevel.level = level;
-                lasLevel.avgElev = avgElev;
-                lasLevel.minElev = minElev;
-                lasLevel.maxElev = maxElev;
-                lasLevel.avgIntensity = avgIntensity;
-                lasLevel.minIntensity = minIntensity;
-                lasLevel.maxIntensity = maxIntensity;
-                lasLevel.sourceId = sourceID;
-
-                levelsList.add(lasLevel);
-
-                if (levelsList.size() > 10000) {
-                    LasLevelsTable.insertLasLevels(spatialiteDb, srid, levelsList);
-                    levelsList = new ArrayList<>();
+        try (BulkInserter inserter = spatialiteDb.createBulkInserter(LasLevelsTable.getInsertSql(srid, level), pBatchSize,
+                pCommitInterval)) {
+            IJGTPreparedStatement pStmt = inserter.getStatement();
+            for( int x = 0; x < xRangesLevel.length - 1; x++ ) {
+                double xmin = xRangesLevel[x];
+                double xmax = xRangesLevel[x + 1];
+                for( int y = 0; y < yRangesLevel.length - 1; y++ ) {
+                    double ymin = yRangesLevel[y];
+                    double ymax = yRangesLevel[y + 1];
+                    Envelope levelEnv = new Envelope(xmin, xmax, ymin, ymax);
+                    Polygon polygon = GeometryUtilities.createPolygonFromEnvelope(levelEnv);
+
+                    List<LasCell> lasCells = LasCellsTable.getLasCells(spatialiteDb, polygon, true, true, false, false, false);
+
+                    double avgElev = 0.0;
+                    double minElev = Double.POSITIVE_INFINITY;
+                    double maxElev = Double.NEGATIVE_INFINITY;
+                    short avgIntensity = 0;
+                    short minIntensity = 30000;
+                    short maxIntensity = -1;
+
+                    int count = 0;
+                    for( LasCell cell : lasCells ) {
+                        avgElev += cell.avgElev;
+                        minElev = min(cell.minElev, minElev);
+                        maxElev = max(cell.maxElev, maxElev);
+
+                        avgIntensity += cell.avgIntensity;
+                        minIntensity = (short) min(cell.minIntensity, minIntensity);
+                        maxIntensity = (short) max(cell.maxIntensity, maxIntensity);
+
+                        count++;
+                    }
+                    if (count == 0) {
+                        continue;
+                    }
+                    avgElev /= count;
+                    avgIntensity /= count;
+
+                    LasLevel lasLevel = new LasLevel();
+                    lasLevel.polygon = polygon;
+                    lasLevel.level = level;
+                    lasLevel.avgElev = avgElev;
+                    lasLevel.minElev = minElev;
+                    lasLevel.maxElev = maxElev;
+                    lasLevel.avgIntensity = avgIntensity;
+                    lasLevel.minIntensity = minIntensity;
+                    lasLevel.maxIntensity = maxIntensity;
+                    lasLevel.sourceId = sourceID;
+
+                    LasLevelsTable.bindLasLevel(pStmt, lasLevel);
+                    inserter.addBatch();
                 }
+                if (doVerbose)
+                    pm.worked(1);
             }
-            if (doVerbose)
-                pm.worked(1);
-        }
-        if (levelsList.size() > 0) {
-            LasLevelsTable.insertLasLevels(spatialiteDb, srid, levelsList);
+            inserter.commit();
         }
         if (doVerbose)
             pm.done();
@@ -645,7 +724,6 @@ public class SpatialiteLasWriter extends JGTModel {
     private void insertLevel( final ASpatialDb spatialiteDb, long sourceID, double north, double south, double east, double west,
             int level ) throws Exception, SQLException {
         int previousLevelNum = level - 1;
-        List<LasLevel> levelsList = new ArrayList<>();
         double levelCellsize = pCellsize * level * pFactor;
         double[] xRangesLevel = NumericsUtilities.range2Bins(west, east, levelCellsize, false);
         double[] yRangesLevel = NumericsUtilities.range2Bins(south, north, levelCellsize, false);
@@ -654,65 +732,63 @@ public class SpatialiteLasWriter extends JGTModel {
             pm.beginTask("Creating level " + level + " with " + size + " tiles...", xRangesLevel.length - 1);
         else
             pm.message("Creating level " + level + " with " + size + " tiles...");
-        for( int x = 0; x < xRangesLevel.length - 1; x++ ) {
-            double xmin = xRangesLevel[x];
-            double xmax = xRangesLevel[x + 1];
-            for( int y = 0; y < yRangesLevel.length - 1; y++ ) {
-                double ymin = yRangesLevel[y];
-                double ymax = yRangesLevel[y + 1];
-                Envelope levelEnv = new Envelope(xmin, xmax, ymin, ymax);
-                Polygon polygon = GeometryUtilities.createPolygonFromEnvelope(levelEnv);
-
-                List<LasLevel> lasLevels = LasLevelsTable.getLasLevels(spatialiteDb, previousLevelNum, levelEnv);
-
-                double avgElev = 0.0;
-                double minElev = Double.POSITIVE_INFINITY;
-                double maxElev = Double.NEGATIVE_INFINITY;
-                short avgIntensity = 0;
-                short minIntensity = 30000;
-                short maxIntensity = -1;
-
-                int count = 0;
-                for( LasLevel lasLevel : lasLevels ) {
-                    avgElev += lasLevel.avgElev;
-                    minElev = min(lasLevel.minElev, minElev);
-                    maxElev = max(lasLevel.maxElev, maxElev);
-
-                    avgIntensity += lasLevel.avgIntensity;
-                    minIntensity = (short) min(lasLevel.minIntensity, minIntensity);
-                    maxIntensity = (short) max(lasLevel.maxIntensity, maxIntensity);
-
-                    count++;
-                }
-                if (count == 0) {
-                    continue;
-                }
-                avgElev /= count;
-                avgIntensity /= count;
-
-                LasLevel lasLevel = new LasLevel();
-                lasLevel.polygon = polygon;
-                lasLevel.level = level;
-                lasLevel.avgElev = avgElev;
-                lasLevel.minElev = minElev;
-                lasLevel.maxElev = maxElev;
-                lasLevel.avgIntensity = avgIntensity;
-                lasLevel.minIntensity = minIntensity;
-                lasLevel.maxIntensity = maxIntensity;
-                lasLevel.sourceId = sourceID;
-
-                levelsList.add(lasLevel);
-
-                if (levelsList.size() > 10000) {
-                    LasLevelsTable.insertLasLevels(spatialiteDb, srid, levelsList);
-                    levelsList = new ArrayList<>();
+        try (BulkInserter inserter = spatialiteDb.createBulkInserter(LasLevelsTable.getInsertSql(srid, level), pBatchSize,
+                pCommitInterval)) {
+            IJGTPreparedStatement pStmt = inserter.getStatement();
+            for( int x = 0; x < xRangesLevel.length - 1; x++ ) {
+                double xmin = xRangesLevel[x];
+                double xmax = xRangesLevel[x + 1];
+                for( int y = 0; y < yRangesLevel.length - 1; y++ ) {
+                    double ymin = yRangesLevel[y];
+                    double ymax = yRangesLevel[y + 1];
+                    Envelope levelEnv = new Envelope(xmin, xmax, ymin, ymax);
+                    Polygon polygon = GeometryUtilities.createPolygonFromEnvelope(levelEnv);
+
+                    List<LasLevel> lasLevels = LasLevelsTable.getLasLevels(spatialiteDb, previousLevelNum, levelEnv);
+
+                    double avgElev = 0.0;
+                    double minElev = Double.POSITIVE_INFINITY;
+                    double maxElev = Double.NEGATIVE_INFINITY;
+                    short avgIntensity = 0;
+                    short minIntensity = 30000;
+                    short maxIntensity = -1;
+
+                    int count = 0;
+                    for( LasLevel lasLevel : lasLevels ) {
+                        avgElev += lasLevel.avgElev;
+                        minElev = min(lasLevel.minElev, minElev);
+                        maxElev = max(lasLevel.maxElev, maxElev);
+
+                        avgIntensity += lasLevel.avgIntensity;
+                        minIntensity = (short) min(lasLevel.minIntensity, minIntensity);
+                        maxIntensity = (short) max(lasLevel.maxIntensity, maxIntensity);
+
+                        count++;
+                    }
+                    if (count == 0) {
+                        continue;
+                    }
+                    avgElev /= count;
+                    avgIntensity /= count;
+
+                    LasLevel lasLevel = new LasLevel();
+                    lasLevel.polygon = polygon;
+                    lasLevel.level = level;
+                    lasLevel.avgElev = avgElev;
+                    lasLevel.minElev = minElev;
+                    lasLevel.maxElev = maxElev;
+                    lasLevel.avgIntensity = avgIntensity;
+                    lasLevel.minIntensity = minIntensity;
+                    lasLevel.maxIntensity = maxIntensity;
+                    lasLevel.sourceId = sourceID;
+
+                    LasLevelsTable.bindLasLevel(pStmt, lasLevel);
+                    inserter.addBatch();
                 }
+                if (doVerbose)
+                    pm.worked(1);
             }
-            if (doVerbose)
-                pm.worked(1);
-        }
-        if (levelsList.size() > 0) {
-            LasLevelsTable.insertLasLevels(spatialiteDb, srid, levelsList);
+            inserter.commit();
         }
         if (doVerbose)
             pm.done();
@@ -0,0 +1,218 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.las.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jgrasstools.gears.io.las.core.LasRecord;
+
+/**
+ * Grid bucket index of las points for fixed radius neighbourhood searches.
+ *
+ * <p>The points are sorted into the square cells of a regular grid, so that
+ * a search only visits the cells overlapped by the search circle. With a
+ * cell size close to the typical search radius that means at most 9 cells.
+ * Distances are calculated in 2D, as in {@link LasUtils#distance(LasRecord, LasRecord)}.</p>
+ *
+ * <p>The index is immutable once created and can be queried from many threads.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class LasPointsGridIndex {
+
+    /**
+     * Visitor of the points found in a search.
+     */
+    public static interface IPointVisitor {
+        /**
+         * Process a point found in a search.
+         *
+         * @param dot the point.
+         * @param distance its 2D distance from the search center.
+         * @return <code>false</code> to stop the search.
+         */
+        boolean visit( LasRecord dot, double distance );
+    }
+
+    private final List<LasRecord> points;
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int cols;
+    private final int rows;
+    /**
+     * Position in {@link #sortedIndexes} of the first point of every cell, plus the end position.
+     */
+    private final int[] cellStart;
+    /**
+     * The indexes of the points, ordered by cell.
+     */
+    private final int[] sortedIndexes;
+
+    /**
+     * Constructor.
+     *
+     * @param points the points to index. The list must not change while the index is used.
+     * @param cellSize the size of the grid cells, ideally close to the search radius. If the
+     *          grid would get much larger than the number of points, a larger size is used.
+     */
+    public LasPointsGridIndex( List<LasRecord> points, double cellSize ) {
+        this.points = points;
+        int size = points.size();
+
+        double minx = Double.POSITIVE_INFINITY;
+        double miny = Double.POSITIVE_INFINITY;
+        double maxx = Double.NEGATIVE_INFINITY;
+        double maxy = Double.NEGATIVE_INFINITY;
+        for( LasRecord dot : points ) {
+            minx = Math.min(minx, dot.x);
+            miny = Math.min(miny, dot.y);
+            maxx = Math.max(maxx, dot.x);
+            maxy = Math.max(maxy, dot.y);
+        }
+        if (size == 0) {
+            minx = miny = maxx = maxy = 0;
+        }
+        minX = minx;
+        minY = miny;
+        double width = maxx - minx;
+        double height = maxy - miny;
+
+        if (!(cellSize > 0) || Double.isInfinite(cellSize)) {
+            cellSize = Math.max(Math.max(width, height), 1.0);
+        }
+        // avoid grids with many more cells than points
+        long maxCells = 4L * size + 16;
+        while( ((long) (width / cellSize) + 1) * ((long) (height / cellSize) + 1) > maxCells ) {
+            cellSize *= 2;
+        }
+        this.cellSize = cellSize;
+        cols = (int) (width / cellSize) + 1;
+        rows = (int) (height / cellSize) + 1;
+
+        // counting sort of the points into the cells
+        int[] pointCells = new int[size];
+        cellStart = new int[cols * rows + 1];
+        for( int i = 0; i < size; i++ ) {
+            LasRecord dot = points.get(i);
+            int cell = cellIndex(col(dot.x), row(dot.y));
+            pointCells[i] = cell;
+            cellStart[cell + 1]++;
+        }
+        for( int i = 0; i < cols * rows; i++ ) {
+            cellStart[i + 1] += cellStart[i];
+        }
+        int[] next = new int[cols * rows];
+        System.arraycopy(cellStart, 0, next, 0, next.length);
+        sortedIndexes = new int[size];
+        for( int i = 0; i < size; i++ ) {
+            sortedIndexes[next[pointCells[i]]++] = i;
+        }
+    }
+
+    /**
+     * @return the indexed points.
+     */
+    public List<LasRecord> getPoints() {
+        return points;
+    }
+
+    /**
+     * @return the size of the grid cells.
+     */
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Visit the points within a distance from a position.
+     *
+     * @param x the x of the search center.
+     * @param y the y of the search center.
+     * @param radius the search radius. Points at exactly that distance are included,
+     *          a negative radius finds nothing.
+     * @param visitor the visitor of the found points.
+     * @return <code>false</code> if the search has been stopped by the visitor.
+     */
+    public boolean visitInRadius( double x, double y, double radius, IPointVisitor visitor ) {
+        if (radius < 0 || points.isEmpty()) {
+            return true;
+        }
+        int fromCol = Math.max(0, col(x - radius));
+        int toCol = Math.min(cols - 1, col(x + radius));
+        int fromRow = Math.max(0, row(y - radius));
+        int toRow = Math.min(rows - 1, row(y + radius));
+        for( int r = fromRow; r <= toRow; r++ ) {
+            for( int c = fromCol; c <= toCol; c++ ) {
+                int cell = cellIndex(c, r);
+                for( int i = cellStart[cell]; i < cellStart[cell + 1]; i++ ) {
+                    LasRecord dot = points.get(sortedIndexes[i]);
+                    double dx = dot.x - x;
+                    double dy = dot.y - y;
+                    double distance = Math.sqrt(dx * dx + dy * dy);
+                    if (distance <= radius && !visitor.visit(dot, distance)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the points within a distance from a position.
+     *
+     * @param x the x of the search center.
+     * @param y the y of the search center.
+     * @param radius the search radius.
+     * @return the list of points found.
+     */
+    public List<LasRecord> getInRadius( double x, double y, double radius ) {
+        final List<LasRecord> result = new ArrayList<>();
+        visitInRadius(x, y, radius, new IPointVisitor(){
+            public boolean visit( LasRecord dot, double distance ) {
+                result.add(dot);
+                return true;
+            }
+        });
+        return result;
+    }
+
+    private int col( double x ) {
+        return clamp((int) Math.floor((x - minX) / cellSize), cols);
+    }
+
+    private int row( double y ) {
+        return clamp((int) Math.floor((y - minY) / cellSize), rows);
+    }
+
+    private static int clamp( int value, int size ) {
+        if (value < 0) {
+            return 0;
+        }
+        if (value >= size) {
+            return size - 1;
+        }
+        return value;
+    }
+
+    private int cellIndex( int col, int row ) {
+        return row * cols + col;
+    }
+}
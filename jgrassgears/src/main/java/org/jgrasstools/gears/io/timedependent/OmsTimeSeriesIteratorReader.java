@@ -19,6 +19,7 @@ package org.jgrasstools.gears.io.timedependent;
 
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSTIMESERIESITERATORREADER_AUTHORCONTACTS;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSTIMESERIESITERATORREADER_AUTHORNAMES;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSTIMESERIESITERATORREADER_DO_STREAM_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSTIMESERIESITERATORREADER_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSTIMESERIESITERATORREADER_KEYWORDS;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSTIMESERIESITERATORREADER_LABEL;
@@ -42,6 +43,7 @@ import static org.jgrasstools.gears.libs.modules.JGTConstants.doubleNovalue;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 
@@ -102,6 +104,10 @@ public class OmsTimeSeriesIteratorReader extends JGTModel {
     @In
     public int pAggregation = 0;
 
+    @Description(OMSTIMESERIESITERATORREADER_DO_STREAM_DESCRIPTION)
+    @In
+    public boolean doStream = false;
+
     @Description(OMSTIMESERIESITERATORREADER_T_START_DESCRIPTION)
     @In
     @Out
@@ -129,6 +135,11 @@ public class OmsTimeSeriesIteratorReader extends JGTModel {
     @Out
     public HashMap<Integer, double[]> outData;
 
+    /**
+     * The model time read ahead per block in streaming mode, in minutes.
+     */
+    private static final int READ_AHEAD_MINUTES = 7 * 1440;
+
     private TableIterator<String[]> rowsIterator;
 
     private CSTable table;
@@ -137,6 +148,20 @@ public class OmsTimeSeriesIteratorReader extends JGTModel {
 
     private DateTime expectedTimestamp = null;
 
+    private List<Integer> idList;
+
+    private List<Integer> idCountList;
+
+    private TimeSeriesStream stream;
+
+    /*
+     * the map reused in streaming mode, with the array and the position of every data column
+     */
+    private HashMap<Integer, double[]> streamData;
+    private double[][] columnArrays;
+    private int[] columnPositions;
+    private double[] aggregated;
+
     @Initialize
     public void initProcess() {
         // activate time
@@ -169,28 +194,22 @@ public class OmsTimeSeriesIteratorReader extends JGTModel {
                 rowsIterator.close();
                 rowsIterator = (TableIterator<String[]>) table.rows().iterator();
             }
+            readIds();
 
+            if (doStream) {
+                openStream();
+            }
         }
     }
 
-    @Execute
-    public void nextRecord() throws IOException {
-        ensureOpen();
-        if (tCurrent == null) {
-            tPrevious = null;
-            tCurrent = tStart.trim();
-            expectedTimestamp = formatter.parseDateTime(tCurrent);
-        } else {
-
-            tPrevious = tCurrent;
-            expectedTimestamp = expectedTimestamp.plusMinutes(tTimestep);
-            tCurrent = expectedTimestamp.toString(formatter);
-        }
-        outData = new HashMap<Integer, double[]>();
-
+    /**
+     * Read the ids of the data columns, consecutive columns with the same id
+     * are grouped.
+     */
+    private void readIds() {
         int columnCount = table.getColumnCount();
-        List<Integer> idList = new ArrayList<Integer>();
-        List<Integer> idCountList = new ArrayList<Integer>();
+        idList = new ArrayList<Integer>();
+        idCountList = new ArrayList<Integer>();
         int count = 0;
         Integer previousIdInteger = null;
         for( int i = 2; i <= columnCount; i++ ) {
@@ -217,6 +236,57 @@ public class OmsTimeSeriesIteratorReader extends JGTModel {
                         .getSimpleName(), pm);
             }
         }
+    }
+
+    /**
+     * Start parsing the rows in the background and create the reused map.
+     */
+    private void openStream() {
+        int columns = idList.size();
+        streamData = new HashMap<Integer, double[]>();
+        columnArrays = new double[columns][];
+        columnPositions = new int[columns];
+        aggregated = new double[columns];
+        for( int c = 0, idCountIndex = 0; c < columns; idCountIndex++ ) {
+            Integer id = idList.get(c);
+            int idCount = idCountList.get(idCountIndex);
+            double[] values = streamData.get(id);
+            if (values == null) {
+                values = new double[idCount];
+                streamData.put(id, values);
+            }
+            for( int j = 0; j < idCount; j++, c++ ) {
+                columnArrays[c] = values;
+                columnPositions[c] = j;
+            }
+        }
+
+        // read ahead a fixed span of model time, whatever the timestep
+        int steps = tTimestep > 0 ? Math.max(1, READ_AHEAD_MINUTES / tTimestep) : 1;
+        int blockRows = steps * Math.max(1, pNum);
+        stream = new TimeSeriesStream(rowsIterator, columns, fileNovalue, formatter, blockRows, "tsitreader-"
+                + new File(file).getName());
+        rowsIterator = null;
+    }
+
+    @Execute
+    public void nextRecord() throws IOException {
+        ensureOpen();
+        if (tCurrent == null) {
+            tPrevious = null;
+            tCurrent = tStart.trim();
+            expectedTimestamp = formatter.parseDateTime(tCurrent);
+        } else {
+
+            tPrevious = tCurrent;
+            expectedTimestamp = expectedTimestamp.plusMinutes(tTimestep);
+            tCurrent = expectedTimestamp.toString(formatter);
+        }
+        if (stream != null) {
+            nextStreamRecord();
+            return;
+        }
+        outData = new HashMap<Integer, double[]>();
 
         if (rowsIterator.hasNext()) {
             String[] row = getExpectedRow(rowsIterator, expectedTimestamp);
@@ -259,6 +329,71 @@ public class OmsTimeSeriesIteratorReader extends JGTModel {
         }
     }
 
+    /**
+     * Fill the reused map from the parsed rows, same as reading the rows of the table.
+     */
+    private void nextStreamRecord() throws IOException {
+        long expected = expectedTimestamp.getMillis();
+        boolean found = false;
+        while( !found && stream.hasNext() ) {
+            long time = stream.next();
+            if (time > expected) {
+                String message = "The data are not aligned with the simulation interval ("
+                        + new DateTime(time, formatter.getZone()) + "/" + expectedTimestamp + "). Check your data file: " + file;
+                throw new IOException(message);
+            }
+            found = time == expected;
+        }
+
+        if (found) {
+            int columns = aggregated.length;
+            if (pNum == 1) {
+                for( int c = 0; c < columns; c++ ) {
+                    aggregated[c] = stream.get(c);
+                }
+            } else {
+                Arrays.fill(aggregated, doubleNovalue);
+                for( int i = 0; i < pNum; i++ ) {
+                    if (i > 0) {
+                        if (!stream.hasNext()) {
+                            break;
+                        }
+                        stream.next();
+                    }
+                    for( int c = 0; c < columns; c++ ) {
+                        double value = stream.get(c);
+                        if (!Double.isNaN(value)) {
+                            aggregated[c] = Double.isNaN(aggregated[c]) ? value : aggregated[c] + value;
+                        }
+                    }
+                }
+                for( int c = 0; c < columns; c++ ) {
+                    if (pAggregation == 1) {
+                        aggregated[c] = aggregated[c] / pNum;
+                    } else if (pAggregation != 0) {
+                        aggregated[c] = doubleNovalue;
+                    }
+                }
+            }
+            for( int c = 0; c < columns; c++ ) {
+                double value = aggregated[c];
+                columnArrays[c][columnPositions[c]] = Double.isNaN(value) ? novalue : value;
+            }
+            outData = streamData;
+        } else {
+            outData = null;
+        }
+
+        // time ran out
+        if (tEnd != null && tCurrent.equals(tEnd)) {
+            doProcess = false;
+        }
+        // data ran out
+        if (!stream.hasNext()) {
+            doProcess = false;
+        }
+    }
+
     /**
      * Get the needed datarow from the table.
      * 
@@ -352,6 +487,12 @@ public class OmsTimeSeriesIteratorReader extends JGTModel {
 
     @Finalize
     public void close() throws IOException {
-        rowsIterator.close();
+        if (stream != null) {
+            stream.close();
+            stream = null;
+        }
+        if (rowsIterator != null) {
+            rowsIterator.close();
+        }
     }
 }
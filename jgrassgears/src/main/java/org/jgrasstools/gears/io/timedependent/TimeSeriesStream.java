@@ -0,0 +1,210 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.timedependent;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import oms3.io.TableIterator;
+
+import org.joda.time.format.DateTimeFormatter;
+
+/**
+ * Rows of a time series table parsed in a background thread.
+ *
+ * <p>A daemon thread parses the rows into a ring of blocks, each holding the
+ * timestamps and the values of all the data columns of a number of rows, in row
+ * major order. Empty cells and the file novalue are parsed to NaN. The blocks are
+ * handed back to the parser once consumed, so no memory is allocated after the
+ * first blocks are filled.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+class TimeSeriesStream {
+
+    /**
+     * The number of blocks in the ring.
+     */
+    private static final int BLOCKS = 4;
+
+    private static class Block {
+        final long[] times;
+        final double[] values;
+        int size;
+        boolean last;
+        Exception error;
+
+        Block( int rows, int columns ) {
+            times = new long[rows];
+            values = new double[rows * columns];
+        }
+    }
+
+    private final int columns;
+    private final BlockingQueue<Block> filled = new ArrayBlockingQueue<Block>(BLOCKS);
+    private final BlockingQueue<Block> free = new ArrayBlockingQueue<Block>(BLOCKS);
+    private final Thread parser;
+
+    private Block current;
+    private int row;
+    private Block pending;
+    private boolean ended;
+
+    /**
+     * Constructor, starts the parsing.
+     *
+     * @param rows the rows of the table, with the timestamp in the second cell.
+     *          The iterator is consumed and closed by the parser.
+     * @param columns the number of data columns, after the timestamp.
+     * @param fileNovalue the novalue string of the file.
+     * @param formatter the formatter of the timestamps.
+     * @param blockRows the number of rows per block.
+     * @param name the name of the parsing thread.
+     */
+    TimeSeriesStream( final TableIterator<String[]> rows, final int columns, final String fileNovalue,
+            final DateTimeFormatter formatter, final int blockRows, String name ) {
+        this.columns = columns;
+        for( int i = 0; i < BLOCKS; i++ ) {
+            free.add(new Block(blockRows, columns));
+        }
+        parser = new Thread(new Runnable(){
+            public void run() {
+                Block block = null;
+                try {
+                    while( true ) {
+                        block = free.take();
+                        block.size = 0;
+                        while( block.size < blockRows && rows.hasNext() ) {
+                            String[] row = rows.next();
+                            int base = block.size * columns;
+                            block.times[block.size] = formatter.parseMillis(row[1]);
+                            for( int c = 0; c < columns; c++ ) {
+                                block.values[base + c] = parse(row[c + 2], fileNovalue);
+                            }
+                            block.size++;
+                        }
+                        block.last = !rows.hasNext();
+                        filled.put(block);
+                        if (block.last) {
+                            return;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // closed
+                } catch (Exception e) {
+                    block.error = e;
+                    block.last = true;
+                    filled.offer(block);
+                } finally {
+                    try {
+                        rows.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }, name);
+        parser.setDaemon(true);
+        parser.start();
+    }
+
+    private static double parse( String value, String fileNovalue ) {
+        if (value == null || value.length() == 0) {
+            return Double.NaN;
+        }
+        value = value.trim();
+        if (value.equals(fileNovalue)) {
+            return Double.NaN;
+        }
+        return Double.parseDouble(value);
+    }
+
+    /**
+     * @return <code>true</code> if there is a further row. Waits for the parser if necessary,
+     *          the values of the current row stay available.
+     * @throws IOException if the parsing failed.
+     */
+    public boolean hasNext() throws IOException {
+        if (current != null && row + 1 < current.size) {
+            return true;
+        }
+        if (pending == null && !ended) {
+            try {
+                pending = filled.take();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            ended = pending.last;
+            if (pending.error != null) {
+                if (pending.error instanceof IOException) {
+                    throw (IOException) pending.error;
+                }
+                throw new IOException(pending.error.getLocalizedMessage(), pending.error);
+            }
+        }
+        // only the last block can be empty
+        return pending != null && pending.size > 0;
+    }
+
+    /**
+     * Move to the next row.
+     *
+     * @return the timestamp of the row in milliseconds.
+     * @throws IOException if the parsing failed.
+     */
+    public long next() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        if (current != null && row + 1 < current.size) {
+            row++;
+        } else {
+            if (current != null) {
+                free.offer(current);
+            }
+            current = pending;
+            pending = null;
+            row = 0;
+        }
+        return current.times[row];
+    }
+
+    /**
+     * @param column the data column, starting at 0 after the timestamp.
+     * @return the value of the current row, NaN for novalues.
+     */
+    public double get( int column ) {
+        return current.values[row * columns + column];
+    }
+
+    /**
+     * Stop the parser.
+     */
+    public void close() {
+        parser.interrupt();
+        try {
+            parser.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,243 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.libs.modules;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.doubleNovalue;
+
+import javax.media.jai.iterator.RandomIter;
+
+/**
+ * A mutable, {@link GridNode}-like view over a strip of raster rows.
+ *
+ * <p>The strip is read once into a primitive buffer (including one halo row
+ * above and below), after which the cursor can be moved to any cell of the
+ * strip without creating new objects or touching the underlying iterator.</p>
+ *
+ * <p>Neighbour values follow the same rules as {@link GridNode}: cells outside
+ * the raster bounds are returned as novalue.</p>
+ *
+ * <p>Instances are not thread safe, every worker needs its own cursor.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class GridNodeCursor {
+
+    public final int cols;
+    public final int rows;
+    public final double xRes;
+    public final double yRes;
+
+    /**
+     * The current col. Updated by {@link #moveTo(int, int)}.
+     */
+    public int col = -1;
+    /**
+     * The current row. Updated by {@link #moveTo(int, int)}.
+     */
+    public int row = -1;
+    /**
+     * The elevation of the current cell. Updated by {@link #moveTo(int, int)}.
+     */
+    public double elevation = doubleNovalue;
+
+    private final double[] buffer;
+    private final int maxBufferRows;
+    private int firstBufferRow;
+    private int bufferRows;
+
+    /**
+     * The constructor.
+     *
+     * @param cols the cols of the raster.
+     * @param rows the rows of the raster.
+     * @param xRes the x resolution of the raster.
+     * @param yRes the y resolution of the raster.
+     * @param maxStripRows the maximum number of rows that will be loaded at once, halo excluded.
+     */
+    public GridNodeCursor( int cols, int rows, double xRes, double yRes, int maxStripRows ) {
+        this.cols = cols;
+        this.rows = rows;
+        this.xRes = xRes;
+        this.yRes = yRes;
+        this.maxBufferRows = maxStripRows + 2;
+        this.buffer = new double[maxBufferRows * cols];
+    }
+
+    /**
+     * Read a strip of rows into the buffer.
+     *
+     * <p>The rows above and below the strip are read too, so that all
+     * neighbours of the strip cells are available.</p>
+     *
+     * @param elevationIter the iterator to read the values from.
+     * @param fromRow the first row of the strip.
+     * @param toRow the last row of the strip (exclusive).
+     */
+    public void load( RandomIter elevationIter, int fromRow, int toRow ) {
+        int first = Math.max(0, fromRow - 1);
+        int last = Math.min(rows, toRow + 1);
+        if (last - first > maxBufferRows) {
+            throw new IllegalArgumentException("The strip is larger than the cursor buffer: " + (toRow - fromRow));
+        }
+        firstBufferRow = first;
+        bufferRows = last - first;
+        int index = 0;
+        for( int r = first; r < last; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                buffer[index++] = elevationIter.getSampleDouble(c, r, 0);
+            }
+        }
+        col = -1;
+        row = -1;
+        elevation = doubleNovalue;
+    }
+
+    /**
+     * Move the cursor to a cell of the loaded strip.
+     *
+     * @param col the col to move to.
+     * @param row the row to move to.
+     */
+    public void moveTo( int col, int row ) {
+        this.col = col;
+        this.row = row;
+        elevation = getValue(col, row);
+    }
+
+    /**
+     * Get the buffered value of a cell.
+     *
+     * @param col the col of the cell.
+     * @param row the row of the cell.
+     * @return the value or novalue if the cell is outside the raster or the loaded strip.
+     */
+    public double getValue( int col, int row ) {
+        if (col < 0 || col >= cols || row < firstBufferRow || row >= firstBufferRow + bufferRows) {
+            return doubleNovalue;
+        }
+        return buffer[(row - firstBufferRow) * cols + col];
+    }
+
+    /**
+     * Get the value of the cell at a given offset from the current position.
+     *
+     * @param dCol the col offset.
+     * @param dRow the row offset.
+     * @return the value or novalue if outside the raster.
+     */
+    public double getValueAt( int dCol, int dRow ) {
+        return getValue(col + dCol, row + dRow);
+    }
+
+    /**
+     * Get the value of the elevation in one of the surrounding direction.
+     *
+     * @param direction the {@link Direction}.
+     * @return the elevation value.
+     */
+    public double getElevationAt( Direction direction ) {
+        return getValue(col + direction.col, row + direction.row);
+    }
+
+    /**
+     * Checks if the current cell is valid, i.e. inside the raster and not novalue.
+     *
+     * @return <code>true</code> if the cell is valid.
+     */
+    public boolean isValid() {
+        return col >= 0 && col < cols && row >= 0 && row < rows && !JGTConstants.isNovalue(elevation);
+    }
+
+    /**
+     * @return <code>true</code> if the current cell touches a boundary, i.e. any novalue or raster limit.
+     */
+    public boolean touchesBound() {
+        for( int dRow = -1; dRow <= 1; dRow++ ) {
+            for( int dCol = -1; dCol <= 1; dCol++ ) {
+                if (dCol == 0 && dRow == 0) {
+                    continue;
+                }
+                if (JGTConstants.isNovalue(getValueAt(dCol, dRow))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return <code>true</code> if all valid cells around the current are higher.
+     */
+    public boolean isPit() {
+        double tmpMin = Double.POSITIVE_INFINITY;
+        for( int dRow = -1; dRow <= 1; dRow++ ) {
+            for( int dCol = -1; dCol <= 1; dCol++ ) {
+                if (dCol == 0 && dRow == 0) {
+                    continue;
+                }
+                double tmp = getValueAt(dCol, dRow);
+                if (!JGTConstants.isNovalue(tmp) && tmp < tmpMin) {
+                    tmpMin = tmp;
+                }
+            }
+        }
+        return elevation < tmpMin;
+    }
+
+    public double getEastElev() {
+        return getValueAt(1, 0);
+    }
+
+    public double getENElev() {
+        return getValueAt(1, -1);
+    }
+
+    public double getNorthElev() {
+        return getValueAt(0, -1);
+    }
+
+    public double getNWElev() {
+        return getValueAt(-1, -1);
+    }
+
+    public double getWestElev() {
+        return getValueAt(-1, 0);
+    }
+
+    public double getWSElev() {
+        return getValueAt(-1, 1);
+    }
+
+    public double getSouthElev() {
+        return getValueAt(0, 1);
+    }
+
+    public double getSEElev() {
+        return getValueAt(1, 1);
+    }
+
+    @Override
+    public String toString() {
+        return "GridNodeCursor [\n\tcol=" + col + //
+                ", \n\trow=" + row + //
+                ", \n\televation=" + elevation + //
+                ", \n\tisValid=" + isValid() + //
+                "\n]";
+    }
+
+}
@@ -0,0 +1,357 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.libs.modules;
+
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.util.Arrays;
+
+/**
+ * Horizon angles of a DEM, calculated once per azimuth sector.
+ *
+ * <p>The horizon of a cell in a direction is the highest elevation angle under which
+ * the terrain is seen from the cell. A cell is in the shadow of the terrain when the sun
+ * is lower than the horizon in the direction of the sun, so once the horizons are known
+ * the shadow of any sun position becomes a lookup.</p>
+ *
+ * <p>The horizons of a sector are calculated walking the DEM along the same lines as the
+ * shadow scan of {@link ModelsEngine#calculateFactor(int, int, double[], double[], double[], java.awt.image.WritableRaster, double)},
+ * from the grid borders facing the sun, and keeping the upper convex hull of the
+ * profile walked so far, so that every cell costs constant amortized time.
+ * Novalues are no obstacle and have no horizon.</p>
+ *
+ * <p>Horizons are stored as hundredths of degree. Sectors used for single lookups are
+ * calculated lazily the first time they are needed and then cached, while
+ * {@link #calculateHorizons(int)} calculates a sector without keeping it, for callers
+ * that walk through many sectors one after the other. The engine can be used
+ * from many threads.</p>
+ *
+ * <p>Azimuths are in radians, starting from north (up in the grid) and clockwise.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class HorizonEngine {
+
+    /**
+     * The default number of sectors, i.e. one each 5 degrees.
+     */
+    public static final int DEFAULT_SECTORS = 72;
+
+    /**
+     * The horizon value of novalue cells.
+     */
+    public static final short NOVALUE_HORIZON = Short.MIN_VALUE;
+
+    /**
+     * The horizon value of cells with no terrain in the direction, i.e. -90 degrees.
+     */
+    public static final short NO_HORIZON = -9000;
+
+    private static final double SCALE = 100.0;
+
+    private final double[] elevations;
+    private final int cols;
+    private final int rows;
+    private final double res;
+    private final int sectors;
+
+    private final short[][] horizons;
+    private final Object[] locks;
+
+    /**
+     * Constructor.
+     *
+     * @param elevations the elevations of the DEM, row by row. Novalues are {@link Double#NaN}.
+     * @param cols the columns of the DEM.
+     * @param rows the rows of the DEM.
+     * @param res the resolution of the DEM.
+     * @param sectors the number of azimuth sectors to calculate horizons for.
+     */
+    public HorizonEngine( double[] elevations, int cols, int rows, double res, int sectors ) {
+        if (elevations.length != cols * rows) {
+            throw new IllegalArgumentException("The elevations don't match the grid size.");
+        }
+        if (sectors < 1) {
+            throw new IllegalArgumentException("At least one sector is needed.");
+        }
+        this.elevations = elevations;
+        this.cols = cols;
+        this.rows = rows;
+        this.res = res;
+        this.sectors = sectors;
+        horizons = new short[sectors][];
+        locks = new Object[sectors];
+        for( int i = 0; i < sectors; i++ ) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Create the engine for a DEM image.
+     *
+     * @param dem the DEM.
+     * @param res the resolution of the DEM.
+     * @param sectors the number of azimuth sectors.
+     * @return the engine.
+     */
+    public static HorizonEngine fromImage( RenderedImage dem, double res, int sectors ) {
+        Raster raster = dem.getData();
+        int cols = raster.getWidth();
+        int rows = raster.getHeight();
+        int minX = raster.getMinX();
+        int minY = raster.getMinY();
+        double[] elevations = new double[cols * rows];
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                double elev = raster.getSampleDouble(minX + c, minY + r, 0);
+                elevations[r * cols + c] = JGTConstants.isNovalue(elev) ? Double.NaN : elev;
+            }
+        }
+        return new HorizonEngine(elevations, cols, rows, res, sectors);
+    }
+
+    /**
+     * @return the number of sectors.
+     */
+    public int getSectors() {
+        return sectors;
+    }
+
+    /**
+     * @param sector the sector index.
+     * @return the azimuth of the sector.
+     */
+    public double getSectorAzimuth( int sector ) {
+        return 2.0 * Math.PI * sector / sectors;
+    }
+
+    /**
+     * Get the horizon of a cell in the direction of a sector.
+     *
+     * @param col the column of the cell.
+     * @param row the row of the cell.
+     * @param sector the sector index.
+     * @return the horizon angle in radians, <code>-PI/2</code> if there is no terrain
+     *          in that direction and {@link Double#NaN} for novalue cells.
+     */
+    public double getHorizon( int col, int row, int sector ) {
+        short value = getSector(sector)[row * cols + col];
+        return toRadians(value, value, 0);
+    }
+
+    /**
+     * Get the horizon of a cell in any direction, interpolating between the nearest sectors.
+     *
+     * @param col the column of the cell.
+     * @param row the row of the cell.
+     * @param azimuth the azimuth.
+     * @return the horizon angle in radians or {@link Double#NaN} for novalue cells.
+     */
+    public double getHorizon( int col, int row, double azimuth ) {
+        double position = getSectorPosition(azimuth);
+        int sector = (int) position;
+        int index = row * cols + col;
+        short before = getSector(sector)[index];
+        double weight = position - sector;
+        if (weight == 0) {
+            return toRadians(before, before, 0);
+        }
+        short after = getSector((sector + 1) % sectors)[index];
+        return toRadians(before, after, weight);
+    }
+
+    /**
+     * Check if a cell is in the shadow of the terrain.
+     *
+     * @param col the column of the cell.
+     * @param row the row of the cell.
+     * @param azimuth the azimuth of the sun.
+     * @param sunElevation the elevation angle of the sun in radians.
+     * @return <code>true</code> if the sun is below the horizon or the cell is novalue.
+     */
+    public boolean isShadowed( int col, int row, double azimuth, double sunElevation ) {
+        return !(sunElevation >= getHorizon(col, row, azimuth));
+    }
+
+    /**
+     * Get the position of an azimuth among the sectors.
+     *
+     * <p>The integer part is the sector before the azimuth, the fractional part
+     * the weight of the following sector.</p>
+     *
+     * @param azimuth the azimuth.
+     * @return the position in [0, sectors).
+     */
+    public double getSectorPosition( double azimuth ) {
+        double position = azimuth / (2.0 * Math.PI) * sectors;
+        position = position % sectors;
+        if (position < 0) {
+            position += sectors;
+        }
+        if (position >= sectors) {
+            // rounding of tiny negative azimuths
+            position = 0;
+        }
+        return position;
+    }
+
+    /**
+     * Interpolate between the horizons of two sectors.
+     *
+     * @param before the horizon in the sector before, as returned by {@link #calculateHorizons(int)}.
+     * @param after the horizon in the sector after.
+     * @param weight the weight of the sector after, in [0, 1).
+     * @return the horizon in radians or {@link Double#NaN} for novalue cells.
+     */
+    public static double toRadians( short before, short after, double weight ) {
+        if (before == NOVALUE_HORIZON || after == NOVALUE_HORIZON) {
+            return Double.NaN;
+        }
+        return Math.toRadians(((1.0 - weight) * before + weight * after) / SCALE);
+    }
+
+    /**
+     * Calculate the azimuth of a direction given in grid units.
+     *
+     * @param dCol the column component, positive eastwards.
+     * @param dRow the row component, positive southwards.
+     * @return the azimuth in [0, 2*PI).
+     */
+    public static double azimuth( double dCol, double dRow ) {
+        double azimuth = Math.atan2(dCol, -dRow);
+        if (azimuth < 0) {
+            azimuth += 2.0 * Math.PI;
+        }
+        return azimuth;
+    }
+
+    /**
+     * Calculate the horizons of all the cells in the direction of a sector, without caching them.
+     *
+     * @param sector the sector index.
+     * @return the horizons in hundredths of degree, row by row. Novalue cells are
+     *          {@link #NOVALUE_HORIZON}, cells without terrain in the direction {@link #NO_HORIZON}.
+     */
+    public short[] calculateHorizons( int sector ) {
+        double azimuth = getSectorAzimuth(sector);
+        short[] horizon = new short[cols * rows];
+        Arrays.fill(horizon, NO_HORIZON);
+
+        double toSunCol = Math.sin(azimuth);
+        double toSunRow = -Math.cos(azimuth);
+        boolean alongCols = Math.abs(toSunCol) >= Math.abs(toSunRow);
+        int steps = alongCols ? cols : rows;
+        int width = alongCols ? rows : cols;
+        double toSunMajor = alongCols ? toSunCol : toSunRow;
+        double toSunMinor = alongCols ? toSunRow : toSunCol;
+
+        /*
+         * walk away from the sun, one cell at a time along the major axis, on lines
+         * starting from every cell of the two grid borders that face the sun
+         */
+        Sweep sweep = new Sweep(horizon, alongCols, steps, width);
+        sweep.majorStart = toSunMajor > 0 ? steps - 1 : 0;
+        sweep.majorDirection = toSunMajor > 0 ? -1 : 1;
+        sweep.slope = -toSunMinor / Math.abs(toSunMajor);
+        sweep.stepLength = res * Math.sqrt(1.0 + sweep.slope * sweep.slope);
+        for( int minor = 0; minor < width; minor++ ) {
+            sweep.line(0, minor);
+        }
+        int minorBorder = toSunMinor > 0 ? width - 1 : 0;
+        for( int t = 1; t < steps; t++ ) {
+            sweep.line(t, minorBorder);
+        }
+        return horizon;
+    }
+
+    private short[] getSector( int sector ) {
+        synchronized (locks[sector]) {
+            if (horizons[sector] == null) {
+                horizons[sector] = calculateHorizons(sector);
+            }
+            return horizons[sector];
+        }
+    }
+
+    /**
+     * The walk of the lines of a sector, keeping the upper convex hull of the profile.
+     */
+    private class Sweep {
+        private final short[] horizon;
+        private final boolean alongCols;
+        private final int steps;
+        private final int width;
+        private final double[] hullDistances;
+        private final double[] hullElevations;
+        private int majorStart;
+        private int majorDirection;
+        private double slope;
+        private double stepLength;
+
+        Sweep( short[] horizon, boolean alongCols, int steps, int width ) {
+            this.horizon = horizon;
+            this.alongCols = alongCols;
+            this.steps = steps;
+            this.width = width;
+            hullDistances = new double[steps];
+            hullElevations = new double[steps];
+        }
+
+        void line( int fromStep, int fromMinor ) {
+            int hullSize = 0;
+            for( int n = 0; n < steps - fromStep; n++ ) {
+                int minor = fromMinor + (int) Math.round(n * slope);
+                if (minor < 0 || minor >= width) {
+                    return;
+                }
+                int major = majorStart + majorDirection * (fromStep + n);
+                int index = alongCols ? minor * cols + major : major * cols + minor;
+                double elev = elevations[index];
+                if (Double.isNaN(elev)) {
+                    horizon[index] = NOVALUE_HORIZON;
+                    continue;
+                }
+                double distance = n * stepLength;
+
+                /*
+                 * drop the hull points that are no longer on the hull once this point
+                 * is added: the last one left is the point seen highest from here
+                 */
+                while( hullSize > 1
+                        && tangent(hullDistances[hullSize - 2], hullElevations[hullSize - 2], distance, elev) >= tangent(
+                                hullDistances[hullSize - 1], hullElevations[hullSize - 1], distance, elev) ) {
+                    hullSize--;
+                }
+                if (hullSize > 0) {
+                    double angle = Math.atan(tangent(hullDistances[hullSize - 1], hullElevations[hullSize - 1], distance, elev));
+                    short value = (short) Math.round(Math.toDegrees(angle) * SCALE);
+                    if (value > horizon[index]) {
+                        horizon[index] = value;
+                    }
+                }
+                hullDistances[hullSize] = distance;
+                hullElevations[hullSize] = elev;
+                hullSize++;
+            }
+        }
+    }
+
+    private static double tangent( double fromDistance, double fromElev, double distance, double elev ) {
+        return (fromElev - elev) / (distance - fromDistance);
+    }
+}
@@ -18,6 +18,7 @@
 package org.jgrasstools.gears.libs.modules;
 
 import static java.lang.Math.round;
+import static org.jgrasstools.gears.libs.modules.Variables.MAX_IN_FLIGHT_TILES_EN;
 
 import java.awt.geom.Point2D;
 import java.awt.image.Raster;
@@ -27,13 +28,21 @@ import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.media.jai.iterator.RandomIter;
 import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
 
+import oms3.annotations.Description;
+import oms3.annotations.In;
+
 import org.geotools.coverage.grid.GridCoordinates2D;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridEnvelope2D;
@@ -48,6 +57,7 @@ import org.geotools.geometry.GeneralEnvelope;
 import org.geotools.geometry.jts.JTS;
 import org.jgrasstools.gears.io.rasterwriter.OmsRasterWriter;
 import org.jgrasstools.gears.io.vectorreader.OmsVectorReader;
+import org.jgrasstools.gears.libs.modules.multiprocessing.BlockingExecutorService;
 import org.jgrasstools.gears.libs.monitor.DummyProgressMonitor;
 import org.jgrasstools.gears.modules.r.imagemosaic.OmsImageMosaicCreator;
 import org.jgrasstools.gears.utils.RegionMap;
@@ -71,12 +81,18 @@ import com.vividsolutions.jts.geom.Geometry;
 
 public abstract class JGTModelIM extends JGTModel {
 
-    private List<ImageMosaicReader> readers = new ArrayList<ImageMosaicReader>();
+    private List<URL> sourceUrls = new ArrayList<URL>();
+    /**
+     * The readers of every thread, since the tiles are read in parallel.
+     */
+    private ThreadLocal<List<ImageMosaicReader>> threadReaders = new ThreadLocal<List<ImageMosaicReader>>();
+    private List<ImageMosaicReader> allReaders = Collections.synchronizedList(new ArrayList<ImageMosaicReader>());
+
+    /**
+     * The tile currently processed by the thread.
+     */
+    private ThreadLocal<TileData> currentTile = new ThreadLocal<TileData>();
 
-    protected List<RandomIter> inRasterIterators = new ArrayList<RandomIter>();
-    protected List<GridCoverage2D> inRasters = new ArrayList<GridCoverage2D>();
-    protected List<WritableRandomIter> outRasters = new ArrayList<WritableRandomIter>();
-    protected List<GridCoverage2D> outGridCoverages = new ArrayList<GridCoverage2D>();
     private List<File> outRasterFiles = new ArrayList<File>();
 
     protected String locationField;
@@ -89,18 +105,30 @@ public abstract class JGTModelIM extends JGTModel {
 
     protected int cellBuffer = 0;
 
-    protected GridGeometry2D readGridGeometry;
+    /**
+     * The maximum number of tiles processed in parallel by {@link #processByTileCells()}.
+     * 
+     * <p>Every tile in process holds its read and write rasters in memory.
+     * With 1 the tiles are processed one after the other in the calling thread.
+     */
+    @Description(MAX_IN_FLIGHT_TILES_EN)
+    @In
+    public int pMaxInFlightTiles = getDefaultThreadsNum();
+
     private boolean isSingleInX = true;
     private boolean isSingleInY = true;
 
     protected void addSource( File imageMosaicSource ) throws IOException {
 
         URL imageMosaicUrl = imageMosaicSource.toURI().toURL();
-        final AbstractGridFormat imageMosaicFormat = (AbstractGridFormat) GridFormatFinder.findFormat(imageMosaicUrl);
-        final ImageMosaicReader imReader = (ImageMosaicReader) imageMosaicFormat.getReader(imageMosaicUrl);
-        // ImageMosaicReader imReader = new ImageMosaicReader(imageMosaicSource);
+        ImageMosaicReader imReader = openReader(imageMosaicUrl);
 
-        if (readers.size() == 0) {
+        List<ImageMosaicReader> readers = threadReaders.get();
+        if (readers == null) {
+            readers = new ArrayList<ImageMosaicReader>();
+            threadReaders.set(readers);
+        }
+        if (sourceUrls.size() == 0) {
             File propertiesFile = FileUtilities.substituteExtention(imageMosaicSource, "properties");
             HashMap<String, String> propertiesMap = FileUtilities
                     .readFileToHashMap(propertiesFile.getAbsolutePath(), null, false);
@@ -133,9 +161,35 @@ public abstract class JGTModelIM extends JGTModel {
             }
 
         }
+        sourceUrls.add(imageMosaicUrl);
         readers.add(imReader);
     }
 
+    private ImageMosaicReader openReader( URL imageMosaicUrl ) {
+        final AbstractGridFormat imageMosaicFormat = (AbstractGridFormat) GridFormatFinder.findFormat(imageMosaicUrl);
+        final ImageMosaicReader imReader = (ImageMosaicReader) imageMosaicFormat.getReader(imageMosaicUrl);
+        // ImageMosaicReader imReader = new ImageMosaicReader(imageMosaicSource);
+        allReaders.add(imReader);
+        return imReader;
+    }
+
+    /**
+     * Get the readers of the current thread, opening them if necessary.
+     * 
+     * @return the readers, in the order of the added sources.
+     */
+    private List<ImageMosaicReader> readers() {
+        List<ImageMosaicReader> readers = threadReaders.get();
+        if (readers == null) {
+            readers = new ArrayList<ImageMosaicReader>();
+            for( URL sourceUrl : sourceUrls ) {
+                readers.add(openReader(sourceUrl));
+            }
+            threadReaders.set(readers);
+        }
+        return readers;
+    }
+
     protected void addDestination( File outputFile ) throws IOException {
         outRasterFiles.add(outputFile);
     }
@@ -174,7 +228,7 @@ public abstract class JGTModelIM extends JGTModel {
         GeneralParameterValue[] readGeneralParameterValues = CoverageUtilities.createGridGeometryGeneralParameter(xRes, yRes,
                 north, south, east, west, crs);
 
-        ImageMosaicReader reader = readers.get(readerNum);
+        ImageMosaicReader reader = readers().get(readerNum);
         GridCoverage2D readGC = reader.read(readGeneralParameterValues);
         return readGC;
     }
@@ -185,24 +239,59 @@ public abstract class JGTModelIM extends JGTModel {
 
     protected void processByTileCells() throws Exception {
         int size = boundsGeometries.size();
-        int count = 0;
-        // pm.beginTask("Processing tiles...", size);
-        for( Geometry boundGeometry : boundsGeometries ) {
-            count++;
-            try {
-                pm.message("Processing tile " + boundGeometry.getUserData() + "(" + count + " of " + size + ")");
-                pm.message("\t\t->geom: " + boundGeometry.getEnvelopeInternal());
-                pm.message("\t\t->reading with cell buffer: " + cellBuffer);
-                pm.message("\t\t->reading with x/y resolution: " + xRes + "/" + yRes);
-                processGeometryByTileCell(count, boundGeometry);
-            } catch (Exception e) {
-                pm.errorMessage("Problems found for tile: " + boundGeometry.getUserData());
-                throw e;
+        if (pMaxInFlightTiles <= 1) {
+            int count = 0;
+            for( Geometry boundGeometry : boundsGeometries ) {
+                count++;
+                processTile(count, size, boundGeometry);
             }
-            // pm.worked(1);
+            return;
         }
-        // pm.done();
 
+        ExecutorService threadPool = Executors.newFixedThreadPool(pMaxInFlightTiles);
+        // blocks the submit when pMaxInFlightTiles are in process
+        BlockingExecutorService executor = new BlockingExecutorService(threadPool, pMaxInFlightTiles);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        try {
+            int count = 0;
+            for( Geometry boundGeometry : boundsGeometries ) {
+                count++;
+                final int tileNum = count;
+                futures.add(executor.submit(() -> {
+                    processTile(tileNum, size, boundGeometry);
+                    return null;
+                }));
+            }
+            for( Future<Void> future : futures ) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    for( Future<Void> f : futures ) {
+                        f.cancel(true);
+                    }
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void processTile( int count, int size, Geometry boundGeometry ) throws Exception {
+        try {
+            pm.message("Processing tile " + boundGeometry.getUserData() + "(" + count + " of " + size + ")");
+            pm.message("\t\t->geom: " + boundGeometry.getEnvelopeInternal());
+            pm.message("\t\t->reading with cell buffer: " + cellBuffer);
+            pm.message("\t\t->reading with x/y resolution: " + xRes + "/" + yRes);
+            processGeometryByTileCell(count, boundGeometry);
+        } catch (Exception e) {
+            pm.errorMessage("Problems found for tile: " + boundGeometry.getUserData());
+            throw e;
+        }
     }
 
     private void processGeometryByTileCell( int count, Geometry boundGeometry ) throws IOException, TransformException, Exception {
@@ -226,12 +315,9 @@ public abstract class JGTModelIM extends JGTModel {
         // int readRows = (int) ((readNorth - readSouth) / yRes);
 
         /*
-         * clear lists of in and out data local to the loop
+         * in and out data local to the tile
          */
-        outGridCoverages.clear();
-        inRasterIterators.clear();
-        inRasters.clear();
-        outRasters.clear();
+        TileData tile = new TileData();
 
         GridGeometry2D writeGridGeometry = CoverageUtilities.gridGeometryFromRegionValues(writeNorth, writeSouth, writeEast,
                 writeWest, writeCols, writeRows, crs);
@@ -243,29 +329,28 @@ public abstract class JGTModelIM extends JGTModel {
                         JGTConstants.doubleNovalue);
                 RegionMap writeParams = CoverageUtilities.gridGeometry2RegionParamsMap(writeGridGeometry);
                 GridCoverage2D writeGC = CoverageUtilities.buildCoverage(outRasterFile.getName(), outWR, writeParams, crs);
-                outGridCoverages.add(writeGC);
+                tile.outGridCoverages.add(writeGC);
                 WritableRandomIter outDataIter = CoverageUtilities.getWritableRandomIterator(outWR);
-                outRasters.add(outDataIter);
+                tile.outRasters.add(outDataIter);
             } else {
-                outGridCoverages.add(null);
-                outRasters.add(null);
+                tile.outGridCoverages.add(null);
+                tile.outRasters.add(null);
             }
         }
 
-        readGridGeometry = null;
         GeneralParameterValue[] readGeneralParameterValues = CoverageUtilities.createGridGeometryGeneralParameter(xRes, yRes,
                 readNorth, readSouth, readEast, readWest, crs);
 
         int index = 0;
-        for( ImageMosaicReader reader : readers ) {
+        for( ImageMosaicReader reader : readers() ) {
             try {
                 GridCoverage2D readGC = reader.read(readGeneralParameterValues);
-                readGridGeometry = readGC.getGridGeometry();
+                tile.readGridGeometry = readGC.getGridGeometry();
                 // read raster at once, since a randomiter is way slower when wrapping borders
                 Raster readRaster = readGC.getRenderedImage().getData();
                 RandomIter readIter = RandomIterFactory.create(readRaster, null);
-                inRasterIterators.add(readIter);
-                inRasters.add(readGC);
+                tile.inRasterIterators.add(readIter);
+                tile.inRasters.add(readGC);
                 index++;
             } catch (Exception e) {
                 StringBuilder errSb = new StringBuilder();
@@ -274,12 +359,13 @@ public abstract class JGTModelIM extends JGTModel {
                 errSb.append("ERROR: with reader N." + index + ": " + Arrays.toString(reader.getGridCoverageNames()));
                 errSb.append("\nERROR: " + e.getLocalizedMessage());
                 pm.errorMessage(errSb.toString());
-                freeIterators();
+                tile.freeIterators();
                 // e.printStackTrace();
                 // return;
                 throw new IOException("Problems reading Mosaic!");
             }
         }
+        GridGeometry2D readGridGeometry = tile.readGridGeometry;
 
         // Envelope allBoundsEnv = new Envelope(new Coordinate(llCorner[0], llCorner[1]), new
         // Coordinate(urCorner[0], urCorner[1]));
@@ -316,19 +402,25 @@ public abstract class JGTModelIM extends JGTModel {
             maxX = maxX + gridRange2D.x;
         }
 
+        /*
+         * read and write grids have the same resolution, so the read cell
+         * is always at the same offset from the write cell
+         */
+        DirectPosition firstWriteCellWorld = writeGridGeometry.gridToWorld(new GridCoordinates2D(0, 0));
+        GridCoordinates2D firstReadCell = readGridGeometry.worldToGrid(firstWriteCellWorld);
+        int colOffset = firstReadCell.x;
+        int rowOffset = firstReadCell.y;
+
+        currentTile.set(tile);
         try {
-            final GridCoordinates2D gridCoordinates2D = new GridCoordinates2D();
-            for( int writeCol = 0; writeCol < writeCols; writeCol++ ) {
-                for( int writeRow = 0; writeRow < writeRows; writeRow++ ) {
-                    gridCoordinates2D.x = writeCol;
-                    gridCoordinates2D.y = writeRow;
-                    DirectPosition writeGridToWorld = writeGridGeometry.gridToWorld(gridCoordinates2D);
-                    GridCoordinates2D worldToReadGrid = readGridGeometry.worldToGrid(writeGridToWorld);
-                    int readCol = worldToReadGrid.x;
-                    int readRow = worldToReadGrid.y;
-
-                    if (readCol + cellBuffer > maxX || readCol - cellBuffer < minX || //
-                            readRow + cellBuffer > maxY || readRow - cellBuffer < minY) {
+            for( int writeRow = 0; writeRow < writeRows; writeRow++ ) {
+                int readRow = writeRow + rowOffset;
+                if (readRow + cellBuffer > maxY || readRow - cellBuffer < minY) {
+                    continue;
+                }
+                for( int writeCol = 0; writeCol < writeCols; writeCol++ ) {
+                    int readCol = writeCol + colOffset;
+                    if (readCol + cellBuffer > maxX || readCol - cellBuffer < minX) {
                         continue;
                     }
 
@@ -337,12 +429,13 @@ public abstract class JGTModelIM extends JGTModel {
             }
 
         } finally {
-            freeIterators();
+            currentTile.remove();
+            tile.freeIterators();
         }
 
         for( int i = 0; i < outRasterFiles.size(); i++ ) {
             File outputFile = outRasterFiles.get(i);
-            GridCoverage2D writeGC = outGridCoverages.get(i);
+            GridCoverage2D writeGC = tile.outGridCoverages.get(i);
             if (writeGC != null) {
                 File outParentFolder = outputFile.getParentFile();
                 if (outParentFolder == null || !outParentFolder.exists()) {
@@ -360,17 +453,6 @@ public abstract class JGTModelIM extends JGTModel {
 
     }
 
-    private void freeIterators() {
-        for( RandomIter inRasterIterator : inRasterIterators ) {
-            if (inRasterIterator != null)
-                inRasterIterator.done();
-        }
-        for( RandomIter outRasterIterator : outRasters ) {
-            if (outRasterIterator != null)
-                outRasterIterator.done();
-        }
-    }
-
     protected void makeMosaic() throws Exception {
         for( int i = 0; i < outRasterFiles.size(); i++ ) {
             File outputFile = outRasterFiles.get(i);
@@ -408,15 +490,54 @@ public abstract class JGTModelIM extends JGTModel {
      * Disposes resources.
      */
     protected void dispose() {
-        for( ImageMosaicReader reader : readers ) {
-            reader.dispose();
+        synchronized (allReaders) {
+            for( ImageMosaicReader reader : allReaders ) {
+                reader.dispose();
+            }
+            allReaders.clear();
         }
+        threadReaders.remove();
+    }
+
+    /**
+     * @param index the index of the source.
+     * @return the iterator over the read raster of the current tile.
+     */
+    protected RandomIter getInRasterIterator( int index ) {
+        return currentTile.get().inRasterIterators.get(index);
+    }
+
+    /**
+     * @param index the index of the source.
+     * @return the read coverage of the current tile.
+     */
+    protected GridCoverage2D getInRaster( int index ) {
+        return currentTile.get().inRasters.get(index);
+    }
+
+    /**
+     * @param index the index of the destination.
+     * @return the iterator over the written raster of the current tile or <code>null</code>.
+     */
+    protected WritableRandomIter getOutRaster( int index ) {
+        return currentTile.get().outRasters.get(index);
+    }
+
+    /**
+     * @return the grid geometry of the read rasters of the current tile.
+     */
+    protected GridGeometry2D getReadGridGeometry() {
+        return currentTile.get().readGridGeometry;
     }
 
     /**
      * Process one cell.
      * 
-     * <p>This is used when {@link #processByTileCells()} is called.
+     * <p>This is used when {@link #processByTileCells()} is called. Since tiles
+     * are processed in parallel, this can be called concurrently by different threads.
+     * The data of the tile of the calling thread are available through
+     * {@link #getInRasterIterator(int)}, {@link #getOutRaster(int)} and
+     * {@link #getReadGridGeometry()}.
      * 
      * @param readCol the column of the cell to read.
      * @param readRow  the row of the cell to read.
@@ -430,4 +551,26 @@ public abstract class JGTModelIM extends JGTModel {
     protected abstract void processCell( int readCol, int readRow, int writeCol, int writeRow, int readCols, int readRows,
             int writeCols, int writeRows );
 
+    /**
+     * The in and out data of a tile.
+     */
+    private static class TileData {
+        private List<RandomIter> inRasterIterators = new ArrayList<RandomIter>();
+        private List<GridCoverage2D> inRasters = new ArrayList<GridCoverage2D>();
+        private List<WritableRandomIter> outRasters = new ArrayList<WritableRandomIter>();
+        private List<GridCoverage2D> outGridCoverages = new ArrayList<GridCoverage2D>();
+        private GridGeometry2D readGridGeometry;
+
+        private void freeIterators() {
+            for( RandomIter inRasterIterator : inRasterIterators ) {
+                if (inRasterIterator != null)
+                    inRasterIterator.done();
+            }
+            for( RandomIter outRasterIterator : outRasters ) {
+                if (outRasterIterator != null)
+                    outRasterIterator.done();
+            }
+        }
+    }
+
 }
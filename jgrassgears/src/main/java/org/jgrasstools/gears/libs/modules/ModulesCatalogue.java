@@ -0,0 +1,407 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.libs.modules;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import oms3.Access;
+import oms3.ComponentAccess;
+import oms3.annotations.Description;
+import oms3.annotations.Execute;
+import oms3.annotations.Label;
+import oms3.annotations.Name;
+import oms3.annotations.Range;
+import oms3.annotations.Status;
+import oms3.annotations.UI;
+import oms3.annotations.Unit;
+
+import org.scannotation.AnnotationDB;
+
+/**
+ * Catalogue of the modules of a jar, with the annotations of the modules and of their fields.
+ *
+ * <p>The catalogue is written at build time into {@link #CATALOGUE_PATH} of every modules jar,
+ * through {@link #main(String[])}, so that at runtime the modules can be listed without
+ * scanning the jars and loading all the module classes.</p>
+ *
+ * <p>The catalogue is a UTF-8 text with one line per module followed by one line per
+ * input and output field, values being separated by tabs. The localized descriptions
+ * of a module or field, if any, follow its line, one language per line.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+@SuppressWarnings("nls")
+public class ModulesCatalogue {
+
+    /**
+     * The path of the catalogue inside the jars.
+     */
+    public static final String CATALOGUE_PATH = "META-INF/jgrasstools/modules.catalogue";
+
+    private static final String MODULE = "M";
+    private static final String INPUT = "I";
+    private static final String OUTPUT = "O";
+    private static final String LOCALIZED_DESCRIPTION = "D";
+    private static final String NULL = "\\N";
+
+    /**
+     * A module of the catalogue.
+     */
+    public static class ModuleEntry {
+        public String className;
+        /** The value of the {@link Name} annotation or <code>null</code>. */
+        public String name;
+        /** The value of the {@link Label} annotation or <code>null</code>. */
+        public String label;
+        /** The value of the {@link Description} annotation or <code>null</code>. */
+        public String description;
+        /** The non empty localized values of the {@link Description} annotation, by language. */
+        public final Map<String, String> localizedDescriptions = new LinkedHashMap<String, String>();
+        /** The value of the {@link Status} annotation or <code>null</code>. */
+        public Integer status;
+        /** The value of the {@link UI} annotation or <code>null</code>. */
+        public String uiHint;
+        public final List<FieldEntry> inputs = new ArrayList<FieldEntry>();
+        public final List<FieldEntry> outputs = new ArrayList<FieldEntry>();
+
+        /**
+         * @return the class name without package.
+         */
+        public String getSimpleName() {
+            return className.substring(className.lastIndexOf('.') + 1);
+        }
+
+        /**
+         * @param language the language, as used by the methods of {@link Description}.
+         * @return the description in the language if available, else the default one.
+         */
+        public String getDescription( String language ) {
+            return getLocalized(description, localizedDescriptions, language);
+        }
+    }
+
+    /**
+     * An input or output field of a module.
+     */
+    public static class FieldEntry {
+        public String fieldName;
+        /** The canonical name of the type of the field. */
+        public String fieldType;
+        /** The value of the {@link Description} annotation or <code>null</code>. */
+        public String description;
+        /** The non empty localized values of the {@link Description} annotation, by language. */
+        public final Map<String, String> localizedDescriptions = new LinkedHashMap<String, String>();
+        /** The value of the {@link Unit} annotation or <code>null</code>. */
+        public String unit;
+        /** The minimum of the {@link Range} annotation or <code>null</code>. */
+        public Double rangeMin;
+        /** The maximum of the {@link Range} annotation or <code>null</code>. */
+        public Double rangeMax;
+        /** The string of the value of the field in a new module or <code>null</code>. */
+        public String defaultValue;
+        /** The value of the {@link UI} annotation or <code>null</code>. */
+        public String uiHint;
+
+        /**
+         * @param language the language, as used by the methods of {@link Description}.
+         * @return the description in the language if available, else the default one.
+         */
+        public String getDescription( String language ) {
+            return getLocalized(description, localizedDescriptions, language);
+        }
+    }
+
+    private static String getLocalized( String description, Map<String, String> localizedDescriptions, String language ) {
+        if (description == null) {
+            return null;
+        }
+        String localized = localizedDescriptions.get(language);
+        return localized != null ? localized : description;
+    }
+
+    /**
+     * Write the catalogue of the modules found in a classes folder.
+     *
+     * <p>Arguments:</p>
+     * <ol>
+     *  <li>the classes folder, the catalogue is written into it</li>
+     *  <li>the package of the modules to consider</li>
+     * </ol>
+     *
+     * @param args the arguments.
+     * @throws Exception
+     */
+    public static void main( String[] args ) throws Exception {
+        if (args.length != 2) {
+            System.err.println("usage: ModulesCatalogue <classes folder> <modules package>");
+            return;
+        }
+        File classesFolder = new File(args[0]);
+        String modulesPackage = args[1];
+
+        AnnotationDB db = new AnnotationDB();
+        db.scanArchives(classesFolder.toURI().toURL());
+        Map<String, Set<String>> annotationIndex = db.getAnnotationIndex();
+        Set<String> executeClasses = annotationIndex.get(Execute.class.getName());
+
+        List<Class< ? >> classes = new ArrayList<Class< ? >>();
+        if (executeClasses != null) {
+            for( String className : new TreeSet<String>(executeClasses) ) {
+                if (!className.startsWith(modulesPackage)) {
+                    continue;
+                }
+                try {
+                    classes.add(Class.forName(className));
+                } catch (Throwable e) {
+                    System.err.println("Module not added to the catalogue: " + className + " (" + e.getMessage() + ")");
+                }
+            }
+        }
+
+        File catalogueFile = new File(classesFolder, CATALOGUE_PATH);
+        catalogueFile.getParentFile().mkdirs();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(catalogueFile), StandardCharsets.UTF_8)) {
+            int count = write(classes, writer);
+            System.out.println("Modules catalogue written with " + count + " modules: " + catalogueFile);
+        }
+    }
+
+    /**
+     * Write the catalogue of some modules.
+     *
+     * <p>Modules that can't be created are left out, as they are not usable.</p>
+     *
+     * @param moduleClasses the classes of the modules.
+     * @param writer the writer to use.
+     * @return the number of modules written.
+     * @throws IOException
+     */
+    public static int write( List<Class< ? >> moduleClasses, Writer writer ) throws IOException {
+        int count = 0;
+        for( Class< ? > moduleClass : moduleClasses ) {
+            Object module;
+            try {
+                module = moduleClass.newInstance();
+            } catch (Throwable e) {
+                continue;
+            }
+
+            Name name = moduleClass.getAnnotation(Name.class);
+            Label label = moduleClass.getAnnotation(Label.class);
+            Description description = moduleClass.getAnnotation(Description.class);
+            Status status = moduleClass.getAnnotation(Status.class);
+            UI uiHint = moduleClass.getAnnotation(UI.class);
+            writeLine(writer, MODULE, moduleClass.getCanonicalName(), name != null ? name.value() : null,
+                    label != null ? label.value() : null, description != null ? description.value() : null,
+                    status != null ? String.valueOf(status.value()) : null, uiHint != null ? uiHint.value() : null);
+            writeLocalizedDescriptions(writer, description);
+
+            ComponentAccess componentAccess = new ComponentAccess(module);
+            writeFields(writer, INPUT, componentAccess.inputs());
+            writeFields(writer, OUTPUT, componentAccess.outputs());
+            count++;
+        }
+        writer.flush();
+        return count;
+    }
+
+    private static void writeFields( Writer writer, String kind, Collection<Access> accesses ) throws IOException {
+        for( Access access : accesses ) {
+            Field field = access.getField();
+            Description description = field.getAnnotation(Description.class);
+            Unit unit = field.getAnnotation(Unit.class);
+            Range range = field.getAnnotation(Range.class);
+            UI uiHint = field.getAnnotation(UI.class);
+            Object value;
+            try {
+                value = access.getFieldValue();
+            } catch (Exception e) {
+                value = null;
+            }
+            writeLine(writer, kind, field.getName(), field.getType().getCanonicalName(),
+                    description != null ? description.value() : null, unit != null ? unit.value() : null,
+                    range != null ? String.valueOf(range.min()) : null, range != null ? String.valueOf(range.max()) : null,
+                    value != null ? value.toString() : null, uiHint != null ? uiHint.value() : null);
+            writeLocalizedDescriptions(writer, description);
+        }
+    }
+
+    private static void writeLocalizedDescriptions( Writer writer, Description description ) throws IOException {
+        if (description == null) {
+            return;
+        }
+        for( Method method : Description.class.getDeclaredMethods() ) {
+            if (method.getName().equals("value") || method.getReturnType() != String.class) {
+                continue;
+            }
+            String localized;
+            try {
+                localized = (String) method.invoke(description);
+            } catch (Exception e) {
+                continue;
+            }
+            if (localized != null && localized.length() > 0) {
+                writeLine(writer, LOCALIZED_DESCRIPTION, method.getName(), localized);
+            }
+        }
+    }
+
+    /**
+     * Read a catalogue.
+     *
+     * @param inputStream the stream of the catalogue, it is not closed.
+     * @return the modules of the catalogue.
+     * @throws IOException
+     */
+    public static List<ModuleEntry> read( InputStream inputStream ) throws IOException {
+        List<ModuleEntry> modules = new ArrayList<ModuleEntry>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        ModuleEntry module = null;
+        Map<String, String> lastLocalizedDescriptions = null;
+        String line;
+        while( (line = reader.readLine()) != null ) {
+            if (line.length() == 0) {
+                continue;
+            }
+            String[] values = line.split("\t", -1);
+            for( int i = 0; i < values.length; i++ ) {
+                values[i] = unescape(values[i]);
+            }
+            if (values[0].equals(MODULE)) {
+                module = new ModuleEntry();
+                module.className = values[1];
+                module.name = values[2];
+                module.label = values[3];
+                module.description = values[4];
+                module.status = values[5] != null ? Integer.valueOf(values[5]) : null;
+                module.uiHint = values[6];
+                modules.add(module);
+                lastLocalizedDescriptions = module.localizedDescriptions;
+            } else if (values[0].equals(LOCALIZED_DESCRIPTION)) {
+                if (lastLocalizedDescriptions != null) {
+                    lastLocalizedDescriptions.put(values[1], values[2]);
+                }
+            } else if (module != null) {
+                FieldEntry field = new FieldEntry();
+                field.fieldName = values[1];
+                field.fieldType = values[2];
+                field.description = values[3];
+                field.unit = values[4];
+                field.rangeMin = values[5] != null ? Double.valueOf(values[5]) : null;
+                field.rangeMax = values[6] != null ? Double.valueOf(values[6]) : null;
+                field.defaultValue = values[7];
+                field.uiHint = values[8];
+                if (values[0].equals(INPUT)) {
+                    module.inputs.add(field);
+                } else {
+                    module.outputs.add(field);
+                }
+                lastLocalizedDescriptions = field.localizedDescriptions;
+            }
+        }
+        return modules;
+    }
+
+    private static void writeLine( Writer writer, String... values ) throws IOException {
+        for( int i = 0; i < values.length; i++ ) {
+            if (i > 0) {
+                writer.write('\t');
+            }
+            writer.write(escape(values[i]));
+        }
+        writer.write('\n');
+    }
+
+    private static String escape( String value ) {
+        if (value == null) {
+            return NULL;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for( int i = 0; i < value.length(); i++ ) {
+            char c = value.charAt(i);
+            switch( c ) {
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            default:
+                sb.append(c);
+                break;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String unescape( String value ) {
+        if (value.equals(NULL)) {
+            return null;
+        }
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for( int i = 0; i < value.length(); i++ ) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                switch( next ) {
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                default:
+                    sb.append(next);
+                    break;
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
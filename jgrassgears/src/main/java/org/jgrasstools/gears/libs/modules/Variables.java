@@ -26,6 +26,7 @@ public interface Variables {
     public String DEFAULT = "default";
 
     public String PROGRESS_MONITOR_EN = "The progress monitor.";
+    public String MAX_IN_FLIGHT_TILES_EN = "The maximum number of tiles processed in parallel, 1 to process them one after the other.";
 
     public String TPS = "TPS";
     public String IDW = "IDW";
@@ -14,28 +14,37 @@
  */
 package org.jgrasstools.gears.libs.modules.multiprocessing;
 
-import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 /**
  * Submits up to a maximum count tasks to a delegate {@link ExecutorService}. Blocks
  * submitting thread if it thries to submit more than the maximum number of tasks.
+ * <p/>
+ * Tasks that are submitted from within a task of this executor (nested
+ * parallelism) are executed in the calling thread. Otherwise the nested submit
+ * could wait for a permit that is held by the calling task itself, and a full
+ * pool of such tasks would deadlock.
+ * <p/>
+ * The submit(), invokeAll() and invokeAny() methods are provided by
+ * {@link AbstractExecutorService} on top of {@link #execute(Runnable)}.
  *
  * @author Falko Bräutigam
  */
 public class BlockingExecutorService
-        implements ExecutorService {
+        extends AbstractExecutorService {
 
     private ExecutorService         delegate;
     
     private Semaphore               taskCount;
+    
+    private int                     maxTaskCount;
+    
+    private ThreadLocal<Boolean>    insideTask = ThreadLocal.withInitial( () -> Boolean.FALSE );
 
     /**
      * 
@@ -45,6 +54,7 @@ public class BlockingExecutorService
      */
     public BlockingExecutorService( ExecutorService delegate, int maxTaskCount ) {
         this.delegate = delegate;
+        this.maxTaskCount = maxTaskCount;
         this.taskCount = new Semaphore( maxTaskCount );
     }
 
@@ -57,56 +67,36 @@ public class BlockingExecutorService
         }
     }
 
-    @Override
-    public void execute( Runnable command ) {
-        beforeSubmit();
-        delegate.execute( () -> {
-            try {
-                command.run();
-            }
-            finally {
-                taskCount.release();
-            }
-        });
-    }
-
-    @Override
-    public <T> Future<T> submit( Callable<T> task ) {
-        beforeSubmit();
-        return delegate.submit( () -> {
-            try {
-                return task.call();
-            }
-            finally {
-                taskCount.release();
-            }
-        });
-    }
-
-    @Override
-    public <T> Future<T> submit( Runnable task, T result ) {
-        beforeSubmit();
-        return delegate.submit( () -> {
-            try {
-                task.run();
-            }
-            finally {
-                taskCount.release();
-            }
-        }, result );
+    /**
+     * The number of tasks currently submitted to the delegate and not yet done.
+     */
+    public int getQueueDepth() {
+        return maxTaskCount - taskCount.availablePermits();
     }
 
     @Override
-    public Future<?> submit( Runnable task ) {
+    public void execute( Runnable command ) {
+        if (insideTask.get()) {
+            command.run();
+            return;
+        }
         beforeSubmit();
-        return delegate.submit( () -> {
-            try {
-                task.run();
-            }
-            finally {
-                taskCount.release();
-            }
-        });
+        try {
+            delegate.execute( () -> {
+                insideTask.set( Boolean.TRUE );
+                try {
+                    command.run();
+                }
+                finally {
+                    insideTask.set( Boolean.FALSE );
+                    taskCount.release();
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            taskCount.release();
+            throw e;
+        }
     }
 
     @Override
@@ -134,30 +124,4 @@ public class BlockingExecutorService
         return delegate.awaitTermination( timeout, unit );
     }
 
-    @Override
-    public <T> List<Future<T>> invokeAll( Collection<? extends Callable<T>> tasks ) throws InterruptedException {
-        // XXX Auto-generated method stub
-        throw new RuntimeException( "not yet implemented." );
-    }
-
-    @Override
-    public <T> List<Future<T>> invokeAll( Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit )
-            throws InterruptedException {
-        // XXX Auto-generated method stub
-        throw new RuntimeException( "not yet implemented." );
-    }
-
-    @Override
-    public <T> T invokeAny( Collection<? extends Callable<T>> tasks ) throws InterruptedException, ExecutionException {
-        // XXX Auto-generated method stub
-        throw new RuntimeException( "not yet implemented." );
-    }
-
-    @Override
-    public <T> T invokeAny( Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit )
-            throws InterruptedException, ExecutionException, TimeoutException {
-        // XXX Auto-generated method stub
-        throw new RuntimeException( "not yet implemented." );
-    }
-    
 }
@@ -19,6 +19,7 @@
 package org.jgrasstools.gears.libs.modules.multiprocessing;
 
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.LinkedTransferQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -29,51 +30,122 @@ import java.util.function.Supplier;
  * An {@link ExecutionPlanner} provides the logic to distribute the processing of
  * many small {@link MultiProcessingTask}s over a limited number of execution
  * threads. This is crucial for efficient parallel execution.
+ * <p/>
+ * The shared executors used by the planners are created lazily, based on
+ * {@link #setPoolSize(int)} and {@link #setQueueDepth(int)}. Changing one of
+ * the settings shuts down the current executors (running tasks are completed)
+ * and new ones are created on next use.
  * 
  * @author Falko Bräutigam
  */
 public abstract class ExecutionPlanner {
 
-    static {
-        ThreadFactory threadFactory = new ThreadFactory() {
-            volatile int threadNumber = 0;
+    private static int                      poolSize = Runtime.getRuntime().availableProcessors();
+    
+    private static int                      queueDepth = poolSize;
+    
+    private static BlockingExecutorService  defaultExecutor;
+    
+    private static ForkJoinPool             forkJoinPool;
+    
+    
+    /**
+     * The default {@link ExecutorService} to be used by all thread pool based planners.
+     * <p/>
+     * The executor runs {@link #getPoolSize()} daemon threads and accepts up to
+     * {@link #getQueueDepth()} tasks, further submits are blocked.
+     */
+    public static synchronized BlockingExecutorService defaultExecutor() {
+        if (defaultExecutor == null) {
+            ThreadFactory threadFactory = new ThreadFactory() {
+                volatile int threadNumber = 0;
+                
+                @Override
+                public Thread newThread( Runnable r ) {
+                    Thread t = new Thread( r, "process-worker-" + threadNumber++ );
+                    t.setDaemon( true );
+                    //t.setPriority( DEFAULT_THREAD_PRIORITY );
+                    return t;
+                }
+            };
+            ThreadPoolExecutor threadPool = new ThreadPoolExecutor( poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                    // with BlockingExecutorService on top we can have unbound queue
+                    new LinkedTransferQueue(),
+                    threadFactory );
             
-            @Override
-            public Thread newThread( Runnable r ) {
-                Thread t = new Thread( r, "process-worker-" + threadNumber++ );
-                t.setDaemon( false );
-                //t.setPriority( DEFAULT_THREAD_PRIORITY );
-                return t;
-            }
-        };
-        
-        int procNum = Runtime.getRuntime().availableProcessors();
-        ThreadPoolExecutor threadPool = new ThreadPoolExecutor( procNum, procNum, 60L, TimeUnit.SECONDS,
-                // with BlockingExecutorService on top we can have unbound queue
-                new LinkedTransferQueue(),
-               // new LinkedBlockingDeque( procNum ),
-               // new SynchronousQueue(),
-               // new ArrayBlockingQueue( procNum ) );
-                threadFactory );
-        
-        defaultExecutor = new BlockingExecutorService( threadPool, procNum );
+            defaultExecutor = new BlockingExecutorService( threadPool, queueDepth );
+        }
+        return defaultExecutor;
     }
     
     
     /**
-     * The default {@link ExecutorService} to be used by all planners.
-     * <p/>
-     * Set this to change the default. The {@link ExecutorService} must not have an
-     * unbound queue or an unlimited number of threads. In other words, the executor
-     * has to refuse submits when system resources are running out.
+     * The {@link ForkJoinPool} used by the work stealing planners, with a
+     * parallelism of {@link #getPoolSize()}.
+     */
+    public static synchronized ForkJoinPool forkJoinPool() {
+        if (forkJoinPool == null) {
+            forkJoinPool = new ForkJoinPool( poolSize );
+        }
+        return forkJoinPool;
+    }
+    
+    
+    public static synchronized int getPoolSize() {
+        return poolSize;
+    }
+    
+    
+    /**
+     * Sets the number of threads of the shared executors. Defaults to the number
+     * of available processors.
      */
-    public static final BlockingExecutorService defaultExecutor; 
+    public static synchronized void setPoolSize( int poolSize ) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException( "The pool size has to be at least 1: " + poolSize );
+        }
+        ExecutionPlanner.poolSize = poolSize;
+        resetExecutors();
+    }
+    
+    
+    public static synchronized int getQueueDepth() {
+        return queueDepth;
+    }
+    
+    
+    /**
+     * Sets the maximum number of tasks that are submitted to the shared executors
+     * at once. Submitting threads are blocked when the limit is reached. Defaults
+     * to the number of available processors.
+     */
+    public static synchronized void setQueueDepth( int queueDepth ) {
+        if (queueDepth < 1) {
+            throw new IllegalArgumentException( "The queue depth has to be at least 1: " + queueDepth );
+        }
+        ExecutionPlanner.queueDepth = queueDepth;
+        resetExecutors();
+    }
+    
+    
+    private static void resetExecutors() {
+        if (defaultExecutor != null) {
+            defaultExecutor.shutdown();
+            defaultExecutor = null;
+        }
+        if (forkJoinPool != null) {
+            forkJoinPool.shutdown();
+            forkJoinPool = null;
+        }
+    }
+    
     
     /**
      * Set this to change the default planner for all modules.
      */
     public static Supplier<ExecutionPlanner> defaultPlannerFactory = () ->
-            new FixedChunkSizePlanner();
+            new WorkStealingPlanner();
+            //new FixedChunkSizePlanner();
             //new InThreadExecutionPlanner();
     
     /**
@@ -83,7 +83,7 @@ public class FixedChunkSizePlanner
         boolean success = false;
         for (int waitMillis=10; !success; waitMillis=Math.min( 100, waitMillis*2 ) ) {
            // System.out.println( Thread.currentThread().getName() + ": " + taskCount.availablePermits() );
-            success = submitted.add( defaultExecutor.submit( work ) );
+            success = submitted.add( defaultExecutor().submit( work ) );
         }
     }
     
@@ -21,6 +21,7 @@ import javax.media.jai.iterator.RandomIter;
 
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.jgrasstools.gears.libs.modules.GridNode;
+import org.jgrasstools.gears.libs.modules.GridNodeCursor;
 import org.jgrasstools.gears.utils.RegionMap;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 
@@ -31,6 +32,12 @@ import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
  */
 public abstract class GridNodeMultiProcessing extends MultiProcessing {
 
+    /**
+     * The upper limit of cells read into a single strip buffer by
+     * {@link #processGridNodeRows(GridCoverage2D, Calculator)}.
+     */
+    public static final int MAX_STRIP_CELLS = 1000000;
+
     /** The cache of {@link #regionMap()} */
     private Map<Integer, RegionMap> regionMaps = new HashMap();
 
@@ -77,6 +84,73 @@ public abstract class GridNodeMultiProcessing extends MultiProcessing {
         planner.join();
     }
 
+    /**
+     * Loops through all rows and cols of the given grid, handing strips of rows
+     * to the workers instead of single cells.
+     * <p/>
+     * Every strip is read once into the primitive buffer of a {@link GridNodeCursor},
+     * which is then moved over the cells of the strip and passed to the given
+     * calculator. The cursor is reused, so the calculator must not keep a reference
+     * to it. Cancellation is checked and progress is reported (one unit per row)
+     * once per strip.
+     */
+    protected void processGridNodeRows( GridCoverage2D inElev, Calculator<GridNodeCursor> calculator ) throws Exception {
+        RegionMap regionMap = regionMap(inElev);
+        int cols = regionMap.getCols();
+        int rows = regionMap.getRows();
+        double xRes = regionMap.getXres();
+        double yRes = regionMap.getYres();
+        if (rows < 3 || cols < 3) {
+            return;
+        }
+
+        RandomIter elevationIter = CoverageUtilities.getRandomIterator(inElev);
+
+        int validRows = rows - 2;
+        int stripRows = rowsPerStrip(cols, validRows);
+        int stripsNum = (validRows + stripRows - 1) / stripRows;
+
+        ExecutionPlanner planner = createDefaultPlanner();
+        planner.setNumberOfTasks(stripsNum);
+
+        // Cycling into the valid region.
+        for( int fromRow = 1; fromRow < rows - 1; fromRow += stripRows ) {
+            int _fromRow = fromRow;
+            int _toRow = Math.min(fromRow + stripRows, rows - 1);
+            planner.submit(() -> {
+                if (!pm.isCanceled()) {
+                    GridNodeCursor cursor = new GridNodeCursor(cols, rows, xRes, yRes, stripRows);
+                    cursor.load(elevationIter, _fromRow, _toRow);
+                    for( int r = _fromRow; r < _toRow; r++ ) {
+                        for( int c = 1; c < cols - 1; c++ ) {
+                            cursor.moveTo(c, r);
+                            calculator.calculate(cursor);
+                        }
+                    }
+                    pm.worked(_toRow - _fromRow);
+                }
+            });
+        }
+        planner.join();
+    }
+
+    /**
+     * The number of rows handed to a worker by {@link #processGridNodeRows(GridCoverage2D, Calculator)}.
+     * <p/>
+     * By default the rows are split in about three strips per processor, to
+     * balance the load while keeping the per-strip overhead negligible. A strip
+     * never holds more than {@link #MAX_STRIP_CELLS} cells, to bound the memory
+     * of the strip buffers. Override to tune for a particular algorithm.
+     *
+     * @param cols the number of cols of the grid.
+     * @param rows the number of rows to process.
+     */
+    protected int rowsPerStrip( int cols, int rows ) {
+        int procNum = Runtime.getRuntime().availableProcessors();
+        int stripRows = Math.min(rows / (procNum * 3), MAX_STRIP_CELLS / cols);
+        return Math.max(1, stripRows);
+    }
+
     @FunctionalInterface
     protected interface Calculator<T> {
         void calculate( T input ) throws Exception;
@@ -0,0 +1,182 @@
+/*
+ * JGrass - Free Open Source Java GIS http://www.jgrass.org
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Library General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Library General Public License
+ * along with this library; if not, write to the Free Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package org.jgrasstools.gears.libs.modules.multiprocessing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A planner that executes chunks of tasks on the shared
+ * {@link ExecutionPlanner#forkJoinPool()}.
+ * <p/>
+ * Every chunk is recursively split, so that idle workers can steal parts of
+ * the chunks of busy workers. At most {@link ExecutionPlanner#getQueueDepth()}
+ * chunks per planner are waiting or running at once.
+ * <p/>
+ * If the planner is used from inside a task of the pool (nested parallelism),
+ * the chunks are forked into the current worker instead of being submitted and
+ * {@link #join()} helps executing the tasks instead of blocking the worker.
+ * <p/>
+ * The planner only handles {@link MultiProcessingTask}s, code that needs the
+ * full {@link java.util.concurrent.ExecutorService} contract can use the
+ * shared {@link ExecutionPlanner#forkJoinPool()} directly.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class WorkStealingPlanner
+        extends ExecutionPlanner {
+
+    /**
+     * The absolut upper limit of the chunk size.
+     */
+    public static final int             MAX_CHUNK_SIZE = 10000;
+
+    private int                         targetChunkSize = -1;
+
+    private int                         leafSize;
+
+    private List<MultiProcessingTask>   accu;
+
+    private List<ForkJoinTask>          submitted = new ArrayList( 1024 );
+
+    private Semaphore                   chunkCount = new Semaphore( getQueueDepth() );
+
+    /** The first exception thrown by a task, rethrown by {@link #join()}. */
+    private AtomicReference<Exception>  exc = new AtomicReference();
+
+
+    @Override
+    public void submit( MultiProcessingTask task ) {
+        // init targetChunkSize
+        if (targetChunkSize == -1) {
+            if (numberOfTasks <= 0) {
+                throw new IllegalStateException( "No setNumberOfTasks() given." );
+            }
+            int procNum = getPoolSize();
+            targetChunkSize = Math.max( 1, Math.min( numberOfTasks / (procNum*3), MAX_CHUNK_SIZE ) );
+            leafSize = Math.max( 1, targetChunkSize / procNum );
+
+            accu = new ArrayList( targetChunkSize );
+        }
+
+        // submit
+        accu.add( task );
+        if (accu.size() >= targetChunkSize) {
+            submitChunk( accu );
+            accu = new ArrayList( targetChunkSize );
+        }
+    }
+
+
+    protected void submitChunk( List<MultiProcessingTask> chunk ) {
+        if (ForkJoinTask.inForkJoinPool()) {
+            submitted.add( new ChunkAction( chunk, 0, chunk.size(), false ).fork() );
+        }
+        else {
+            try {
+                chunkCount.acquire();
+            }
+            catch (InterruptedException e) {
+                throw new RuntimeException( e );
+            }
+            submitted.add( forkJoinPool().submit( new ChunkAction( chunk, 0, chunk.size(), true ) ) );
+        }
+    }
+
+
+    protected void handleException( Exception e ) {
+        exc.compareAndSet( null, e );
+    }
+
+
+    @Override
+    public void join() throws Exception {
+        if (accu != null && !accu.isEmpty()) {
+            submitChunk( accu );
+            accu = null;
+        }
+        for (ForkJoinTask f : submitted) {
+            try {
+                f.join();
+            }
+            catch (CancellationException e) {
+                //
+            }
+        }
+        submitted.clear();
+        Exception e = exc.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+
+
+    /**
+     * Splits a range of a chunk down to {@link #leafSize} tasks.
+     */
+    protected class ChunkAction
+            extends RecursiveAction {
+
+        private List<MultiProcessingTask>   chunk;
+
+        private int                         from;
+
+        private int                         to;
+
+        private boolean                     releasePermit;
+
+
+        public ChunkAction( List<MultiProcessingTask> chunk, int from, int to, boolean releasePermit ) {
+            this.chunk = chunk;
+            this.from = from;
+            this.to = to;
+            this.releasePermit = releasePermit;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                if (to - from > leafSize) {
+                    int middle = (from + to) >>> 1;
+                    invokeAll( new ChunkAction( chunk, from, middle, false ),
+                            new ChunkAction( chunk, middle, to, false ) );
+                }
+                else {
+                    for (int i = from; i < to && exc.get() == null; i++) {
+                        chunk.get( i ).calculate();
+                    }
+                }
+            }
+            catch (Exception e) {
+                handleException( e );
+            }
+            finally {
+                if (releasePermit) {
+                    chunkCount.release();
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com 
+ * 
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules.r.mapcalc;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jaitools.jiffle.Jiffle;
+import org.jaitools.jiffle.JiffleException;
+import org.jaitools.jiffle.runtime.JiffleDirectRuntime;
+
+/**
+ * A cache of compiled jiffle scripts.
+ * 
+ * <p>Compiling a script and generating its runtime class is by far the most 
+ * expensive part of a small map algebra run. The compiled runtime classes are 
+ * kept by script text and input map names, so that new runtime instances of 
+ * a script are created without compiling it again. The least recently used 
+ * scripts are dropped once {@link #MAX_SCRIPTS} are cached.</p>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class JiffleRuntimeCache {
+
+    /**
+     * The maximum number of compiled scripts kept.
+     */
+    public static final int MAX_SCRIPTS = 64;
+
+    private static final Map<String, CompiledScript> cache = new LinkedHashMap<String, CompiledScript>(16, 0.75f, true){
+        private static final long serialVersionUID = 1L;
+        protected boolean removeEldestEntry( Map.Entry<String, CompiledScript> eldest ) {
+            return size() > MAX_SCRIPTS;
+        }
+    };
+
+    private static class CompiledScript {
+        private final Class< ? extends JiffleDirectRuntime> runtimeClass;
+        private final Map<String, Jiffle.ImageRole> imageParams;
+
+        CompiledScript( JiffleDirectRuntime runtime, Map<String, Jiffle.ImageRole> imageParams ) {
+            this.runtimeClass = runtime.getClass();
+            this.imageParams = imageParams;
+        }
+    }
+
+    private JiffleRuntimeCache() {
+    }
+
+    /**
+     * Get a new runtime instance for a script.
+     * 
+     * <p>The script is compiled only the first time it is requested with
+     * the given input names, every call returns a new, independent instance.</p>
+     * 
+     * @param script the jiffle script.
+     * @param inputNames the names of the input maps.
+     * @return the new runtime.
+     * @throws JiffleException if the script does not compile.
+     */
+    public static JiffleDirectRuntime getRuntimeInstance( String script, List<String> inputNames ) throws JiffleException {
+        String key = script + '\n' + inputNames;
+        CompiledScript compiled;
+        synchronized (cache) {
+            compiled = cache.get(key);
+        }
+        if (compiled == null) {
+            // compile outside the lock, a concurrent duplicate compile is harmless
+            Jiffle jiffle = new Jiffle();
+            jiffle.setScript(script);
+            jiffle.compile();
+            JiffleDirectRuntime runtime = jiffle.getRuntimeInstance();
+            synchronized (cache) {
+                cache.put(key, new CompiledScript(runtime, jiffle.getImageParams()));
+            }
+            return runtime;
+        }
+        try {
+            JiffleDirectRuntime runtime = compiled.runtimeClass.newInstance();
+            runtime.setImageParams(compiled.imageParams);
+            return runtime;
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new JiffleException(e);
+        }
+    }
+
+    /**
+     * Drops all the compiled scripts.
+     */
+    public static void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+}
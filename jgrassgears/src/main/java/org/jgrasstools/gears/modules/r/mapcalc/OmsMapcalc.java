@@ -20,6 +20,7 @@ package org.jgrasstools.gears.modules.r.mapcalc;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSMAPCALC_AUTHORCONTACTS;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSMAPCALC_AUTHORNAMES;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSMAPCALC_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSMAPCALC_DO_PARALLEL_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSMAPCALC_DOCUMENTATION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSMAPCALC_KEYWORDS;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSMAPCALC_LABEL;
@@ -35,6 +36,7 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.RenderedImage;
 import java.awt.image.WritableRenderedImage;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -54,7 +56,6 @@ import oms3.annotations.UI;
 
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.jaitools.imageutils.ImageUtils;
-import org.jaitools.jiffle.Jiffle;
 import org.jaitools.jiffle.runtime.AffineCoordinateTransform;
 import org.jaitools.jiffle.runtime.CoordinateTransform;
 import org.jaitools.jiffle.runtime.JiffleDirectRuntime;
@@ -64,6 +65,7 @@ import org.jaitools.jiffle.runtime.JiffleProgressListener;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.gears.libs.modules.multiprocessing.ExecutionPlanner;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
@@ -86,6 +88,10 @@ public class OmsMapcalc extends JGTModel {
     @In
     public String pFunction;
 
+    @Description(OMSMAPCALC_DO_PARALLEL_DESCRIPTION)
+    @In
+    public boolean doParallel = false;
+
     @Description(OMSMAPCALC_OUT_RASTER_DESCRIPTION)
     @Out
     public GridCoverage2D outRaster = null;
@@ -109,10 +115,11 @@ public class OmsMapcalc extends JGTModel {
         String script = pFunction;
         script = script.trim();
 
-        Jiffle jiffle = new Jiffle();
-        jiffle.setScript(script);
-        jiffle.compile();
-        JiffleDirectRuntime jiffleRuntime = jiffle.getRuntimeInstance();
+        List<String> names = new ArrayList<String>();
+        for( GridCoverage2D mapGC : inRasters ) {
+            names.add(mapGC.getName().toString());
+        }
+        JiffleDirectRuntime jiffleRuntime = JiffleRuntimeCache.getRuntimeInstance(script, names);
 
         CoordinateTransform jiffleCRS = null;
 
@@ -152,6 +159,12 @@ public class OmsMapcalc extends JGTModel {
         WritableRenderedImage destImg = ImageUtils.createConstantImage(nCols, nRows, 0d);
         jiffleRuntime.setDestinationImage(destName, destImg, jiffleCRS);
 
+        if (doParallel) {
+            processRowStrips(script, names, jiffleCRS, destName, destImg, nCols, nRows);
+            outRaster = CoverageUtilities.buildCoverage(destName, destImg, regionParameters, crs);
+            return;
+        }
+
         // create the executor
         JiffleExecutor executor = new JiffleExecutor();
         WaitingListener listener = new WaitingListener();
@@ -201,6 +214,50 @@ public class OmsMapcalc extends JGTModel {
         executor.shutdown();
     }
 
+    /**
+     * Evaluates the script over strips of rows concurrently.
+     * 
+     * <p>Every strip gets its own runtime instance of the compiled script, 
+     * reading the same sources and writing its rows into the shared 
+     * destination image.</p>
+     */
+    private void processRowStrips( String script, List<String> names, CoordinateTransform jiffleCRS, String destName,
+            WritableRenderedImage destImg, int nCols, int nRows ) throws Exception {
+        double xRes = regionParameters.get(CoverageUtilities.XRES).doubleValue();
+        double yRes = regionParameters.get(CoverageUtilities.YRES).doubleValue();
+        double minX = worldBounds.getMinX();
+        double minY = worldBounds.getMinY();
+
+        int stripRows = Math.max(1, nRows / (ExecutionPlanner.getPoolSize() * 3));
+        ExecutionPlanner planner = ExecutionPlanner.createDefaultPlanner();
+        planner.setNumberOfTasks((nRows + stripRows - 1) / stripRows);
+
+        pm.beginTask("Processing maps...", nRows);
+        for( int fromRow = 0; fromRow < nRows; fromRow += stripRows ) {
+            int _fromRow = fromRow;
+            int _toRow = Math.min(fromRow + stripRows, nRows);
+            planner.submit(() -> {
+                if (!pm.isCanceled()) {
+                    JiffleDirectRuntime runtime = JiffleRuntimeCache.getRuntimeInstance(script, names);
+                    runtime.setWorldByResolution(worldBounds, xRes, yRes);
+                    for( GridCoverage2D mapGC : inRasters ) {
+                        runtime.setSourceImage(mapGC.getName().toString(), mapGC.getRenderedImage(), jiffleCRS);
+                    }
+                    runtime.setDestinationImage(destName, destImg, jiffleCRS);
+                    for( int r = _fromRow; r < _toRow; r++ ) {
+                        double y = minY + r * yRes;
+                        for( int c = 0; c < nCols; c++ ) {
+                            runtime.evaluate(minX + c * xRes, y);
+                        }
+                    }
+                    pm.worked(_toRow - _fromRow);
+                }
+            });
+        }
+        planner.join();
+        pm.done();
+    }
+
     private static CoordinateTransform getTransform( Rectangle2D worldBounds, Rectangle imageBounds ) {
         if (worldBounds == null || worldBounds.isEmpty()) {
             throw new IllegalArgumentException("worldBounds must not be null or empty");
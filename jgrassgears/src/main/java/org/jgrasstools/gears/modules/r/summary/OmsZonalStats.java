@@ -28,6 +28,8 @@ import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
 
 import java.awt.geom.AffineTransform;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.media.jai.iterator.RandomIter;
@@ -58,7 +60,9 @@ import org.geotools.referencing.operation.matrix.XAffineTransform;
 import org.jgrasstools.gears.libs.exceptions.ModelsIOException;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.gears.libs.modules.multiprocessing.ExecutionPlanner;
 import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.gears.utils.RegionMap;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.jgrasstools.gears.utils.features.FeatureUtilities;
 import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
@@ -99,6 +103,10 @@ public class OmsZonalStats extends JGTModel {
     @In
     public Double pTotalMean = null;
 
+    @Description("Rasterize all the polygons once and calculate the stats in a single parallel pass over the raster. Cells covered by more polygons are assigned to one of them only.")
+    @In
+    public boolean doOnePass = false;
+
     @Description("The input polygons with the added stats values.")
     @Out
     public SimpleFeatureCollection outVector;
@@ -141,13 +149,25 @@ public class OmsZonalStats extends JGTModel {
         outVector = new DefaultFeatureCollection();
         List<Geometry> geometriesList = FeatureUtilities.featureCollectionToGeometriesList(inVector, true, null);
 
+        List<double[]> zonesStats = null;
+        if (doOnePass) {
+            zonesStats = zonesStats(geometriesList, inRaster, hasUserTotalMean, tm_usertm_tactivecells, pPercentageThres,
+                    getDefaultThreadsNum(), pm);
+        }
+
         // pm.message("" + readEnvelope);
         GridGeometry2D gridGeometry = inRaster.getGridGeometry();
         RandomIter readIter = CoverageUtilities.getRandomIterator(inRaster);
         pm.beginTask("Processing polygons...", geometriesList.size());
-        for( Geometry geometry : geometriesList ) {
-            double[] polygonStats = polygonStats(geometry, gridGeometry, readIter, hasUserTotalMean, tm_usertm_tactivecells,
-                    pPercentageThres, pm);
+        for( int i = 0; i < geometriesList.size(); i++ ) {
+            Geometry geometry = geometriesList.get(i);
+            double[] polygonStats;
+            if (zonesStats != null) {
+                polygonStats = zonesStats.get(i);
+            } else {
+                polygonStats = polygonStats(geometry, gridGeometry, readIter, hasUserTotalMean, tm_usertm_tactivecells,
+                        pPercentageThres, pm);
+            }
             if (polygonStats == null) {
                 continue;
             }
@@ -182,6 +202,7 @@ public class OmsZonalStats extends JGTModel {
             pm.worked(1);
         }
         pm.done();
+        readIter.done();
 
         if (!hasUserTotalMean) {
             tm_usertm_tactivecells[0] = tm_usertm_tactivecells[0] / tm_usertm_tactivecells[2];
@@ -334,6 +355,255 @@ public class OmsZonalStats extends JGTModel {
         return result;
     }
 
+    /**
+     * Calculate the stats of many polygons in a single pass over the raster.
+     * 
+     * <p>The polygons are first rasterized into a grid of zone ids, using the same
+     * scanline rule of {@link #polygonStats(Geometry, GridGeometry2D, RandomIter, boolean, double[], double, IJGTProgressMonitor)}.
+     * Then the rows of the raster are split among threads, each keeping streaming
+     * accumulators per zone, which are merged at the end.</p>
+     * 
+     * <p>A cell covered by more polygons is assigned to the polygon that contains
+     * its center, or to the first polygon if that is not decisive.</p>
+     * 
+     * @param geometries the polygons.
+     * @param raster the raster to do the stats on.
+     * @param hasUserTotalMean if <code>true</code>, the mean absolute deviation is calculated.
+     * @param tm_utm_tac the array holding totalMean, userTotalMean and totalActiveCells,
+     *          as in {@link #polygonStats(Geometry, GridGeometry2D, RandomIter, boolean, double[], double, IJGTProgressMonitor)}.
+     * @param percentageThres the percentage of minimum active cells to have a valid stat.
+     * @param threads the number of threads to use.
+     * @param monitor the monitor.
+     * @return the stats of every polygon, in the order of the geometries, in the same
+     *          format of {@link #polygonStats(Geometry, GridGeometry2D, RandomIter, boolean, double[], double, IJGTProgressMonitor)}.
+     *          Polygons below the threshold have a <code>null</code> entry.
+     * @throws Exception
+     */
+    public static List<double[]> zonesStats( List<Geometry> geometries, final GridCoverage2D raster,
+            final boolean hasUserTotalMean, double[] tm_utm_tac, double percentageThres, int threads,
+            IJGTProgressMonitor monitor ) throws Exception {
+        RegionMap regionMap = CoverageUtilities.getRegionParamsFromGridCoverage(raster);
+        final int cols = regionMap.getCols();
+        final int rows = regionMap.getRows();
+        GridEnvelope2D gridRange = raster.getGridGeometry().getGridRange2D();
+        final int startX = gridRange.x;
+        final int startY = gridRange.y;
+
+        final int zonesNum = geometries.size();
+        final int[] zones = rasterizeZones(geometries, regionMap);
+        final double userTotalMean = tm_utm_tac[1];
+
+        int tasksNum = Math.max(1, Math.min(threads, rows));
+        final ZoneAccumulator[][] tasksAccumulators = new ZoneAccumulator[tasksNum][];
+        monitor.beginTask("Calculating zonal stats...", rows);
+        ExecutionPlanner planner = ExecutionPlanner.createDefaultPlanner();
+        planner.setNumberOfTasks(tasksNum);
+        for( int t = 0; t < tasksNum; t++ ) {
+            final int task = t;
+            final int fromRow = (int) ((long) rows * t / tasksNum);
+            final int toRow = (int) ((long) rows * (t + 1) / tasksNum);
+            planner.submit(() -> {
+                ZoneAccumulator[] accumulators = new ZoneAccumulator[zonesNum];
+                RandomIter iter = CoverageUtilities.getRandomIterator(raster);
+                for( int r = fromRow; r < toRow; r++ ) {
+                    for( int c = 0; c < cols; c++ ) {
+                        int zone = abs(zones[r * cols + c]);
+                        if (zone == 0) {
+                            continue;
+                        }
+                        ZoneAccumulator accumulator = accumulators[zone - 1];
+                        if (accumulator == null) {
+                            accumulator = new ZoneAccumulator();
+                            accumulators[zone - 1] = accumulator;
+                        }
+                        double v = iter.getSampleDouble(startX + c, startY + r, 0);
+                        if (isNovalue(v)) {
+                            accumulator.passiveCells++;
+                        } else {
+                            accumulator.add(v, userTotalMean);
+                        }
+                    }
+                    monitor.worked(1);
+                }
+                iter.done();
+                tasksAccumulators[task] = accumulators;
+            });
+        }
+        planner.join();
+        monitor.done();
+
+        List<double[]> result = new ArrayList<>(zonesNum);
+        for( int z = 0; z < zonesNum; z++ ) {
+            ZoneAccumulator zone = new ZoneAccumulator();
+            for( ZoneAccumulator[] accumulators : tasksAccumulators ) {
+                if (accumulators[z] != null) {
+                    zone.merge(accumulators[z]);
+                }
+            }
+            if (!hasUserTotalMean) {
+                tm_utm_tac[0] = tm_utm_tac[0] + zone.sum;
+                tm_utm_tac[2] = tm_utm_tac[2] + zone.activeCells;
+            }
+
+            int all = zone.activeCells + zone.passiveCells;
+            double ratio = 100.0 * zone.activeCells / all;
+            if (ratio < percentageThres) {
+                result.add(null);
+                continue;
+            }
+
+            int count = zone.activeCells;
+            double mean = zone.sum / count;
+            double var = zone.m2 / count;
+            double sdev = sqrt(var);
+            if (hasUserTotalMean) {
+                double meanAbsoluteDeviation = zone.absDeviationSum / count;
+                result.add(new double[]{zone.min, zone.max, mean, var, sdev, meanAbsoluteDeviation, count, zone.passiveCells});
+            } else {
+                result.add(new double[]{zone.min, zone.max, mean, var, sdev, count, zone.passiveCells});
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Rasterize polygons into a grid of zone ids.
+     * 
+     * <p>The rows are filled along a scanline through the row centers, from the cell containing
+     * the entry point shifted by a quarter of cell to the cell containing the exit point shifted
+     * back by the same amount, as done by the single polygon stats.</p>
+     * 
+     * @param geometries the polygons.
+     * @param regionMap the grid.
+     * @return the zone of every cell, row by row: <code>0</code> for no zone, else the index
+     *          of the polygon plus one, negated if the polygon doesn't contain the cell center.
+     */
+    private static int[] rasterizeZones( List<Geometry> geometries, RegionMap regionMap ) {
+        int cols = regionMap.getCols();
+        int rows = regionMap.getRows();
+        double west = regionMap.getWest();
+        double north = regionMap.getNorth();
+        double xRes = regionMap.getXres();
+        double yRes = regionMap.getYres();
+        double delta = xRes / 4.0;
+
+        int[] zones = new int[cols * rows];
+        for( int i = 0; i < geometries.size(); i++ ) {
+            Geometry geometry = geometries.get(i);
+            Envelope env = geometry.getEnvelopeInternal();
+            int fromRow = Math.max(0, (int) Math.floor((north - env.getMaxY()) / yRes - 0.5) + 1);
+            int toRow = Math.min(rows - 1, (int) Math.floor((north - env.getMinY()) / yRes - 0.5));
+            if (toRow < fromRow) {
+                continue;
+            }
+
+            // the crossings of the polygon rings with the row center lines
+            int rowsNum = toRow - fromRow + 1;
+            double[][] crossings = new double[rowsNum][4];
+            int[] crossingsCount = new int[rowsNum];
+            for( int g = 0; g < geometry.getNumGeometries(); g++ ) {
+                Geometry part = geometry.getGeometryN(g);
+                if (!(part instanceof Polygon)) {
+                    continue;
+                }
+                Polygon polygon = (Polygon) part;
+                for( int h = -1; h < polygon.getNumInteriorRing(); h++ ) {
+                    LineString ring = h < 0 ? polygon.getExteriorRing() : polygon.getInteriorRingN(h);
+                    Coordinate[] coords = ring.getCoordinates();
+                    for( int j = 0; j < coords.length - 1; j++ ) {
+                        Coordinate a = coords[j];
+                        Coordinate b = coords[j + 1];
+                        if (a.y == b.y) {
+                            continue;
+                        }
+                        double lowY = Math.min(a.y, b.y);
+                        double highY = Math.max(a.y, b.y);
+                        // rows with the center in [lowY, highY)
+                        int edgeFromRow = Math.max(fromRow, (int) Math.floor((north - highY) / yRes - 0.5) + 1);
+                        int edgeToRow = Math.min(toRow, (int) Math.floor((north - lowY) / yRes - 0.5));
+                        for( int r = edgeFromRow; r <= edgeToRow; r++ ) {
+                            double y = north - (r + 0.5) * yRes;
+                            if (y < lowY || y >= highY) {
+                                continue;
+                            }
+                            double x = a.x + (y - a.y) * (b.x - a.x) / (b.y - a.y);
+                            int index = r - fromRow;
+                            if (crossingsCount[index] == crossings[index].length) {
+                                crossings[index] = Arrays.copyOf(crossings[index], crossingsCount[index] * 2);
+                            }
+                            crossings[index][crossingsCount[index]++] = x;
+                        }
+                    }
+                }
+            }
+
+            int zone = i + 1;
+            for( int index = 0; index < rowsNum; index++ ) {
+                int r = fromRow + index;
+                double[] rowCrossings = crossings[index];
+                int count = crossingsCount[index];
+                Arrays.sort(rowCrossings, 0, count);
+                for( int j = 0; j + 1 < count; j = j + 2 ) {
+                    double x0 = rowCrossings[j];
+                    double x1 = rowCrossings[j + 1];
+                    int fromCol = Math.max(0, (int) Math.floor((x0 + delta - west) / xRes));
+                    int toCol = Math.min(cols - 1, (int) Math.floor((x1 - delta - west) / xRes));
+                    for( int c = fromCol; c <= toCol; c++ ) {
+                        double centerX = west + (c + 0.5) * xRes;
+                        boolean containsCenter = centerX >= x0 && centerX <= x1;
+                        int cell = r * cols + c;
+                        if (zones[cell] == 0) {
+                            zones[cell] = containsCenter ? zone : -zone;
+                        } else if (zones[cell] < 0 && containsCenter) {
+                            zones[cell] = zone;
+                        }
+                    }
+                }
+            }
+        }
+        return zones;
+    }
+
+    /**
+     * Streaming accumulator of the stats of a zone, using Welford's algorithm for the variance.
+     */
+    private static class ZoneAccumulator {
+        int activeCells;
+        int passiveCells;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double sum;
+        double mean;
+        double m2;
+        double absDeviationSum;
+
+        void add( double value, double userTotalMean ) {
+            activeCells++;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum = sum + value;
+            double delta = value - mean;
+            mean = mean + delta / activeCells;
+            m2 = m2 + delta * (value - mean);
+            absDeviationSum = absDeviationSum + abs(value - userTotalMean);
+        }
+
+        void merge( ZoneAccumulator other ) {
+            int count = activeCells + other.activeCells;
+            if (count > 0) {
+                double delta = other.mean - mean;
+                m2 = m2 + other.m2 + delta * delta * activeCells * other.activeCells / count;
+                mean = mean + delta * other.activeCells / count;
+            }
+            activeCells = count;
+            passiveCells = passiveCells + other.passiveCells;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            sum = sum + other.sum;
+            absDeviationSum = absDeviationSum + other.absDeviationSum;
+        }
+    }
+
     public static SimpleFeatureBuilder createFeatureBuilder( CoordinateReferenceSystem crs, boolean hasUserTotalMean ) {
         SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
         b.setName("stats");
@@ -57,6 +57,9 @@ public class MBTilesHelper implements AutoCloseable {
     public final static String SELECTQUERY = "SELECT " + COL_TILES_TILE_DATA + " from " + TABLE_TILES + " where "
         + COL_TILES_ZOOM_LEVEL + "=? AND " + COL_TILES_TILE_COLUMN + "=? AND " + COL_TILES_TILE_ROW + "=?";
 
+    private final static String INSERTQUERY = "INSERT INTO " + TABLE_TILES + " (" + COL_TILES_ZOOM_LEVEL + ","
+        + COL_TILES_TILE_COLUMN + "," + COL_TILES_TILE_ROW + "," + COL_TILES_TILE_DATA + ") values (?,?,?,?)";
+
     private final static String CREATE_TILES = //
         "CREATE TABLE " + TABLE_TILES + "( " + //
             COL_TILES_ZOOM_LEVEL + " INTEGER, " + //
@@ -92,6 +95,8 @@ public class MBTilesHelper implements AutoCloseable {
 
     private volatile int addedTiles = 0;
 
+    private PreparedStatement batchStatement;
+
     private String imageFormat;
 
     public void open(File dbFile) throws SQLException {
@@ -101,6 +106,8 @@ public class MBTilesHelper implements AutoCloseable {
 
     public void close() {
         try {
+            if (batchStatement != null)
+                batchStatement.close();
             if (connection != null)
                 connection.close();
         } catch (SQLException e) {
@@ -183,9 +190,7 @@ public class MBTilesHelper implements AutoCloseable {
     public synchronized void addTile(int x, int y, int z, BufferedImage image, String format) throws Exception {
         addedTiles++;
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ImageIO.write(image, format, baos);
-        byte[] res = baos.toByteArray();
+        byte[] res = getTileBytes(image, format);
 
         StringBuilder sb = new StringBuilder();
         sb.append("INSERT INTO " + TABLE_TILES + " ");
@@ -218,6 +223,56 @@ public class MBTilesHelper implements AutoCloseable {
         }
     }
 
+    /**
+     * Add an already encoded tile to the pending batch of inserts.
+     * 
+     * <p>The batch is written by {@link #commitTilesBatch()}. Meant for a single
+     * writer thread, that commits every few hundred tiles.</p>
+     * 
+     * @param x the tile x.
+     * @param y the tile y.
+     * @param z the zoomlevel.
+     * @param imageBytes the encoded image, as given by {@link #getTileBytes(BufferedImage, String)}.
+     * @throws SQLException
+     */
+    public void addTileToBatch(int x, int y, int z, byte[] imageBytes) throws SQLException {
+        if (batchStatement == null) {
+            batchStatement = connection.prepareStatement(INSERTQUERY);
+        }
+        batchStatement.setInt(1, z);
+        batchStatement.setInt(2, x);
+        batchStatement.setInt(3, y);
+        batchStatement.setBytes(4, imageBytes);
+        batchStatement.addBatch();
+        addedTiles++;
+    }
+
+    /**
+     * Write the pending batch of tiles and commit.
+     * 
+     * @throws SQLException
+     */
+    public void commitTilesBatch() throws SQLException {
+        if (batchStatement != null) {
+            batchStatement.executeBatch();
+        }
+        connection.commit();
+    }
+
+    /**
+     * Encode a tile image.
+     * 
+     * @param image the image.
+     * @param format the image format (jpg, png).
+     * @return the bytes of the encoded image.
+     * @throws IOException
+     */
+    public static byte[] getTileBytes(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(image, format, baos);
+        return baos.toByteArray();
+    }
+
     /**
      * Get a Tile image from the database.
      * 
@@ -47,7 +47,12 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSTMSGENERATOR_P_WEST_DE
 
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -75,6 +80,7 @@ import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.jgrasstools.gears.libs.exceptions.ModelsUserCancelException;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.gears.libs.modules.multiprocessing.ExecutionPlanner;
 import org.jgrasstools.gears.utils.CrsUtilities;
 import org.jgrasstools.gears.utils.features.FeatureUtilities;
 import org.jgrasstools.gears.utils.files.FileUtilities;
@@ -189,6 +195,10 @@ public class OmsTmsGenerator extends JGTModel {
     @In
     public boolean doMbtiles = false;
 
+    @Description("Render only the max zoom level and build the other levels by downsampling its tiles (only for the mbtiles database).")
+    @In
+    public boolean doPyramid = false;
+
     @Description(OMSTMSGENERATOR_IN_PATH_DESCRIPTION)
     @In
     public String inPath;
@@ -196,6 +206,13 @@ public class OmsTmsGenerator extends JGTModel {
     private static final String EPSG_MERCATOR = "EPSG:3857";
     private static final String EPSG_LATLONG = "EPSG:4326";
 
+    /**
+     * The tiles written to the mbtiles database between commits, in pyramid mode.
+     */
+    private static final int PYRAMID_BATCH_SIZE = 500;
+
+    private static final EncodedTile NO_MORE_TILES = new EncodedTile(0, 0, 0, null);
+
     private PreparedGeometry zoomLimitGeometry;
 
     private MBTilesHelper mbtilesHelper;
@@ -323,132 +340,131 @@ public class OmsTmsGenerator extends JGTModel {
 
             final GlobalMercator mercator = new GlobalMercator();
 
-            for( int z = pMinzoom; z <= pMaxzoom; z++ ) {
-                checkCancel();
+            if (doPyramid && mbtilesHelper != null) {
+                processPyramid(imgGen, mercator, mercatorCrs, w, s, e, n, format);
+            } else {
+                if (doPyramid) {
+                    pm.message("The pyramid mode is available only for mbtiles databases, generating all the levels.");
+                }
+                for( int z = pMinzoom; z <= pMaxzoom; z++ ) {
+                    checkCancel();
 
-                // get ul and lr tile number
-                int[] llTileNumber = mercator.MetersToTile(w, s, z);
-                int[] urTileNumber = mercator.MetersToTile(e, n, z);
+                    // get ul and lr tile number
+                    int[] llTileNumber = mercator.MetersToTile(w, s, z);
+                    int[] urTileNumber = mercator.MetersToTile(e, n, z);
 
-                int startXTile = llTileNumber[0];
-                int startYTile = llTileNumber[1];
-                int endXTile = urTileNumber[0];
-                int endYTile = urTileNumber[1];
+                    int startXTile = llTileNumber[0];
+                    int startYTile = llTileNumber[1];
+                    int endXTile = urTileNumber[0];
+                    int endYTile = urTileNumber[1];
 
-                int tileNum = 0;
+                    int tileNum = 0;
 
-                final ReferencedEnvelope levelBounds = new ReferencedEnvelope(mercatorCrs);
+                    final ReferencedEnvelope levelBounds = new ReferencedEnvelope(mercatorCrs);
 
-                ExecutorService fixedThreadPool = Executors.newFixedThreadPool(threads);
+                    ExecutorService fixedThreadPool = Executors.newFixedThreadPool(threads);
 
-                pm.beginTask("Generating tiles at zoom level: " + z, (endXTile - startXTile + 1) * (endYTile - startYTile + 1));
-                for( int i = startXTile; i <= endXTile; i++ ) {
-                    checkCancel();
-                    for( int j = startYTile; j <= endYTile; j++ ) {
+                    pm.beginTask("Generating tiles at zoom level: " + z, (endXTile - startXTile + 1) * (endYTile - startYTile + 1));
+                    for( int i = startXTile; i <= endXTile; i++ ) {
                         checkCancel();
-                        double[] bounds = mercator.TileBounds(i, j, z);
-                        double west = bounds[0];
-                        double south = bounds[1];
-                        double east = bounds[2];
-                        double north = bounds[3];
-
-                        final ReferencedEnvelope tmpBounds = new ReferencedEnvelope(west, east, south, north, mercatorCrs);
-                        levelBounds.expandToInclude(tmpBounds);
-
-                        // if there is a zoom level geometry limitation, apply it
-                        if (zoomLimitGeometry != null && z > pZoomLimit) {
-                            double safeExtend = tmpBounds.getWidth() > tmpBounds.getHeight()
-                                    ? tmpBounds.getWidth()
-                                    : tmpBounds.getHeight();
-                            final ReferencedEnvelope tmp = new ReferencedEnvelope(tmpBounds);
-                            tmp.expandBy(safeExtend);
-                            Polygon polygon = FeatureUtilities.envelopeToPolygon(tmp);
-                            if (!zoomLimitGeometry.intersects(polygon)) {
+                        for( int j = startYTile; j <= endYTile; j++ ) {
+                            checkCancel();
+                            double[] bounds = mercator.TileBounds(i, j, z);
+                            double west = bounds[0];
+                            double south = bounds[1];
+                            double east = bounds[2];
+                            double north = bounds[3];
+
+                            final ReferencedEnvelope tmpBounds = new ReferencedEnvelope(west, east, south, north, mercatorCrs);
+                            levelBounds.expandToInclude(tmpBounds);
+
+                            // if there is a zoom level geometry limitation, apply it
+                            if (isOutsideZoomLimit(tmpBounds, z)) {
                                 pm.worked(1);
                                 continue;
                             }
-                        }
 
-                        if (mbtilesHelper != null) {
-                            final int x = i;
-                            final int y = j;
-                            final int zz = z;
-                            final String fformat = format;
-                            tileNum++;
-                            Runnable runner = new Runnable(){
-                                public void run() {
-                                    if (!cancelModule) {
-                                        try {
-                                            checkCancel();
-                                            BufferedImage image = imgGen.getImageWithCheck(tmpBounds, TILESIZE, TILESIZE, 0.0,
-                                                    pCheckcolor);
-                                            if (image != null) {
-                                                mbtilesHelper.addTile(x, y, zz, image, fformat);
+                            if (mbtilesHelper != null) {
+                                final int x = i;
+                                final int y = j;
+                                final int zz = z;
+                                final String fformat = format;
+                                tileNum++;
+                                Runnable runner = new Runnable(){
+                                    public void run() {
+                                        if (!cancelModule) {
+                                            try {
+                                                checkCancel();
+                                                BufferedImage image = imgGen.getImageWithCheck(tmpBounds, TILESIZE, TILESIZE, 0.0,
+                                                        pCheckcolor);
+                                                if (image != null) {
+                                                    mbtilesHelper.addTile(x, y, zz, image, fformat);
+                                                }
+                                            } catch (Exception e) {
+                                                pm.errorMessage(e.getMessage());
+                                                cancelModule = true;
                                             }
-                                        } catch (Exception e) {
-                                            pm.errorMessage(e.getMessage());
-                                            cancelModule = true;
                                         }
+                                        pm.worked(1);
+                                    }
+                                };
+                                fixedThreadPool.execute(runner);
+
+                            } else {
+                                File imageFolder = new File(baseFolder, z + "/" + i);
+                                if (!imageFolder.exists()) {
+                                    if (!imageFolder.mkdirs()) {
+                                        throw new ModelsIOException("Unable to create folder:" + imageFolder, this);
                                     }
-                                    pm.worked(1);
-                                }
-                            };
-                            fixedThreadPool.execute(runner);
-
-                        } else {
-                            File imageFolder = new File(baseFolder, z + "/" + i);
-                            if (!imageFolder.exists()) {
-                                if (!imageFolder.mkdirs()) {
-                                    throw new ModelsIOException("Unable to create folder:" + imageFolder, this);
                                 }
-                            }
 
-                            File ignoreMediaFile = new File(imageFolder, ".nomedia");
-                            ignoreMediaFile.createNewFile();
+                                File ignoreMediaFile = new File(imageFolder, ".nomedia");
+                                ignoreMediaFile.createNewFile();
 
-                            final File imageFile = new File(imageFolder, j + "." + ext);
-                            if (imageFile.exists()) {
-                                pm.worked(1);
-                                continue;
-                            }
-                            tileNum++;
-                            final String imagePath = imageFile.getAbsolutePath();
-                            final ReferencedEnvelope finalBounds = tmpBounds;
-                            Runnable runner = new Runnable(){
-                                public void run() {
-                                    if (!cancelModule) {
-                                        try {
-                                            if (pImagetype == 1) {
-                                                imgGen.dumpJpgImage(imagePath, finalBounds, TILESIZE, TILESIZE, 0.0, pCheckcolor);
-                                            } else {
-                                                imgGen.dumpPngImage(imagePath, finalBounds, TILESIZE, TILESIZE, 0.0, pCheckcolor);
+                                final File imageFile = new File(imageFolder, j + "." + ext);
+                                if (imageFile.exists()) {
+                                    pm.worked(1);
+                                    continue;
+                                }
+                                tileNum++;
+                                final String imagePath = imageFile.getAbsolutePath();
+                                final ReferencedEnvelope finalBounds = tmpBounds;
+                                Runnable runner = new Runnable(){
+                                    public void run() {
+                                        if (!cancelModule) {
+                                            try {
+                                                if (pImagetype == 1) {
+                                                    imgGen.dumpJpgImage(imagePath, finalBounds, TILESIZE, TILESIZE, 0.0, pCheckcolor);
+                                                } else {
+                                                    imgGen.dumpPngImage(imagePath, finalBounds, TILESIZE, TILESIZE, 0.0, pCheckcolor);
+                                                }
+                                                pm.worked(1);
+                                            } catch (Exception ex) {
+                                                pm.errorMessage(ex.getMessage());
+                                                cancelModule = true;
                                             }
-                                            pm.worked(1);
-                                        } catch (Exception ex) {
-                                            pm.errorMessage(ex.getMessage());
-                                            cancelModule = true;
                                         }
                                     }
-                                }
-                            };
-                            fixedThreadPool.execute(runner);
+                                };
+                                fixedThreadPool.execute(runner);
+                            }
                         }
                     }
-                }
-                try {
-                    fixedThreadPool.shutdown();
-                    while( !fixedThreadPool.isTerminated() ) {
-                        Thread.sleep(100);
+                    try {
+                        fixedThreadPool.shutdown();
+                        while( !fixedThreadPool.isTerminated() ) {
+                            Thread.sleep(100);
+                        }
+                    } catch (InterruptedException exx) {
+                        exx.printStackTrace();
                     }
-                } catch (InterruptedException exx) {
-                    exx.printStackTrace();
-                }
-                pm.done();
+                    pm.done();
 
-                pm.message("Zoom level: " + z + " has " + tileNum + " tiles.");
-                // pm.message("Boundary covered at Zoom level: " + z + ": " + levelBounds);
-                // pm.message("Total boundary wanted: " + mercatorBounds);
+                    pm.message("Zoom level: " + z + " has " + tileNum + " tiles.");
+                    // pm.message("Boundary covered at Zoom level: " + z + ": " + levelBounds);
+                    // pm.message("Total boundary wanted: " + mercatorBounds);
 
+                }
             }
 
             if (mbtilesHelper != null) {
@@ -475,4 +491,316 @@ public class OmsTmsGenerator extends JGTModel {
             pm.errorMessage(ModelsUserCancelException.DEFAULTMESSAGE);
         }
     }
+
+    /**
+     * Check if a tile is left out by the zoom limit vector.
+     * 
+     * @param tileBounds the bounds of the tile.
+     * @param z the zoom level of the tile.
+     * @return <code>true</code> if the tile is not to be generated.
+     */
+    private boolean isOutsideZoomLimit( ReferencedEnvelope tileBounds, int z ) {
+        if (zoomLimitGeometry == null || z <= pZoomLimit) {
+            return false;
+        }
+        double safeExtend = tileBounds.getWidth() > tileBounds.getHeight() ? tileBounds.getWidth() : tileBounds.getHeight();
+        final ReferencedEnvelope tmp = new ReferencedEnvelope(tileBounds);
+        tmp.expandBy(safeExtend);
+        Polygon polygon = FeatureUtilities.envelopeToPolygon(tmp);
+        return !zoomLimitGeometry.intersects(polygon);
+    }
+
+    /**
+     * Generate the tiles into the mbtiles database as a pyramid.
+     * 
+     * <p>Only the tiles of the max zoom level are rendered from the inputs, each tile
+     * of a coarser level is the 2x2 downsampling of its four children. The pyramid is
+     * built depth first in parallel, one subtree per tile of the first level with enough
+     * tiles to keep all threads busy, so that only a few tiles per thread are kept in memory.
+     * The levels above are then built from the roots of the subtrees.</p>
+     * 
+     * <p>Tiles without children, i.e. empty tiles, are not rendered nor stored. Since the
+     * extent of a child goes beyond the zoom limit vector less than the one of its parent,
+     * a tile that has children left out by the zoom limit is rendered from the inputs.</p>
+     * 
+     * <p>The encoded tiles are written by a single thread, committing in batches.</p>
+     */
+    private void processPyramid( ImageGenerator imgGen, GlobalMercator mercator, CoordinateReferenceSystem mercatorCrs,
+            double w, double s, double e, double n, String format ) throws Exception {
+        // tile ranges of the levels as [startX, startY, endX, endY]
+        int[][] ranges = new int[pMaxzoom - pMinzoom + 1][];
+        int totalTiles = 0;
+        for( int z = pMinzoom; z <= pMaxzoom; z++ ) {
+            int[] llTileNumber = mercator.MetersToTile(w, s, z);
+            int[] urTileNumber = mercator.MetersToTile(e, n, z);
+            int[] range = new int[]{llTileNumber[0], llTileNumber[1], urTileNumber[0], urTileNumber[1]};
+            ranges[z - pMinzoom] = range;
+            totalTiles += countTiles(range);
+        }
+
+        int splitZoom = pMinzoom;
+        while( splitZoom < pMaxzoom && countTiles(ranges[splitZoom - pMinzoom]) < getDefaultThreadsNum() * 4 ) {
+            splitZoom++;
+        }
+
+        TilesWriter writer = new TilesWriter();
+        writer.start();
+        try {
+            TilePyramid pyramid = new TilePyramid(imgGen, mercator, mercatorCrs, ranges, splitZoom, writer, format);
+
+            pm.beginTask("Generating tiles from zoom level: " + pMaxzoom, totalTiles);
+            int[] splitRange = ranges[splitZoom - pMinzoom];
+            ExecutionPlanner planner = ExecutionPlanner.createDefaultPlanner();
+            planner.setNumberOfTasks(countTiles(splitRange));
+            for( int i = splitRange[0]; i <= splitRange[2]; i++ ) {
+                for( int j = splitRange[1]; j <= splitRange[3]; j++ ) {
+                    final int x = i;
+                    final int y = j;
+                    planner.submit(() -> {
+                        pyramid.buildRoot(x, y, false);
+                    });
+                }
+            }
+            planner.join();
+
+            if (splitZoom > pMinzoom) {
+                int[] topRange = ranges[0];
+                for( int i = topRange[0]; i <= topRange[2]; i++ ) {
+                    for( int j = topRange[1]; j <= topRange[3]; j++ ) {
+                        pyramid.buildRoot(i, j, true);
+                    }
+                }
+            }
+            pm.done();
+        } finally {
+            writer.finish();
+        }
+        writer.checkError();
+
+        pm.message("Written " + writer.writtenTiles + " tiles.");
+    }
+
+    private static int countTiles( int[] range ) {
+        return (range[2] - range[0] + 1) * (range[3] - range[1] + 1);
+    }
+
+    /**
+     * The depth first construction of the tile pyramid.
+     */
+    private class TilePyramid {
+        private static final int HALF_TILESIZE = TILESIZE / 2;
+
+        private final ImageGenerator imgGen;
+        private final GlobalMercator mercator;
+        private final CoordinateReferenceSystem mercatorCrs;
+        private final int[][] ranges;
+        private final int splitZoom;
+        private final TilesWriter writer;
+        private final String format;
+        private final int background;
+        private final Map<Long, BufferedImage> splitImages = new ConcurrentHashMap<>();
+
+        TilePyramid( ImageGenerator imgGen, GlobalMercator mercator, CoordinateReferenceSystem mercatorCrs, int[][] ranges,
+                int splitZoom, TilesWriter writer, String format ) {
+            this.imgGen = imgGen;
+            this.mercator = mercator;
+            this.mercatorCrs = mercatorCrs;
+            this.ranges = ranges;
+            this.splitZoom = splitZoom;
+            this.writer = writer;
+            this.format = format;
+            // the missing parts of a tile get the color of the empty tiles or the white of the renderer
+            if (pCheckcolor != null) {
+                background = (pCheckcolor[0] << 16) | (pCheckcolor[1] << 8) | pCheckcolor[2];
+            } else {
+                background = 0xFFFFFF;
+            }
+        }
+
+        /**
+         * Build a subtree of tiles.
+         * 
+         * @param x the tile x.
+         * @param y the tile y.
+         * @param fromSplitLevel if <code>true</code>, the tiles of the split level
+         *          have already been built and are taken from memory.
+         */
+        void buildRoot( int x, int y, boolean fromSplitLevel ) throws Exception {
+            int z = fromSplitLevel ? pMinzoom : splitZoom;
+            if (isOutsideZoomLimit(getBounds(x, y, z), z)) {
+                pm.worked(1);
+                return;
+            }
+            BufferedImage image = buildTile(x, y, z, fromSplitLevel);
+            if (image != null && !fromSplitLevel && splitZoom > pMinzoom) {
+                splitImages.put(tileKey(x, y), image);
+            }
+        }
+
+        private BufferedImage buildTile( int x, int y, int z, boolean fromSplitLevel ) throws Exception {
+            checkCancel();
+            if (fromSplitLevel && z == splitZoom) {
+                return splitImages.remove(tileKey(x, y));
+            }
+
+            BufferedImage image = null;
+            if (z == pMaxzoom) {
+                image = imgGen.getImageWithCheck(getBounds(x, y, z), TILESIZE, TILESIZE, 0.0, pCheckcolor);
+            } else {
+                // children in the order NW, NE, SW, SE, tile rows grow northwards
+                BufferedImage[] children = new BufferedImage[4];
+                boolean hasChildren = false;
+                boolean isLimited = false;
+                int[] childRange = ranges[z + 1 - pMinzoom];
+                for( int i = 0; i < 4; i++ ) {
+                    int childX = 2 * x + i % 2;
+                    int childY = 2 * y + 1 - i / 2;
+                    if (childX < childRange[0] || childX > childRange[2] || childY < childRange[1] || childY > childRange[3]) {
+                        continue;
+                    }
+                    if (isOutsideZoomLimit(getBounds(childX, childY, z + 1), z + 1)) {
+                        isLimited = true;
+                        continue;
+                    }
+                    children[i] = buildTile(childX, childY, z + 1, fromSplitLevel);
+                    hasChildren = hasChildren || children[i] != null;
+                }
+                if (isLimited) {
+                    image = imgGen.getImageWithCheck(getBounds(x, y, z), TILESIZE, TILESIZE, 0.0, pCheckcolor);
+                } else if (hasChildren) {
+                    image = downsample(children);
+                }
+            }
+
+            if (image != null) {
+                writer.add(x, y, z, MBTilesHelper.getTileBytes(image, format));
+            }
+            pm.worked(1);
+            return image;
+        }
+
+        private ReferencedEnvelope getBounds( int x, int y, int z ) {
+            double[] bounds = mercator.TileBounds(x, y, z);
+            return new ReferencedEnvelope(bounds[0], bounds[2], bounds[1], bounds[3], mercatorCrs);
+        }
+
+        /**
+         * Average each 2x2 block of pixels of the children into one pixel of the parent.
+         */
+        private BufferedImage downsample( BufferedImage[] children ) {
+            BufferedImage image = new BufferedImage(TILESIZE, TILESIZE, BufferedImage.TYPE_INT_RGB);
+            int[] childPixels = new int[TILESIZE * TILESIZE];
+            int[] pixels = new int[HALF_TILESIZE * HALF_TILESIZE];
+            for( int i = 0; i < 4; i++ ) {
+                if (children[i] == null) {
+                    Arrays.fill(pixels, background);
+                } else {
+                    children[i].getRGB(0, 0, TILESIZE, TILESIZE, childPixels, 0, TILESIZE);
+                    for( int row = 0; row < HALF_TILESIZE; row++ ) {
+                        for( int col = 0; col < HALF_TILESIZE; col++ ) {
+                            int index = 2 * row * TILESIZE + 2 * col;
+                            int p1 = childPixels[index];
+                            int p2 = childPixels[index + 1];
+                            int p3 = childPixels[index + TILESIZE];
+                            int p4 = childPixels[index + TILESIZE + 1];
+                            pixels[row * HALF_TILESIZE + col] = (average(p1, p2, p3, p4, 16) << 16)
+                                    | (average(p1, p2, p3, p4, 8) << 8) | average(p1, p2, p3, p4, 0);
+                        }
+                    }
+                }
+                image.setRGB((i % 2) * HALF_TILESIZE, (i / 2) * HALF_TILESIZE, HALF_TILESIZE, HALF_TILESIZE, pixels, 0,
+                        HALF_TILESIZE);
+            }
+            return image;
+        }
+
+        private int average( int p1, int p2, int p3, int p4, int shift ) {
+            int sum = ((p1 >> shift) & 0xFF) + ((p2 >> shift) & 0xFF) + ((p3 >> shift) & 0xFF) + ((p4 >> shift) & 0xFF);
+            return (sum + 2) / 4;
+        }
+
+        private Long tileKey( int x, int y ) {
+            return ((long) x << 32) | (y & 0xFFFFFFFFL);
+        }
+    }
+
+    /**
+     * The thread that writes the tiles into the mbtiles database.
+     */
+    private class TilesWriter extends Thread {
+        private final BlockingQueue<EncodedTile> queue = new ArrayBlockingQueue<>(PYRAMID_BATCH_SIZE);
+        private volatile Exception error;
+        private int writtenTiles = 0;
+
+        TilesWriter() {
+            super("mbtiles-writer");
+            setDaemon(true);
+        }
+
+        void add( int x, int y, int z, byte[] imageBytes ) throws Exception {
+            checkError();
+            queue.put(new EncodedTile(x, y, z, imageBytes));
+        }
+
+        void finish() throws InterruptedException {
+            queue.put(NO_MORE_TILES);
+            join();
+        }
+
+        void checkError() throws ModelsIOException {
+            if (error != null) {
+                throw new ModelsIOException("An error occurred while writing the tiles: " + error.getMessage(), this);
+            }
+        }
+
+        @Override
+        public void run() {
+            while( true ) {
+                EncodedTile tile;
+                try {
+                    tile = queue.take();
+                } catch (InterruptedException e) {
+                    error = e;
+                    return;
+                }
+                if (tile == NO_MORE_TILES) {
+                    break;
+                }
+                if (error != null) {
+                    // keep draining, so that the producers are not blocked
+                    continue;
+                }
+                try {
+                    mbtilesHelper.addTileToBatch(tile.x, tile.y, tile.z, tile.imageBytes);
+                    writtenTiles++;
+                    if (writtenTiles % PYRAMID_BATCH_SIZE == 0) {
+                        mbtilesHelper.commitTilesBatch();
+                    }
+                } catch (Exception e) {
+                    error = e;
+                }
+            }
+            if (error == null) {
+                try {
+                    mbtilesHelper.commitTilesBatch();
+                } catch (Exception e) {
+                    error = e;
+                }
+            }
+        }
+    }
+
+    private static class EncodedTile {
+        final int x;
+        final int y;
+        final int z;
+        final byte[] imageBytes;
+
+        EncodedTile( int x, int y, int z, byte[] imageBytes ) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.imageBytes = imageBytes;
+        }
+    }
 }
@@ -32,6 +32,7 @@ import static org.jgrasstools.gears.modules.v.vectoroverlayoperators.OmsVectorOv
 import static org.jgrasstools.gears.modules.v.vectoroverlayoperators.OmsVectorOverlayOperators.OMSVECTOROVERLAYOPERATORS_NAME;
 import static org.jgrasstools.gears.modules.v.vectoroverlayoperators.OmsVectorOverlayOperators.OMSVECTOROVERLAYOPERATORS_STATUS;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import oms3.annotations.Author;
@@ -54,10 +55,12 @@ import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
 import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.gears.libs.modules.multiprocessing.ExecutionPlanner;
 import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
 import org.jgrasstools.gears.utils.features.FeatureUtilities;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import com.vividsolutions.jts.geom.Coordinate;
@@ -66,6 +69,11 @@ import com.vividsolutions.jts.geom.GeometryCollection;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.TopologyException;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import com.vividsolutions.jts.operation.union.UnaryUnionOp;
 
 @Description(OMSVECTOROVERLAYOPERATORS_DESCRIPTION)
 @Documentation(OMSVECTOROVERLAYOPERATORS_DOCUMENTATION)
@@ -95,6 +103,10 @@ public class OmsVectorOverlayOperators extends JGTModel {
     @In
     public boolean doAllowHoles = true;
 
+    @Description(OMSVECTOROVERLAYOPERATORS_doIndexed_DESCRIPTION)
+    @In
+    public boolean doIndexed = false;
+
     @Description(OMSVECTOROVERLAYOPERATORS_outMap_DESCRIPTION)
     @Out
     public SimpleFeatureCollection outMap = null;
@@ -114,6 +126,7 @@ public class OmsVectorOverlayOperators extends JGTModel {
     public static final String OMSVECTOROVERLAYOPERATORS_pType_DESCRIPTION = "The overlay type to perform.";
     public static final String OMSVECTOROVERLAYOPERATORS_outMap_DESCRIPTION = "The resulting vector map.";
     private static final String doAllowHoles_DESCRIPTION = "Allow holes in the result.";
+    public static final String OMSVECTOROVERLAYOPERATORS_doIndexed_DESCRIPTION = "Overlay the single features of the two maps through a spatial index and in parallel, keeping the attributes of both maps, instead of dissolving the maps.";
     // VARS DOCS STOP
 
     @Execute
@@ -128,6 +141,11 @@ public class OmsVectorOverlayOperators extends JGTModel {
 
         outMap = new DefaultFeatureCollection();
 
+        if (doIndexed && inMap2 != null) {
+            processIndexed(crs);
+            return;
+        }
+
         SimpleFeatureBuilder builder = null;
 
         pm.message("Preparing geometry layers...");
@@ -213,4 +231,277 @@ public class OmsVectorOverlayOperators extends JGTModel {
 
     }
 
+    /**
+     * Overlay feature by feature.
+     * 
+     * <p>The candidate pairs are found through an {@link STRtree} of the other map and
+     * checked through a {@link PreparedGeometry} before the actual overlay. The features
+     * are processed in parallel chunks. The result has the attributes of both maps, the
+     * ones of the map a piece doesn't come from are left empty.</p>
+     * 
+     * <ul>
+     *  <li>intersection: the intersections of every pair of features</li>
+     *  <li>difference: the parts of the features of the first map not covered by the second</li>
+     *  <li>symdifference: the differences in both directions</li>
+     *  <li>union: the intersections and the differences in both directions</li>
+     * </ul>
+     */
+    private void processIndexed( CoordinateReferenceSystem crs ) throws Exception {
+        List<SimpleFeature> features1 = FeatureUtilities.featureCollectionToList(inMap1);
+        List<SimpleFeature> features2 = FeatureUtilities.featureCollectionToList(inMap2);
+
+        pm.beginTask("Indexing geometries...", IJGTProgressMonitor.UNKNOWN);
+        STRtree tree1 = createTree(features1);
+        STRtree tree2 = createTree(features2);
+        pm.done();
+        pm.message(getMemoryMessage());
+
+        int dimension1 = getDimension(features1);
+        int dimension2 = getDimension(features2);
+        // the dimension of the result, lower dimension parts are dropped
+        int dimension = pType.equals(DIFFERENCE) ? dimension1 : Math.min(dimension1, dimension2);
+        List<OverlayPiece> pieces = new ArrayList<>();
+        switch( pType ) {
+        case INTERSECTION:
+            pieces.addAll(overlay("Intersecting features...", features1, (f, p) -> intersect(f, tree2, dimension, p)));
+            break;
+        case UNION:
+            pieces.addAll(overlay("Intersecting features...", features1, (f, p) -> intersect(f, tree2, dimension, p)));
+            pieces.addAll(overlay("Subtracting second map...", features1, (f, p) -> subtract(f, true, tree2, dimension, p)));
+            pieces.addAll(overlay("Subtracting first map...", features2, (f, p) -> subtract(f, false, tree1, dimension, p)));
+            break;
+        case DIFFERENCE:
+            pieces.addAll(overlay("Subtracting second map...", features1, (f, p) -> subtract(f, true, tree2, dimension, p)));
+            break;
+        case SYMDIFFERENCE:
+            pieces.addAll(overlay("Subtracting second map...", features1, (f, p) -> subtract(f, true, tree2, dimension, p)));
+            pieces.addAll(overlay("Subtracting first map...", features2, (f, p) -> subtract(f, false, tree1, dimension, p)));
+            break;
+        default:
+            throw new ModelsIllegalargumentException("The overlay type is not supported: " + pType, this, pm);
+        }
+        pm.message(getMemoryMessage());
+
+        pm.message("Preparing final layer...");
+        SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
+        b.setName("overlay");
+        b.setCRS(crs);
+        if (dimension == 2) {
+            b.add("the_geom", Polygon.class);
+        } else if (dimension == 1) {
+            b.add("the_geom", LineString.class);
+        } else {
+            b.add("the_geom", Point.class);
+        }
+        List<String> names = new ArrayList<>();
+        names.add("the_geom");
+        List<String> names1 = addAttributes(b, inMap1.getSchema(), names);
+        List<String> names2 = addAttributes(b, inMap2.getSchema(), names);
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(b.buildFeatureType());
+
+        for( OverlayPiece piece : pieces ) {
+            Object[] values = new Object[1 + names1.size() + names2.size()];
+            values[0] = piece.geometry;
+            for( int i = 0; i < names1.size(); i++ ) {
+                values[1 + i] = piece.feature1 != null ? piece.feature1.getAttribute(names1.get(i)) : null;
+            }
+            for( int i = 0; i < names2.size(); i++ ) {
+                values[1 + names1.size() + i] = piece.feature2 != null ? piece.feature2.getAttribute(names2.get(i)) : null;
+            }
+            builder.addAll(values);
+            SimpleFeature feature = builder.buildFeature(null);
+            ((DefaultFeatureCollection) outMap).add(feature);
+        }
+    }
+
+    /**
+     * The overlay of a single feature.
+     */
+    private interface FeatureOverlay {
+        void overlay( SimpleFeature feature, List<OverlayPiece> pieces ) throws Exception;
+    }
+
+    /**
+     * A piece of the result, with the features it comes from.
+     */
+    private static class OverlayPiece {
+        final Geometry geometry;
+        final SimpleFeature feature1;
+        final SimpleFeature feature2;
+
+        OverlayPiece( Geometry geometry, SimpleFeature feature1, SimpleFeature feature2 ) {
+            this.geometry = geometry;
+            this.feature1 = feature1;
+            this.feature2 = feature2;
+        }
+    }
+
+    private static final int CHUNK_SIZE = 256;
+
+    /**
+     * Run the overlay of all the features in parallel chunks.
+     * 
+     * @return the pieces, in the order of the features.
+     */
+    private List<OverlayPiece> overlay( String taskName, List<SimpleFeature> features, FeatureOverlay featureOverlay )
+            throws Exception {
+        int size = features.size();
+        int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        @SuppressWarnings("unchecked")
+        List<OverlayPiece>[] chunksPieces = new List[chunks];
+
+        pm.beginTask(taskName, size);
+        ExecutionPlanner planner = ExecutionPlanner.createDefaultPlanner();
+        planner.setNumberOfTasks(chunks);
+        for( int c = 0; c < chunks; c++ ) {
+            final int chunk = c;
+            planner.submit(() -> {
+                List<OverlayPiece> pieces = new ArrayList<>();
+                int to = Math.min(size, (chunk + 1) * CHUNK_SIZE);
+                for( int i = chunk * CHUNK_SIZE; i < to; i++ ) {
+                    featureOverlay.overlay(features.get(i), pieces);
+                    pm.worked(1);
+                }
+                chunksPieces[chunk] = pieces;
+            });
+        }
+        planner.join();
+        pm.done();
+
+        List<OverlayPiece> pieces = new ArrayList<>();
+        for( List<OverlayPiece> chunkPieces : chunksPieces ) {
+            pieces.addAll(chunkPieces);
+        }
+        return pieces;
+    }
+
+    private void intersect( SimpleFeature feature1, STRtree tree2, int dimension, List<OverlayPiece> pieces ) {
+        Geometry geometry1 = (Geometry) feature1.getDefaultGeometry();
+        PreparedGeometry preparedGeometry1 = PreparedGeometryFactory.prepare(geometry1);
+        List< ? > candidates = tree2.query(geometry1.getEnvelopeInternal());
+        for( Object candidate : candidates ) {
+            SimpleFeature feature2 = (SimpleFeature) candidate;
+            Geometry geometry2 = (Geometry) feature2.getDefaultGeometry();
+            if (!preparedGeometry1.intersects(geometry2)) {
+                continue;
+            }
+            Geometry intersection;
+            try {
+                intersection = geometry1.intersection(geometry2);
+            } catch (TopologyException e) {
+                intersection = geometry1.buffer(0).intersection(geometry2.buffer(0));
+            }
+            addPieces(intersection, feature1, feature2, dimension, pieces);
+        }
+    }
+
+    private void subtract( SimpleFeature feature, boolean isFirstMap, STRtree otherTree, int dimension,
+            List<OverlayPiece> pieces ) {
+        Geometry geometry = (Geometry) feature.getDefaultGeometry();
+        PreparedGeometry preparedGeometry = PreparedGeometryFactory.prepare(geometry);
+        List<Geometry> others = new ArrayList<>();
+        List< ? > candidates = otherTree.query(geometry.getEnvelopeInternal());
+        for( Object candidate : candidates ) {
+            Geometry otherGeometry = (Geometry) ((SimpleFeature) candidate).getDefaultGeometry();
+            if (preparedGeometry.intersects(otherGeometry)) {
+                others.add(otherGeometry);
+            }
+        }
+
+        Geometry difference;
+        if (others.isEmpty()) {
+            difference = geometry;
+        } else {
+            try {
+                difference = geometry.difference(UnaryUnionOp.union(others));
+            } catch (TopologyException e) {
+                List<Geometry> fixedOthers = new ArrayList<>();
+                for( Geometry other : others ) {
+                    fixedOthers.add(other.buffer(0));
+                }
+                difference = geometry.buffer(0).difference(UnaryUnionOp.union(fixedOthers));
+            }
+        }
+        if (isFirstMap) {
+            addPieces(difference, feature, null, dimension, pieces);
+        } else {
+            addPieces(difference, null, feature, dimension, pieces);
+        }
+    }
+
+    /**
+     * Split a result into its single parts, dropping the ones of lower dimension,
+     * as the borders shared by two polygons.
+     */
+    private void addPieces( Geometry geometry, SimpleFeature feature1, SimpleFeature feature2, int dimension,
+            List<OverlayPiece> pieces ) {
+        int numGeometries = geometry.getNumGeometries();
+        for( int i = 0; i < numGeometries; i++ ) {
+            Geometry geometryN = geometry.getGeometryN(i);
+            if (geometryN instanceof GeometryCollection) {
+                addPieces(geometryN, feature1, feature2, dimension, pieces);
+                continue;
+            }
+            if (geometryN.isEmpty() || geometryN.getDimension() != dimension) {
+                continue;
+            }
+            if (geometryN instanceof Polygon && !doAllowHoles) {
+                Polygon polygon = (Polygon) geometryN;
+                geometryN = gf.createPolygon(polygon.getExteriorRing().getCoordinates());
+            }
+            pieces.add(new OverlayPiece(geometryN, feature1, feature2));
+        }
+    }
+
+    private static STRtree createTree( List<SimpleFeature> features ) {
+        STRtree tree = new STRtree();
+        for( SimpleFeature feature : features ) {
+            Geometry geometry = (Geometry) feature.getDefaultGeometry();
+            tree.insert(geometry.getEnvelopeInternal(), feature);
+        }
+        // build before the parallel queries
+        tree.build();
+        return tree;
+    }
+
+    private static int getDimension( List<SimpleFeature> features ) {
+        int dimension = 0;
+        for( SimpleFeature feature : features ) {
+            Geometry geometry = (Geometry) feature.getDefaultGeometry();
+            dimension = Math.max(dimension, geometry.getDimension());
+        }
+        return dimension;
+    }
+
+    /**
+     * Add the non geometric attributes of a schema, renaming the ones already used.
+     * 
+     * @return the names of the attributes in the original schema.
+     */
+    private static List<String> addAttributes( SimpleFeatureTypeBuilder b, SimpleFeatureType schema, List<String> usedNames ) {
+        List<String> names = new ArrayList<>();
+        for( AttributeDescriptor descriptor : schema.getAttributeDescriptors() ) {
+            if (descriptor == schema.getGeometryDescriptor()) {
+                continue;
+            }
+            String name = descriptor.getLocalName();
+            String newName = name;
+            int index = 2;
+            while( usedNames.contains(newName) ) {
+                newName = name + "_" + index++;
+            }
+            b.add(newName, descriptor.getType().getBinding());
+            usedNames.add(newName);
+            names.add(name);
+        }
+        return names;
+    }
+
+    private static String getMemoryMessage() {
+        Runtime runtime = Runtime.getRuntime();
+        long usedMb = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+        long maxMb = runtime.maxMemory() / (1024 * 1024);
+        return "Memory used: " + usedMb + "MB of " + maxMb + "MB";
+    }
+
 }
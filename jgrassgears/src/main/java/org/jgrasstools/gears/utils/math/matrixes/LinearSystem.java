@@ -134,10 +134,15 @@ public class LinearSystem extends SquareMatrix
      * matrix L such that A = L*U.  Store L and U together in
      * matrix LU.  Compute the permutation vector permutation of
      * the row indices.
+     * <p>
+     * The decomposition is kept until the matrix changes, so that
+     * {@link #solve(ColumnVector, boolean)} can be called for many
+     * right-hand sides. Calling this before using the system from
+     * different threads makes the following solves thread safe.
      * @throws matrix.MatrixException for a zero row or
      *                                a singular matrix
      */
-    protected void decompose() throws MatrixException
+    public void decompose() throws MatrixException
     {
         // Return if the decomposition is valid.
         if (LU != null) return;
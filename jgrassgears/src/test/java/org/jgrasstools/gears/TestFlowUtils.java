@@ -12,6 +12,7 @@ import org.geotools.coverage.grid.GridCoverage2D;
 import org.jgrasstools.gears.libs.modules.Direction;
 import org.jgrasstools.gears.libs.modules.FlowNode;
 import org.jgrasstools.gears.libs.modules.GridNode;
+import org.jgrasstools.gears.libs.modules.GridNodeCursor;
 import org.jgrasstools.gears.libs.modules.GridNodeElevationToLeastComparator;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.Node;
@@ -53,6 +54,28 @@ public class TestFlowUtils extends HMTestCase {
         flowIter = CoverageUtilities.getRandomIterator(inFlow);
     }
 
+    public void testGridNodeCursor() throws Exception {
+        GridNodeCursor cursor = new GridNodeCursor(nCols, nRows, xRes, yRes, 3);
+        for( int fromRow = 0; fromRow < nRows; fromRow += 3 ) {
+            int toRow = Math.min(fromRow + 3, nRows);
+            cursor.load(elevationIter, fromRow, toRow);
+            for( int r = fromRow; r < toRow; r++ ) {
+                for( int c = 0; c < nCols; c++ ) {
+                    GridNode node = new GridNode(elevationIter, nCols, nRows, xRes, yRes, c, r);
+                    cursor.moveTo(c, r);
+
+                    assertEquals(node.elevation, cursor.elevation, DELTA);
+                    assertEquals(node.isValid(), cursor.isValid());
+                    assertEquals(node.touchesBound(), cursor.touchesBound());
+                    assertEquals(node.isPit(), cursor.isPit());
+                    for( Direction direction : Direction.getOrderedDirs() ) {
+                        assertEquals(node.getElevationAt(direction), cursor.getElevationAt(direction), DELTA);
+                    }
+                }
+            }
+        }
+    }
+
     public void testGridNodeWindow() throws Exception {
         GridNode n = new GridNode(elevationIter, nCols, nRows, xRes, yRes, 0, 0);
         double[][] window = n.getWindow(4, false);
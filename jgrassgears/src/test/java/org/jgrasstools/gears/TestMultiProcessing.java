@@ -0,0 +1,95 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jgrasstools.gears.libs.modules.multiprocessing.BlockingExecutorService;
+import org.jgrasstools.gears.libs.modules.multiprocessing.ExecutionPlanner;
+import org.jgrasstools.gears.libs.modules.multiprocessing.WorkStealingPlanner;
+import org.jgrasstools.gears.utils.HMTestCase;
+
+/**
+ * Test the multiprocessing planners and executors.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestMultiProcessing extends HMTestCase {
+
+    public void testNestedWorkStealingPlanner() throws Exception {
+        AtomicLong sum = new AtomicLong();
+        ExecutionPlanner outer = new WorkStealingPlanner();
+        outer.setNumberOfTasks(50);
+        for( int i = 0; i < 50; i++ ) {
+            outer.submit(() -> {
+                ExecutionPlanner inner = new WorkStealingPlanner();
+                inner.setNumberOfTasks(100);
+                for( int j = 0; j < 100; j++ ) {
+                    int value = j;
+                    inner.submit(() -> sum.addAndGet(value));
+                }
+                inner.join();
+            });
+        }
+        outer.join();
+
+        assertEquals(50 * 4950, sum.get());
+    }
+
+    public void testPlannerRethrows() throws Exception {
+        ExecutionPlanner planner = new WorkStealingPlanner();
+        planner.setNumberOfTasks(10);
+        for( int i = 0; i < 10; i++ ) {
+            int value = i;
+            planner.submit(() -> {
+                if (value == 5) {
+                    throw new IllegalStateException("task " + value);
+                }
+            });
+        }
+        try {
+            planner.join();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("task 5", e.getMessage());
+        }
+    }
+
+    public void testBlockingExecutorInvoke() throws Exception {
+        BlockingExecutorService executor = ExecutionPlanner.defaultExecutor();
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for( int i = 0; i < 20; i++ ) {
+            int value = i;
+            // nested submit must not deadlock
+            tasks.add(() -> executor.submit(() -> value).get());
+        }
+
+        int sum = 0;
+        for( Future<Integer> future : executor.invokeAll(tasks) ) {
+            sum += future.get();
+        }
+        assertEquals(190, sum);
+
+        int any = executor.invokeAny(tasks);
+        assertTrue(any >= 0 && any < 20);
+    }
+}
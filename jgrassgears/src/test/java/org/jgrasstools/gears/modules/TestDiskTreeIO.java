@@ -2,16 +2,25 @@ package org.jgrasstools.gears.modules;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
+import org.jgrasstools.gears.io.disktree.DiskTreeConverter;
+import org.jgrasstools.gears.io.disktree.DiskTreeWriter;
 import org.jgrasstools.gears.io.disktree.IDiskTree;
+import org.jgrasstools.gears.io.disktree.PackedDiskTreeReader;
+import org.jgrasstools.gears.io.disktree.PackedDiskTreeWriter;
 import org.jgrasstools.gears.utils.HMTestCase;
 
 import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.index.quadtree.Quadtree;
 import com.vividsolutions.jts.io.WKTReader;
 /**
@@ -151,6 +160,121 @@ public class TestDiskTreeIO extends HMTestCase {
 
     }
 
+    public void testPackedDiskTree() throws Exception {
+        GeometryFactory gf = new GeometryFactory();
+        Random random = new Random(42);
+        Geometry[] geoms = new Geometry[1000];
+        for( int i = 0; i < geoms.length; i++ ) {
+            double x = random.nextDouble() * 1000;
+            double y = random.nextDouble() * 1000;
+            if (i % 2 == 0) {
+                geoms[i] = gf.createPoint(new Coordinate(x, y));
+            } else {
+                geoms[i] = gf.createLineString(new Coordinate[]{new Coordinate(x, y),
+                        new Coordinate(x + random.nextDouble() * 20, y + random.nextDouble() * 20)});
+            }
+            geoms[i].setUserData("id" + i);
+        }
+
+        File tmpFile = File.createTempFile("jgt-", ".jdt");
+        try {
+            new PackedDiskTreeWriter(tmpFile.getAbsolutePath(), 8).writeGeometries(geoms);
+
+            try (PackedDiskTreeReader reader = new PackedDiskTreeReader(tmpFile.getAbsolutePath())) {
+                assertEquals(geoms.length, reader.size());
+
+                Envelope search = new Envelope(200, 450, 300, 420);
+                List<String> expected = new ArrayList<>();
+                for( Geometry geometry : geoms ) {
+                    if (geometry.getEnvelopeInternal().intersects(search)) {
+                        expected.add(geometry.getUserData().toString());
+                    }
+                }
+
+                List<Geometry> result = reader.query(search);
+                assertEquals(expected.size(), result.size());
+                for( Geometry geometry : result ) {
+                    String id = geometry.getUserData().toString();
+                    assertTrue(expected.contains(id));
+                    Geometry original = geoms[Integer.parseInt(id.substring(2))];
+                    assertTrue(original.equalsExact(geometry));
+                }
+
+                assertEquals(0, reader.queryIds(new Envelope(2000, 3000, 2000, 3000)).size());
+            }
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    public void testDiskTreeConversion() throws Exception {
+        WKTReader r = new WKTReader();
+        Geometry pol = r.read("POLYGON ((210 350, 230 310, 290 350, 290 350, 210 350))");
+        pol.setUserData(new Integer(1));
+        Geometry line = r.read("LINESTRING (50 380, 90 210, 180 160, 240 40, 240 40)");
+        line.setUserData(new Integer(2));
+        Geometry point = r.read("POINT (130 120)");
+        point.setUserData(new Integer(3));
+
+        File oldFile = File.createTempFile("jgt-", ".qjts");
+        File newFile = File.createTempFile("jgt-", ".jdt");
+        try {
+            new DiskTreeWriter(oldFile.getAbsolutePath()).writeGeometries(new Geometry[]{pol, line, point});
+            assertEquals(3, DiskTreeConverter.convert(oldFile.getAbsolutePath(), newFile.getAbsolutePath()));
+
+            try (PackedDiskTreeReader reader = new PackedDiskTreeReader(newFile.getAbsolutePath())) {
+                List<Geometry> geomList = reader.query(pol.getEnvelopeInternal());
+                assertEquals(2, geomList.size());
+                for( Geometry geometry : geomList ) {
+                    if (geometry.getUserData().equals("1")) {
+                        assertTrue(pol.equalsExact(geometry));
+                    } else {
+                        assertEquals("2", geometry.getUserData());
+                        assertTrue(line.equalsExact(geometry));
+                    }
+                }
+            }
+        } finally {
+            oldFile.delete();
+            newFile.delete();
+        }
+    }
+
+    public void testDiskTreeConversion3D() throws Exception {
+        WKTReader r = new WKTReader();
+        Geometry line = r.read("LINESTRING (50 380 10, 90 210 20, 180 160 30)");
+        line.setSRID(32632);
+        line.setUserData(new Integer(1));
+        Geometry point = r.read("POINT (130 120 45.5)");
+        point.setSRID(32632);
+        point.setUserData(new Integer(2));
+
+        File oldFile = File.createTempFile("jgt-", ".qjts");
+        File newFile = File.createTempFile("jgt-", ".jdt");
+        try {
+            new DiskTreeWriter(oldFile.getAbsolutePath()).writeGeometries(new Geometry[]{line, point});
+            assertEquals(2, DiskTreeConverter.convert(oldFile.getAbsolutePath(), newFile.getAbsolutePath()));
+
+            try (PackedDiskTreeReader reader = new PackedDiskTreeReader(newFile.getAbsolutePath())) {
+                List<Geometry> geomList = reader.query(new Envelope(0, 1000, 0, 1000));
+                assertEquals(2, geomList.size());
+                for( Geometry geometry : geomList ) {
+                    Geometry original = geometry.getUserData().equals("1") ? line : point;
+                    assertTrue(original.equalsExact(geometry));
+                    assertEquals(32632, geometry.getSRID());
+                    Coordinate[] originalCoordinates = original.getCoordinates();
+                    Coordinate[] coordinates = geometry.getCoordinates();
+                    for( int i = 0; i < coordinates.length; i++ ) {
+                        assertEquals(originalCoordinates[i].z, coordinates[i].z, DELTA);
+                    }
+                }
+            }
+        } finally {
+            oldFile.delete();
+            newFile.delete();
+        }
+    }
+
     private static byte[] serialize( Object obj ) throws IOException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
         ObjectOutputStream out = new ObjectOutputStream(bos);
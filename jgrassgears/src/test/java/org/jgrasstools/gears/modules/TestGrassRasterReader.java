@@ -0,0 +1,266 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+import org.jgrasstools.gears.io.grasslegacy.io.GrassRasterReader;
+import org.jgrasstools.gears.io.grasslegacy.io.MapReader;
+import org.jgrasstools.gears.io.grasslegacy.utils.Window;
+import org.jgrasstools.gears.libs.monitor.DummyProgressMonitor;
+import org.jgrasstools.gears.utils.HMTestCase;
+import org.jgrasstools.gears.utils.files.FileUtilities;
+
+/**
+ * Test the mapped reading of {@link GrassRasterReader} against the row by row one.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+@SuppressWarnings("nls")
+public class TestGrassRasterReader extends HMTestCase {
+
+    private static final int ROWS = 5;
+    private static final int COLS = 11;
+    private static final double RES = 10.0;
+
+    /*
+     * the values of the map, row 2 is all novalues and the cells of the diagonal are novalues
+     */
+    private static final double[][] VALUES = new double[ROWS][COLS];
+    private static final boolean[][] NULLS = new boolean[ROWS][COLS];
+    static {
+        for( int r = 0; r < ROWS; r++ ) {
+            for( int c = 0; c < COLS; c++ ) {
+                // runs of equal values for the run length encoding of the integer maps
+                VALUES[r][c] = (r + 1) * 100 + c / 3 - 7;
+                NULLS[r][c] = r == 2 || r == c;
+            }
+        }
+    }
+
+    public void testCell() throws Exception {
+        checkMap("cell", 3, true);
+    }
+
+    public void testFcell() throws Exception {
+        checkMap("fcell", -1, false);
+    }
+
+    public void testDcell() throws Exception {
+        checkMap("dcell", -2, true);
+    }
+
+    private void checkMap( String name, int format, boolean compressed ) throws Exception {
+        File location = File.createTempFile("jgt-grassreader", "");
+        location.delete();
+        File mapset = new File(location, "test");
+        mapset.mkdirs();
+        try {
+            writeMap(mapset, name, format, compressed);
+            File mapFile = new File(mapset, "cell" + File.separator + name);
+
+            // the map with a novalue row on top and a novalue column on the right
+            Window window = new Window(0, (COLS + 1) * RES, 0, (ROWS + 1) * RES, RES, RES);
+            checkWindow(mapFile, window);
+            // a resampled and shifted window
+            window = new Window(RES / 2, COLS * RES - 3, 2, ROWS * RES + 2, RES / 2, RES / 3);
+            checkWindow(mapFile, window);
+        } finally {
+            FileUtilities.deleteFileOrDir(location);
+        }
+    }
+
+    private void checkWindow( File mapFile, Window window ) throws Exception {
+        GrassRasterReader legacyReader = new GrassRasterReader();
+        double[][] legacy;
+        try {
+            legacyReader.setReaderType(MapReader.RASTER_READER);
+            legacyReader.setOutputDataObject(new double[0][0]);
+            legacyReader.setDataWindow(window);
+            assertTrue(legacyReader.open(mapFile.getAbsolutePath()));
+            assertTrue(legacyReader.hasMoreData(new DummyProgressMonitor()));
+            legacy = (double[][]) legacyReader.getNextData();
+        } finally {
+            legacyReader.close();
+        }
+
+        GrassRasterReader mappedReader = new GrassRasterReader();
+        double[] mapped;
+        double[] tile;
+        try {
+            mappedReader.setReaderType(MapReader.RASTER_READER);
+            mappedReader.setOutputDataObject(new double[0]);
+            mappedReader.setDataWindow(window);
+            assertTrue(mappedReader.open(mapFile.getAbsolutePath()));
+            assertTrue(mappedReader.hasMoreData(new DummyProgressMonitor()));
+            mapped = (double[]) mappedReader.getNextData();
+            tile = mappedReader.readTile(1, 2, window.getRows() - 2, window.getCols() - 3, null);
+        } finally {
+            mappedReader.close();
+        }
+
+        int rows = window.getRows();
+        int cols = window.getCols();
+        assertEquals(rows * cols, mapped.length);
+        int nulls = 0;
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                double expected = legacy[r][c];
+                double value = mapped[r * cols + c];
+                if (Double.isNaN(expected)) {
+                    assertTrue(Double.isNaN(value));
+                    nulls++;
+                } else {
+                    assertEquals(expected, value, 0.0);
+                }
+                if (r >= 1 && r < rows - 1 && c >= 2 && c < cols - 1) {
+                    double tileValue = tile[(r - 1) * (cols - 3) + c - 2];
+                    assertEquals(0, Double.compare(value, tileValue));
+                }
+            }
+        }
+        assertTrue(nulls > 0);
+        assertTrue(nulls < rows * cols);
+
+        double[] legacyRange = legacyReader.getDataRange();
+        double[] mappedRange = mappedReader.getDataRange();
+        assertEquals(legacyRange[0], mappedRange[0], 0.0);
+        assertEquals(legacyRange[1], mappedRange[1], 0.0);
+    }
+
+    /**
+     * Write a map in the GRASS raster format.
+     *
+     * @param format 3 for a 4 bytes integer map, -1 for float and -2 for double.
+     * @param compressed if <code>true</code>, run length encode the integer rows and deflate
+     *          the floating point ones.
+     */
+    private void writeMap( File mapset, String name, int format, boolean compressed ) throws IOException {
+        File cellhd = new File(mapset, "cellhd");
+        File cell = new File(mapset, "cell");
+        File fcell = new File(mapset, "fcell");
+        File cellMisc = new File(mapset, "cell_misc" + File.separator + name);
+        cellhd.mkdirs();
+        cell.mkdirs();
+        fcell.mkdirs();
+        cellMisc.mkdirs();
+
+        String header = "proj:   0\nzone:   0\nnorth:   " + ROWS * RES + "\nsouth:   0.0\neast:   " + COLS * RES
+                + "\nwest:   0.0\ncols:   " + COLS + "\nrows:   " + ROWS + "\nn-s resol:   " + RES + "\ne-w resol:   " + RES
+                + "\nformat:   " + format + "\ncompressed:   " + (compressed ? 1 : 0) + "\n";
+        writeBytes(new File(cellhd, name), header.getBytes("UTF-8"));
+
+        byte[][] rows = new byte[ROWS][];
+        for( int r = 0; r < ROWS; r++ ) {
+            ByteArrayOutputStream rowBytes = new ByteArrayOutputStream();
+            DataOutputStream rowStream = new DataOutputStream(rowBytes);
+            if (format < 0) {
+                for( int c = 0; c < COLS; c++ ) {
+                    // the novalues of the floating point maps are written as NaN, as GRASS does
+                    double value = NULLS[r][c] ? Double.NaN : VALUES[r][c] + 0.25;
+                    if (format == -1) {
+                        rowStream.writeFloat((float) value);
+                    } else {
+                        rowStream.writeDouble(value);
+                    }
+                }
+                rows[r] = rowBytes.toByteArray();
+                if (compressed) {
+                    Deflater deflater = new Deflater();
+                    deflater.setInput(rows[r]);
+                    deflater.finish();
+                    byte[] deflated = new byte[rows[r].length + 64];
+                    int length = deflater.deflate(deflated);
+                    deflater.end();
+                    ByteArrayOutputStream compressedRow = new ByteArrayOutputStream();
+                    compressedRow.write(49);
+                    compressedRow.write(deflated, 0, length);
+                    rows[r] = compressedRow.toByteArray();
+                }
+            } else {
+                if (compressed) {
+                    rowStream.writeByte(4);
+                    int c = 0;
+                    while( c < COLS ) {
+                        int run = 1;
+                        while( c + run < COLS && VALUES[r][c + run] == VALUES[r][c] ) {
+                            run++;
+                        }
+                        rowStream.writeByte(run);
+                        rowStream.writeInt((int) VALUES[r][c]);
+                        c += run;
+                    }
+                } else {
+                    for( int c = 0; c < COLS; c++ ) {
+                        rowStream.writeInt((int) VALUES[r][c]);
+                    }
+                }
+                rows[r] = rowBytes.toByteArray();
+            }
+        }
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        if (compressed) {
+            // the row addresses header
+            DataOutputStream headerStream = new DataOutputStream(data);
+            headerStream.writeByte(4);
+            int address = 1 + 4 * (ROWS + 1);
+            for( int r = 0; r < ROWS; r++ ) {
+                headerStream.writeInt(address);
+                address += rows[r].length;
+            }
+            headerStream.writeInt(address);
+        }
+        for( int r = 0; r < ROWS; r++ ) {
+            data.write(rows[r]);
+        }
+        if (format < 0) {
+            writeBytes(new File(fcell, name), data.toByteArray());
+            writeBytes(new File(cell, name), new byte[0]);
+            String type = format == -1 ? "float" : "double";
+            writeBytes(new File(cellMisc, "f_format"), ("type: " + type + "\nbyte_order: xdr\n").getBytes("UTF-8"));
+        } else {
+            writeBytes(new File(cell, name), data.toByteArray());
+        }
+
+        int nullRowBytes = (COLS + 7) / 8;
+        byte[] nullBytes = new byte[ROWS * nullRowBytes];
+        for( int r = 0; r < ROWS; r++ ) {
+            for( int c = 0; c < COLS; c++ ) {
+                if (NULLS[r][c]) {
+                    nullBytes[r * nullRowBytes + c / 8] |= 0x80 >> (c % 8);
+                }
+            }
+        }
+        writeBytes(new File(cellMisc, "null"), nullBytes);
+    }
+
+    private void writeBytes( File file, byte[] bytes ) throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(bytes);
+        } finally {
+            outputStream.close();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules;
+
+import org.jgrasstools.gears.libs.modules.HorizonEngine;
+import org.jgrasstools.gears.utils.HMTestCase;
+
+/**
+ * Test {@link HorizonEngine}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestHorizonEngine extends HMTestCase {
+
+    public void testHorizons() throws Exception {
+        // a flat plain with a 30 meters wall on the east border
+        int cols = 5;
+        int rows = 5;
+        double[] elevations = new double[cols * rows];
+        for( int r = 0; r < rows; r++ ) {
+            elevations[r * cols + cols - 1] = 30;
+        }
+        elevations[1 * cols + 1] = Double.NaN;
+
+        HorizonEngine engine = new HorizonEngine(elevations, cols, rows, 10, 4);
+        double delta = 0.0001;
+
+        // east
+        assertEquals(Math.atan(30.0 / 20.0), engine.getHorizon(2, 2, 1), delta);
+        assertEquals(Math.atan(30.0 / 40.0), engine.getHorizon(0, 3, 1), delta);
+        // west
+        assertEquals(0.0, engine.getHorizon(2, 2, 3), delta);
+        assertEquals(-Math.PI / 2.0, engine.getHorizon(0, 2, 3), delta);
+        assertEquals(Math.atan(-30.0 / 40.0), engine.getHorizon(4, 2, 3), delta);
+        // novalues
+        assertTrue(Double.isNaN(engine.getHorizon(1, 1, 0)));
+
+        // between east and south
+        double halfway = (Math.atan(30.0 / 20.0) + 0.0) / 2.0;
+        assertEquals(halfway, engine.getHorizon(2, 2, 3.0 * Math.PI / 4.0), delta);
+
+        assertTrue(engine.isShadowed(2, 2, Math.PI / 2.0, Math.toRadians(50)));
+        assertFalse(engine.isShadowed(2, 2, Math.PI / 2.0, Math.toRadians(60)));
+        assertTrue(engine.isShadowed(1, 1, Math.PI / 2.0, Math.toRadians(60)));
+
+        assertEquals(Math.PI / 2.0, HorizonEngine.azimuth(1, 0), delta);
+        assertEquals(Math.PI, HorizonEngine.azimuth(0, 1), delta);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+
+import java.awt.image.Raster;
+import java.io.File;
+
+import javax.media.jai.iterator.RandomIter;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.jgrasstools.gears.io.rasterreader.OmsRasterReader;
+import org.jgrasstools.gears.io.rasterwriter.OmsRasterWriter;
+import org.jgrasstools.gears.libs.modules.JGTModelIM;
+import org.jgrasstools.gears.modules.r.imagemosaic.OmsImageMosaicCreator;
+import org.jgrasstools.gears.utils.HMTestCase;
+import org.jgrasstools.gears.utils.HMTestMaps;
+import org.jgrasstools.gears.utils.RegionMap;
+import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
+import org.jgrasstools.gears.utils.files.FileUtilities;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Test the parallel tile processing of {@link JGTModelIM}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+@SuppressWarnings("nls")
+public class TestJGTModelIM extends HMTestCase {
+
+    private static final int TILE_ROWS = 4;
+    private static final int TILE_COLS = 5;
+
+    public void testParallelTiles() throws Exception {
+        File folder = File.createTempFile("jgt-modelim", "");
+        folder.delete();
+        folder.mkdirs();
+        try {
+            // the test map split in 2x2 tiles
+            File inFolder = new File(folder, "in");
+            inFolder.mkdirs();
+            RegionMap region = HMTestMaps.getEnvelopeparams();
+            CoordinateReferenceSystem crs = HMTestMaps.getCrs();
+            double res = region.getXres();
+            for( int r = 0; r < 2; r++ ) {
+                for( int c = 0; c < 2; c++ ) {
+                    double[][] tileData = new double[TILE_ROWS][TILE_COLS];
+                    for( int i = 0; i < TILE_ROWS; i++ ) {
+                        for( int j = 0; j < TILE_COLS; j++ ) {
+                            tileData[i][j] = HMTestMaps.mapData[r * TILE_ROWS + i][c * TILE_COLS + j];
+                        }
+                    }
+                    double north = region.getNorth() - r * TILE_ROWS * res;
+                    double west = region.getWest() + c * TILE_COLS * res;
+                    RegionMap tileRegion = CoverageUtilities.makeRegionParamsMap(north, north - TILE_ROWS * res, west, west
+                            + TILE_COLS * res, res, res, TILE_COLS, TILE_ROWS);
+                    GridCoverage2D tile = CoverageUtilities.buildCoverage("tile", tileData, tileRegion, crs, true);
+                    OmsRasterWriter.writeRaster(new File(inFolder, "tile_" + r + "_" + c + ".tiff").getAbsolutePath(), tile);
+                }
+            }
+            OmsImageMosaicCreator mosaicCreator = new OmsImageMosaicCreator();
+            mosaicCreator.inFolder = inFolder.getAbsolutePath();
+            mosaicCreator.process();
+            File mosaic = new File(inFolder, "in.shp");
+
+            File sequentialFolder = new File(folder, "sequential");
+            File parallelFolder = new File(folder, "parallel");
+            runSum(mosaic, sequentialFolder, 1);
+            runSum(mosaic, parallelFolder, 4);
+
+            int values = 0;
+            for( int i = 1; i <= 4; i++ ) {
+                String tileName = "sum_" + i + ".tiff";
+                GridCoverage2D sequential = OmsRasterReader.readRaster(new File(sequentialFolder, tileName).getAbsolutePath());
+                GridCoverage2D parallel = OmsRasterReader.readRaster(new File(parallelFolder, tileName).getAbsolutePath());
+                Raster sequentialRaster = sequential.getRenderedImage().getData();
+                Raster parallelRaster = parallel.getRenderedImage().getData();
+                assertEquals(sequentialRaster.getWidth(), parallelRaster.getWidth());
+                assertEquals(sequentialRaster.getHeight(), parallelRaster.getHeight());
+                for( int y = 0; y < sequentialRaster.getHeight(); y++ ) {
+                    for( int x = 0; x < sequentialRaster.getWidth(); x++ ) {
+                        double expected = sequentialRaster.getSampleDouble(x, y, 0);
+                        double value = parallelRaster.getSampleDouble(x, y, 0);
+                        assertEquals(0, Double.compare(expected, value));
+                        if (!isNovalue(expected)) {
+                            values++;
+                        }
+                    }
+                }
+            }
+            assertTrue(values > 0);
+        } finally {
+            FileUtilities.deleteFileOrDir(folder);
+        }
+    }
+
+    private void runSum( File mosaic, File outFolder, int maxInFlightTiles ) throws Exception {
+        outFolder.mkdirs();
+        NeighboursSum sum = new NeighboursSum();
+        sum.inRaster = mosaic.getAbsolutePath();
+        sum.outRaster = new File(outFolder, "sum.tiff").getAbsolutePath();
+        sum.pMaxInFlightTiles = maxInFlightTiles;
+        sum.process();
+    }
+
+    /**
+     * Sum of the 3x3 neighbourhood of the cells, which reads across the borders of the tiles.
+     */
+    public static class NeighboursSum extends JGTModelIM {
+        public String inRaster = null;
+
+        public String outRaster = null;
+
+        public void process() throws Exception {
+            cellBuffer = 1;
+            addSource(new File(inRaster));
+            addDestination(new File(outRaster));
+            processByTileCells();
+            dispose();
+        }
+
+        @Override
+        protected void processCell( int readCol, int readRow, int writeCol, int writeRow, int readCols, int readRows,
+                int writeCols, int writeRows ) {
+            RandomIter inIter = getInRasterIterator(0);
+            double sum = 0;
+            for( int r = -1; r <= 1; r++ ) {
+                for( int c = -1; c <= 1; c++ ) {
+                    sum += inIter.getSampleDouble(readCol + c, readRow + r, 0);
+                }
+            }
+            getOutRaster(0).setSample(writeCol, writeRow, 0, sum);
+        }
+    }
+}
@@ -25,7 +25,10 @@ import java.net.URL;
 import org.geotools.geometry.jts.ReferencedEnvelope3D;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.jgrasstools.gears.io.las.core.ALasWriter;
+import org.jgrasstools.gears.io.las.core.ILasBatchVisitor;
 import org.jgrasstools.gears.io.las.core.ILasHeader;
+import org.jgrasstools.gears.io.las.core.LasPointBatch;
+import org.jgrasstools.gears.io.las.core.LasPointStream;
 import org.jgrasstools.gears.io.las.core.LasRecord;
 import org.jgrasstools.gears.io.las.core.liblas.LiblasHeader;
 import org.jgrasstools.gears.io.las.core.liblas.LiblasJNALibrary;
@@ -300,6 +303,87 @@ public class TestLasIO extends HMTestCase {
 
     }
 
+    public void testLasPointStream() throws Exception {
+        String[] names = {"las/1.0_0.las", "las/1.0_1.las", "las/1.1_0.las", "las/1.1_1.las", "las/1.2_0.las",
+                "las/1.2_1.las", "las/1.2_2.las", "las/1.2_3.las", "las/1.2-with-color.las"};
+        for( String name : names ) {
+            checkStreamContent(fileFromName(name));
+        }
+    }
+
+    private void checkStreamContent( File lasFile ) throws Exception {
+        try (LasReaderBuffered lasReader = new LasReaderBuffered(lasFile, null);
+                LasReaderBuffered streamReader = new LasReaderBuffered(lasFile, null)) {
+            lasReader.open();
+            streamReader.open();
+
+            try (LasPointStream stream = streamReader.getPointStream()) {
+                assertEquals(lasReader.getHeader().getRecordsCount(), stream.getPointsCount());
+                // small batches, to cross their borders
+                LasPointBatch batch = new LasPointBatch(100);
+                LasRecord record = new LasRecord();
+                long count = 0;
+                while( stream.readBatch(batch) > 0 ) {
+                    assertEquals(count, batch.firstPoint);
+                    for( int i = 0; i < batch.size; i++ ) {
+                        assertTrue(lasReader.hasNextPoint());
+                        LasRecord lasDot = lasReader.getNextPoint();
+                        assertTrue(LasUtils.lasRecordEqual(lasDot, batch.toRecord(i, record)));
+                        assertEquals(lasDot.gpsTime, record.gpsTime, DELTA);
+                        assertEquals(lasDot.color[0], record.color[0]);
+                        assertEquals(lasDot.color[2], record.color[2]);
+                        count++;
+                    }
+                }
+                assertFalse(lasReader.hasNextPoint());
+
+                if (count > 1) {
+                    stream.seek(1);
+                    stream.readBatch(batch);
+                    assertTrue(LasUtils.lasRecordEqual(lasReader.getPointAt(1), batch.toRecord(0, record)));
+                }
+            }
+
+            // a range of the file mapped in segments of few points, read in batches crossing them
+            ILasHeader header = streamReader.getHeader();
+            long recordsCount = header.getRecordsCount();
+            long firstPoint = recordsCount / 3;
+            long endPoint = recordsCount - recordsCount / 5;
+            try (LasPointStream stream = new LasPointStream(lasFile, header, firstPoint, endPoint, 7)) {
+                assertEquals(endPoint - firstPoint, stream.getPointsCount());
+                LasPointBatch batch = new LasPointBatch(10);
+                LasRecord record = new LasRecord();
+                long point = firstPoint;
+                while( stream.readBatch(batch) > 0 ) {
+                    assertEquals(point, batch.firstPoint);
+                    for( int i = 0; i < batch.size; i++ ) {
+                        assertTrue(LasUtils.lasRecordEqual(lasReader.getPointAt(point), batch.toRecord(i, record)));
+                        point++;
+                    }
+                }
+                assertEquals(endPoint, point);
+                assertFalse(stream.hasNext());
+
+                // the visitor gets the same points
+                stream.seek(firstPoint);
+                final long[] visited = {firstPoint};
+                final LasReaderBuffered reader = lasReader;
+                stream.visit(new ILasBatchVisitor(){
+                    public void visit( LasPointBatch visitedBatch ) throws Exception {
+                        LasRecord visitedRecord = new LasRecord();
+                        assertEquals(visited[0], visitedBatch.firstPoint);
+                        for( int i = 0; i < visitedBatch.size; i++ ) {
+                            assertTrue(LasUtils.lasRecordEqual(reader.getPointAt(visited[0]),
+                                    visitedBatch.toRecord(i, visitedRecord)));
+                            visited[0]++;
+                        }
+                    }
+                }, 3);
+                assertEquals(endPoint, visited[0]);
+            }
+        }
+    }
+
     private File fileFromName( String name ) throws URISyntaxException {
         URL lasUrl = this.getClass().getClassLoader().getResource(name);
         File lasFile = new File(lasUrl.toURI());
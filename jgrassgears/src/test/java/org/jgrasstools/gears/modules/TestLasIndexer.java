@@ -0,0 +1,95 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules;
+
+import java.io.File;
+import java.net.URL;
+import java.util.List;
+
+import org.jgrasstools.gears.io.las.index.LasBinaryIndex;
+import org.jgrasstools.gears.io.las.index.LasIndexer;
+import org.jgrasstools.gears.io.las.index.OmsLasIndexReader;
+import org.jgrasstools.gears.io.las.index.strtree.STRtreeJGT;
+import org.jgrasstools.gears.utils.HMTestCase;
+import org.jgrasstools.gears.utils.files.FileUtilities;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Test {@link LasIndexer}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+@SuppressWarnings("nls")
+public class TestLasIndexer extends HMTestCase {
+
+    @SuppressWarnings("rawtypes")
+    public void testIndexer() throws Exception {
+        URL lasUrl = this.getClass().getClassLoader().getResource("las/1.2-with-color.las");
+        File lasFile = new File(lasUrl.toURI());
+        File prjFile = FileUtilities.substituteExtention(lasFile, "prj");
+
+        File folder = File.createTempFile("jgt-lasindexer", "");
+        folder.delete();
+        folder.mkdirs();
+        try {
+            File tmpLas = new File(folder, "test.las");
+            FileUtilities.copyFile(lasFile, tmpLas);
+            FileUtilities.copyFile(prjFile, new File(folder, "test.prj"));
+
+            LasIndexer indexer = new LasIndexer();
+            indexer.inFolder = folder.getAbsolutePath();
+            indexer.pCellsize = 10;
+            indexer.pThreads = 2;
+            indexer.process();
+
+            File mainIndex = new File(folder, LasIndexer.INDEX_LASFOLDER);
+            File cellsIndex = new File(folder, "test_indexed.lasfix");
+            assertTrue(LasBinaryIndex.isBinaryIndex(mainIndex));
+            assertTrue(LasBinaryIndex.isBinaryIndex(cellsIndex));
+
+            Envelope all = new Envelope(-Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE);
+            STRtreeJGT mainTree = OmsLasIndexReader.readIndex(mainIndex.getAbsolutePath());
+            List files = mainTree.query(all);
+            assertEquals(1, files.size());
+            assertEquals("test_indexed.las", files.get(0));
+
+            // the cells cover all the points without gaps
+            STRtreeJGT cellsTree = OmsLasIndexReader.readIndex(cellsIndex.getAbsolutePath());
+            long points = 0;
+            for( Object cell : cellsTree.query(all) ) {
+                double[] info = (double[]) cell;
+                points += (long) (info[1] - info[0]);
+            }
+            assertEquals(1065, points);
+
+            // unchanged files are not indexed again
+            long indexTime = cellsIndex.lastModified();
+            Thread.sleep(1100);
+            indexer.process();
+            assertEquals(indexTime, cellsIndex.lastModified());
+
+            // changed files are
+            tmpLas.setLastModified(System.currentTimeMillis());
+            indexer.process();
+            assertTrue(cellsIndex.lastModified() > indexTime);
+        } finally {
+            FileUtilities.deleteFileOrDir(folder);
+        }
+    }
+}
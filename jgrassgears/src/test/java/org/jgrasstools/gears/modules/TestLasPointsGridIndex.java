@@ -0,0 +1,76 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.jgrasstools.gears.io.las.core.LasRecord;
+import org.jgrasstools.gears.io.las.utils.LasPointsGridIndex;
+import org.jgrasstools.gears.io.las.utils.LasUtils;
+import org.jgrasstools.gears.utils.HMTestCase;
+
+/**
+ * Test {@link LasPointsGridIndex}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestLasPointsGridIndex extends HMTestCase {
+
+    public void testRadiusSearch() throws Exception {
+        Random random = new Random(7);
+        List<LasRecord> points = new ArrayList<>();
+        for( int i = 0; i < 2000; i++ ) {
+            LasRecord dot = new LasRecord();
+            dot.x = 1000 + random.nextDouble() * 100;
+            dot.y = 5000 + random.nextDouble() * 50;
+            points.add(dot);
+        }
+
+        double[] radiuses = {-1, 0.5, 3, 10, 200};
+        for( double radius : radiuses ) {
+            LasPointsGridIndex index = new LasPointsGridIndex(points, radius);
+            for( int i = 0; i < 100; i++ ) {
+                LasRecord center = points.get(i);
+                List<LasRecord> found = index.getInRadius(center.x, center.y, radius);
+
+                int expected = 0;
+                for( LasRecord dot : points ) {
+                    if (LasUtils.distance(center, dot) <= radius) {
+                        expected++;
+                        assertTrue(found.contains(dot));
+                    }
+                }
+                assertEquals(expected, found.size());
+            }
+        }
+
+        // the search stops when the visitor asks for it
+        LasPointsGridIndex index = new LasPointsGridIndex(points, 10);
+        final int[] visited = {0};
+        boolean completed = index.visitInRadius(1050, 5025, 10, new LasPointsGridIndex.IPointVisitor(){
+            public boolean visit( LasRecord dot, double distance ) {
+                visited[0]++;
+                return false;
+            }
+        });
+        assertFalse(completed);
+        assertEquals(1, visited[0]);
+    }
+}
@@ -100,6 +100,28 @@ public class TestMapcalc extends HMTestCase {
         checkEqualsSinlgeValue(renderedImage, 900.0, 0.000000001);
     }
 
+    public void testMapcalcParallel() throws Exception {
+        double[][] elevationData = HMTestMaps.pitData;
+        HashMap<String, Double> envelopeParams = HMTestMaps.getEnvelopeparams();
+        CoordinateReferenceSystem crs = HMTestMaps.getCrs();
+        GridCoverage2D elevationCoverage = CoverageUtilities.buildCoverage("ele", elevationData, envelopeParams, crs, true);
+
+        List<GridCoverage2D> maps = Arrays.asList(elevationCoverage);
+
+        // the second run takes the compiled script from the cache
+        for( int i = 0; i < 2; i++ ) {
+            OmsMapcalc mapcalc = new OmsMapcalc();
+            mapcalc.inRasters = maps;
+            mapcalc.pFunction = "images{ele=read; dest=write;} dest=ele*2-ele + sqrt(ele)^2-exp(log(ele));";
+            mapcalc.doParallel = true;
+            mapcalc.process();
+
+            GridCoverage2D outMap = mapcalc.outRaster;
+            RenderedImage renderedImage = outMap.getRenderedImage();
+            checkMatrixEqual(renderedImage, HMTestMaps.pitData, 0.000000001);
+        }
+    }
+
     public static void main( String[] args ) throws Exception {
         new TestMapcalc().testMapcalc();
     }
@@ -0,0 +1,117 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jgrasstools.gears.libs.modules.JGTConstants;
+import org.jgrasstools.gears.libs.modules.ModulesCatalogue;
+import org.jgrasstools.gears.libs.modules.ModulesCatalogue.FieldEntry;
+import org.jgrasstools.gears.libs.modules.ModulesCatalogue.ModuleEntry;
+import org.jgrasstools.gears.modules.r.summary.OmsZonalStats;
+import org.jgrasstools.gears.utils.HMTestCase;
+
+import oms3.annotations.Description;
+import oms3.annotations.Execute;
+import oms3.annotations.In;
+import oms3.annotations.Status;
+
+/**
+ * Test {@link ModulesCatalogue}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestModulesCatalogue extends HMTestCase {
+
+    public void testWriteRead() throws Exception {
+        List<Class< ? >> classes = new ArrayList<Class< ? >>();
+        classes.add(OmsZonalStats.class);
+        StringWriter writer = new StringWriter();
+        assertEquals(1, ModulesCatalogue.write(classes, writer));
+
+        List<ModuleEntry> modules = ModulesCatalogue
+                .read(new ByteArrayInputStream(writer.toString().getBytes(StandardCharsets.UTF_8)));
+        assertEquals(1, modules.size());
+        ModuleEntry module = modules.get(0);
+        assertEquals(OmsZonalStats.class.getCanonicalName(), module.className);
+        assertEquals("OmsZonalStats", module.getSimpleName());
+        assertEquals("zonalstats", module.name);
+        assertEquals(JGTConstants.RASTERPROCESSING, module.label);
+        assertEquals("Calculate zonal stats.", module.description);
+        assertEquals(Integer.valueOf(Status.EXPERIMENTAL), module.status);
+
+        FieldEntry threshold = null;
+        for( FieldEntry field : module.inputs ) {
+            if (field.fieldName.equals("pPercentageThres")) {
+                threshold = field;
+            }
+        }
+        assertNotNull(threshold);
+        assertEquals("double", threshold.fieldType);
+        assertEquals("20.0", threshold.defaultValue);
+        assertEquals("Percentage of minimum active cells to have a valid stat.", threshold.description);
+        assertNull(threshold.unit);
+        assertNull(threshold.rangeMin);
+
+        FieldEntry outVector = null;
+        for( FieldEntry field : module.outputs ) {
+            if (field.fieldName.equals("outVector")) {
+                outVector = field;
+            }
+        }
+        assertNotNull(outVector);
+        assertNull(outVector.defaultValue);
+    }
+
+    public void testLocalizedDescriptions() throws Exception {
+        List<Class< ? >> classes = new ArrayList<Class< ? >>();
+        classes.add(LocalizedModule.class);
+        StringWriter writer = new StringWriter();
+        assertEquals(1, ModulesCatalogue.write(classes, writer));
+
+        List<ModuleEntry> modules = ModulesCatalogue
+                .read(new ByteArrayInputStream(writer.toString().getBytes(StandardCharsets.UTF_8)));
+        ModuleEntry module = modules.get(0);
+        assertEquals("A module.", module.description);
+        assertEquals("Un modulo.", module.getDescription("it"));
+        assertEquals("A module.", module.getDescription("de"));
+
+        FieldEntry input = module.inputs.get(0);
+        assertEquals("inValue", input.fieldName);
+        assertEquals("The value.", input.description);
+        assertEquals("Der Wert.", input.getDescription("de"));
+        assertEquals("Il valore.", input.getDescription("it"));
+        assertEquals("The value.", input.getDescription("fr"));
+        assertEquals(2, input.localizedDescriptions.size());
+    }
+
+    @Description(value = "A module.", it = "Un modulo.")
+    public static class LocalizedModule {
+        @Description(value = "The value.", it = "Il valore.", de = "Der Wert.")
+        @In
+        public double inValue = 1.0;
+
+        @Execute
+        public void process() {
+        }
+    }
+}
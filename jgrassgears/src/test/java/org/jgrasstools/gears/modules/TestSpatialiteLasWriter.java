@@ -0,0 +1,131 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules;
+
+import java.io.File;
+import java.net.URL;
+import java.util.List;
+
+import org.jgrasstools.dbs.compat.ASpatialDb;
+import org.jgrasstools.gears.io.las.spatialite.LasCell;
+import org.jgrasstools.gears.io.las.spatialite.LasCellsTable;
+import org.jgrasstools.gears.io.las.spatialite.LasSource;
+import org.jgrasstools.gears.io.las.spatialite.LasSourcesTable;
+import org.jgrasstools.gears.io.las.spatialite.SpatialiteLasWriter;
+import org.jgrasstools.gears.libs.monitor.DummyProgressMonitor;
+import org.jgrasstools.gears.spatialite.GTSpatialiteThreadsafeDb;
+import org.jgrasstools.gears.utils.HMTestCase;
+import org.jgrasstools.gears.utils.files.FileUtilities;
+
+/**
+ * Test the {@link SpatialiteLasWriter}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+@SuppressWarnings("nls")
+public class TestSpatialiteLasWriter extends HMTestCase {
+
+    public void testFailedLoadIsRemoved() throws Exception {
+        URL lasUrl = this.getClass().getClassLoader().getResource("las/1.2-with-color.las");
+        File lasFile = new File(lasUrl.toURI());
+        File prjFile = FileUtilities.substituteExtention(lasFile, "prj");
+
+        File folder = File.createTempFile("jgt-spatialitelaswriter", "");
+        folder.delete();
+        folder.mkdirs();
+        try {
+            FileUtilities.copyFile(lasFile, new File(folder, "test.las"));
+            FileUtilities.copyFile(prjFile, new File(folder, "test.prj"));
+            File dbFile = new File(folder, "las.sqlite");
+
+            // commit every cell and cancel once the first column of cells is written
+            SpatialiteLasWriter writer = createWriter(folder, dbFile);
+            CancelingMonitor cancelingMonitor = new CancelingMonitor();
+            writer.pm = cancelingMonitor;
+            try {
+                writer.process();
+                fail("The load should have been interrupted.");
+            } catch (RuntimeException e) {
+                // expected
+            }
+            assertTrue(cancelingMonitor.writtenColumns > 0);
+
+            try (ASpatialDb db = new GTSpatialiteThreadsafeDb()) {
+                db.open(dbFile.getAbsolutePath());
+                assertEquals(0, LasSourcesTable.getLasSources(db).size());
+                assertEquals(0, db.getCount(LasCellsTable.TABLENAME));
+            }
+
+            // the next run loads the file again
+            writer = createWriter(folder, dbFile);
+            writer.pm = new DummyProgressMonitor();
+            writer.process();
+
+            try (ASpatialDb db = new GTSpatialiteThreadsafeDb()) {
+                db.open(dbFile.getAbsolutePath());
+                List<LasSource> lasSources = LasSourcesTable.getLasSources(db);
+                assertEquals(1, lasSources.size());
+                assertEquals("test", lasSources.get(0).name);
+                List<LasCell> cells = LasCellsTable.getLasCellsBySource(db, lasSources.get(0).id, false, false, false, false,
+                        false);
+                assertEquals(cells.size(), db.getCount(LasCellsTable.TABLENAME));
+                long points = 0;
+                for( LasCell cell : cells ) {
+                    points += cell.pointsCount;
+                }
+                assertEquals(1065, points);
+            }
+        } finally {
+            FileUtilities.deleteFileOrDir(folder);
+        }
+    }
+
+    private SpatialiteLasWriter createWriter( File folder, File dbFile ) {
+        SpatialiteLasWriter writer = new SpatialiteLasWriter();
+        writer.inFolder = folder.getAbsolutePath();
+        writer.inSpatialite = dbFile.getAbsolutePath();
+        writer.pCellsize = 5;
+        writer.pLevels = 1;
+        writer.pThreads = 1;
+        writer.pBatchSize = 1;
+        writer.pCommitInterval = 1;
+        return writer;
+    }
+
+    /**
+     * Cancels the run after the first column of cells has been written.
+     */
+    private static class CancelingMonitor extends DummyProgressMonitor {
+        private boolean writing = false;
+        private int writtenColumns = 0;
+
+        public void beginTask( String name, int totalWork ) {
+            writing = name.startsWith("Write las data");
+        }
+
+        public void worked( int work ) {
+            if (writing) {
+                writtenColumns += work;
+            }
+        }
+
+        public boolean isCanceled() {
+            return writtenColumns > 0;
+        }
+    }
+}
@@ -93,6 +93,55 @@ public class TestTimeSeriesIteratorReader extends HMTestCase {
         }
 
     }
+    public void testStreamingReader() throws Exception {
+        URL dataUrl = this.getClass().getClassLoader().getResource("csvtest2.csv");
+        String path = new File(dataUrl.toURI()).getAbsolutePath();
+
+        for( int pNum = 1; pNum <= 3; pNum++ ) {
+            OmsTimeSeriesIteratorReader reader = new OmsTimeSeriesIteratorReader();
+            reader.file = path;
+            reader.pNum = pNum;
+            reader.pAggregation = 1;
+            reader.tStart = "1997-01-01 00:00";
+            reader.tTimestep = 1440 * pNum;
+            OmsTimeSeriesIteratorReader streamReader = new OmsTimeSeriesIteratorReader();
+            streamReader.file = path;
+            streamReader.pNum = pNum;
+            streamReader.pAggregation = 1;
+            streamReader.tStart = "1997-01-01 00:00";
+            streamReader.tTimestep = 1440 * pNum;
+            streamReader.doStream = true;
+            try {
+                reader.initProcess();
+                streamReader.initProcess();
+                HashMap<Integer, double[]> streamData = null;
+                while( reader.doProcess ) {
+                    assertTrue(streamReader.doProcess);
+                    reader.nextRecord();
+                    streamReader.nextRecord();
+                    assertEquals(reader.tCurrent, streamReader.tCurrent);
+                    if (streamData != null) {
+                        // the same map is reused
+                        assertSame(streamData, streamReader.outData);
+                    }
+                    streamData = streamReader.outData;
+                    assertEquals(reader.outData.size(), streamData.size());
+                    for( Integer id : reader.outData.keySet() ) {
+                        double[] expected = reader.outData.get(id);
+                        double[] values = streamData.get(id);
+                        for( int i = 0; i < expected.length; i++ ) {
+                            assertEquals(expected[i], values[i], DELTA);
+                        }
+                    }
+                }
+                assertFalse(streamReader.doProcess);
+            } finally {
+                reader.close();
+                streamReader.close();
+            }
+        }
+    }
+
     public static void main( String[] args ) throws Exception {
         new TestTimeSeriesIteratorReader().testId2ValueReader2();
     }
@@ -0,0 +1,106 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules;
+
+import java.util.List;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.jgrasstools.gears.libs.modules.Variables;
+import org.jgrasstools.gears.libs.monitor.DummyProgressMonitor;
+import org.jgrasstools.gears.modules.v.vectoroverlayoperators.OmsVectorOverlayOperators;
+import org.jgrasstools.gears.utils.HMTestCase;
+import org.jgrasstools.gears.utils.features.FeatureUtilities;
+import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Test {@link OmsVectorOverlayOperators}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestVectorOverlayOperators extends HMTestCase {
+
+    public void testIndexedOverlay() throws Exception {
+        SimpleFeatureCollection squares = createSquares("left", new Envelope(0, 10, 0, 10), "right", new Envelope(10, 20, 0,
+                10));
+        SimpleFeatureCollection middle = createSquares("middle", new Envelope(5, 15, 0, 10));
+
+        List<SimpleFeature> intersection = overlay(squares, middle, Variables.INTERSECTION);
+        assertEquals(2, intersection.size());
+        for( SimpleFeature feature : intersection ) {
+            assertEquals(50.0, ((Geometry) feature.getDefaultGeometry()).getArea(), DELTA);
+            assertEquals("middle", feature.getAttribute("name_2"));
+        }
+        assertEquals("left", intersection.get(0).getAttribute("name"));
+        assertEquals("right", intersection.get(1).getAttribute("name"));
+
+        List<SimpleFeature> difference = overlay(squares, middle, Variables.DIFFERENCE);
+        assertEquals(2, difference.size());
+        for( SimpleFeature feature : difference ) {
+            assertEquals(50.0, ((Geometry) feature.getDefaultGeometry()).getArea(), DELTA);
+            assertNull(feature.getAttribute("name_2"));
+        }
+
+        List<SimpleFeature> union = overlay(squares, middle, Variables.UNION);
+        assertEquals(4, union.size());
+        double area = 0;
+        for( SimpleFeature feature : union ) {
+            area += ((Geometry) feature.getDefaultGeometry()).getArea();
+        }
+        assertEquals(200.0, area, DELTA);
+    }
+
+    private List<SimpleFeature> overlay( SimpleFeatureCollection map1, SimpleFeatureCollection map2, String type )
+            throws Exception {
+        OmsVectorOverlayOperators overlay = new OmsVectorOverlayOperators();
+        overlay.pm = new DummyProgressMonitor();
+        overlay.inMap1 = map1;
+        overlay.inMap2 = map2;
+        overlay.pType = type;
+        overlay.doIndexed = true;
+        overlay.process();
+        return FeatureUtilities.featureCollectionToList(overlay.outMap);
+    }
+
+    private SimpleFeatureCollection createSquares( Object... namesAndEnvelopes ) {
+        SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
+        b.setName("test");
+        b.setCRS(DefaultGeographicCRS.WGS84);
+        b.add("the_geom", Polygon.class);
+        b.add("name", String.class);
+        SimpleFeatureType type = b.buildFeatureType();
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+
+        DefaultFeatureCollection collection = new DefaultFeatureCollection();
+        for( int i = 0; i < namesAndEnvelopes.length; i = i + 2 ) {
+            Geometry square = GeometryUtilities.gf().toGeometry((Envelope) namesAndEnvelopes[i + 1]);
+            builder.addAll(new Object[]{square, namesAndEnvelopes[i]});
+            collection.add(builder.buildFeature(type.getTypeName() + "." + i));
+        }
+        return collection;
+    }
+}
@@ -56,11 +56,20 @@ public class TestZonalStats extends HMTestCase {
 
     @SuppressWarnings("nls")
     public void testZonalStats() throws Exception {
+        checkLeftStats(false);
+    }
+
+    public void testZonalStatsOnePass() throws Exception {
+        checkLeftStats(true);
+    }
+
+    private void checkLeftStats( boolean doOnePass ) throws Exception {
         OmsZonalStats zs = new OmsZonalStats();
         zs.pm = new DummyProgressMonitor();
         zs.inRaster = flowCoverage;
         zs.inVector = testLeftFC;
         zs.pPercentageThres = 0;
+        zs.doOnePass = doOnePass;
         zs.process();
         SimpleFeatureCollection outVector = zs.outVector;
         List<SimpleFeature> testList = FeatureUtilities.featureCollectionToList(outVector);
@@ -27,9 +27,6 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSHYDRO_LICENSE;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.media.jai.iterator.RandomIter;
@@ -52,11 +49,13 @@ import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.geometry.DirectPosition2D;
 import org.jgrasstools.gears.io.las.core.LasRecord;
+import org.jgrasstools.gears.io.las.utils.LasPointsGridIndex;
 import org.jgrasstools.gears.io.las.utils.LasUtils;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.jgrasstools.gears.libs.modules.GridNode;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.gears.libs.modules.multiprocessing.ExecutionPlanner;
 import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
 import org.jgrasstools.gears.utils.RegionMap;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
@@ -129,6 +128,11 @@ public class OmsPointCloudMaximaFinder extends JGTModel {
     public static final String LABEL = JGTConstants.LESTO + "/vegetation";
     // VARS DOCS END
 
+    /**
+     * The minimum number of points processed by a single task.
+     */
+    private static final int CHUNK_SIZE = 1000;
+
     private AtomicInteger index = new AtomicInteger();
 
     @Execute
@@ -177,6 +181,13 @@ public class OmsPointCloudMaximaFinder extends JGTModel {
 
     }
 
+    /**
+     * Mark the local maxima of a set of points.
+     * 
+     * <p>The neighbours of every point are searched through a {@link LasPointsGridIndex}
+     * with cells as large as the maximum radius, so only the surrounding points are compared.
+     * The points are processed in chunks in parallel.</p>
+     */
     public static void doProcess( final List<LasRecord> pointsInTile, final double pMaxRadius, final boolean doDynamicRadius,
             final DsmDtmDiffHelper helper, final DefaultFeatureCollection outTopsFC, final SimpleFeatureBuilder lasBuilder,
             final AtomicInteger index, final IJGTProgressMonitor pm ) throws Exception {
@@ -186,87 +197,74 @@ public class OmsPointCloudMaximaFinder extends JGTModel {
          * - 0 = non maxima
          */
         final GeometryFactory gf = new GeometryFactory();
-        pm.beginTask("Mark local maxima...", pointsInTile.size());
-        ExecutorService fixedThreadPool = Executors.newFixedThreadPool(getDefaultThreadsNum());
-        for( final LasRecord currentDot : pointsInTile ) {
-            Runnable runner = new Runnable(){
-                public void run() {
-                    try {
-                        // check if it is a local maxima
-                        boolean isLocalMaxima = true;
-                        for( LasRecord tmpDot : pointsInTile ) {
-                            double distance = LasUtils.distance(currentDot, tmpDot);
-                            double maxRadius = pMaxRadius;
-                            if (doDynamicRadius) {
-                                // use Popescu lowered to 70% (Popescu & Kini 2004 for mixed pines
-                                // and
-                                // deciduous trees)
-                                maxRadius = (2.51503 + 0.00901 * pow(currentDot.groundElevation, 2.0)) / 2.0 * 0.7;
-                                if (maxRadius > pMaxRadius) {
-                                    maxRadius = pMaxRadius;
-                                }
-                            }
-                            if (distance > maxRadius) {
-                                continue;
-                            }
-                            if (tmpDot.groundElevation > currentDot.groundElevation) {
-                                // not local maxima
-                                isLocalMaxima = false;
-                                break;
-                            }
+        final int size = pointsInTile.size();
+        pm.beginTask("Mark local maxima...", size);
+        // no point uses a radius larger than the maximum one
+        final LasPointsGridIndex gridIndex = new LasPointsGridIndex(pointsInTile, pMaxRadius);
+
+        int chunkSize = Math.max(CHUNK_SIZE, size / (getDefaultThreadsNum() * 4));
+        ExecutionPlanner planner = ExecutionPlanner.createDefaultPlanner();
+        planner.setNumberOfTasks((size + chunkSize - 1) / chunkSize);
+        for( int from = 0; from < size; from += chunkSize ) {
+            final int _from = from;
+            final int _to = Math.min(from + chunkSize, size);
+            planner.submit(() -> {
+                for( int i = _from; i < _to; i++ ) {
+                    LasRecord currentDot = pointsInTile.get(i);
+                    double maxRadius = pMaxRadius;
+                    if (doDynamicRadius) {
+                        // use Popescu lowered to 70% (Popescu & Kini 2004 for mixed pines
+                        // and
+                        // deciduous trees)
+                        maxRadius = (2.51503 + 0.00901 * pow(currentDot.groundElevation, 2.0)) / 2.0 * 0.7;
+                        if (maxRadius > pMaxRadius) {
+                            maxRadius = pMaxRadius;
                         }
-                        // mark it
-                        if (isLocalMaxima) {
-                            if (helper != null) {
-                                // check if it is some border or noise
-                                GridCoordinates2D gridCoord = helper.gridGeometry.worldToGrid(new DirectPosition2D(currentDot.x,
-                                        currentDot.y));
-                                GridNode node = new GridNode(helper.dsmDtmDiffIter, helper.cols, helper.rows, helper.xres,
-                                        helper.yres, gridCoord.x, gridCoord.y);
-                                double topElevation = node.elevation;
-                                if (!node.isValid() || node.touchesBound()) {
-                                    isLocalMaxima = false;
-                                } else {
-                                    List<GridNode> validSurroundingNodes = node.getValidSurroundingNodes();
-                                    for( GridNode tmpNode : validSurroundingNodes ) {
-                                        double tmpElevation = tmpNode.elevation;
-                                        if (abs(topElevation - tmpElevation) > helper.pElevDiffThres) {
-                                            isLocalMaxima = false;
-                                        }
+                    }
+                    // check if it is a local maxima, stopping at the first higher point
+                    boolean isLocalMaxima = gridIndex.visitInRadius(currentDot.x, currentDot.y, maxRadius,
+                            ( tmpDot, distance ) -> !(tmpDot.groundElevation > currentDot.groundElevation));
+                    // mark it
+                    if (isLocalMaxima) {
+                        if (helper != null) {
+                            // check if it is some border or noise
+                            GridCoordinates2D gridCoord = helper.gridGeometry
+                                    .worldToGrid(new DirectPosition2D(currentDot.x, currentDot.y));
+                            GridNode node = new GridNode(helper.dsmDtmDiffIter, helper.cols, helper.rows, helper.xres,
+                                    helper.yres, gridCoord.x, gridCoord.y);
+                            double topElevation = node.elevation;
+                            if (!node.isValid() || node.touchesBound()) {
+                                isLocalMaxima = false;
+                            } else {
+                                List<GridNode> validSurroundingNodes = node.getValidSurroundingNodes();
+                                for( GridNode tmpNode : validSurroundingNodes ) {
+                                    double tmpElevation = tmpNode.elevation;
+                                    if (abs(topElevation - tmpElevation) > helper.pElevDiffThres) {
+                                        isLocalMaxima = false;
                                     }
                                 }
                             }
-                            if (isLocalMaxima) {
-                                synchronized (lasBuilder) {
-                                    final Point point = gf.createPoint(new Coordinate(currentDot.x, currentDot.y));
-                                    double groundElevation = currentDot.groundElevation;
-                                    // round to meter with 1 decimal
-                                    groundElevation = ((int) round(groundElevation * 10)) / 10.0;
-                                    final Object[] values = new Object[]{point, index.getAndIncrement(), groundElevation,
-                                            currentDot.intensity, currentDot.classification, currentDot.returnNumber,
-                                            currentDot.numberOfReturns};
-                                    lasBuilder.addAll(values);
-                                    final SimpleFeature feature = lasBuilder.buildFeature(null);
-                                    outTopsFC.add(feature);
-                                }
+                        }
+                        if (isLocalMaxima) {
+                            synchronized (lasBuilder) {
+                                final Point point = gf.createPoint(new Coordinate(currentDot.x, currentDot.y));
+                                double groundElevation = currentDot.groundElevation;
+                                // round to meter with 1 decimal
+                                groundElevation = ((int) round(groundElevation * 10)) / 10.0;
+                                final Object[] values = new Object[]{point, index.getAndIncrement(), groundElevation,
+                                        currentDot.intensity, currentDot.classification, currentDot.returnNumber,
+                                        currentDot.numberOfReturns};
+                                lasBuilder.addAll(values);
+                                final SimpleFeature feature = lasBuilder.buildFeature(null);
+                                outTopsFC.add(feature);
                             }
                         }
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    } finally {
-                        pm.worked(1);
                     }
                 }
-            };
-            fixedThreadPool.execute(runner);
-        }
-        try {
-            fixedThreadPool.shutdown();
-            fixedThreadPool.awaitTermination(30, TimeUnit.DAYS);
-            fixedThreadPool.shutdownNow();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+                pm.worked(_to - _from);
+            });
         }
+        planner.join();
         pm.done();
 
     }
@@ -0,0 +1,111 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.modules;
+
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_AUTHORCONTACTS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_AUTHORNAMES;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_KEYWORDS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_LABEL;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_LICENSE;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_NAME;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_STATUS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_inElev_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_outFlow_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_outNet_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_outPit_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_outTca_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_pEpsilon_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSDRAINAGEPIPELINE_pThres_DESCRIPTION;
+import oms3.annotations.Author;
+import oms3.annotations.Description;
+import oms3.annotations.Execute;
+import oms3.annotations.In;
+import oms3.annotations.Keywords;
+import oms3.annotations.Label;
+import oms3.annotations.License;
+import oms3.annotations.Name;
+import oms3.annotations.Status;
+import oms3.annotations.UI;
+
+import org.jgrasstools.gears.libs.modules.JGTConstants;
+import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.hortonmachine.modules.network.drainagepipeline.OmsDrainagePipeline;
+
+@Description(OMSDRAINAGEPIPELINE_DESCRIPTION)
+@Author(name = OMSDRAINAGEPIPELINE_AUTHORNAMES, contact = OMSDRAINAGEPIPELINE_AUTHORCONTACTS)
+@Keywords(OMSDRAINAGEPIPELINE_KEYWORDS)
+@Label(OMSDRAINAGEPIPELINE_LABEL)
+@Name("_" + OMSDRAINAGEPIPELINE_NAME)
+@Status(OMSDRAINAGEPIPELINE_STATUS)
+@License(OMSDRAINAGEPIPELINE_LICENSE)
+public class DrainagePipeline extends JGTModel {
+    @Description(OMSDRAINAGEPIPELINE_inElev_DESCRIPTION)
+    @UI(JGTConstants.FILEIN_UI_HINT)
+    @In
+    public String inElev;
+
+    @Description(OMSDRAINAGEPIPELINE_pEpsilon_DESCRIPTION)
+    @In
+    public double pEpsilon = 0.0;
+
+    @Description(OMSDRAINAGEPIPELINE_pThres_DESCRIPTION)
+    @In
+    public double pThres = 0;
+
+    @Description(OMSDRAINAGEPIPELINE_outPit_DESCRIPTION)
+    @UI(JGTConstants.FILEOUT_UI_HINT)
+    @In
+    public String outPit = null;
+
+    @Description(OMSDRAINAGEPIPELINE_outFlow_DESCRIPTION)
+    @UI(JGTConstants.FILEOUT_UI_HINT)
+    @In
+    public String outFlow = null;
+
+    @Description(OMSDRAINAGEPIPELINE_outTca_DESCRIPTION)
+    @UI(JGTConstants.FILEOUT_UI_HINT)
+    @In
+    public String outTca = null;
+
+    @Description(OMSDRAINAGEPIPELINE_outNet_DESCRIPTION)
+    @UI(JGTConstants.FILEOUT_UI_HINT)
+    @In
+    public String outNet = null;
+
+    @Execute
+    public void process() throws Exception {
+        OmsDrainagePipeline pipeline = new OmsDrainagePipeline();
+        pipeline.inElev = getRaster(inElev);
+        pipeline.pEpsilon = pEpsilon;
+        pipeline.pThres = pThres;
+        // only the maps that are written are produced
+        pipeline.doPit = outPit != null;
+        pipeline.doFlow = outFlow != null;
+        pipeline.doTca = outTca != null;
+        pipeline.doNet = outNet != null;
+        pipeline.pm = pm;
+        pipeline.doProcess = doProcess;
+        pipeline.doReset = doReset;
+        pipeline.process();
+        dumpRaster(pipeline.outPit, outPit);
+        dumpRaster(pipeline.outFlow, outFlow);
+        dumpRaster(pipeline.outTca, outTca);
+        dumpRaster(pipeline.outNet, outNet);
+    }
+}
@@ -26,6 +26,7 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSENERGYINDEXCA
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSENERGYINDEXCALCULATOR_LICENSE;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSENERGYINDEXCALCULATOR_NAME;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSENERGYINDEXCALCULATOR_STATUS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSENERGYINDEXCALCULATOR_doHorizons_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSENERGYINDEXCALCULATOR_inAspect_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSENERGYINDEXCALCULATOR_inBasins_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSENERGYINDEXCALCULATOR_inCurvatures_DESCRIPTION;
@@ -107,6 +108,10 @@ public class EnergyIndexCalculator extends JGTModel {
     @In
     public double pDt = -1;
 
+    @Description(OMSENERGYINDEXCALCULATOR_doHorizons_DESCRIPTION)
+    @In
+    public boolean doHorizons = false;
+
     @Description(OMSENERGYINDEXCALCULATOR_outAltimetry_DESCRIPTION)
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
@@ -134,6 +139,7 @@ public class EnergyIndexCalculator extends JGTModel {
         energyindexcalculator.pEs = pEs;
         energyindexcalculator.pEi = pEi;
         energyindexcalculator.pDt = pDt;
+        energyindexcalculator.doHorizons = doHorizons;
         energyindexcalculator.pm = pm;
         energyindexcalculator.process();
         List<EIAltimetry> outAltimetryObj = energyindexcalculator.outAltimetry;
@@ -80,6 +80,7 @@ public class Mapcalc extends OmsMapcalc {
 
         mapcalc.inRasters = coverages;
         mapcalc.pFunction = pFunction;
+        mapcalc.doParallel = doParallel;
         mapcalc.pm = pm;
         mapcalc.process();
         dumpRaster(mapcalc.outRaster, outRaster);
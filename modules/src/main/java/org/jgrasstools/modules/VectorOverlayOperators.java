@@ -61,6 +61,10 @@ public class VectorOverlayOperators extends JGTModel {
     @In
     public String pType = INTERSECTION;
 
+    @Description(OMSVECTOROVERLAYOPERATORS_doIndexed_DESCRIPTION)
+    @In
+    public boolean doIndexed = false;
+
     @Description(OMSVECTOROVERLAYOPERATORS_outMap_DESCRIPTION)
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
@@ -72,6 +76,7 @@ public class VectorOverlayOperators extends JGTModel {
         vectoroverlayoperators.inMap1 = getVector(inMap1);
         vectoroverlayoperators.inMap2 = getVector(inMap2);
         vectoroverlayoperators.pType = pType;
+        vectoroverlayoperators.doIndexed = doIndexed;
         vectoroverlayoperators.pm = pm;
         vectoroverlayoperators.doProcess = doProcess;
         vectoroverlayoperators.doReset = doReset;
@@ -0,0 +1,281 @@
+package ngmf.util.cosu.luca;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Objective function evaluation on a pool of model instances.
+ *
+ * Every instance runs one parameter set at a time, so up to one parameter set
+ * per instance is evaluated concurrently. Optionally the objective function
+ * values are cached by parameter set, a parameter set that was already
+ * evaluated is not run again. The number of evaluations per second and the
+ * best objective function value over time are kept for reporting.
+ *
+ * @author od
+ */
+public class Evaluator {
+
+    /**
+     * A model instance with its own parameter set, output folder and outputs.
+     */
+    public interface Instance {
+
+        /**
+         * Runs the model with the given parameter set.
+         *
+         * @param paramValues the values of the calibrated parameter
+         * @return the objective function value
+         * @throws Exception
+         */
+        double evaluate(double[] paramValues) throws Exception;
+    }
+
+    /* parameter set as cache key */
+    static class Key {
+
+        final double[] values;
+        final int hash;
+
+        Key(double[] values) {
+            this.values = values.clone();
+            hash = Arrays.hashCode(this.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && Arrays.equals(values, ((Key) obj).values);
+        }
+    }
+    //
+    final BlockingQueue<Instance> idle;
+    final int threads;
+    final ExecutorService executor;
+    final Map<Key, Double> memo;
+    final boolean maximize;
+    //
+    final long start = System.currentTimeMillis();
+    final AtomicInteger evaluations = new AtomicInteger();
+    final AtomicInteger runs = new AtomicInteger();
+    final List<double[]> bestHistory = new ArrayList<double[]>();
+    double best = Double.NaN;
+    PrintStream out = System.out;
+
+    /**
+     * Creates an evaluator.
+     *
+     * @param instances the model instances, one per thread.
+     * @param memo true if objective function values should be cached by parameter set
+     * @param maximize true if the objective function is maximized
+     */
+    public Evaluator(List<? extends Instance> instances, boolean memo, boolean maximize) {
+        if (instances.isEmpty()) {
+            throw new IllegalArgumentException("No model instances.");
+        }
+        threads = instances.size();
+        idle = new ArrayBlockingQueue<Instance>(threads, false, instances);
+        this.memo = memo ? new ConcurrentHashMap<Key, Double>() : null;
+        this.maximize = maximize;
+        if (threads > 1) {
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+                final AtomicInteger n = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "luca-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        } else {
+            executor = null;
+        }
+    }
+
+    public void setOut(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * @return the number of parameter sets evaluated concurrently.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Evaluates a parameter set, waits for a free model instance.
+     *
+     * @param paramValues the parameter set, it is not kept.
+     * @return the objective function value
+     * @throws Exception
+     */
+    public double evaluate(double[] paramValues) throws Exception {
+        evaluations.incrementAndGet();
+        Key key = null;
+        if (memo != null) {
+            key = new Key(paramValues);
+            Double of = memo.get(key);
+            if (of != null) {
+                return of;
+            }
+        }
+        Instance instance = idle.take();
+        double of;
+        try {
+            of = instance.evaluate(paramValues.clone());
+        } finally {
+            idle.put(instance);
+        }
+        runs.incrementAndGet();
+        if (key != null) {
+            memo.put(key, of);
+        }
+        update(of);
+        return of;
+    }
+
+    /**
+     * Evaluates parameter sets concurrently.
+     *
+     * @param points the parameter sets
+     * @return the objective function values, in the order of the parameter sets
+     * @throws Exception
+     */
+    public double[] evaluate(double[][] points) throws Exception {
+        List<Callable<Double>> tasks = new ArrayList<Callable<Double>>(points.length);
+        for (final double[] point : points) {
+            tasks.add(new Callable<Double>() {
+
+                @Override
+                public Double call() throws Exception {
+                    return evaluate(point);
+                }
+            });
+        }
+        List<Double> r = invokeAll(tasks);
+        double[] of = new double[r.size()];
+        for (int i = 0; i < of.length; i++) {
+            of[i] = r.get(i);
+        }
+        return of;
+    }
+
+    /**
+     * Runs tasks on the threads of this evaluator, the tasks may call
+     * {@link #evaluate(double[])}. Without threads the tasks run in order on
+     * the calling thread.
+     *
+     * @param tasks the tasks
+     * @return the results, in the order of the tasks
+     * @throws Exception the first exception of a task
+     */
+    public <T> List<T> invokeAll(List<? extends Callable<T>> tasks) throws Exception {
+        List<T> results = new ArrayList<T>(tasks.size());
+        if (executor == null) {
+            for (Callable<T> task : tasks) {
+                results.add(task.call());
+            }
+            return results;
+        }
+        for (Future<T> f : executor.invokeAll(tasks)) {
+            try {
+                results.add(f.get());
+            } catch (ExecutionException E) {
+                Throwable cause = E.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+        }
+        return results;
+    }
+
+    private synchronized void update(double of) {
+        if (Double.isNaN(of)) {
+            return;
+        }
+        if (Double.isNaN(best) || (maximize ? of > best : of < best)) {
+            best = of;
+            bestHistory.add(new double[]{seconds(), evaluations.get(), of});
+        }
+    }
+
+    private double seconds() {
+        return (System.currentTimeMillis() - start) / 1000.0;
+    }
+
+    /**
+     * @return the number of evaluated parameter sets, including the cached ones.
+     */
+    public int getEvaluations() {
+        return evaluations.get();
+    }
+
+    /**
+     * @return the number of model runs.
+     */
+    public int getRuns() {
+        return runs.get();
+    }
+
+    /**
+     * @return every improvement of the best objective function value as
+     * {seconds, evaluations, objective function value}.
+     */
+    public synchronized List<double[]> getBestHistory() {
+        return new ArrayList<double[]>(bestHistory);
+    }
+
+    /**
+     * Prints the evaluation rate and the best objective function value.
+     *
+     * @param label the label of the line
+     */
+    public synchronized void report(String label) {
+        double sec = seconds();
+        int n = evaluations.get();
+        out.println(String.format(Locale.US, "\n %s: %d evaluations (%d model runs) in %.1f s, %.2f evaluations/s, best OF: %s",
+                label, n, runs.get(), sec, sec > 0 ? n / sec : 0.0, best));
+    }
+
+    /**
+     * Prints the best objective function value over time.
+     */
+    public synchronized void reportBestHistory() {
+        out.println(" Best OF over time [s, evaluations, OF]:");
+        for (double[] b : bestHistory) {
+            out.println(String.format(Locale.US, "   %10.1f %8d %s", b[0], (int) b[1], b[2]));
+        }
+    }
+
+    /**
+     * Stops the threads.
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
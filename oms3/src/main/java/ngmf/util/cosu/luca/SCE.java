@@ -2,8 +2,12 @@ package ngmf.util.cosu.luca;
 
 import java.io.PrintStream;
 import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 import oms3.dsl.cosu.Step;
 
 /**
@@ -47,14 +51,6 @@ public class SCE {
     double[] objFuncValueOfX;
     //COORDINATES OF A SINGLE POINT IN X
     double[] pointInX;
-    //COORDINATES OF POINTS IN A COMPLEX
-    double[][] pointsInComplex;
-    //FUNCTION VALUES OF CX(.,.)
-    double[] objFuncValuesOfComplex;
-    //COORDINATES OF POINTS IN THE CURRENT SIMPLEX
-    double[][] pointsInSimplex;
-    //FUNCTION VALUES OF S(.,.)
-    double[] objFuncValuesOfSimplex;
     //WORST POINT AT CURRENT SHUFFLING LOOP
     double[] worstPoint;
     //FUNCTION VALUE OF WORSTX(.)
@@ -63,8 +59,6 @@ public class SCE {
     double[] stdDevOfPopulation;
     //NORMALIZED GEOMETRIC MEAN OF PARAMETER RANGES
     double normalizedGeometricMean;
-    //INDICES LOCATING POSITION OF S(.,.) IN X(.,.)
-    int[] indicesOfSimplex;
     //BOUND ON ITH VARIABLE BEING OPTIMIZED
     double[] bound;
     //NUMBER OF COMPLEXES IN CURRENT POPULATION
@@ -84,9 +78,15 @@ public class SCE {
     int LOOP = 0;
     int IGS = 0;
     int icall = 0;
+    Complex sequential;
     //
 
     PrintStream out = System.out;
+    // evaluation of parallel complexes, null for the sequential search
+    Evaluator evaluator;
+    // seed of the random numbers, null for Math.random()
+    Long seed;
+    Random random;
 
     public SCE(ExecutionHandle executionHandle, Step stepData, Step.Data data)  {
 
@@ -120,16 +120,9 @@ public class SCE {
         pointsX = new double[initTotalNumOfPoints][numOfParams];
         objFuncValueOfX = new double[initTotalNumOfPoints];
         pointInX = new double[numOfParams];
-
-        pointsInComplex = new double[numOfPointsInComplex][numOfParams];
-        objFuncValuesOfComplex = new double[numOfPointsInComplex];
-
-        pointsInSimplex = new double[numOfPointsInSubComplex][numOfParams];
-        objFuncValuesOfSimplex = new double[numOfPointsInSubComplex];
         worstPoint = new double[numOfParams];
 
         stdDevOfPopulation = new double[numOfParams];
-        indicesOfSimplex = new int[numOfPointsInSubComplex];
         bound = new double[numOfParams];
         bestCriterion = new double[10];
         initialPoint = new double[numOfParams];
@@ -139,6 +132,21 @@ public class SCE {
         this.out = out;
     }
 
+    /**
+     * Evaluates the initial population as a batch and evolves the complexes
+     * of a shuffling loop concurrently. Every complex gets a fixed share of the
+     * model executions left and its own random numbers, so that with a seed the
+     * search is repeatable, whatever the number of threads of the evaluator.
+     *
+     * @param evaluator the evaluator of the parameter sets
+     * @param seed the seed of the random numbers, null for a random seed
+     */
+    public void setEvaluator(Evaluator evaluator, Long seed) {
+        this.evaluator = evaluator;
+        this.seed = seed;
+        random = seed == null ? null : new Random(seed);
+    }
+
     public void run() throws Exception {
         currentNumOfComplexes = initNumOfComplexes;
         totalNumOfPoints = initTotalNumOfPoints;
@@ -174,7 +182,7 @@ public class SCE {
         } else {
 //            out.println("Initial point won't be included");
             for (int j = 0; j < numOfParams; j++) {
-                pointsX[0][j] = lowerBound[j] + bound[j] * Math.random();
+                pointsX[0][j] = lowerBound[j] + bound[j] * random();
                 pointInX[j] = pointsX[0][j];
             }
             // write pointInX in the 'newPARAMS' file, executes runMMS and SRobjfun()
@@ -185,19 +193,23 @@ public class SCE {
         data.setObjFuncValueOfBestPoint(objFuncValueOfX[0]);
         int outputType = 1;
         if (icall < maxNumOfTrials) {
-            for (int i = 1; i < totalNumOfPoints; i++) {
-                for (int j = 0; j < numOfParams; j++) {
-                    pointsX[i][j] = lowerBound[j] + bound[j] * Math.random();
-                    pointInX[j] = pointsX[i][j];
-                }
+            if (evaluator != null) {
+                generatePopulation();
+            } else {
+                for (int i = 1; i < totalNumOfPoints; i++) {
+                    for (int j = 0; j < numOfParams; j++) {
+                        pointsX[i][j] = lowerBound[j] + bound[j] * Math.random();
+                        pointInX[j] = pointsX[i][j];
+                    }
 
-                objFuncValueOfX[i] = execute(pointInX);
-                //ICALL++;
-                if (icall >= maxNumOfTrials) {
-                    totalNumOfPoints = i + 1;
-                    pointsX = copy(pointsX, totalNumOfPoints);
-                    objFuncValueOfX = copy(objFuncValueOfX, totalNumOfPoints);
-                    break;
+                    objFuncValueOfX[i] = execute(pointInX);
+                    //ICALL++;
+                    if (icall >= maxNumOfTrials) {
+                        totalNumOfPoints = i + 1;
+                        pointsX = copy(pointsX, totalNumOfPoints);
+                        objFuncValueOfX = copy(objFuncValueOfX, totalNumOfPoints);
+                        break;
+                    }
                 }
             }
 //            out.println("size of pointsX = " + totalNumOfPoints + " (max size is " + pointsX.length + ")" +
@@ -275,81 +287,53 @@ public class SCE {
         out.println(" Final OF value: " + data.getObjFuncValueOfBestPoint());
     }
 
+    /* generates the points 1 to totalNumOfPoints - 1 and evaluates them as a batch,
+     * up to the maximum number of trials. */
+    private void generatePopulation() throws Exception {
+        int n = Math.min(totalNumOfPoints - 1, maxNumOfTrials - icall);
+        double[][] points = new double[n][];
+        for (int i = 1; i <= n; i++) {
+            for (int j = 0; j < numOfParams; j++) {
+                pointsX[i][j] = lowerBound[j] + bound[j] * random();
+            }
+            points[i - 1] = pointsX[i];
+        }
+        double[] of = evaluator.evaluate(points);
+        for (int i = 1; i <= n; i++) {
+            objFuncValueOfX[i] = of[i - 1];
+            icall++;
+            print(of[i - 1]);
+        }
+        if (icall >= maxNumOfTrials) {
+            totalNumOfPoints = n + 1;
+            pointsX = copy(pointsX, totalNumOfPoints);
+            objFuncValueOfX = copy(objFuncValueOfX, totalNumOfPoints);
+        }
+        evaluator.report("Initial population");
+    }
+
     //  MAIN LOOP
     private int mainLoop() throws Exception {
         out.println(" SCE shuffling ....");
         int outputType = 1; // different output will be displayed depending on the value of ouputTYpe
+        // the single complex of the sequential search, its random numbers go on across complexes
+        sequential = new Complex();
         while (true) {
             NLOOP++;
-            for (IGS = 0; IGS < currentNumOfComplexes; IGS++) {
-                for (int k1 = 0; k1 < numOfPointsInComplex; k1++) {
-                    int k2 = k1 * currentNumOfComplexes + IGS;
-                    for (int j = 0; j < numOfParams; j++) {
-                        pointsInComplex[k1][j] = pointsX[k2][j];
-                    }
-                    objFuncValuesOfComplex[k1] = objFuncValueOfX[k2];
-                }
-                for (LOOP = 0; LOOP < numOfEvolutionSteps; LOOP++) {
-                    if (numOfPointsInSubComplex == numOfPointsInComplex) {
-                        for (int k = 0; k < numOfPointsInSubComplex; k++) {
-                            indicesOfSimplex[k] = k;
-                        }
-                    } else {
-                        //  k = 0 instead of k = 1 because the line above (indicesOfSimplex[0] = ....)
-                        // is removed.
-                        for (int k = 0; k < numOfPointsInSubComplex; k++) {
-                            boolean again = true;
-                            int lpos = -1;
-                            while (again) {
-                                again = false;
-                                lpos = (int) (numOfPointsInComplex + 0.5 -
-                                        Math.sqrt(Math.pow((numOfPointsInComplex + 0.5), 2) -
-                                        numOfPointsInComplex * (numOfPointsInComplex + 1) * Math.random()));
-                                // check if any element from indicesOfSimplex[0] to indicesOfSimplex[k-1]
-                                // is equal to LPOS. If not, get out of the for loop, finish the while(AGAIN) loop,
-                                // and set LPOS as a value of indicesOfSimplex[k]
-                                for (int k1 = 0; k1 < k; k1++) {
-                                    if (lpos == indicesOfSimplex[k1]) {
-                                        again = true;
-                                        break;
-                                    }
-                                }
-                            }
-                            indicesOfSimplex[k] = lpos;
-                        }
-                        // sort the indiciesOfSimplex array in increasing order
-                        Arrays.sort(indicesOfSimplex);
-                    }
-
-                    for (int k = 0; k < numOfPointsInSubComplex; k++) {
-                        for (int j = 0; j < numOfParams; j++) {
-                            pointsInSimplex[k][j] = pointsInComplex[indicesOfSimplex[k]][j];
-                        }
-                        objFuncValuesOfSimplex[k] = objFuncValuesOfComplex[indicesOfSimplex[k]];
-                    }
-                    cce();
-                    for (int k = 0; k < numOfPointsInSubComplex; k++) {
-                        for (int j = 0; j < numOfParams; j++) {
-                            pointsInComplex[indicesOfSimplex[k]][j] = pointsInSimplex[k][j];
-                        }
-                        objFuncValuesOfComplex[indicesOfSimplex[k]] = objFuncValuesOfSimplex[k];
-                    }
-                    sort_duan(pointsInComplex, objFuncValuesOfComplex);
+            if (evaluator != null) {
+                evolveComplexes();
+            } else {
+                Complex complex = sequential;
+                for (IGS = 0; IGS < currentNumOfComplexes; IGS++) {
+                    complex.load(IGS);
+                    complex.evolve();
+                    LOOP = complex.loop;
+                    complex.store();
                     if (icall >= maxNumOfTrials) {
                         break;
                     }
-                } // end of loop with LOOP
-                for (int k1 = 0; k1 < numOfPointsInComplex; k1++) {
-                    int k2 = k1 * currentNumOfComplexes + IGS;
-                    for (int j = 0; j < numOfParams; j++) {
-                        pointsX[k2][j] = pointsInComplex[k1][j];
-                    }
-                    objFuncValueOfX[k2] = objFuncValuesOfComplex[k1];
-                }
-                if (icall >= maxNumOfTrials) {
-                    break;
-                }
-            } // end of for loop with IGS
+                } // end of for loop with IGS
+            }
 
             sort_duan(pointsX, objFuncValueOfX);
             // set the best point and its objective function value
@@ -360,6 +344,9 @@ public class SCE {
             objFuncValueOfWorstPoint = objFuncValueOfX[totalNumOfPoints - 1];
 
             parstt();
+            if (evaluator != null) {
+                evaluator.report("Shuffling loop " + NLOOP);
+            }
 //            double distribution = normdistForBestPoint();
 //            out.println("loop " + NLOOP + "  ICALL = " + icall);
 //            out.println("Number of complexes in a current population: " + currentNumOfComplexes);
@@ -417,10 +404,21 @@ public class SCE {
     //##  Other functions
     //########################################################################
     double execute(double[] array) throws Exception {
-        data.setParamValues(array);
-        executionHandle.execute(data);
-        icall++;
-        double of = stepData.calculateObjectiveFunctionValue(executionHandle);
+        double of;
+        if (evaluator != null) {
+            of = evaluator.evaluate(array);
+            icall++;
+        } else {
+            data.setParamValues(array);
+            executionHandle.execute(data);
+            icall++;
+            of = stepData.calculateObjectiveFunctionValue(executionHandle);
+        }
+        print(of);
+        return of;
+    }
+
+    void print(double of) {
          double distribution = normdistForBestPoint();
 //          out.println("loop " + NLOOP + "  ICALL = " + icall);
 //            out.println("Number of complexes in a current population: " + currentNumOfComplexes);
@@ -429,7 +427,42 @@ public class SCE {
 //            out.println("Normal Distribution of best point: " + distribution);
 
         out.print("\n    " + icall + ": " + of + " [" + data.getObjFuncValueOfBestPoint() + "/" + objFuncValueOfWorstPoint+"]" + " c:" + currentNumOfComplexes + " d:" + distribution);
-        return of;
+    }
+
+    /* uniform random number of the initial population */
+    double random() {
+        return random != null ? random.nextDouble() : Math.random();
+    }
+
+    /* evolves the complexes of a shuffling loop concurrently. Every complex gets
+     * its share of the trials left and its own random numbers. */
+    private void evolveComplexes() throws Exception {
+        int left = maxNumOfTrials - icall;
+        List<Complex> complexes = new ArrayList<Complex>();
+        List<Callable<Complex>> tasks = new ArrayList<Callable<Complex>>();
+        for (int igs = 0; igs < currentNumOfComplexes; igs++) {
+            final Complex complex = new Complex();
+            complex.load(igs);
+            complex.budget = left / currentNumOfComplexes + (igs < left % currentNumOfComplexes ? 1 : 0);
+            complex.random = seed == null ? new Random()
+                    : new Random(seed ^ (NLOOP * 0x9E3779B97F4A7C15L) ^ (igs * 0xC2B2AE3D27D4EB4FL));
+            complexes.add(complex);
+            tasks.add(new Callable<Complex>() {
+
+                @Override
+                public Complex call() throws Exception {
+                    complex.evolve();
+                    return complex;
+                }
+            });
+        }
+        evaluator.invokeAll(tasks);
+        for (Complex complex : complexes) {
+            complex.store();
+            icall += complex.calls;
+            IGS = complex.igs;
+            LOOP = complex.loop;
+        }
     }
 
     void sort_duan(double[][] x, double[] y) {
@@ -538,125 +571,247 @@ public class SCE {
         }
     }
 
-    void cce() throws Exception {
-        double[] worstPointSimplex = new double[numOfParams]; // WO(.)
-        double[] centroid = new double[numOfParams]; //CE(.)
-        double[] newPoint = new double[numOfParams]; //SNEW(.)
-        double[] vector = new double[numOfParams]; //STEP(.)
-        double worstObjFuncValue; //FW
+    /* A complex, with its simplex and random numbers. The sequential search uses
+     * one complex for all, a concurrent shuffling loop one complex each, with its
+     * own share of the model executions. */
+    class Complex {
+
+        //COORDINATES OF POINTS IN A COMPLEX
+        double[][] pointsInComplex = new double[numOfPointsInComplex][numOfParams];
+        //FUNCTION VALUES OF CX(.,.)
+        double[] objFuncValuesOfComplex = new double[numOfPointsInComplex];
+        //COORDINATES OF POINTS IN THE CURRENT SIMPLEX
+        double[][] pointsInSimplex = new double[numOfPointsInSubComplex][numOfParams];
+        //FUNCTION VALUES OF S(.,.)
+        double[] objFuncValuesOfSimplex = new double[numOfPointsInSubComplex];
+        //INDICES LOCATING POSITION OF S(.,.) IN X(.,.)
+        int[] indicesOfSimplex = new int[numOfPointsInSubComplex];
+        int igs;
+        int loop;
+        // random numbers, Math.random() if null
+        Random random;
+        // model executions done and allowed, concurrent complexes only
+        int calls;
+        int budget;
+
+        void load(int igs) {
+            this.igs = igs;
+            for (int k1 = 0; k1 < numOfPointsInComplex; k1++) {
+                int k2 = k1 * currentNumOfComplexes + igs;
+                for (int j = 0; j < numOfParams; j++) {
+                    pointsInComplex[k1][j] = pointsX[k2][j];
+                }
+                objFuncValuesOfComplex[k1] = objFuncValueOfX[k2];
+            }
+        }
 
-        for (int j = 0; j < numOfParams; j++) {
-            // pointsInSimplex[] is sorted based on the objective functions values,
-            // so the element in the last index is the worst point.
-            worstPointSimplex[j] = pointsInSimplex[numOfPointsInSubComplex - 1][j];
-            centroid[j] = 0;
-            // exclude the last point (worst point) in this loop
-            for (int i = 0; i < (numOfPointsInSubComplex - 1); i++) {
-                centroid[j] += pointsInSimplex[i][j];
-            }
-            centroid[j] = centroid[j] / ((double) (numOfPointsInSubComplex - 1));
-            vector[j] = centroid[j] - worstPointSimplex[j];
-        }
-        worstObjFuncValue = objFuncValuesOfSimplex[numOfPointsInSubComplex - 1];
-        for (int j = 0; j < numOfParams; j++) {
-            newPoint[j] = worstPointSimplex[j] + 2 * vector[j];
+        void store() {
+            for (int k1 = 0; k1 < numOfPointsInComplex; k1++) {
+                int k2 = k1 * currentNumOfComplexes + igs;
+                for (int j = 0; j < numOfParams; j++) {
+                    pointsX[k2][j] = pointsInComplex[k1][j];
+                }
+                objFuncValueOfX[k2] = objFuncValuesOfComplex[k1];
+            }
         }
-        boolean outOfBOUND = false;
-        for (int j = 0; j < numOfParams; j++) {
-            if ((newPoint[j] > upperBound[j]) || (newPoint[j] < lowerBound[j])) {
-                outOfBOUND = true;
-                break;
+
+        boolean exhausted() {
+            return (this == sequential) ? icall >= maxNumOfTrials : calls >= budget;
+        }
+
+        double random() {
+            return random != null ? random.nextDouble() : Math.random();
+        }
+
+        double evaluate(double[] point) throws Exception {
+            if (this == sequential) {
+                return execute(point);
+            }
+            double of = evaluator.evaluate(point);
+            calls++;
+            synchronized (out) {
+                out.print("\n    " + NLOOP + "/" + (igs + 1) + "/" + calls + ": " + of + " c:" + currentNumOfComplexes);
             }
+            return of;
         }
-        if (outOfBOUND) {
-            getNewPointAtRandom(newPoint);
+
+        void evolve() throws Exception {
+            loop = 0;
+            if (exhausted()) {
+                return;
+            }
+            for (loop = 0; loop < numOfEvolutionSteps; loop++) {
+                if (numOfPointsInSubComplex == numOfPointsInComplex) {
+                    for (int k = 0; k < numOfPointsInSubComplex; k++) {
+                        indicesOfSimplex[k] = k;
+                    }
+                } else {
+                    //  k = 0 instead of k = 1 because the line above (indicesOfSimplex[0] = ....)
+                    // is removed.
+                    for (int k = 0; k < numOfPointsInSubComplex; k++) {
+                        boolean again = true;
+                        int lpos = -1;
+                        while (again) {
+                            again = false;
+                            lpos = (int) (numOfPointsInComplex + 0.5 -
+                                    Math.sqrt(Math.pow((numOfPointsInComplex + 0.5), 2) -
+                                    numOfPointsInComplex * (numOfPointsInComplex + 1) * random()));
+                            // check if any element from indicesOfSimplex[0] to indicesOfSimplex[k-1]
+                            // is equal to LPOS. If not, get out of the for loop, finish the while(AGAIN) loop,
+                            // and set LPOS as a value of indicesOfSimplex[k]
+                            for (int k1 = 0; k1 < k; k1++) {
+                                if (lpos == indicesOfSimplex[k1]) {
+                                    again = true;
+                                    break;
+                                }
+                            }
+                        }
+                        indicesOfSimplex[k] = lpos;
+                    }
+                    // sort the indiciesOfSimplex array in increasing order
+                    Arrays.sort(indicesOfSimplex);
+                }
+
+                for (int k = 0; k < numOfPointsInSubComplex; k++) {
+                    for (int j = 0; j < numOfParams; j++) {
+                        pointsInSimplex[k][j] = pointsInComplex[indicesOfSimplex[k]][j];
+                    }
+                    objFuncValuesOfSimplex[k] = objFuncValuesOfComplex[indicesOfSimplex[k]];
+                }
+                cce();
+                for (int k = 0; k < numOfPointsInSubComplex; k++) {
+                    for (int j = 0; j < numOfParams; j++) {
+                        pointsInComplex[indicesOfSimplex[k]][j] = pointsInSimplex[k][j];
+                    }
+                    objFuncValuesOfComplex[indicesOfSimplex[k]] = objFuncValuesOfSimplex[k];
+                }
+                sort_duan(pointsInComplex, objFuncValuesOfComplex);
+                if (exhausted()) {
+                    break;
+                }
+            } // end of loop with LOOP
         }
-        double newObjFuncValue = execute(newPoint);
 
-        if ((stepData.maximizeObjectiveFunctionValue() && newObjFuncValue <= worstObjFuncValue) ||
-                (!stepData.maximizeObjectiveFunctionValue() && newObjFuncValue >= worstObjFuncValue)) {
-            if (icall >= maxNumOfTrials) {
-                return; //ICALL;
+        void cce() throws Exception {
+            double[] worstPointSimplex = new double[numOfParams]; // WO(.)
+            double[] centroid = new double[numOfParams]; //CE(.)
+            double[] newPoint = new double[numOfParams]; //SNEW(.)
+            double[] vector = new double[numOfParams]; //STEP(.)
+            double worstObjFuncValue; //FW
+
+            for (int j = 0; j < numOfParams; j++) {
+                // pointsInSimplex[] is sorted based on the objective functions values,
+                // so the element in the last index is the worst point.
+                worstPointSimplex[j] = pointsInSimplex[numOfPointsInSubComplex - 1][j];
+                centroid[j] = 0;
+                // exclude the last point (worst point) in this loop
+                for (int i = 0; i < (numOfPointsInSubComplex - 1); i++) {
+                    centroid[j] += pointsInSimplex[i][j];
+                }
+                centroid[j] = centroid[j] / ((double) (numOfPointsInSubComplex - 1));
+                vector[j] = centroid[j] - worstPointSimplex[j];
             }
+            worstObjFuncValue = objFuncValuesOfSimplex[numOfPointsInSubComplex - 1];
             for (int j = 0; j < numOfParams; j++) {
-                newPoint[j] = worstPointSimplex[j] + 0.5 * vector[j];
+                newPoint[j] = worstPointSimplex[j] + 2 * vector[j];
             }
-            newObjFuncValue = execute(newPoint);
-            if ((stepData.maximizeObjectiveFunctionValue() && newObjFuncValue < worstObjFuncValue) ||
-                    (!stepData.maximizeObjectiveFunctionValue() && newObjFuncValue > worstObjFuncValue)) {
-                if (icall >= maxNumOfTrials) {
-                    return;
+            boolean outOfBOUND = false;
+            for (int j = 0; j < numOfParams; j++) {
+                if ((newPoint[j] > upperBound[j]) || (newPoint[j] < lowerBound[j])) {
+                    outOfBOUND = true;
+                    break;
                 }
+            }
+            if (outOfBOUND) {
                 getNewPointAtRandom(newPoint);
-                newObjFuncValue = execute(newPoint);
+            }
+            double newObjFuncValue = evaluate(newPoint);
 
-            }// end of the 2nd if ((newObjFuncValue > worstObjFuncValue) ... )
-        } // end of the 1st if ((newObjFuncValue > worstObjFuncValue) ... )
+            if ((stepData.maximizeObjectiveFunctionValue() && newObjFuncValue <= worstObjFuncValue) ||
+                    (!stepData.maximizeObjectiveFunctionValue() && newObjFuncValue >= worstObjFuncValue)) {
+                if (exhausted()) {
+                    return; //ICALL;
+                }
+                for (int j = 0; j < numOfParams; j++) {
+                    newPoint[j] = worstPointSimplex[j] + 0.5 * vector[j];
+                }
+                newObjFuncValue = evaluate(newPoint);
+                if ((stepData.maximizeObjectiveFunctionValue() && newObjFuncValue < worstObjFuncValue) ||
+                        (!stepData.maximizeObjectiveFunctionValue() && newObjFuncValue > worstObjFuncValue)) {
+                    if (exhausted()) {
+                        return;
+                    }
+                    getNewPointAtRandom(newPoint);
+                    newObjFuncValue = evaluate(newPoint);
 
-        for (int j = 0; j < numOfParams; j++) {
-            pointsInSimplex[numOfPointsInSubComplex - 1][j] = newPoint[j];
+                }// end of the 2nd if ((newObjFuncValue > worstObjFuncValue) ... )
+            } // end of the 1st if ((newObjFuncValue > worstObjFuncValue) ... )
+
+            for (int j = 0; j < numOfParams; j++) {
+                pointsInSimplex[numOfPointsInSubComplex - 1][j] = newPoint[j];
+            }
+            objFuncValuesOfSimplex[numOfPointsInSubComplex - 1] = newObjFuncValue;
         }
-        objFuncValuesOfSimplex[numOfPointsInSubComplex - 1] = newObjFuncValue;
-    }
 
-    /* a new point is assigned to newPoint based on stdDevOfPopulation[],
-     *  gasdev(), bound[], and etc.*/
-    void getNewPointAtRandom(double[] newPoint) {
-        for (int j = 0; j < numOfParams; j++) {
-            int nnn = 0;
-            do {
-                double R = gasdev();
-                newPoint[j] = pointsInSimplex[0][j] + stdDevOfPopulation[j] * R * bound[j];
-                nnn++;
-                if (nnn == 1001) {
-                    out.println("SCE: getNewPointAtRandom(): Having hard time generating a new point in a feasible region");
-                }
-                if (nnn > 1000) {
-                    newPoint[j] = lowerBound[j] + Math.abs(R) * (0.5 * bound[j]);
-                    if (nnn % 100 == 1) {
-                        out.print("Attempt " + nnn + ": new point = " + newPoint[j] +
-                                ", lower bound = " + lowerBound[j] + ", upper bound = " + upperBound[j]);
+        /* a new point is assigned to newPoint based on stdDevOfPopulation[],
+         *  gasdev(), bound[], and etc.*/
+        void getNewPointAtRandom(double[] newPoint) {
+            for (int j = 0; j < numOfParams; j++) {
+                int nnn = 0;
+                do {
+                    double R = gasdev();
+                    newPoint[j] = pointsInSimplex[0][j] + stdDevOfPopulation[j] * R * bound[j];
+                    nnn++;
+                    if (nnn == 1001) {
+                        out.println("SCE: getNewPointAtRandom(): Having hard time generating a new point in a feasible region");
                     }
-                    if ((newPoint[j] > upperBound[j]) || (newPoint[j] < lowerBound[j])) {
-                        out.println(" ---> out of bound");
-                    } else {
-                        out.println(" ---> in bound!!");
+                    if (nnn > 1000) {
+                        newPoint[j] = lowerBound[j] + Math.abs(R) * (0.5 * bound[j]);
+                        if (nnn % 100 == 1) {
+                            out.print("Attempt " + nnn + ": new point = " + newPoint[j] +
+                                    ", lower bound = " + lowerBound[j] + ", upper bound = " + upperBound[j]);
+                        }
+                        if ((newPoint[j] > upperBound[j]) || (newPoint[j] < lowerBound[j])) {
+                            out.println(" ---> out of bound");
+                        } else {
+                            out.println(" ---> in bound!!");
+                        }
                     }
-                }
-            } while ((newPoint[j] > upperBound[j]) || (newPoint[j] < lowerBound[j]));
+                } while ((newPoint[j] > upperBound[j]) || (newPoint[j] < lowerBound[j]));
+            }
         }
-    }
-    //
-    boolean calculateGASDEV = true; // if true, gasdev() returns gasdevValue1
-    double gasdevValue1; // one of the two values generated in gasdev()
-    double gasdevValue2; // one of the two values generated in gasdev()
-
-    /* returns a normally distributed deviate with zero mean and unit variance,
-     *  using random number generator, as the source of uniform deviates.
-     */
-    double gasdev() {
-        double R, v1, v2;
-        if (calculateGASDEV) {
-            // if we don't have an extra deviate handy
-            do {
-                // pick two uniform numbers in the square extending from -1 to +1
-                // in each direction
-                v1 = 2 * Math.random() - 1;
-                v2 = 2 * Math.random() - 1;
-                // check if v1 and v2 are in the unit circle
-                R = v1 * v1 + v2 * v2;
-            } while (R >= 1); // if v1 and v2 are not in the unit circle
-
-            // make the Box-Muller transformation to get two normal deviates
-            double fac = Math.sqrt((-1) * ((2 * Math.log(R)) / R));
-            gasdevValue2 = v1 * fac; // one of the two normal deviates. gasdevValue2 is returned
-            // next time this function is called
-            gasdevValue1 = v2 * fac; // the other normal deviate, which will be returned at this time
-            calculateGASDEV = false;
-            return gasdevValue1;
-        } else {
-            calculateGASDEV = true;
-            return gasdevValue2;
+        //
+        boolean calculateGASDEV = true; // if true, gasdev() returns gasdevValue1
+        double gasdevValue1; // one of the two values generated in gasdev()
+        double gasdevValue2; // one of the two values generated in gasdev()
+
+        /* returns a normally distributed deviate with zero mean and unit variance,
+         *  using random number generator, as the source of uniform deviates.
+         */
+        double gasdev() {
+            double R, v1, v2;
+            if (calculateGASDEV) {
+                // if we don't have an extra deviate handy
+                do {
+                    // pick two uniform numbers in the square extending from -1 to +1
+                    // in each direction
+                    v1 = 2 * random() - 1;
+                    v2 = 2 * random() - 1;
+                    // check if v1 and v2 are in the unit circle
+                    R = v1 * v1 + v2 * v2;
+                } while (R >= 1); // if v1 and v2 are not in the unit circle
+
+                // make the Box-Muller transformation to get two normal deviates
+                double fac = Math.sqrt((-1) * ((2 * Math.log(R)) / R));
+                gasdevValue2 = v1 * fac; // one of the two normal deviates. gasdevValue2 is returned
+                // next time this function is called
+                gasdevValue1 = v2 * fac; // the other normal deviate, which will be returned at this time
+                calculateGASDEV = false;
+                return gasdevValue1;
+            } else {
+                calculateGASDEV = true;
+                return gasdevValue2;
+            }
         }
     }
 
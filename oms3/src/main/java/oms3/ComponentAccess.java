@@ -147,12 +147,28 @@ public class ComponentAccess {
     }
 
     final void exec() throws ComponentException {
+        exec(false);
+    }
+
+    /**
+     * Execute the component.
+     *
+     * @param scheduled true if the components producing the inputs already
+     *        ran, the inputs are read and the outputs are written without waiting
+     *        and notifying.
+     * @throws ComponentException
+     */
+    final void exec(boolean scheduled) throws ComponentException {
         try {
             ens.fireWait(this);
             // synchonized in()
             for (Access a : ins.values()) {     // wait for all inputs to arrive
                 if (a.getClass() == FieldAccess.class) {
-                    a.in();
+                    if (scheduled) {
+                        ((FieldAccess) a).in0();
+                    } else {
+                        a.in();
+                    }
                 }
             }
             // un synchonized in()
@@ -175,7 +191,11 @@ public class ComponentAccess {
             // synchronized out
             for (Access a : outs.values()) {    // notify for output.
                 if (a.getClass() == FieldAccess.class) {
-                    a.out();
+                    if (scheduled) {
+                        ((FieldAccess) a).out0();
+                    } else {
+                        a.out();
+                    }
                 }
             }
         } catch (InvocationTargetException ex) {
@@ -74,6 +74,24 @@ public  class Compound {
         Controller.reload();
     }
 
+    /** Sets how the components of this compound are executed.
+     *
+     * <ul>
+     * <li>'dataflow': every component runs on its own thread and waits for
+     * its inputs (default).</li>
+     * <li>'scheduled': the components run one after the other on the calling
+     * thread, in an order computed once from their connections.</li>
+     * <li>'parallel': as 'scheduled', components run on the thread pool as soon
+     * as all the components producing their inputs are done.</li>
+     * </ul>
+     * The default is set with the 'oms.exec' system property.
+     *
+     * @param mode the execution mode
+     */
+    public void setExecution(String mode) {
+        controller.setExecution(mode);
+    }
+
 
     /** Connects two internal components with respect to their fields.
      *
@@ -38,6 +38,14 @@ import oms3.util.Threads;
 class Controller {
 
     static boolean checkCircular = Boolean.getBoolean("oms.check.circular");
+    /* Execution: 'dataflow', 'scheduled' or 'parallel' */
+    static String defaultExecution = System.getProperty("oms.exec", "dataflow");
+    /* every component on its own thread, waiting for its inputs */
+    static final int DATAFLOW = 0;
+    /* static order on the calling thread */
+    static final int SCHEDULED = 1;
+    /* static order, components with all inputs available at the same time */
+    static final int PARALLEL = 2;
     //
     private static final Logger log = Logger.getLogger("oms3.sim");
     /** Execution event Notification */
@@ -50,12 +58,32 @@ class Controller {
     ComponentAccess ca;
     // optional skipping the integrity checking.
     Validator validator;
+    int execution;
+    Schedule schedule;
 
     Controller(Object compound) {
         if (checkCircular) {
             validator = new Validator();
         }
         ca = new ComponentAccess(compound, ens);
+        setExecution(defaultExecution);
+    }
+
+    /** Set the execution.
+     *
+     * @param mode 'dataflow', 'scheduled' or 'parallel'
+     */
+    void setExecution(String mode) {
+        if ("dataflow".equals(mode)) {
+            execution = DATAFLOW;
+        } else if ("scheduled".equals(mode)) {
+            execution = SCHEDULED;
+        } else if ("parallel".equals(mode)) {
+            execution = PARALLEL;
+        } else {
+            throw new ComponentException("Unknown execution '" + mode + "', use 'dataflow', 'scheduled' or 'parallel'.");
+        }
+        schedule = null;
     }
 
     ComponentAccess lookup(Object cmd) {
@@ -398,6 +426,42 @@ class Controller {
             dataRef.invalidate();
         }
 
+        if (execution != DATAFLOW) {
+            ens.fireStart(ca);
+            scheduledExec(comps);
+        } else {
+            dataflowExec(comps);
+        }
+
+        try {
+            ens.fireFinnish(ca);
+            // map the outputs.
+//            System.out.println("Comp " + ca.getComponent() + ": " + ca.outputs());
+            for (Access a : ca.outputs()) {
+                a.in();
+            }
+        } catch (Exception Ex) {
+            throw new ComponentException(Ex, ca.getComponent());
+        }
+    }
+
+    private void scheduledExec(Collection<ComponentAccess> comps) throws ComponentException {
+        if (schedule == null) {
+            schedule = new Schedule(comps);
+        }
+        try {
+            if (execution == PARALLEL) {
+                schedule.run(executor);
+            } else {
+                schedule.run();
+            }
+        } catch (ComponentException ce) {
+            ens.fireException(ce);
+            throw ce;
+        }
+    }
+
+    private void dataflowExec(Collection<ComponentAccess> comps) throws ComponentException {
 //        final CountDownLatch latch = new CountDownLatch(comps.size());
         latch.reload(comps.size());
         ens.fireStart(ca);
@@ -463,17 +527,6 @@ class Controller {
             ens.fireException(E);
             throw E;
         }
-
-        try {
-            ens.fireFinnish(ca);
-            // map the outputs.
-//            System.out.println("Comp " + ca.getComponent() + ": " + ca.outputs());
-            for (Access a : ca.outputs()) {
-                a.in();
-            }
-        } catch (Exception Ex) {
-            throw new ComponentException(Ex, ca.getComponent());
-        }
     }
 
     /**
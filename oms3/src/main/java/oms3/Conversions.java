@@ -439,6 +439,55 @@ public class Conversions {
                     return s.doubleValue();
                 }
             });
+            put(key(Integer.class, Integer.class), new Converter<Integer, Integer>() {
+
+                @Override
+                public Integer convert(Integer s, Object arg) {
+                    return s;
+                }
+            });
+            put(key(Long.class, Integer.class), new Converter<Long, Integer>() {
+
+                @Override
+                public Integer convert(Long s, Object arg) {
+                    return Math.toIntExact(s);
+                }
+            });
+            put(key(BigDecimal.class, Integer.class), new Converter<BigDecimal, Integer>() {
+
+                @Override
+                public Integer convert(BigDecimal s, Object arg) {
+                    return s.intValueExact();
+                }
+            });
+            put(key(Integer.class, Long.class), new Converter<Integer, Long>() {
+
+                @Override
+                public Long convert(Integer s, Object arg) {
+                    return s.longValue();
+                }
+            });
+            put(key(Long.class, Long.class), new Converter<Long, Long>() {
+
+                @Override
+                public Long convert(Long s, Object arg) {
+                    return s;
+                }
+            });
+            put(key(BigDecimal.class, Long.class), new Converter<BigDecimal, Long>() {
+
+                @Override
+                public Long convert(BigDecimal s, Object arg) {
+                    return s.longValueExact();
+                }
+            });
+            put(key(Boolean.class, Boolean.class), new Converter<Boolean, Boolean>() {
+
+                @Override
+                public Boolean convert(Boolean s, Object arg) {
+                    return s;
+                }
+            });
 
             put(key(double[].class, String.class), new Converter<double[], String>() {
 
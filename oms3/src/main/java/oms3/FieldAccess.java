@@ -1,5 +1,8 @@
 package oms3;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -18,6 +21,9 @@ class FieldAccess implements Access {
     Object comp;
     FieldContent data;
     private static final Logger log = Logger.getLogger("oms3.sim");
+    // (Object,Object)void and (Object)Object handles, used by scheduled execution
+    private MethodHandle setter;
+    private MethodHandle getter;
 
 //    Access access;
     
@@ -72,7 +78,37 @@ class FieldAccess implements Access {
             }
             return;
         }
-        Object val = data.getValue();
+        setFieldValue(pass(data.getValue()));
+    }
+
+    /**
+     * a field is receiving a new value (in), without waiting for it. The
+     * value has to be set already.
+     *
+     * @throws java.lang.Exception
+     */
+    void in0() throws Exception {
+        if (data == null) {
+            if (log.isLoggable(Level.WARNING)) {
+                log.warning("@In not connected : " + toString() + ", using default value.");
+            }
+            return;
+        }
+        if (!data.hasValue()) {
+            throw new ComponentException("No value for @In " + comp + "." + field.getName());
+        }
+        Object val = pass(data.getValue0());
+        try {
+            setter().invokeExact(comp, val);
+        } catch (Exception | Error E) {
+            throw E;
+        } catch (Throwable T) {
+            throw new ComponentException(T, comp);
+        }
+    }
+
+    // fires the event and converts the value to the field type
+    private Object pass(Object val) throws Exception {
         // fire only if there is a listener
         if (ens.shouldFire()) {
             DataflowEvent e = new DataflowEvent(ens.getController(), this, val);
@@ -91,7 +127,7 @@ class FieldAccess implements Access {
         }
 
 //        access.pass((Access) val);
-        setFieldValue(val);
+        return val;
     }
 
     /** 
@@ -118,6 +154,47 @@ class FieldAccess implements Access {
         }
     }
 
+    /**
+     * a field is sending a new value (out), without notifying. The consumers
+     * are known to run later.
+     *
+     * @throws java.lang.Exception
+     */
+    void out0() throws Exception {
+        Object val;
+        try {
+            val = (Object) getter().invokeExact(comp);
+        } catch (Exception | Error E) {
+            throw E;
+        } catch (Throwable T) {
+            throw new ComponentException(T, comp);
+        }
+        if (ens.shouldFire()) {
+            DataflowEvent e = new DataflowEvent(ens.getController(), this, val);
+            ens.fireOut(e);
+            val = e.getValue();
+        }
+        if (data != null) {
+            data.setValue0(val);
+        }
+    }
+
+    private MethodHandle setter() throws IllegalAccessException {
+        if (setter == null) {
+            setter = MethodHandles.lookup().unreflectSetter(field)
+                    .asType(MethodType.methodType(void.class, Object.class, Object.class));
+        }
+        return setter;
+    }
+
+    private MethodHandle getter() throws IllegalAccessException {
+        if (getter == null) {
+            getter = MethodHandles.lookup().unreflectGetter(field)
+                    .asType(MethodType.methodType(Object.class, Object.class));
+        }
+        return getter;
+    }
+
     /** Get the command belonging to this Object
      *
      * @return the command object
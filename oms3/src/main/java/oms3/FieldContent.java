@@ -131,6 +131,15 @@ public class FieldContent {
         return value;
     }
 
+    /**
+     * Check if the value is set in this iteration.
+     *
+     * @return true if set, false otherwise
+     */
+    boolean hasValue() {
+        return value != NULL;
+    }
+
     Object getShadow() {
         return shadow;
     }
@@ -0,0 +1,254 @@
+/*
+ * $Id$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package oms3;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/** Static execution schedule of the components of a compound.
+ *
+ * The components are ordered once from their @Out -> @In connections, every
+ * component comes after the components producing its inputs. Feedback
+ * connections and field or value mappings do not order components. Since a
+ * component only runs once its producers are done, every data object is a
+ * single assignment slot within an iteration: values are passed without
+ * waiting and locking.
+ *
+ * @author od
+ * @version $Id$
+ */
+class Schedule {
+
+    /* components in execution order */
+    final ComponentAccess[] order;
+    /* the consumers of every component, as positions in order */
+    final int[][] next;
+    /* the number of producers of every component */
+    final int[] producers;
+    /* the components without producers */
+    final int[] roots;
+    //
+    final AtomicIntegerArray waiting;
+    final AtomicInteger pending = new AtomicInteger();
+    final AtomicReference<ComponentException> error = new AtomicReference<ComponentException>();
+    final Runnable[] tasks;
+    volatile Thread caller;
+    Executor executor;
+
+    Schedule(Collection<ComponentAccess> comps) {
+        ComponentAccess[] c = comps.toArray(new ComponentAccess[comps.size()]);
+        int n = c.length;
+
+        // data object -> producing component
+        Map<FieldContent, Integer> producer = new IdentityHashMap<FieldContent, Integer>();
+        for (int i = 0; i < n; i++) {
+            for (Access a : c[i].outputs()) {
+                FieldAccess fa = unwrap(a);
+                if (fa != null && fa.data != null) {
+                    producer.put(fa.data, i);
+                }
+            }
+        }
+        List<Set<Integer>> edges = new ArrayList<Set<Integer>>(n);
+        int[] in = new int[n];
+        for (int i = 0; i < n; i++) {
+            edges.add(new LinkedHashSet<Integer>());
+        }
+        for (int i = 0; i < n; i++) {
+            for (Access a : c[i].inputs()) {
+                // only the waiting inputs, others are read as they are.
+                if (a.getClass() != FieldAccess.class) {
+                    continue;
+                }
+                Integer p = producer.get(((FieldAccess) a).data);
+                if (p != null && p != i && edges.get(p).add(i)) {
+                    in[i]++;
+                }
+            }
+        }
+
+        // topological order, keeping the order of addition for independent components
+        int[] pos = new int[n];
+        int[] left = in.clone();
+        ArrayDeque<Integer> ready = new ArrayDeque<Integer>();
+        for (int i = 0; i < n; i++) {
+            if (left[i] == 0) {
+                ready.add(i);
+            }
+        }
+        int[] sorted = new int[n];
+        int count = 0;
+        while (!ready.isEmpty()) {
+            int i = ready.poll();
+            pos[i] = count;
+            sorted[count++] = i;
+            for (int j : edges.get(i)) {
+                if (--left[j] == 0) {
+                    ready.add(j);
+                }
+            }
+        }
+        if (count < n) {
+            StringBuilder b = new StringBuilder();
+            for (int i = 0; i < n; i++) {
+                if (left[i] > 0) {
+                    b.append(' ').append(c[i].getComponent());
+                }
+            }
+            throw new ComponentException("Circular reference, cannot schedule:" + b);
+        }
+
+        order = new ComponentAccess[n];
+        next = new int[n][];
+        producers = new int[n];
+        List<Integer> r = new ArrayList<Integer>();
+        for (int k = 0; k < n; k++) {
+            int i = sorted[k];
+            order[k] = c[i];
+            producers[k] = in[i];
+            next[k] = new int[edges.get(i).size()];
+            int e = 0;
+            for (int j : edges.get(i)) {
+                next[k][e++] = pos[j];
+            }
+            if (in[i] == 0) {
+                r.add(k);
+            }
+        }
+        roots = new int[r.size()];
+        for (int k = 0; k < roots.length; k++) {
+            roots[k] = r.get(k);
+        }
+        waiting = new AtomicIntegerArray(n);
+        tasks = new Runnable[n];
+        for (int k = 0; k < n; k++) {
+            tasks[k] = task(k);
+        }
+    }
+
+    private static FieldAccess unwrap(Access a) {
+        while (true) {
+            if (a instanceof FieldAccess) {
+                return (FieldAccess) a;
+            } else if (a instanceof FieldObjectAccess) {
+                a = ((FieldObjectAccess) a).fa;
+            } else if (a instanceof AsyncFieldAccess) {
+                a = ((AsyncFieldAccess) a).fa;
+            } else {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Runs all components on the calling thread.
+     *
+     * @throws ComponentException
+     */
+    void run() throws ComponentException {
+        for (ComponentAccess co : order) {
+            co.exec(true);
+        }
+    }
+
+    /**
+     * Runs the components on the executor, every component is submitted when
+     * its last producer is done. The calling thread waits for all.
+     *
+     * @param executor the executor.
+     * @throws ComponentException the first exception of a component.
+     */
+    void run(Executor executor) throws ComponentException {
+        this.executor = executor;
+        caller = Thread.currentThread();
+        error.set(null);
+        for (int k = 0; k < producers.length; k++) {
+            waiting.set(k, producers[k]);
+        }
+        // held by the caller until all roots are submitted
+        pending.set(1);
+        try {
+            for (int k : roots) {
+                submit(k);
+            }
+        } catch (RuntimeException re) {
+            error.compareAndSet(null, new ComponentException(re.getMessage()));
+        }
+        pending.decrementAndGet();
+        while (pending.get() > 0) {
+            LockSupport.park(this);
+        }
+        ComponentException E = error.get();
+        if (E != null) {
+            throw E;
+        }
+    }
+
+    private void submit(int k) {
+        pending.incrementAndGet();
+        try {
+            executor.execute(tasks[k]);
+        } catch (RuntimeException re) {
+            pending.decrementAndGet();
+            throw re;
+        }
+    }
+
+    private Runnable task(final int k) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    if (error.get() == null) {
+                        order[k].exec(true);
+                        for (int j : next[k]) {
+                            if (waiting.decrementAndGet(j) == 0) {
+                                submit(j);
+                            }
+                        }
+                    }
+                } catch (ComponentException ce) {
+                    error.compareAndSet(null, ce);
+                } catch (RuntimeException re) {
+                    error.compareAndSet(null, new ComponentException(re, order[k].getComponent()));
+                } finally {
+                    if (pending.decrementAndGet() == 0) {
+                        LockSupport.unpark(caller);
+                    }
+                }
+            }
+        };
+    }
+}
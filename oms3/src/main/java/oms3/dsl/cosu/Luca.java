@@ -12,6 +12,7 @@ import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import ngmf.util.OutputStragegy;
+import ngmf.util.cosu.luca.Evaluator;
 import ngmf.util.cosu.luca.ExecutionHandle;
 import ngmf.util.cosu.luca.ParameterData;
 import ngmf.util.cosu.luca.SCE;
@@ -35,6 +36,9 @@ public class Luca extends AbstractSimulation {
     //
     Date calib_start;           // Calibration start date
     int rounds = 1;             // number of rounds
+    int threads = 1;            // number of concurrent model runs
+    Long seed;                  // seed for repeatable searches
+    boolean memo = false;       // cache objective function values by parameter set
 
     @Override
     public Buildable create(Object name, Object value) {
@@ -49,6 +53,15 @@ public class Luca extends AbstractSimulation {
             }
         } else if (name.equals("calibration_start")) {
             calib_start = Conversions.convert(value, Date.class);
+        } else if (name.equals("threads")) {
+            threads = Conversions.convert(value, Integer.class);
+            if (threads < 1) {
+                throw new ComponentException("Illegal 'threads': " + threads);
+            }
+        } else if (name.equals("seed")) {
+            seed = Conversions.convert(value, Long.class);
+        } else if (name.equals("memo")) {
+            memo = Conversions.convert(value, Boolean.class);
         } else {
             return super.create(name, value);
         }
@@ -77,13 +90,44 @@ public class Luca extends AbstractSimulation {
             step.init(exec, calib_start, endTime, rounds);
         }
 
+        // model instances for concurrent runs, each with its own output folder
+        List<ModelExecution> instances = new ArrayList<ModelExecution>();
+        if (threads > 1) {
+            for (int i = 0; i < threads; i++) {
+                instances.add(new ModelExecution(exec, i));
+            }
+        } else {
+            instances.add(exec);
+        }
+
         for (int r = 0; r < rounds; r++) {
             for (int s = 0; s < steps.size(); s++) {
                 Step step = steps.get(s);
                 Data stepData = step.round()[r];
                 System.out.println("\n\n>>>>>>>>>>>>>>  Round [" + (r + 1) + "]  Step [" + step.getName() + "] <<<<<<<<<<<<<<");
                 SCE sce = new SCE(exec, step, stepData);
-                sce.run();
+                Evaluator evaluator = null;
+                if (threads > 1 || seed != null || memo) {
+                    List<ModelInstance> mi = new ArrayList<ModelInstance>();
+                    for (ModelExecution instance : instances) {
+                        if (instance != exec) {
+                            // parameter of previous steps and rounds
+                            instance.parameter.putAll(exec.parameter);
+                        }
+                        mi.add(new ModelInstance(instance, step, stepData.copy()));
+                    }
+                    evaluator = new Evaluator(mi, memo, step.maximizeObjectiveFunctionValue());
+                    sce.setEvaluator(evaluator, seed == null ? null : seed + r * steps.size() + s);
+                }
+                try {
+                    sce.run();
+                } finally {
+                    if (evaluator != null) {
+                        evaluator.report("Step " + step.getName());
+                        evaluator.reportBestHistory();
+                        evaluator.shutdown();
+                    }
+                }
                 exec.writeParameterCopy(step, r);
                 step.post(r, stepData);
                 Runtime.getRuntime().gc();
@@ -93,10 +137,32 @@ public class Luca extends AbstractSimulation {
         return null;
     }
 
+    /* a model execution with its own copy of the step data */
+    static class ModelInstance implements Evaluator.Instance {
+
+        final ModelExecution exec;
+        final Step step;
+        final Data data;
+
+        ModelInstance(ModelExecution exec, Step step, Data data) {
+            this.exec = exec;
+            this.step = step;
+            this.data = data;
+        }
+
+        @Override
+        public double evaluate(double[] paramValues) throws Exception {
+            data.setParamValues(paramValues);
+            exec.execute(data);
+            return step.calculateObjectiveFunctionValue(exec);
+        }
+    }
+
     class ModelExecution implements ExecutionHandle {
 
         File lastFolder;
         Map<String, Object> parameter;
+        List<Output> outputs;
 
         public ModelExecution() throws IOException {
             OutputStragegy st = getOutput().getOutputStrategy(getName());
@@ -107,9 +173,23 @@ public class Luca extends AbstractSimulation {
             lastFolder.mkdirs();
 
             parameter = getModel().getParameter();
+            outputs = getOut();
             Logger.getLogger("oms3.model").setLevel(Level.WARNING);
         }
 
+        /* instance for concurrent runs, in a sub folder of the main execution */
+        ModelExecution(ModelExecution main, int n) throws IOException {
+            lastFolder = new File(main.lastFolder, "instance-" + (n + 1));
+            lastFolder.mkdirs();
+
+            parameter = getModel().getParameter();
+            parameter.putAll(main.parameter);
+            outputs = new ArrayList<Output>();
+            for (Output e : main.outputs) {
+                outputs.add(e.copy());
+            }
+        }
+
         Map<String, Object> getParameter() {
             return parameter;
         }
@@ -140,7 +220,7 @@ public class Luca extends AbstractSimulation {
 
             boolean adjusted = ComponentAccess.adjustOutputPath(lastFolder, comp, log);
 
-            for (Output e : getOut()) {
+            for (Output e : outputs) {
                 e.setup(comp, lastFolder, getName());
             }
             // execute phases and be done.
@@ -149,7 +229,7 @@ public class Luca extends AbstractSimulation {
             log.config("Finalize ...");
             ComponentAccess.callAnnotated(comp, Finalize.class, true);
 
-            for (Output e : getOut()) {
+            for (Output e : outputs) {
                 e.done();
             }
         }
@@ -164,7 +164,8 @@ public class ObjFunc implements Buildable {
                 else if(timeStepString.equals(SimConst.PERIOD_STANDARD_DEVIATION)) timeStep = DataIO.PERIOD_STANDARD_DEVIATION;
                 else throw new IllegalArgumentException("TimeStep " + timeStepString + "unknown.");
                 
-                CSTable tobs = DataIO.table(resolve(obs.getFile(), folder), obs.getTable());
+                // observed data is the same for every run, typed columns are kept in memory.
+                CSTable tobs = DataIO.cachedColumnTable(resolve(obs.getFile(), folder), obs.getTable());
                 double[] obsval = DataIO.getColumnDoubleValuesInterval(start, end, tobs, obs.getColumn(), timeStep);
                 
                 CSVColumn sim = of.getSimulated();
@@ -191,6 +191,26 @@ public class Step implements Buildable {
             bestOFPoint = 0.0;
             }
 
+        /**
+         * Creates a copy with its own parameter data, for a separate model instance.
+         *
+         * @return the copy
+         */
+        public Data copy() {
+            Data d = new Data();
+            d.round = round;
+            d.bestOFPoint = bestOFPoint;
+            d.upperBound = upperBound;
+            d.lowerBound = lowerBound;
+            d.paramValues = paramValues.clone();
+            d.paramData = new ParameterData[paramData.length];
+            for (int i = 0; i < paramData.length; i++) {
+                d.paramData[i] = new ParameterData(paramData[i]);
+            }
+            d.createBestParamData();
+            return d;
+        }
+
         public void setObjFuncValueOfBestPoint(double d) {
             bestOFPoint = d;
         }
@@ -345,7 +365,12 @@ public class Step implements Buildable {
     }
 
     public double calculateObjectiveFunctionValue(ExecutionHandle executionHandle) {
-        return ObjFunc.calculateObjectiveFunctionValue(ofs, calibStart, calibEnd, outFolder);
+        File folder = outFolder;
+        if (executionHandle instanceof ModelExecution) {
+            // the model instance might have its own output folder
+            folder = ((ModelExecution) executionHandle).lastFolder;
+        }
+        return ObjFunc.calculateObjectiveFunctionValue(ofs, calibStart, calibEnd, folder);
     }
 
 //    public static void main(String[] args) {
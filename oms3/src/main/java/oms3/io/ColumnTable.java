@@ -0,0 +1,690 @@
+package oms3.io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Columnar table with typed columns.
+ *
+ * Date columns are kept as epoch milliseconds, numeric columns as doubles,
+ * all other columns as strings. Values are parsed once, when the table is
+ * created. Date columns in ascending order are searched with a binary search.
+ *
+ * The table is a {@link CSTable} as well, the rows are created from the
+ * columns. A cell is given back exactly as it was read: if a column does not
+ * print back to the original text, the text is kept next to the values.
+ *
+ * Tables loaded from a file with {@link #load(File, String)} are cached in a
+ * binary file next to the source. The cache is memory mapped when it is read
+ * and it is rewritten when the digest of the source changes. Tables loaded
+ * with {@link #cached(File, String)} are kept in memory instead, for as long
+ * as the file is not modified.
+ *
+ * @author od
+ */
+public class ColumnTable implements CSTable {
+
+    static final byte TEXT = 0;
+    static final byte DOUBLE = 1;
+    static final byte TIME = 2;
+    //
+    static final int MAGIC = 0x43544231;
+    static final int VERSION = 1;
+    static final String CACHE_EXT = ".ctbl";
+    static final Charset UTF8 = Charset.forName("UTF-8");
+    // tables loaded in this process, by file and table name
+    private static final Map<String, Cached> loaded = new HashMap<String, Cached>();
+    //
+    String name;
+    Map<Integer, Map<String, String>> info = new HashMap<Integer, Map<String, String>>();
+    String[] columnNames;
+    int colCount;
+    int rowCount;
+    // per column, index 0 is the row number
+    byte[] kinds;
+    boolean[] sorted;
+    DoubleBuffer[] values;
+    LongBuffer[] times;
+    String[][] text;
+
+    private ColumnTable(int colCount) {
+        this.colCount = colCount;
+        columnNames = new String[colCount + 1];
+        columnNames[0] = "ROW";
+        kinds = new byte[colCount + 1];
+        sorted = new boolean[colCount + 1];
+        values = new DoubleBuffer[colCount + 1];
+        times = new LongBuffer[colCount + 1];
+        text = new String[colCount + 1][];
+    }
+
+    /**
+     * Creates a columnar table from a table, all rows are read once.
+     *
+     * @param src the source table
+     * @return the columnar table
+     */
+    public static ColumnTable of(CSTable src) {
+        if (src instanceof ColumnTable) {
+            return (ColumnTable) src;
+        }
+        int cols = src.getColumnCount();
+        ColumnTable t = new ColumnTable(cols);
+        t.name = src.getName();
+        t.info.put(-1, new LinkedHashMap<String, String>(src.getInfo()));
+        for (int c = 1; c <= cols; c++) {
+            t.columnNames[c] = src.getColumnName(c);
+            t.info.put(c, new LinkedHashMap<String, String>(src.getColumnInfo(c)));
+        }
+
+        int capacity = 1024;
+        String[][] cells = new String[cols + 1][capacity];
+        int n = 0;
+        for (String[] row : src.rows()) {
+            if (n == capacity) {
+                capacity *= 2;
+                for (int c = 1; c <= cols; c++) {
+                    cells[c] = Arrays.copyOf(cells[c], capacity);
+                }
+            }
+            for (int c = 1; c <= cols; c++) {
+                cells[c][n] = c < row.length ? row[c] : null;
+            }
+            n++;
+        }
+        t.rowCount = n;
+        for (int c = 1; c <= cols; c++) {
+            t.type(c, Arrays.copyOf(cells[c], n), DataIO.lookupDateFormat(src, c));
+            cells[c] = null;
+        }
+        return t;
+    }
+
+    /* types a column from its cells */
+    private void type(int c, String[] cells, DateFormat fmt) {
+        String type = info.get(c).get(DataIO.KEY_TYPE);
+        if (type != null && type.equalsIgnoreCase(DataIO.VAL_DATE)) {
+            long[] t = new long[rowCount];
+            boolean exact = true;
+            try {
+                for (int i = 0; i < rowCount; i++) {
+                    if (cells[i] == null) {
+                        throw new ParseException("missing", 0);
+                    }
+                    t[i] = fmt.parse(cells[i]).getTime();
+                    exact = exact && fmt.format(new Date(t[i])).equals(cells[i]);
+                }
+                kinds[c] = TIME;
+                times[c] = LongBuffer.wrap(t);
+                sorted[c] = isSorted(times[c]);
+                text[c] = exact ? null : cells;
+                return;
+            } catch (ParseException E) {
+                // not a date column after all.
+            }
+        }
+        double[] v = new double[rowCount];
+        boolean exact = true;
+        try {
+            for (int i = 0; i < rowCount; i++) {
+                if (cells[i] == null) {
+                    throw new NumberFormatException("missing");
+                }
+                v[i] = Double.parseDouble(cells[i]);
+                exact = exact && format(v[i]).equals(cells[i]);
+            }
+            kinds[c] = DOUBLE;
+            values[c] = DoubleBuffer.wrap(v);
+            text[c] = exact ? null : cells;
+            return;
+        } catch (NumberFormatException E) {
+            // text column
+        }
+        kinds[c] = TEXT;
+        text[c] = cells;
+    }
+
+    private static boolean isSorted(LongBuffer t) {
+        for (int i = 1; i < t.limit(); i++) {
+            if (t.get(i) < t.get(i - 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String format(double v) {
+        if (v == Math.rint(v) && Math.abs(v) < 1e15) {
+            return Long.toString((long) v);
+        }
+        return Double.toString(v);
+    }
+
+    /**
+     * Loads a table from a file, through its binary cache.
+     *
+     * @param file the file with the table
+     * @param name the name of the table, null for the first one.
+     * @return the columnar table
+     * @throws IOException
+     */
+    public static ColumnTable load(File file, String name) throws IOException {
+        byte[] digest = digest(file);
+        File cache = cacheFile(file, name);
+        if (cache.exists()) {
+            try {
+                ColumnTable t = read(cache, digest);
+                if (t != null) {
+                    return t;
+                }
+            } catch (IOException E) {
+                // unreadable, it gets rewritten.
+            } catch (RuntimeException E) {
+            }
+        }
+        ColumnTable t = of(DataIO.table(file, name));
+        try {
+            t.write(cache, digest);
+        } catch (IOException E) {
+            // no cache then, for example in a read only folder.
+        }
+        return t;
+    }
+
+    /**
+     * Loads a table from a file, keeping it in memory for later calls.
+     *
+     * The table is read again when the modification time or the size of the
+     * file change. Nothing is written next to the file.
+     *
+     * @param file the file with the table
+     * @param name the name of the table, null for the first one.
+     * @return the columnar table
+     * @throws IOException
+     */
+    public static ColumnTable cached(File file, String name) throws IOException {
+        String key = file.getAbsolutePath() + "\n" + name;
+        long modified = file.lastModified();
+        long length = file.length();
+        synchronized (loaded) {
+            Cached c = loaded.get(key);
+            if (c != null && c.modified == modified && c.length == length) {
+                ColumnTable t = c.table.get();
+                if (t != null) {
+                    return t;
+                }
+            }
+        }
+        ColumnTable t = of(DataIO.table(file, name));
+        synchronized (loaded) {
+            loaded.put(key, new Cached(t, modified, length));
+        }
+        return t;
+    }
+
+    /* a table loaded in memory, released when memory is short */
+    private static class Cached {
+
+        final SoftReference<ColumnTable> table;
+        final long modified;
+        final long length;
+
+        Cached(ColumnTable table, long modified, long length) {
+            this.table = new SoftReference<ColumnTable>(table);
+            this.modified = modified;
+            this.length = length;
+        }
+    }
+
+    static File cacheFile(File file, String name) {
+        String table = (name == null) ? "" : "." + name.replaceAll("[^A-Za-z0-9_\\-]", "_");
+        return new File(file.getAbsoluteFile().getParentFile(), file.getName() + table + CACHE_EXT);
+    }
+
+    static byte[] digest(File file) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException E) {
+            throw new RuntimeException(E);
+        }
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] b = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(b)) != -1) {
+                md.update(b, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return md.digest();
+    }
+
+    /**
+     * Writes the table in binary form.
+     *
+     * @param cache the file to write
+     * @param digest the digest of the source
+     * @throws IOException
+     */
+    void write(File cache, byte[] digest) throws IOException {
+        File tmp = File.createTempFile(cache.getName(), ".tmp", cache.getParentFile());
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(digest.length);
+            out.write(digest);
+            writeString(out, name);
+            out.writeInt(colCount);
+            out.writeInt(rowCount);
+            for (int c = -1; c <= colCount; c++) {
+                Map<String, String> m = info.get(c);
+                if (m == null) {
+                    out.writeInt(-1);
+                    continue;
+                }
+                out.writeInt(m.size());
+                for (Map.Entry<String, String> e : m.entrySet()) {
+                    writeString(out, e.getKey());
+                    writeString(out, e.getValue());
+                }
+            }
+            for (int c = 1; c <= colCount; c++) {
+                writeString(out, columnNames[c]);
+                out.writeByte(kinds[c]);
+                out.writeBoolean(sorted[c]);
+                out.writeBoolean(text[c] != null);
+            }
+            // numbers start 8 byte aligned
+            while (out.size() % 8 != 0) {
+                out.writeByte(0);
+            }
+            for (int c = 1; c <= colCount; c++) {
+                for (int i = 0; i < rowCount; i++) {
+                    if (kinds[c] == TIME) {
+                        out.writeLong(times[c].get(i));
+                    } else if (kinds[c] == DOUBLE) {
+                        out.writeDouble(values[c].get(i));
+                    }
+                }
+            }
+            for (int c = 1; c <= colCount; c++) {
+                if (text[c] != null) {
+                    for (int i = 0; i < rowCount; i++) {
+                        writeString(out, text[c][i]);
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+        // replace the old cache at once, others might read it.
+        if (!tmp.renameTo(cache)) {
+            cache.delete();
+            if (!tmp.renameTo(cache)) {
+                tmp.delete();
+                throw new IOException("Cannot write " + cache);
+            }
+        }
+    }
+
+    /**
+     * Reads a table from its binary form.
+     *
+     * @param cache the file to read
+     * @param digest the digest of the source
+     * @return the table, or null if the cache is not from this source.
+     * @throws IOException
+     */
+    static ColumnTable read(File cache, byte[] digest) throws IOException {
+        MappedByteBuffer b;
+        RandomAccessFile f = new RandomAccessFile(cache, "r");
+        try {
+            FileChannel ch = f.getChannel();
+            b = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } finally {
+            f.close();
+        }
+        if (b.getInt() != MAGIC || b.getInt() != VERSION) {
+            return null;
+        }
+        byte[] d = new byte[b.getInt()];
+        b.get(d);
+        if (!Arrays.equals(d, digest)) {
+            return null;
+        }
+        String name = readString(b);
+        ColumnTable t = new ColumnTable(b.getInt());
+        t.name = name;
+        t.rowCount = b.getInt();
+        for (int c = -1; c <= t.colCount; c++) {
+            int n = b.getInt();
+            if (n == -1) {
+                continue;
+            }
+            Map<String, String> m = new LinkedHashMap<String, String>();
+            for (int i = 0; i < n; i++) {
+                m.put(readString(b), readString(b));
+            }
+            t.info.put(c, m);
+        }
+        boolean[] hasText = new boolean[t.colCount + 1];
+        for (int c = 1; c <= t.colCount; c++) {
+            t.columnNames[c] = readString(b);
+            t.kinds[c] = b.get();
+            t.sorted[c] = b.get() != 0;
+            hasText[c] = b.get() != 0;
+        }
+        while (b.position() % 8 != 0) {
+            b.get();
+        }
+        for (int c = 1; c <= t.colCount; c++) {
+            if (t.kinds[c] == TEXT) {
+                continue;
+            }
+            ByteBuffer s = b.slice();
+            s.limit(t.rowCount * 8);
+            if (t.kinds[c] == TIME) {
+                t.times[c] = s.asLongBuffer();
+            } else {
+                t.values[c] = s.asDoubleBuffer();
+            }
+            b.position(b.position() + t.rowCount * 8);
+        }
+        for (int c = 1; c <= t.colCount; c++) {
+            if (hasText[c]) {
+                String[] s = new String[t.rowCount];
+                for (int i = 0; i < s.length; i++) {
+                    s[i] = readString(b);
+                }
+                t.text[c] = s;
+            }
+        }
+        return t;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes(UTF8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(ByteBuffer b) {
+        int len = b.getInt();
+        if (len == -1) {
+            return null;
+        }
+        byte[] s = new byte[len];
+        b.get(s);
+        return new String(s, UTF8);
+    }
+
+    /**
+     * @return the number of rows.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @param column the column, starting at 1
+     * @return true if the column has numeric values.
+     */
+    public boolean isDouble(int column) {
+        return kinds[column] == DOUBLE;
+    }
+
+    /**
+     * @param column the column, starting at 1
+     * @return true if the column has date values.
+     */
+    public boolean isTime(int column) {
+        return kinds[column] == TIME;
+    }
+
+    /**
+     * Gets a numeric value.
+     *
+     * Cells of text columns are parsed, so that a column with a few non
+     * numeric cells can still be read where its cells are numbers.
+     *
+     * @param column the column, starting at 1
+     * @param row the row, starting at 0
+     * @return the value
+     * @throws NumberFormatException if the cell is not a number
+     */
+    public double getDouble(int column, int row) {
+        if (kinds[column] == DOUBLE) {
+            return values[column].get(row);
+        }
+        if (kinds[column] == TEXT) {
+            String cell = text[column][row];
+            if (cell == null) {
+                throw new NumberFormatException("Missing value in column " + columnNames[column] + ", row " + (row + 1));
+            }
+            return Double.parseDouble(cell);
+        }
+        throw new IllegalArgumentException("Not a numeric column: " + columnNames[column]);
+    }
+
+    /**
+     * Gets a date value.
+     *
+     * @param column the column, starting at 1
+     * @param row the row, starting at 0
+     * @return the date as milliseconds since the epoch
+     */
+    public long getTime(int column, int row) {
+        if (kinds[column] != TIME) {
+            throw new IllegalArgumentException("Not a date column: " + columnNames[column]);
+        }
+        return times[column].get(row);
+    }
+
+    /**
+     * Gets a cell as text, as it was read.
+     *
+     * @param column the column, starting at 1
+     * @param row the row, starting at 0
+     * @return the text of the cell
+     */
+    public String getString(int column, int row) {
+        if (text[column] != null) {
+            return text[column][row];
+        }
+        if (kinds[column] == DOUBLE) {
+            return format(values[column].get(row));
+        }
+        return DataIO.lookupDateFormat(this, column).format(new Date(times[column].get(row)));
+    }
+
+    /**
+     * Finds the first row at or after a date.
+     *
+     * @param column the date column
+     * @param time the date as milliseconds since the epoch
+     * @return the first row with a date not before time, the row count if there is none
+     */
+    public int findRow(int column, long time) {
+        LongBuffer t = times(column);
+        if (sorted[column]) {
+            int lo = 0;
+            int hi = rowCount;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (t.get(mid) < time) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+        for (int i = 0; i < rowCount; i++) {
+            if (t.get(i) >= time) {
+                return i;
+            }
+        }
+        return rowCount;
+    }
+
+    /**
+     * Finds the rows within a time window.
+     *
+     * @param column the date column
+     * @param start the start of the window, included
+     * @param end the end of the window, included
+     * @return the rows, in table order
+     */
+    public int[] findRows(int column, Date start, Date end) {
+        LongBuffer t = times(column);
+        long s = start.getTime();
+        long e = end.getTime();
+        if (sorted[column]) {
+            int first = findRow(column, s);
+            int last = findRow(column, e == Long.MAX_VALUE ? e : e + 1);
+            int[] rows = new int[Math.max(0, last - first)];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = first + i;
+            }
+            return rows;
+        }
+        int[] rows = new int[rowCount];
+        int n = 0;
+        for (int i = 0; i < rowCount; i++) {
+            if (t.get(i) >= s && t.get(i) <= e) {
+                rows[n++] = i;
+            }
+        }
+        return Arrays.copyOf(rows, n);
+    }
+
+    private LongBuffer times(int column) {
+        if (kinds[column] != TIME) {
+            throw new IllegalArgumentException("Not a date column: " + columnNames[column]);
+        }
+        return times[column];
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Map<String, String> getInfo() {
+        return getColumnInfo(-1);
+    }
+
+    @Override
+    public Map<String, String> getColumnInfo(int column) {
+        return Collections.unmodifiableMap(info.get(column));
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    @Override
+    public int getColumnCount() {
+        return colCount;
+    }
+
+    @Override
+    public Iterable<String[]> rows() {
+        return rows(0);
+    }
+
+    @Override
+    public Iterable<String[]> rows(final int startRow) {
+        if (startRow < 0) {
+            throw new IllegalArgumentException("startRow<0");
+        }
+        return new Iterable<String[]>() {
+
+            @Override
+            public Iterator<String[]> iterator() {
+                final DateFormat[] fmt = new DateFormat[colCount + 1];
+                for (int c = 1; c <= colCount; c++) {
+                    if (kinds[c] == TIME && text[c] == null) {
+                        fmt[c] = DataIO.lookupDateFormat(ColumnTable.this, c);
+                    }
+                }
+                return new TableIterator<String[]>() {
+
+                    int row = startRow;
+
+                    @Override
+                    public boolean hasNext() {
+                        return row < rowCount;
+                    }
+
+                    @Override
+                    public String[] next() {
+                        String[] s = new String[colCount + 1];
+                        s[0] = Integer.toString(row + 1);
+                        for (int c = 1; c <= colCount; c++) {
+                            if (text[c] != null) {
+                                s[c] = text[c][row];
+                            } else if (kinds[c] == DOUBLE) {
+                                s[c] = format(values[c].get(row));
+                            } else {
+                                s[c] = fmt[c].format(new Date(times[c].get(row)));
+                            }
+                        }
+                        row++;
+                        return s;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    @Override
+                    public void skip(int n) {
+                        if (n < 1) {
+                            throw new IllegalArgumentException("n<1 : " + n);
+                        }
+                        row += n;
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                    }
+                };
+            }
+        };
+    }
+}
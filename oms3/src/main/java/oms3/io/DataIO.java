@@ -117,30 +117,45 @@ public class DataIO {
             throw new IllegalArgumentException("No such column: " + columnName);
         }
 
-        DateFormat fmt = lookupDateFormat(t, 1);
-
-        boolean useOrigDaily = false;
-        switch (timeStep) {
-            case DAILY:
-                if (useOrigDaily) {
-                    List<Double> l = new ArrayList<Double>();
-                    for (String[] row : t.rows()) {
-                        try {
-                            Date d = fmt.parse(row[1]);
-                            if ((d.equals(start) || d.after(start)) && (d.equals(end) || d.before(end))) {
-                                l.add(new Double(row[col]));
-                            }
-                        } catch (ParseException ex) {
-                            throw new RuntimeException(ex);
+        // dates and values within start and end
+        long[] times;
+        double[] values;
+        if (t instanceof ColumnTable && ((ColumnTable) t).isTime(1)) {
+            ColumnTable ct = (ColumnTable) t;
+            int[] rows = ct.findRows(1, start, end);
+            times = new long[rows.length];
+            values = new double[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                times[i] = ct.getTime(1, rows[i]);
+                values[i] = ct.getDouble(col, rows[i]);
+            }
+        } else {
+            DateFormat fmt = lookupDateFormat(t, 1);
+            times = new long[256];
+            values = new double[256];
+            int n = 0;
+            for (String[] row : t.rows()) {
+                try {
+                    Date d = fmt.parse(row[1]);
+                    if ((d.equals(start) || d.after(start)) && (d.equals(end) || d.before(end))) {
+                        if (n == times.length) {
+                            times = Arrays.copyOf(times, n * 2);
+                            values = Arrays.copyOf(values, n * 2);
                         }
+                        times[n] = d.getTime();
+                        values[n] = Double.parseDouble(row[col]);
+                        n++;
                     }
-                    double[] arr = new double[l.size()];
-                    for (int i = 0; i < arr.length; i++) {
-                        arr[i] = l.get(i);
-                    }
-                    return arr;
+                } catch (ParseException ex) {
+                    throw new RuntimeException(ex);
                 }
+            }
+            times = Arrays.copyOf(times, n);
+            values = Arrays.copyOf(values, n);
+        }
 
+        switch (timeStep) {
+            case DAILY:
             case ANNUAL_MEAN:
             case MONTHLY_MEAN:
             case PERIOD_MEAN: {
@@ -150,7 +165,6 @@ public class DataIO {
                 int previousYear = -1;
                 int previousDay = -1;
                 boolean previousValid = false;
-                boolean lastRow = false;
 
                 boolean useYear = (timeStep == DAILY) || (timeStep == MONTHLY_MEAN) || (timeStep == ANNUAL_MEAN);
                 boolean useMonth = (timeStep == DAILY) || (timeStep == MONTHLY_MEAN);
@@ -160,42 +174,30 @@ public class DataIO {
                 double sum = 0;
                 int count = 0;
 
-
-                for (String[] row : t.rows()) {
-                    try {
-                        Date d = fmt.parse(row[1]);
-                        if ((d.equals(start) || d.after(start)) && (d.equals(end) || d.before(end))) {
-                            int month = d.getMonth();
-                            int year = d.getYear();
-                            int day = d.getDay();
-                            double data = Double.parseDouble(row[col]);
-
-
-
-                            boolean newEntry = (previousValid && ((useYear && (year != previousYear))
-                                    || (useMonth && (month != previousMonth))
-                                    || (useDay && (day != previousDay))));
-
-
-
-                            if (newEntry) {
-                                l.add(sum / count);
-                                sum = 0;
-                                count = 0;
-                            }
-
-                            sum += data;
-                            count++;
-
-                            previousValid = true;
-                            previousDay = day;
-                            previousMonth = month;
-                            previousYear = year;
-                        }
-                    } catch (ParseException ex) {
-                        throw new RuntimeException(ex);
+                for (int i = 0; i < times.length; i++) {
+                    Date d = new Date(times[i]);
+                    int month = d.getMonth();
+                    int year = d.getYear();
+                    int day = d.getDay();
+                    double data = values[i];
+
+                    boolean newEntry = (previousValid && ((useYear && (year != previousYear))
+                            || (useMonth && (month != previousMonth))
+                            || (useDay && (day != previousDay))));
+
+                    if (newEntry) {
+                        l.add(sum / count);
+                        sum = 0;
+                        count = 0;
                     }
 
+                    sum += data;
+                    count++;
+
+                    previousValid = true;
+                    previousDay = day;
+                    previousMonth = month;
+                    previousYear = year;
                 }
                 l.add(sum / count); // add the final entry which wasn't yet added
                 // since it never hit a newEntry.
@@ -220,21 +222,13 @@ public class DataIO {
                     count[i] = 0;
                 }
 
-
-                for (String[] row : t.rows()) {
-                    try {
-                        Date d = fmt.parse(row[1]);
-                        if ((d.equals(start) || d.after(start)) && (d.equals(end) || d.before(end))) {
-                            int month = d.getMonth();
-                            double data = Double.parseDouble(row[col]);
-                            arr[month] = arr[month] + data;
-                            count[month] = count[month] + 1;
-                            if (month > 11) {
-                                throw new RuntimeException("Month > 11 = " + month);
-                            }
-                        }
-                    } catch (ParseException ex) {
-                        throw new RuntimeException(ex);
+                for (int i = 0; i < times.length; i++) {
+                    int month = new Date(times[i]).getMonth();
+                    double data = values[i];
+                    arr[month] = arr[month] + data;
+                    count[month] = count[month] + 1;
+                    if (month > 11) {
+                        throw new RuntimeException("Month > 11 = " + month);
                     }
                 }
 
@@ -252,25 +246,17 @@ public class DataIO {
                 double max = -1;
                 boolean previousValid = false;
 
-
-                for (String[] row : t.rows()) {
-                    try {
-                        Date d = fmt.parse(row[1]);
-                        if ((d.equals(start) || d.after(start)) && (d.equals(end) || d.before(end))) {
-                            double data = Double.parseDouble(row[col]);
-                            if (!previousValid) {
-                                min = data;
-                                max = data;
-                            } else if ((timeStep == PERIOD_MIN) && (data < min)) {
-                                min = data;
-                            } else if ((timeStep == PERIOD_MAX) && (data > max)) {
-                                max = data;
-                            }
-                            previousValid = true;
-                        }
-                    } catch (ParseException ex) {
-                        throw new RuntimeException(ex);
+                for (int i = 0; i < values.length; i++) {
+                    double data = values[i];
+                    if (!previousValid) {
+                        min = data;
+                        max = data;
+                    } else if ((timeStep == PERIOD_MIN) && (data < min)) {
+                        min = data;
+                    } else if ((timeStep == PERIOD_MAX) && (data > max)) {
+                        max = data;
                     }
+                    previousValid = true;
                 }
                 double[] arr = new double[1];
                 arr[0] = (timeStep == PERIOD_MIN) ? min : max;
@@ -279,30 +265,11 @@ public class DataIO {
             }
 
             case PERIOD_MEDIAN: {
-                // Put entire table into ArrayList
-                List<Double> l = new ArrayList<Double>();
-                for (String[] row : t.rows()) {
-                    try {
-                        Date d = fmt.parse(row[1]);
-                        if ((d.equals(start) || d.after(start)) && (d.equals(end) || d.before(end))) {
-                            l.add(new Double(row[col]));
-                        }
-                    } catch (ParseException ex) {
-                        throw new RuntimeException(ex);
-                    }
-                }
-
-                //Copy to array of double
-                int lSize = l.size();
+                int lSize = values.length;
                 if (lSize == 0) {
                     throw new RuntimeException("No data in file matched the specified period " + start + " to " + end);
                 }
-                double[] arr = new double[lSize];
-                for (int i = 0; i < arr.length; i++) {
-                    arr[i] = l.get(i);
-                }
-
-                l.clear();  // Don't need l anymore so clear it.
+                double[] arr = values.clone();
 
                 // Sort the Array
                 Arrays.sort(arr);
@@ -326,28 +293,15 @@ public class DataIO {
             }
 
             case PERIOD_STANDARD_DEVIATION: {
-                // kmolson TODO- is it better to read the file twice, or read
-                //   it once and store the data for the 2nd pass while
-                //   computing the mean?
-
-                // Read file to get mean.
                 double sum = 0;
                 double sq_sum = 0;
                 double data = 0;
                 int count = 0;
-                for (String[] row : t.rows()) {
-                    try {
-                        Date d = fmt.parse(row[1]);
-                        if ((d.equals(start) || d.after(start)) && (d.equals(end) || d.before(end))) {
-                            data = Double.parseDouble(row[col]);
-                            sum += data;
-                            sq_sum += (data * data);
-                            count++;
-                        }
-
-                    } catch (ParseException ex) {
-                        throw new RuntimeException(ex);
-                    }
+                for (int i = 0; i < values.length; i++) {
+                    data = values[i];
+                    sum += data;
+                    sq_sum += (data * data);
+                    count++;
                 }
 
                 double mean = sum / count;
@@ -385,6 +339,15 @@ public class DataIO {
             throw new IllegalArgumentException();
         }
 
+        if (table instanceof ColumnTable && ((ColumnTable) table).isTime(dateColumn)) {
+            ColumnTable ct = (ColumnTable) table;
+            int row = ct.findRow(dateColumn, date.getTime());
+            if (row < ct.getRowCount() && ct.getTime(dateColumn, row) == date.getTime()) {
+                return row;
+            }
+            throw new IllegalArgumentException(date.toString());
+        }
+
         DateFormat fmt = lookupDateFormat(table, dateColumn);
 
         int rowNo = 0;
@@ -472,6 +435,12 @@ public class DataIO {
         if (timeCol < 0) {
             throw new IllegalArgumentException("timeCol :" + timeCol);
         }
+        if (table instanceof ColumnTable && ((ColumnTable) table).isTime(timeCol)) {
+            ColumnTable ct = (ColumnTable) table;
+            int s = ct.findRow(timeCol, start.getTime());
+            int e = ct.findRow(timeCol, end.getTime());
+            return new int[]{s < ct.getRowCount() ? s : -1, e < ct.getRowCount() ? e : -1};
+        }
         int s = -1;
         int e = -1;
         int i = -1;
@@ -1186,6 +1155,32 @@ public class DataIO {
         return new FileTable(file, name);
     }
 
+    /** Load a table from a given File as typed columns. The columns are
+     * cached in a binary file next to the table file, the cache is used as
+     * long as the table file does not change.
+     *
+     * @param file
+     * @param name the name of the table, null for the first table
+     * @return the table
+     * @throws java.io.IOException
+     */
+    public static ColumnTable columnTable(File file, String name) throws IOException {
+        return ColumnTable.load(file, name);
+    }
+
+    /** Load a table from a given File as typed columns. The columns are
+     * kept in memory and reused by later calls as long as the table file
+     * does not change. Nothing is written next to the table file.
+     *
+     * @param file
+     * @param name the name of the table, null for the first table
+     * @return the table
+     * @throws java.io.IOException
+     */
+    public static ColumnTable cachedColumnTable(File file, String name) throws IOException {
+        return ColumnTable.cached(file, name);
+    }
+
     /** Parse a table from a Reader. Find the first table
      * 
      * @param s the Reader to read from
@@ -0,0 +1,134 @@
+/*
+ * $Id$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package oms3.util;
+
+import oms3.Compound;
+import oms3.annotations.Execute;
+import oms3.annotations.In;
+import oms3.annotations.Out;
+
+/** Component invocations per second of the compound execution modes.
+ *
+ * A compound of 'width' parallel chains of 'depth' tiny components is
+ * executed 'iterations' times in the 'dataflow', 'scheduled' and 'parallel'
+ * execution.
+ *
+ * usage: ExecutionBenchmark [width] [depth] [iterations]
+ *
+ * @author od
+ * @version $Id$
+ */
+public class ExecutionBenchmark {
+
+    public static class Source {
+
+        @Out public double out;
+        int t;
+
+        @Execute
+        public void execute() {
+            out = t++;
+        }
+    }
+
+    public static class Step {
+
+        @In public double in;
+        @Out public double out;
+
+        @Execute
+        public void execute() {
+            out = in * 0.5 + 1.0;
+        }
+    }
+
+    public static class Sink {
+
+        @In public double in;
+        public double sum;
+
+        @Execute
+        public void execute() {
+            sum += in;
+        }
+    }
+
+    public static class Chains extends Compound {
+
+        Sink[] sinks;
+
+        public Chains(int width, int depth) {
+            sinks = new Sink[width];
+            for (int w = 0; w < width; w++) {
+                Object prev = new Source();
+                for (int d = 0; d < depth; d++) {
+                    Step s = new Step();
+                    out2in(prev, "out", s, "in");
+                    prev = s;
+                }
+                sinks[w] = new Sink();
+                out2in(prev, "out", sinks[w], "in");
+            }
+        }
+
+        double sum() {
+            double sum = 0;
+            for (Sink s : sinks) {
+                sum += s.sum;
+            }
+            return sum;
+        }
+    }
+
+    static double run(String mode, int width, int depth, int iterations) {
+        Chains c = new Chains(width, depth);
+        c.setExecution(mode);
+        // warm up
+        for (int i = 0; i < iterations / 10 + 1; i++) {
+            c.execute();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            c.execute();
+        }
+        long time = System.nanoTime() - start;
+        double invocations = (double) iterations * width * (depth + 2);
+        System.out.println(String.format("%-10s %14.0f invocations/s (check %.1f)",
+                mode, invocations / (time / 1e9), c.sum()));
+        return invocations / (time / 1e9);
+    }
+
+    public static void main(String[] args) {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 25;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        System.out.println(width + " x " + (depth + 2) + " components, " + iterations + " iterations");
+        try {
+            for (String mode : new String[]{"dataflow", "scheduled", "parallel"}) {
+                run(mode, width, depth, iterations);
+            }
+        } finally {
+            Compound.shutdown();
+        }
+    }
+}